@@ -0,0 +1,84 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+/**
+ * Compares rendering the signup confirmation the way EmailService used to do it (message lookups, date formatting and
+ * String.format over a text block on every call) with a precompiled template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EmailTemplateBenchmark {
+
+    private static final String LEGACY_SIGNUP_SUCCESSFUL_TEMPLATE =
+            """
+        <html>
+        %s %s %s.
+        <br>
+        %s: <a href=%s/signup/cancel/%s/%s target="_blank">%s/signup/cancel/%s/%s</a>
+        </html>
+        """;
+    private static final String BASE_URL = "https://ilmot.asteriski.fi";
+
+    private final Locale locale = Locale.forLanguageTag("en");
+    private final String eventName = "Annual sitsit & afterparty";
+    private final ZonedDateTime startDate = ZonedDateTime.of(2024, 11, 15, 18, 0, 0, 0, ZoneId.of("Europe/Helsinki"));
+    private final UUID eventId = UUID.randomUUID();
+    private final UUID participantId = UUID.randomUUID();
+
+    private ResourceBundleMessageSource messageSource;
+    private EmailTemplateEngine emailTemplateEngine;
+
+    @Setup
+    public void setUp() {
+        messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        emailTemplateEngine =
+                new EmailTemplateEngine(messageSource, new DefaultResourceLoader(), "classpath:templates/email/");
+    }
+
+    @Benchmark
+    public String legacyStringFormat() {
+        var subject = String.format(
+                messageSource.getMessage("email.message.subject.signup.success", null, locale), eventName);
+        var body = String.format(
+                LEGACY_SIGNUP_SUCCESSFUL_TEMPLATE,
+                messageSource.getMessage("email.message.body.signup.success", null, locale),
+                eventName,
+                startDate.format(DateTimeFormatter.RFC_1123_DATE_TIME),
+                messageSource.getMessage("email.message.body.signup.success.to.cancel", null, locale),
+                BASE_URL,
+                eventId,
+                participantId,
+                BASE_URL,
+                eventId,
+                participantId);
+        return subject + body;
+    }
+
+    @Benchmark
+    public String compiledTemplate() {
+        var email = emailTemplateEngine.render(
+                "signup-successful",
+                locale,
+                Map.of(
+                        "eventName", eventName,
+                        "startDate", startDate,
+                        "cancelUrl", String.format("%s/signup/cancel/%s/%s", BASE_URL, eventId, participantId)));
+        return email.subject() + email.body();
+    }
+}
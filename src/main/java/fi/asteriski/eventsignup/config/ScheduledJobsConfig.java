@@ -4,24 +4,122 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.config;
 
+import fi.asteriski.eventsignup.dao.jobs.JobRunDao;
+import fi.asteriski.eventsignup.jobs.JobRunHistoryListener;
 import fi.asteriski.eventsignup.jobs.archiving.ArchivePastEventsJob;
+import fi.asteriski.eventsignup.jobs.archiving.OffloadArchivedEventsJob;
 import fi.asteriski.eventsignup.jobs.archiving.RemoveOldArchiveEventsJob;
+import fi.asteriski.eventsignup.jobs.reminders.SendEventRemindersJob;
+import org.quartz.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.quartz.SchedulerFactoryBeanCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+/*
+Jobs are run by Quartz using the clustered JDBC job store (see spring.quartz.* in application.properties).
+Only one node in the cluster acquires a trigger, so each firing is run exactly once.
+ */
 @Configuration
 @EnableScheduling
 @EnableAsync
 public class ScheduledJobsConfig {
+
+    private static final String ARCHIVING_GROUP = "archiving";
+    private static final String NOTIFICATIONS_GROUP = "notifications";
+
+    @Value("${fi.asteriski.config.jobs.archive-past-events-cron:0 0 0 ? * SUN}")
+    private String archivePastEventsCron;
+
+    @Value("${fi.asteriski.config.jobs.remove-old-archived-events-cron:0 0 0 1 1 ?}")
+    private String removeOldArchivedEventsCron;
+
+    @Value("${fi.asteriski.config.jobs.offload-archived-events-cron:0 0 3 * * ?}")
+    private String offloadArchivedEventsCron;
+
+    @Bean
+    public JobDetail removeOldArchivedEventsJobDetail() {
+        return JobBuilder.newJob(RemoveOldArchiveEventsJob.class)
+                .withIdentity("removeOldArchivedEvents", ARCHIVING_GROUP)
+                .storeDurably()
+                .requestRecovery()
+                .build();
+    }
+
+    @Bean
+    public Trigger removeOldArchivedEventsTrigger(JobDetail removeOldArchivedEventsJobDetail) {
+        return TriggerBuilder.newTrigger()
+                .forJob(removeOldArchivedEventsJobDetail)
+                .withIdentity("removeOldArchivedEventsTrigger", ARCHIVING_GROUP)
+                .withSchedule(CronScheduleBuilder.cronSchedule(removeOldArchivedEventsCron)
+                        .withMisfireHandlingInstructionFireAndProceed())
+                .build();
+    }
+
+    @Bean
+    public JobDetail archivePastEventsJobDetail() {
+        return JobBuilder.newJob(ArchivePastEventsJob.class)
+                .withIdentity("archivePastEvents", ARCHIVING_GROUP)
+                .storeDurably()
+                .requestRecovery()
+                .build();
+    }
+
+    @Bean
+    public Trigger archivePastEventsTrigger(JobDetail archivePastEventsJobDetail) {
+        return TriggerBuilder.newTrigger()
+                .forJob(archivePastEventsJobDetail)
+                .withIdentity("archivePastEventsTrigger", ARCHIVING_GROUP)
+                .withSchedule(CronScheduleBuilder.cronSchedule(archivePastEventsCron)
+                        .withMisfireHandlingInstructionFireAndProceed())
+                .build();
+    }
+
+    @Bean
+    public JobDetail offloadArchivedEventsJobDetail() {
+        return JobBuilder.newJob(OffloadArchivedEventsJob.class)
+                .withIdentity("offloadArchivedEvents", ARCHIVING_GROUP)
+                .storeDurably()
+                .requestRecovery()
+                .build();
+    }
+
+    @Bean
+    public Trigger offloadArchivedEventsTrigger(JobDetail offloadArchivedEventsJobDetail) {
+        return TriggerBuilder.newTrigger()
+                .forJob(offloadArchivedEventsJobDetail)
+                .withIdentity("offloadArchivedEventsTrigger", ARCHIVING_GROUP)
+                .withSchedule(CronScheduleBuilder.cronSchedule(offloadArchivedEventsCron)
+                        .withMisfireHandlingInstructionFireAndProceed())
+                .build();
+    }
+
+    @Value("${fi.asteriski.config.jobs.send-event-reminders-cron:0 */5 * * * ?}")
+    private String sendEventRemindersCron;
+
+    @Bean
+    public JobDetail sendEventRemindersJobDetail() {
+        return JobBuilder.newJob(SendEventRemindersJob.class)
+                .withIdentity("sendEventReminders", NOTIFICATIONS_GROUP)
+                .storeDurably()
+                .requestRecovery()
+                .build();
+    }
+
     @Bean
-    public RemoveOldArchiveEventsJob removeOldArchivedEvents() {
-        return new RemoveOldArchiveEventsJob();
+    public Trigger sendEventRemindersTrigger(JobDetail sendEventRemindersJobDetail) {
+        return TriggerBuilder.newTrigger()
+                .forJob(sendEventRemindersJobDetail)
+                .withIdentity("sendEventRemindersTrigger", NOTIFICATIONS_GROUP)
+                .withSchedule(CronScheduleBuilder.cronSchedule(sendEventRemindersCron)
+                        .withMisfireHandlingInstructionFireAndProceed())
+                .build();
     }
 
     @Bean
-    public ArchivePastEventsJob archivePastEventsJob() {
-        return new ArchivePastEventsJob();
+    public SchedulerFactoryBeanCustomizer jobRunHistoryCustomizer(JobRunDao jobRunDao) {
+        return schedulerFactoryBean -> schedulerFactoryBean.setGlobalJobListeners(new JobRunHistoryListener(jobRunDao));
     }
 }
@@ -12,6 +12,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -46,6 +47,29 @@ public class SpringSecurityConfig {
         @Value("${fi.asteriski.config.security.allowed-cors-domain}")
         private String allowedCorsOrigin;
 
+        // Actuator runs on the app port unless a separate port is configured.
+        @Value("${management.server.port:-1}")
+        private int managementPort;
+
+        /**
+         * Health and metrics are open only on the internal management port (see application-prod.properties). On the
+         * app port actuator requests fall through to the chain below which denies them.
+         */
+        @Bean
+        @Order(1)
+        public SecurityFilterChain configureManagement(@NonNull HttpSecurity http) throws Exception {
+            http.securityMatcher(request -> request.getLocalPort() == managementPort)
+                    .sessionManagement(sessionManagement ->
+                            sessionManagement.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                    .authorizeHttpRequests(authorizeHttpRequests -> authorizeHttpRequests
+                            .requestMatchers(HttpMethod.GET, "/actuator/health", "/actuator/prometheus")
+                            .permitAll()
+                            .anyRequest()
+                            .denyAll());
+
+            return http.build();
+        }
+
         @Bean
         public SecurityFilterChain configureProd(@NonNull HttpSecurity http) throws Exception {
             http.oauth2Client(Customizer.withDefaults())
@@ -74,6 +98,8 @@ public class SpringSecurityConfig {
                             .hasAnyRole(ROLE_ADMIN, ROLE_USER)
                             .requestMatchers(HttpMethod.POST, API_PATH_EVENT + "/banner/add")
                             .hasAnyRole(ROLE_ADMIN, ROLE_USER)
+                            .requestMatchers(HttpMethod.GET, API_PATH_EVENT + "/banner/upload/**")
+                            .hasAnyRole(ROLE_ADMIN, ROLE_USER)
                             .requestMatchers(HttpMethod.GET, API_PATH_EVENT + "/banner/**")
                             .permitAll()
                             .requestMatchers(HttpMethod.PUT, API_PATH_EVENT + "/edit/**")
@@ -5,6 +5,7 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.controller.admin;
 
 import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.event.OrphanedImageReport;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import fi.asteriski.eventsignup.service.admin.AdminService;
 import fi.asteriski.eventsignup.utils.Constants;
@@ -20,7 +21,9 @@ import lombok.AllArgsConstructor;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -99,4 +102,25 @@ public class AdminController {
     public List<ParticipantDto> getAllParticipantsForEvent(@PathVariable UUID eventId) {
         return adminService.getAllParticipantsForEvent(eventId);
     }
+
+    @Operation(
+            summary = "Deletes banner images no event or archived event references.",
+            parameters = {
+                @Parameter(name = "dryRun", description = "If true (the default), orphans are only reported.")
+            })
+    @ApiResponses(
+            value = {
+                @ApiResponse(
+                        responseCode = "200",
+                        description = "What was deleted, or would have been in a dry run.",
+                        content = {
+                            @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = OrphanedImageReport.class))
+                        })
+            })
+    @PostMapping("banner-images/collect-orphans")
+    public OrphanedImageReport collectOrphanedImages(@RequestParam(defaultValue = "true") boolean dryRun) {
+        return adminService.collectOrphanedImages(dryRun);
+    }
 }
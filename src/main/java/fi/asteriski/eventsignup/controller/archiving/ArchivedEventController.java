@@ -8,6 +8,7 @@ import fi.asteriski.eventsignup.model.archiving.ArchiveEventRequest;
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventResponse;
 import fi.asteriski.eventsignup.model.archiving.RemoveArchivedEventsRequest;
+import fi.asteriski.eventsignup.service.archiving.ArchiveExportService;
 import fi.asteriski.eventsignup.service.archiving.ArchivedEventService;
 import fi.asteriski.eventsignup.utils.Constants;
 import io.swagger.v3.oas.annotations.Operation;
@@ -16,11 +17,16 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @AllArgsConstructor
@@ -28,8 +34,16 @@ import org.springframework.web.bind.annotation.*;
 public class ArchivedEventController {
 
     private ArchivedEventService archivedEventService;
+    private ArchiveExportService archiveExportService;
 
-    @Operation(summary = "Get all archived events. Admin user only.")
+    @Operation(
+            summary = "Get all archived events. Admin user only.",
+            parameters = {
+                @Parameter(
+                        name = "includeColdTier",
+                        description = "Also list events offloaded to the cold tier. Slow, as it reads the whole "
+                                + "cold tier. Defaults to false.")
+            })
     @ApiResponses(
             value = {
                 @ApiResponse(
@@ -43,8 +57,9 @@ public class ArchivedEventController {
                 @ApiResponse(responseCode = "401", description = "Unauthorized.")
             })
     @GetMapping("get/all")
-    public List<ArchivedEventResponse> getAllArchiveEvents() {
-        return archivedEventService.getAllArchivedEvents();
+    public List<ArchivedEventResponse> getAllArchiveEvents(
+            @RequestParam(defaultValue = "false") boolean includeColdTier) {
+        return archivedEventService.getAllArchivedEvents(includeColdTier);
     }
 
     @Operation(
@@ -67,6 +82,81 @@ public class ArchivedEventController {
         return archivedEventService.getAllArchivedEventsForUser(userId);
     }
 
+    @Operation(
+            summary = "Get a single archived event. Admin user only.",
+            parameters = {@Parameter(name = "archivedEventId", description = "Archived event's id.")})
+    @ApiResponses(
+            value = {
+                @ApiResponse(
+                        responseCode = "200",
+                        description = "The archived event. It is looked up from the cold tier too.",
+                        content = {
+                            @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = ArchivedEventDto.class))
+                        }),
+                @ApiResponse(responseCode = "401", description = "Unauthorized."),
+                @ApiResponse(responseCode = "404", description = "Archived event was not found.")
+            })
+    @GetMapping("get/event/{archivedEventId}")
+    public ArchivedEventDto getArchivedEvent(@PathVariable UUID archivedEventId, Locale usersLocale) {
+        return archivedEventService.getArchivedEvent(archivedEventId, usersLocale);
+    }
+
+    @Operation(
+            summary = "Restore an archived event from the cold tier back into the database. Admin user only.",
+            requestBody =
+                    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                            content = {
+                                @Content(
+                                        mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                        schema = @Schema(implementation = ArchiveEventRequest.class))
+                            }))
+    @ApiResponses(
+            value = {
+                @ApiResponse(
+                        responseCode = "200",
+                        description = "Restore was successful. Returns the restored archived event.",
+                        content = {
+                            @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = ArchivedEventDto.class))
+                        }),
+                @ApiResponse(responseCode = "401", description = "Unauthorized."),
+                @ApiResponse(responseCode = "404", description = "Archived event was not found.")
+            })
+    @PutMapping("restore")
+    public ArchivedEventDto restoreArchivedEvent(@RequestBody ArchiveEventRequest request, Locale usersLocale) {
+        return archivedEventService.restoreArchivedEvent(request.archivedEventId(), usersLocale);
+    }
+
+    @Operation(
+            summary = "Export archived events as a compressed columnar file for analytics. Admin user only.",
+            parameters = {
+                @Parameter(
+                        name = "incremental",
+                        description = "Only export events archived since the last export. Defaults to false.")
+            })
+    @ApiResponses(
+            value = {
+                @ApiResponse(
+                        responseCode = "200",
+                        description = "Export file. Streamed as it is written.",
+                        content = {@Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE)}),
+                @ApiResponse(responseCode = "401", description = "Unauthorized.")
+            })
+    @GetMapping("export")
+    public ResponseEntity<StreamingResponseBody> exportArchivedEvents(
+            @RequestParam(defaultValue = "false") boolean incremental) {
+        var fileName = String.format(
+                "archived-events-%s%s.escol",
+                LocalDate.now(Constants.UTC_TIME_ZONE), incremental ? "-incremental" : "");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", fileName))
+                .body(out -> archiveExportService.exportArchivedEvents(incremental, out));
+    }
+
     @Operation(
             summary = "Delete archived events older than set date. Admin user only.",
             requestBody =
@@ -4,7 +4,9 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.controller.event;
 
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatusResponse;
 import fi.asteriski.eventsignup.model.event.BannerImageUploadSuccessResponse;
+import fi.asteriski.eventsignup.service.event.BannerImageUploadService;
 import fi.asteriski.eventsignup.service.event.ImageService;
 import fi.asteriski.eventsignup.utils.Constants;
 import io.swagger.v3.oas.annotations.Operation;
@@ -13,17 +15,33 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
 import lombok.AllArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.view.RedirectView;
 
 @AllArgsConstructor
 @RestController
 @RequestMapping(Constants.API_PATH_EVENT)
 public class ImageController {
 
+    /** A stored image never changes: a new upload gets a new name. */
+    private static final CacheControl BANNER_IMAGE_CACHE_CONTROL =
+            CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    /** The original served while the requested variant is being generated. Retried soon to get the variant. */
+    private static final CacheControl PROVISIONAL_BANNER_IMAGE_CACHE_CONTROL =
+            CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic();
+    /** Client hint for the width the image is shown at, in physical pixels. */
+    private static final String CLIENT_HINT_WIDTH = "Sec-CH-Width";
+
     private ImageService imageService;
+    private BannerImageUploadService bannerImageUploadService;
 
     @Operation(
             summary = "Get file path for the uploaded banner image.",
@@ -44,32 +62,95 @@ public class ImageController {
 
     @Operation(
             summary = "Get a banner image.",
-            parameters = {@Parameter(name = "fileName", description = "File's name we want.")})
+            parameters = {
+                @Parameter(name = "fileName", description = "File's name we want."),
+                @Parameter(
+                        name = "w",
+                        description = "Width in pixels the image is shown at. The smallest variant at least this "
+                                + "wide is returned. Defaults to the Sec-CH-Width client hint, otherwise the "
+                                + "original is returned.")
+            })
     @ApiResponses(
             value = {
-                @ApiResponse(responseCode = "200", description = "The file requested."),
+                @ApiResponse(
+                        responseCode = "200",
+                        description = "The file requested.",
+                        content = {
+                            @Content(mediaType = MediaType.IMAGE_PNG_VALUE),
+                            @Content(mediaType = MediaType.IMAGE_JPEG_VALUE),
+                            @Content(mediaType = MediaType.IMAGE_GIF_VALUE)
+                        }),
+                @ApiResponse(responseCode = "206", description = "The requested range(s) of the file."),
+                @ApiResponse(responseCode = "304", description = "File not modified (If-None-Match)."),
                 @ApiResponse(responseCode = "404", description = "File not found.")
             })
-    @GetMapping(
-            value = "banner/get/{fileName}",
-            produces = {MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_GIF_VALUE})
-    public byte[] getBannerImage(@PathVariable String fileName) {
-        return imageService.getBannerImage(fileName.replace('_', '/'));
+    @GetMapping("banner/get/{fileName}")
+    public ResponseEntity<Resource> getBannerImage(
+            @PathVariable String fileName,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestHeader(name = CLIENT_HINT_WIDTH, required = false) Integer clientHintWidth) {
+        var bannerImage =
+                imageService.getBannerImage(fileName.replace('_', '/'), width != null ? width : clientHintWidth);
+        // Spring MVC streams the resource, answers Range requests with 206 and If-None-Match with 304.
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(bannerImage.contentType()))
+                .eTag(bannerImage.contentHash())
+                .cacheControl(
+                        bannerImage.provisional()
+                                ? PROVISIONAL_BANNER_IMAGE_CACHE_CONTROL
+                                : BANNER_IMAGE_CACHE_CONTROL)
+                .header("Accept-CH", CLIENT_HINT_WIDTH)
+                .varyBy(CLIENT_HINT_WIDTH)
+                .body(bannerImage.content());
     }
 
     @Operation(
             summary = "Upload a new banner image.",
+            description = "The image is processed in the background. Poll the upload's status (the Location header) "
+                    + "until it is READY and has the image's file name, or FAILED.",
             parameters = {@Parameter(name = "file", description = "Raw bytes of the image being uploaded.")})
     @ApiResponses(
             value = {
-                @ApiResponse(responseCode = "303", description = "Redirect to /api/event/banner/{fileName}."),
+                @ApiResponse(
+                        responseCode = "202",
+                        description = "Upload received and queued for processing.",
+                        content = {
+                            @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BannerImageUploadStatusResponse.class))
+                        }),
                 @ApiResponse(responseCode = "401", description = "Unauthenticated"),
-                @ApiResponse(responseCode = "406", description = "Invalid image file/file not an image."),
-                @ApiResponse(responseCode = "500", description = "Target directory creation failed.")
+                @ApiResponse(responseCode = "413", description = "File too large."),
+                @ApiResponse(responseCode = "500", description = "Target directory creation or saving failed."),
+                @ApiResponse(responseCode = "503", description = "Too many uploads being processed.")
             })
     @PostMapping("banner/add")
-    public RedirectView addBannerImg(@RequestBody byte[] file) {
-        String filePath = imageService.addBannerImage(file);
-        return new RedirectView(String.format("/api/event/banner/%s", filePath));
+    public ResponseEntity<BannerImageUploadStatusResponse> addBannerImg(InputStream file) {
+        var upload = bannerImageUploadService.acceptUpload(file);
+        return ResponseEntity.accepted()
+                .location(URI.create(
+                        String.format("%s/banner/upload/%s", Constants.API_PATH_EVENT, upload.uploadId())))
+                .body(upload);
+    }
+
+    @Operation(
+            summary = "Get the status of a banner image upload.",
+            parameters = {@Parameter(name = "uploadId", description = "Id returned when uploading the image.")})
+    @ApiResponses(
+            value = {
+                @ApiResponse(
+                        responseCode = "200",
+                        description = "Status of the upload. The image's file name once it is READY.",
+                        content = {
+                            @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BannerImageUploadStatusResponse.class))
+                        }),
+                @ApiResponse(responseCode = "401", description = "Unauthenticated"),
+                @ApiResponse(responseCode = "404", description = "No such upload by the user.")
+            })
+    @GetMapping("banner/upload/{uploadId}")
+    public BannerImageUploadStatusResponse getBannerImageUploadStatus(@PathVariable UUID uploadId) {
+        return bannerImageUploadService.getUploadStatus(uploadId);
     }
 }
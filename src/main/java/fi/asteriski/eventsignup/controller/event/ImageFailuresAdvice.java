@@ -4,8 +4,12 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.controller.event;
 
+import fi.asteriski.eventsignup.exception.BannerImageUploadNotFoundException;
 import fi.asteriski.eventsignup.exception.ImageDirectoryCreationFailedException;
 import fi.asteriski.eventsignup.exception.ImageNotFoundException;
+import fi.asteriski.eventsignup.exception.ImageTooLargeException;
+import fi.asteriski.eventsignup.exception.ImageUploadFailedException;
+import fi.asteriski.eventsignup.exception.ImageUploadQueueFullException;
 import fi.asteriski.eventsignup.exception.InvalidImageFileException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -36,4 +40,32 @@ public class ImageFailuresAdvice {
     String imageDirectoryCreationFailed(ImageDirectoryCreationFailedException ex) {
         return ex.getMessage();
     }
+
+    @ResponseBody
+    @ExceptionHandler(ImageTooLargeException.class)
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    String imageTooLargeHandler(ImageTooLargeException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(ImageUploadFailedException.class)
+    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+    String imageUploadFailed(ImageUploadFailedException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(ImageUploadQueueFullException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    String imageUploadQueueFull(ImageUploadQueueFullException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(BannerImageUploadNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    String bannerImageUploadNotFoundHandler(BannerImageUploadNotFoundException ex) {
+        return ex.getMessage();
+    }
 }
@@ -0,0 +1,26 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ArchiveExportEntity;
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public interface ArchiveExportDao {
+    ArchiveExportEntity save(@NotNull ArchiveExportEntity archiveExport);
+
+    Optional<Instant> findLatestWatermark();
+
+    /**
+     * Passes every archived event in the database archived after <code>since</code> and at or before
+     * <code>until</code> to <code>consumer</code>, oldest first, without holding more than one fetch's worth of rows
+     * in memory.
+     */
+    void forEachArchivedEventBetween(
+            @NotNull Instant since, @NotNull Instant until, @NotNull Consumer<ArchivedEventDto> consumer);
+}
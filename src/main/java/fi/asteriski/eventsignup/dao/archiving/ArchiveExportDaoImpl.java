@@ -0,0 +1,59 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ArchiveExportEntity;
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
+import fi.asteriski.eventsignup.repo.archiving.ArchiveExportRepository;
+import fi.asteriski.eventsignup.repo.archiving.ArchivedEventRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Consumer;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+@RequiredArgsConstructor
+public class ArchiveExportDaoImpl implements ArchiveExportDao {
+    @NonNull
+    private ArchiveExportRepository archiveExportRepository;
+
+    @NonNull
+    private ArchivedEventRepository archivedEventRepository;
+
+    @NonNull
+    private EntityManager entityManager;
+
+    @Override
+    public ArchiveExportEntity save(@NotNull final ArchiveExportEntity archiveExport) {
+        return archiveExportRepository.save(archiveExport);
+    }
+
+    @Override
+    public Optional<Instant> findLatestWatermark() {
+        return archiveExportRepository
+                .findFirstByWatermarkIsNotNullOrderByWatermarkDesc()
+                .map(ArchiveExportEntity::getWatermark);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachArchivedEventBetween(
+            @NotNull final Instant since,
+            @NotNull final Instant until,
+            @NotNull final Consumer<ArchivedEventDto> consumer) {
+        try (var archivedEvents = archivedEventRepository.streamAllByDateArchivedBetween(since, until)) {
+            archivedEvents.forEach(archivedEvent -> {
+                consumer.accept(archivedEvent.toDto());
+                // Keeps the persistence context from growing with the archive.
+                entityManager.detach(archivedEvent);
+            });
+        }
+    }
+}
@@ -8,18 +8,37 @@ import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
 import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface ArchivedEventDao {
     ArchivedEventDto save(@NotNull ArchivedEventDto toSave);
 
     List<ArchivedEventDto> saveAll(@NotNull List<ArchivedEventDto> toSave);
 
+    /** Inserts an archived event keeping its id and archiving date, unlike {@link #save(ArchivedEventDto)}. */
+    ArchivedEventDto insert(@NotNull ArchivedEventDto toInsert);
+
     List<ArchivedEventDto> findAll();
 
     List<ArchivedEventDto> findAllByOriginalOwner(@NotNull String userId);
 
+    Optional<ArchivedEventDto> findById(@NotNull UUID archivedEventId);
+
+    List<ArchivedEventDto> findOldestByDateArchivedIsBefore(@NotNull Instant dateLimit, int limit);
+
+    void deleteAllByIds(@NotNull List<UUID> archivedEventIds);
+
     void deleteAllByDateArchivedIsBefore(@NotNull Instant dateLimit);
 
     void deleteById(@NotNull UUID archivedEventId);
+
+    long countByBannerImage(@NotNull String bannerImage);
+
+    /** Streams the banner images of all archived events in the database, i.e. not in the cold tier. */
+    void forEachBannerImage(@NotNull Consumer<String> consumer);
+
+    /** @return False if there is no such archived event (anymore) in the database. */
+    boolean updateBannerImage(@NotNull UUID archivedEventId, @NotNull String bannerImage);
 }
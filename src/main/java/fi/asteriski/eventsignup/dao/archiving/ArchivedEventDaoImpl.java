@@ -7,13 +7,19 @@ package fi.asteriski.eventsignup.dao.archiving;
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventEntity;
 import fi.asteriski.eventsignup.repo.archiving.ArchivedEventRepository;
+import fi.asteriski.eventsignup.utils.Constants;
+import fi.asteriski.eventsignup.utils.Utils;
 import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 @Component
 @RequiredArgsConstructor
@@ -34,6 +40,19 @@ public class ArchivedEventDaoImpl implements ArchivedEventDao {
                 .toList();
     }
 
+    @Override
+    public ArchivedEventDto insert(@NotNull final ArchivedEventDto toInsert) {
+        var entity = toInsert.toEntity();
+        archivedEventRepository.insertWithIdAndDateArchived(
+                entity.getId(),
+                entity.getOriginalEvent(),
+                entity.getDateArchived(),
+                entity.getNumberOfParticipants(),
+                entity.getOriginalOwner(),
+                entity.getBannerImage());
+        return archivedEventRepository.findById(entity.getId()).orElseThrow().toDto();
+    }
+
     @Override
     public List<ArchivedEventDto> findAll() {
         return archivedEventRepository.findAll().stream()
@@ -48,13 +67,58 @@ public class ArchivedEventDaoImpl implements ArchivedEventDao {
                 .toList();
     }
 
+    @Override
+    public Optional<ArchivedEventDto> findById(@NotNull final UUID archivedEventId) {
+        return archivedEventRepository.findById(archivedEventId).map(ArchivedEventEntity::toDto);
+    }
+
+    @Override
+    public List<ArchivedEventDto> findOldestByDateArchivedIsBefore(@NotNull final Instant dateLimit, int limit) {
+        return archivedEventRepository
+                .findAllByDateArchivedIsBeforeOrderByDateArchivedAsc(dateLimit, Limit.of(limit))
+                .stream()
+                .map(ArchivedEventEntity::toDto)
+                .toList();
+    }
+
+    @Override
+    public void deleteAllByIds(@NotNull final List<UUID> archivedEventIds) {
+        for (var chunk : Utils.partition(archivedEventIds, Constants.BULK_DELETE_BATCH_SIZE)) {
+            archivedEventRepository.deleteAllByIdIn(chunk);
+        }
+    }
+
     @Override
     public void deleteAllByDateArchivedIsBefore(@NotNull final Instant dateLimit) {
-        archivedEventRepository.deleteAllByDateArchivedIsBefore(dateLimit);
+        // Each batch is committed on its own (unless called within a transaction) so purging a large archive doesn't
+        // hold locks on every row until the very end.
+        int deleted;
+        do {
+            deleted = archivedEventRepository.deleteBatchByDateArchivedIsBefore(
+                    dateLimit, Constants.BULK_DELETE_BATCH_SIZE);
+        } while (deleted == Constants.BULK_DELETE_BATCH_SIZE);
     }
 
     @Override
     public void deleteById(@NotNull final UUID archivedEventId) {
         archivedEventRepository.deleteById(archivedEventId);
     }
+
+    @Override
+    public long countByBannerImage(@NotNull final String bannerImage) {
+        return archivedEventRepository.countByBannerImage(bannerImage);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachBannerImage(@NotNull final Consumer<String> consumer) {
+        try (var bannerImages = archivedEventRepository.streamAllBannerImages()) {
+            bannerImages.forEach(consumer);
+        }
+    }
+
+    @Override
+    public boolean updateBannerImage(@NotNull final UUID archivedEventId, @NotNull final String bannerImage) {
+        return archivedEventRepository.updateBannerImageById(archivedEventId, bannerImage) > 0;
+    }
 }
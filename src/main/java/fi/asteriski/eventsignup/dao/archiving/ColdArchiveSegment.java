@@ -0,0 +1,79 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Format of the cold archive tier's immutable segments: gzip compressed records written back to back. A segment has
+ * no index of its own. Where each record starts and how long it is is kept in the database (see
+ * {@link fi.asteriski.eventsignup.model.archiving.ColdArchivedEventEntity}), so fetching a single record costs one
+ * ranged read and reading a whole segment one sequential read.
+ */
+final class ColdArchiveSegment {
+
+    record Item(UUID id, byte[] payload) {}
+
+    record Entry(UUID id, long offset, int length) {}
+
+    private ColdArchiveSegment() {}
+
+    /**
+     * Writes the items into the segment in the given order.
+     *
+     * @return Where each item was written.
+     */
+    static List<Entry> write(OutputStream out, List<Item> items) throws IOException {
+        var entries = new ArrayList<Entry>(items.size());
+        long offset = 0;
+        for (var item : items) {
+            var compressed = compress(item.payload());
+            out.write(compressed);
+            entries.add(new Entry(item.id(), offset, compressed.length));
+            offset += compressed.length;
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the records of the entries from the start of a segment.
+     *
+     * @param entries Entries of the segment sorted by offset. Records in between are skipped.
+     * @return The decompressed records in the order of the entries.
+     */
+    static List<byte[]> read(InputStream in, List<Entry> entries) throws IOException {
+        var records = new ArrayList<byte[]>(entries.size());
+        long position = 0;
+        for (var entry : entries) {
+            in.skipNBytes(entry.offset() - position);
+            records.add(decompress(in.readNBytes(entry.length())));
+            position = entry.offset() + entry.length();
+        }
+        return records;
+    }
+
+    static byte[] decompress(byte[] record) throws IOException {
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(record))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] compress(byte[] payload) throws IOException {
+        var bytes = new ByteArrayOutputStream(payload.length / 2 + 64);
+        try (var out = new GZIPOutputStream(bytes)) {
+            out.write(payload);
+        }
+        return bytes.toByteArray();
+    }
+}
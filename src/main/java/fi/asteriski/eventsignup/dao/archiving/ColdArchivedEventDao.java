@@ -0,0 +1,55 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier of the archive. Old archived events are offloaded from the database into compressed, immutable segments
+ * in the {@link fi.asteriski.eventsignup.service.blob.BlobStore}, so every node sees the same cold tier. Only where
+ * each event is stored stays in the database.
+ */
+public interface ColdArchivedEventDao {
+    /** Directory of the segments in the blob store. */
+    String BLOB_DIRECTORY = "cold-archive";
+
+    void saveAll(@NotNull List<ArchivedEventDto> toSave);
+
+    Optional<ArchivedEventDto> findById(@NotNull UUID archivedEventId);
+
+    boolean existsById(@NotNull UUID archivedEventId);
+
+    /**
+     * Lazily reads every archived event in the cold tier. The stream reads a segment at a time as it is consumed.
+     */
+    Stream<ArchivedEventDto> streamAll();
+
+    /**
+     * Like {@link #streamAll()} but only reads events archived after <code>since</code>, oldest segment first. Other
+     * events are skipped without reading them.
+     */
+    Stream<ArchivedEventDto> streamAllByDateArchivedIsAfter(@NotNull Instant since);
+
+    List<ArchivedEventDto> findAll();
+
+    List<ArchivedEventDto> findAllByOriginalOwner(@NotNull String userId);
+
+    /** Counts cold archived events with the banner image without reading the segments. */
+    long countByBannerImage(@NotNull String bannerImage);
+
+    /** Streams the banner images of all archived events in the cold tier without reading the segments. */
+    void forEachBannerImage(@NotNull Consumer<String> consumer);
+
+    void deleteAllByDateArchivedIsBefore(@NotNull Instant dateLimit);
+
+    void deleteById(@NotNull UUID archivedEventId);
+}
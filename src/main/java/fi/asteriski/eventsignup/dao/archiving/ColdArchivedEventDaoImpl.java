@@ -0,0 +1,234 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.asteriski.eventsignup.exception.ColdArchiveAccessException;
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventEntity;
+import fi.asteriski.eventsignup.model.archiving.ColdArchivedEventEntity;
+import fi.asteriski.eventsignup.repo.archiving.ColdArchivedEventRepository;
+import fi.asteriski.eventsignup.service.blob.BlobStore;
+import jakarta.validation.constraints.NotNull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stores archived events in immutable segments (see {@link ColdArchiveSegment}) in the blob store, and where each event
+ * is in <code>cold_archived_events</code>. A segment is uploaded before its events' rows are inserted, so a row
+ * always points to a readable record. Removing events deletes their rows; a segment is deleted once none of its events
+ * is left.
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class ColdArchivedEventDaoImpl implements ColdArchivedEventDao {
+
+    private static final String LOG_PREFIX = "[ColdArchivedEventDaoImpl]";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    @NonNull
+    private ObjectMapper objectMapper;
+
+    @NonNull
+    private BlobStore blobStore;
+
+    @NonNull
+    private ColdArchivedEventRepository coldArchivedEventRepository;
+
+    @Override
+    public void saveAll(@NotNull final List<ArchivedEventDto> toSave) {
+        if (toSave.isEmpty()) {
+            return;
+        }
+        // Unique across nodes, and sorted by time.
+        var segment = String.format("%s%013d-%s", SEGMENT_PREFIX, System.currentTimeMillis(), UUID.randomUUID());
+        var items = toSave.stream()
+                .map(event -> new ColdArchiveSegment.Item(event.id(), serialize(event)))
+                .toList();
+        List<ColdArchiveSegment.Entry> entries;
+        try {
+            var tempFile = Files.createTempFile("cold-archive-", SEGMENT_SUFFIX);
+            try {
+                try (var out = Files.newOutputStream(tempFile)) {
+                    entries = ColdArchiveSegment.write(out, items);
+                }
+                blobStore.put(segmentKey(segment), tempFile);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException ioException) {
+            throw new ColdArchiveAccessException(
+                    String.format("Unable to write %s archived events into cold archive.", items.size()), ioException);
+        }
+        try {
+            coldArchivedEventRepository.saveAll(IntStream.range(0, entries.size())
+                    .mapToObj(i -> ColdArchivedEventEntity.builder()
+                            .id(entries.get(i).id())
+                            .segment(segment)
+                            .dataOffset(entries.get(i).offset())
+                            .dataLength(entries.get(i).length())
+                            .dateArchived(toSave.get(i).dateArchived().toInstant())
+                            .originalOwner(toSave.get(i).originalOwner())
+                            .bannerImage(toSave.get(i).bannerImage())
+                            .build())
+                    .toList());
+        } catch (RuntimeException runtimeException) {
+            deleteSegment(segment);
+            throw runtimeException;
+        }
+        log.debug(String.format("%s Wrote %s archived events into segment %s.", LOG_PREFIX, items.size(), segment));
+    }
+
+    @Override
+    public Optional<ArchivedEventDto> findById(@NotNull final UUID archivedEventId) {
+        return coldArchivedEventRepository.findById(archivedEventId).map(this::read);
+    }
+
+    @Override
+    public boolean existsById(@NotNull final UUID archivedEventId) {
+        return coldArchivedEventRepository.existsById(archivedEventId);
+    }
+
+    @Override
+    public Stream<ArchivedEventDto> streamAll() {
+        return streamAllByDateArchivedIsAfter(Instant.EPOCH);
+    }
+
+    @Override
+    public Stream<ArchivedEventDto> streamAllByDateArchivedIsAfter(@NotNull final Instant since) {
+        return coldArchivedEventRepository.findSegmentsByDateArchivedIsAfter(since).stream()
+                .flatMap(segment -> readSegment(
+                        segment,
+                        coldArchivedEventRepository.findAllBySegmentAndDateArchivedIsAfterOrderByDataOffset(
+                                segment, since))
+                        .stream());
+    }
+
+    @Override
+    public List<ArchivedEventDto> findAll() {
+        try (var events = streamAll()) {
+            return events.toList();
+        }
+    }
+
+    @Override
+    public List<ArchivedEventDto> findAllByOriginalOwner(@NotNull final String userId) {
+        // A user's events are spread over segments, so each is fetched with a ranged read.
+        return coldArchivedEventRepository.findAllByOriginalOwner(userId).stream()
+                .map(this::read)
+                .toList();
+    }
+
+    @Override
+    public long countByBannerImage(@NotNull final String bannerImage) {
+        return coldArchivedEventRepository.countByBannerImage(bannerImage);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachBannerImage(@NotNull final Consumer<String> consumer) {
+        try (var bannerImages = coldArchivedEventRepository.streamAllBannerImages()) {
+            bannerImages.forEach(consumer);
+        }
+    }
+
+    @Override
+    public void deleteAllByDateArchivedIsBefore(@NotNull final Instant dateLimit) {
+        var segments = coldArchivedEventRepository.findSegmentsByDateArchivedIsBefore(dateLimit);
+        coldArchivedEventRepository.deleteAllByDateArchivedIsBefore(dateLimit);
+        segments.forEach(this::deleteSegmentIfEmpty);
+    }
+
+    @Override
+    public void deleteById(@NotNull final UUID archivedEventId) {
+        coldArchivedEventRepository.findById(archivedEventId).ifPresent(location -> {
+            coldArchivedEventRepository.deleteById(archivedEventId);
+            deleteSegmentIfEmpty(location.getSegment());
+        });
+    }
+
+    private byte[] serialize(ArchivedEventDto event) {
+        try {
+            return objectMapper.writeValueAsBytes(event.toEntity());
+        } catch (IOException ioException) {
+            throw new ColdArchiveAccessException(
+                    String.format("Unable to serialize archived event <%s>.", event.id()), ioException);
+        }
+    }
+
+    private ArchivedEventDto read(ColdArchivedEventEntity location) {
+        try {
+            var record = blobStore.read(
+                    segmentKey(location.getSegment()), location.getDataOffset(), location.getDataLength());
+            return deserialize(ColdArchiveSegment.decompress(record));
+        } catch (IOException ioException) {
+            throw new ColdArchiveAccessException(
+                    String.format(
+                            "Unable to read archived event <%s> from cold archive segment <%s>.",
+                            location.getId(), location.getSegment()),
+                    ioException);
+        }
+    }
+
+    /** Reads the segment once from start to end, skipping records of removed events. */
+    private List<ArchivedEventDto> readSegment(String segment, List<ColdArchivedEventEntity> locations) {
+        if (locations.isEmpty()) {
+            return List.of();
+        }
+        var entries = locations.stream()
+                .map(location -> new ColdArchiveSegment.Entry(
+                        location.getId(), location.getDataOffset(), location.getDataLength()))
+                .toList();
+        try {
+            var content = blobStore.get(segmentKey(segment))
+                    .orElseThrow(() -> new IOException(String.format("Segment <%s> is missing.", segment)));
+            try (var in = content.getInputStream()) {
+                var events = new ArrayList<ArchivedEventDto>(entries.size());
+                for (var record : ColdArchiveSegment.read(in, entries)) {
+                    events.add(deserialize(record));
+                }
+                return events;
+            }
+        } catch (IOException ioException) {
+            throw new ColdArchiveAccessException(
+                    String.format("Unable to read cold archive segment <%s>.", segment), ioException);
+        }
+    }
+
+    private ArchivedEventDto deserialize(byte[] record) throws IOException {
+        return objectMapper.readValue(record, ArchivedEventEntity.class).toDto();
+    }
+
+    private void deleteSegmentIfEmpty(String segment) {
+        if (!coldArchivedEventRepository.existsBySegment(segment)) {
+            deleteSegment(segment);
+        }
+    }
+
+    private void deleteSegment(String segment) {
+        try {
+            blobStore.delete(segmentKey(segment));
+        } catch (IOException ioException) {
+            // Nothing refers to it anymore, so it only takes space.
+            log.warn(String.format("%s Deleting segment <%s> failed: %s", LOG_PREFIX, segment, ioException));
+        }
+    }
+
+    private static String segmentKey(String segment) {
+        return String.format("%s/%s%s", BLOB_DIRECTORY, segment, SEGMENT_SUFFIX);
+    }
+}
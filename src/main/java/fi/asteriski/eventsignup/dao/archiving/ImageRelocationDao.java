@@ -0,0 +1,20 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationEntity;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+
+public interface ImageRelocationDao {
+    ImageRelocationEntity save(@NotNull ImageRelocationEntity relocation);
+
+    List<ImageRelocationEntity> saveAll(@NotNull List<ImageRelocationEntity> relocations);
+
+    List<ImageRelocationEntity> findDueAndLock(@NotNull Instant now, int batchSize);
+
+    int deleteDoneBefore(@NotNull Instant dateLimit);
+}
@@ -0,0 +1,42 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationEntity;
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationStatus;
+import fi.asteriski.eventsignup.repo.archiving.ImageRelocationRepository;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class ImageRelocationDaoImpl implements ImageRelocationDao {
+    @NonNull
+    private ImageRelocationRepository imageRelocationRepository;
+
+    @Override
+    public ImageRelocationEntity save(@NotNull final ImageRelocationEntity relocation) {
+        return imageRelocationRepository.save(relocation);
+    }
+
+    @Override
+    public List<ImageRelocationEntity> saveAll(@NotNull final List<ImageRelocationEntity> relocations) {
+        return imageRelocationRepository.saveAll(relocations);
+    }
+
+    @Override
+    public List<ImageRelocationEntity> findDueAndLock(@NotNull final Instant now, int batchSize) {
+        return imageRelocationRepository.findDueAndLockSkipLocked(now, batchSize);
+    }
+
+    @Override
+    public int deleteDoneBefore(@NotNull final Instant dateLimit) {
+        return imageRelocationRepository.deleteAllByStatusAndUpdatedAtBefore(ImageRelocationStatus.DONE, dateLimit);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.digest;
+
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntity;
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntry;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public interface OwnerDigestDao {
+    /**
+     * Adds the entries to the owner's checkpointed digest in a transaction of its own. The contact fields update the
+     * stored ones when given.
+     *
+     * @return False if the owner has no stored digest and no email was given, i.e. the entries can't be delivered.
+     */
+    boolean merge(
+            @NotNull String owner,
+            String email,
+            String locale,
+            String timeZone,
+            @NotNull Map<UUID, OwnerDigestEntry> entries,
+            @NotNull Instant now);
+
+    List<OwnerDigestEntity> findDueAndLock(@NotNull Instant dueBefore, int batchSize);
+
+    List<OwnerDigestEntity> saveAll(@NotNull List<OwnerDigestEntity> ownerDigests);
+}
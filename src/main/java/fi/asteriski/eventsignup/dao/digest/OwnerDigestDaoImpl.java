@@ -0,0 +1,77 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.digest;
+
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntity;
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntry;
+import fi.asteriski.eventsignup.repo.digest.OwnerDigestRepository;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+@RequiredArgsConstructor
+public class OwnerDigestDaoImpl implements OwnerDigestDao {
+    @NonNull
+    private OwnerDigestRepository ownerDigestRepository;
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean merge(
+            @NotNull final String owner,
+            final String email,
+            final String locale,
+            final String timeZone,
+            @NotNull final Map<UUID, OwnerDigestEntry> entries,
+            @NotNull final Instant now) {
+        var existing = ownerDigestRepository.findByOwnerAndLock(owner);
+        if (existing.isEmpty() && email == null) {
+            return false;
+        }
+        var digest = existing.orElseGet(() -> OwnerDigestEntity.builder()
+                .owner(owner)
+                .email(email)
+                .locale(locale)
+                .timeZone(timeZone)
+                .build());
+        if (email != null) {
+            digest.setEmail(email);
+            digest.setLocale(locale);
+            digest.setTimeZone(timeZone);
+        }
+        if (!entries.isEmpty() && digest.getWindowStartedAt() == null) {
+            digest.setWindowStartedAt(now);
+        }
+        // Copied so Hibernate sees the JSON column as changed.
+        var merged = digest.getEntries() != null
+                ? new HashMap<>(digest.getEntries())
+                : new HashMap<UUID, OwnerDigestEntry>();
+        entries.forEach((eventId, entry) -> merged.merge(eventId, entry, (old, added) -> {
+            old.merge(added);
+            return old;
+        }));
+        digest.setEntries(merged);
+        ownerDigestRepository.save(digest);
+        return true;
+    }
+
+    @Override
+    public List<OwnerDigestEntity> findDueAndLock(@NotNull final Instant dueBefore, int batchSize) {
+        return ownerDigestRepository.findDueAndLockSkipLocked(dueBefore, batchSize);
+    }
+
+    @Override
+    public List<OwnerDigestEntity> saveAll(@NotNull final List<OwnerDigestEntity> ownerDigests) {
+        return ownerDigestRepository.saveAll(ownerDigests);
+    }
+}
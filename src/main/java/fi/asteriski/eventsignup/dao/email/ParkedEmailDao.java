@@ -0,0 +1,38 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.email;
+
+import fi.asteriski.eventsignup.model.email.ParkedEmailEntity;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface ParkedEmailDao {
+    List<ParkedEmailEntity> saveAll(@NotNull List<ParkedEmailEntity> parkedEmails);
+
+    ParkedEmailEntity save(@NotNull ParkedEmailEntity parkedEmail);
+
+    /**
+     * Claims at most <code>batchSize</code> due parked emails in a transaction of its own by setting their lease, so
+     * other nodes skip them while they are being sent.
+     */
+    List<ParkedEmailEntity> claimDue(@NotNull Instant now, int batchSize, @NotNull Instant leaseUntil);
+
+    /** @return False if the lease had run out and another node claimed the email. */
+    boolean deleteClaimed(@NotNull ParkedEmailEntity parkedEmail, @NotNull Instant leaseUntil);
+
+    /**
+     * Saves the attempts and error of a claimed email and releases it.
+     *
+     * @return False if the lease had run out and another node claimed the email.
+     */
+    boolean saveFailedAttempt(@NotNull ParkedEmailEntity parkedEmail, @NotNull Instant leaseUntil);
+
+    /** Releases claimed emails that weren't tried, so they can be claimed again right away. */
+    int release(@NotNull List<UUID> parkedEmailIds, @NotNull Instant leaseUntil);
+
+    long count();
+}
@@ -0,0 +1,66 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.email;
+
+import fi.asteriski.eventsignup.model.email.ParkedEmailEntity;
+import fi.asteriski.eventsignup.repo.email.ParkedEmailRepository;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+@RequiredArgsConstructor
+public class ParkedEmailDaoImpl implements ParkedEmailDao {
+    @NonNull
+    private ParkedEmailRepository parkedEmailRepository;
+
+    @Override
+    public List<ParkedEmailEntity> saveAll(@NotNull final List<ParkedEmailEntity> parkedEmails) {
+        return parkedEmailRepository.saveAll(parkedEmails);
+    }
+
+    @Override
+    public ParkedEmailEntity save(@NotNull final ParkedEmailEntity parkedEmail) {
+        return parkedEmailRepository.save(parkedEmail);
+    }
+
+    @Override
+    @Transactional
+    public List<ParkedEmailEntity> claimDue(
+            @NotNull final Instant now, int batchSize, @NotNull final Instant leaseUntil) {
+        var parkedEmails = parkedEmailRepository.findDueAndLockSkipLocked(now, batchSize);
+        parkedEmails.forEach(parkedEmail -> parkedEmail.setNextAttemptAt(leaseUntil));
+        return parkedEmailRepository.saveAll(parkedEmails);
+    }
+
+    @Override
+    public boolean deleteClaimed(@NotNull final ParkedEmailEntity parkedEmail, @NotNull final Instant leaseUntil) {
+        return parkedEmailRepository.deleteByIdAndNextAttemptAt(parkedEmail.getId(), leaseUntil) > 0;
+    }
+
+    @Override
+    public boolean saveFailedAttempt(@NotNull final ParkedEmailEntity parkedEmail, @NotNull final Instant leaseUntil) {
+        return parkedEmailRepository.updateAttemptByIdAndNextAttemptAt(
+                        parkedEmail.getId(), leaseUntil, parkedEmail.getAttempts(), parkedEmail.getLastError())
+                > 0;
+    }
+
+    @Override
+    public int release(@NotNull final List<UUID> parkedEmailIds, @NotNull final Instant leaseUntil) {
+        return parkedEmailIds.isEmpty()
+                ? 0
+                : parkedEmailRepository.releaseByIdInAndNextAttemptAt(parkedEmailIds, leaseUntil);
+    }
+
+    @Override
+    public long count() {
+        return parkedEmailRepository.count();
+    }
+}
@@ -0,0 +1,23 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.event;
+
+import fi.asteriski.eventsignup.model.event.BannerImageUploadEntity;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface BannerImageUploadDao {
+    BannerImageUploadEntity save(@NotNull BannerImageUploadEntity upload);
+
+    Optional<BannerImageUploadEntity> findById(@NotNull UUID uploadId);
+
+    /** Marks uploads that are still pending or processing but haven't progressed since the date limit as failed. */
+    int failUnfinishedNotUpdatedSince(@NotNull Instant dateLimit, @NotNull String failureReason);
+
+    /** Deletes ready and failed uploads last updated before the date limit. */
+    int deleteFinishedBefore(@NotNull Instant dateLimit);
+}
@@ -0,0 +1,50 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.event;
+
+import fi.asteriski.eventsignup.model.event.BannerImageUploadEntity;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatus;
+import fi.asteriski.eventsignup.repo.event.BannerImageUploadRepository;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class BannerImageUploadDaoImpl implements BannerImageUploadDao {
+    @NonNull
+    private BannerImageUploadRepository bannerImageUploadRepository;
+
+    @Override
+    public BannerImageUploadEntity save(@NotNull final BannerImageUploadEntity upload) {
+        return bannerImageUploadRepository.save(upload);
+    }
+
+    @Override
+    public Optional<BannerImageUploadEntity> findById(@NotNull final UUID uploadId) {
+        return bannerImageUploadRepository.findById(uploadId);
+    }
+
+    @Override
+    public int failUnfinishedNotUpdatedSince(@NotNull final Instant dateLimit, @NotNull final String failureReason) {
+        return bannerImageUploadRepository.updateStatusByStatusInAndUpdatedAtBefore(
+                List.of(BannerImageUploadStatus.PENDING, BannerImageUploadStatus.PROCESSING),
+                dateLimit,
+                BannerImageUploadStatus.FAILED,
+                failureReason,
+                Instant.now());
+    }
+
+    @Override
+    public int deleteFinishedBefore(@NotNull final Instant dateLimit) {
+        return bannerImageUploadRepository.deleteAllByStatusInAndUpdatedAtBefore(
+                List.of(BannerImageUploadStatus.READY, BannerImageUploadStatus.FAILED), dateLimit);
+    }
+}
@@ -5,11 +5,13 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 
 package fi.asteriski.eventsignup.dao.event;
 
+import fi.asteriski.eventsignup.model.event.EventDates;
 import fi.asteriski.eventsignup.model.event.EventDto;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface EventDao {
     Optional<EventDto> findById(UUID id);
@@ -29,4 +31,15 @@ public interface EventDao {
     List<EventDto> findAllByStartDateIsBetween(Instant date1, Instant date2);
 
     List<EventDto> findAll();
+
+    List<EventDates> findAllEventDates();
+
+    List<EventDates> findAllEventDatesUpdatedSince(Instant since);
+
+    Optional<EventDto> findByIdAndLock(UUID eventId);
+
+    long countByBannerImg(String bannerImg);
+
+    /** Streams the banner images of all events from the database. */
+    void forEachBannerImg(Consumer<String> consumer);
 }
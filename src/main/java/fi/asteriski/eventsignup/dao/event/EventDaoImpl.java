@@ -5,16 +5,21 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 
 package fi.asteriski.eventsignup.dao.event;
 
+import fi.asteriski.eventsignup.model.event.EventDates;
 import fi.asteriski.eventsignup.model.event.EventDto;
 import fi.asteriski.eventsignup.model.event.EventEntity;
 import fi.asteriski.eventsignup.repo.event.EventRepository;
+import fi.asteriski.eventsignup.utils.Constants;
+import fi.asteriski.eventsignup.utils.Utils;
 import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 @Component
 @AllArgsConstructor
@@ -58,7 +63,10 @@ public class EventDaoImpl implements EventDao {
 
     @Override
     public void deleteAllByIds(@NotNull final List<UUID> eventIds) {
-        eventRepository.deleteAllById(eventIds);
+        // Chunks run in the caller's transaction. Chunking only bounds the size of a single IN-list.
+        for (var chunk : Utils.partition(eventIds, Constants.BULK_DELETE_BATCH_SIZE)) {
+            eventRepository.deleteAllByIdIn(chunk);
+        }
     }
 
     @Override
@@ -72,4 +80,32 @@ public class EventDaoImpl implements EventDao {
     public List<EventDto> findAll() {
         return eventRepository.findAll().stream().map(EventEntity::toDto).toList();
     }
+
+    @Override
+    public List<EventDates> findAllEventDates() {
+        return eventRepository.findAllEventDates();
+    }
+
+    @Override
+    public List<EventDates> findAllEventDatesUpdatedSince(@NotNull final Instant since) {
+        return eventRepository.findAllEventDatesUpdatedSince(since);
+    }
+
+    @Override
+    public Optional<EventDto> findByIdAndLock(@NotNull final UUID eventId) {
+        return eventRepository.findByIdAndLockSkipLocked(eventId).map(EventEntity::toDto);
+    }
+
+    @Override
+    public long countByBannerImg(@NotNull final String bannerImg) {
+        return eventRepository.countByBannerImg(bannerImg);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachBannerImg(@NotNull final Consumer<String> consumer) {
+        try (var bannerImgs = eventRepository.streamAllBannerImgs()) {
+            bannerImgs.forEach(consumer);
+        }
+    }
 }
@@ -0,0 +1,12 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.jobs;
+
+import fi.asteriski.eventsignup.model.jobs.JobRunEntity;
+import jakarta.validation.constraints.NotNull;
+
+public interface JobRunDao {
+    JobRunEntity save(@NotNull JobRunEntity jobRun);
+}
@@ -0,0 +1,24 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.jobs;
+
+import fi.asteriski.eventsignup.model.jobs.JobRunEntity;
+import fi.asteriski.eventsignup.repo.jobs.JobRunRepository;
+import jakarta.validation.constraints.NotNull;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class JobRunDaoImpl implements JobRunDao {
+    @NonNull
+    private JobRunRepository jobRunRepository;
+
+    @Override
+    public JobRunEntity save(@NotNull final JobRunEntity jobRun) {
+        return jobRunRepository.save(jobRun);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.outbox;
+
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface OutboxMessageDao {
+    OutboxMessageEntity save(@NotNull OutboxMessageEntity outboxMessage);
+
+    List<OutboxMessageEntity> saveAll(@NotNull List<OutboxMessageEntity> outboxMessages);
+
+    /**
+     * Marks at most <code>batchSize</code> due messages {@link
+     * fi.asteriski.eventsignup.model.outbox.OutboxStatus#IN_FLIGHT} with a lease until <code>leaseUntil</code> and
+     * commits, so no lock is held while they are delivered.
+     */
+    List<OutboxMessageEntity> claimDue(@NotNull Instant now, int batchSize, @NotNull Instant leaseUntil);
+
+    /**
+     * Saves the status, attempts, next attempt, sent time and error of a claimed message.
+     *
+     * @return False if the message was no longer in flight, i.e. its lease ran out and it was claimed again.
+     */
+    boolean saveDeliveryResult(@NotNull OutboxMessageEntity outboxMessage);
+
+    /** Extends the leases of the messages still in flight. */
+    int extendLeases(@NotNull List<UUID> outboxMessageIds, @NotNull Instant leaseUntil);
+
+    List<OutboxMessageEntity> findUnsentSignupNotificationsAndLock(@NotNull UUID eventId, @NotNull UUID participantId);
+
+    int deleteSentBefore(@NotNull Instant dateLimit);
+
+    int deleteCoalescedBefore(@NotNull Instant dateLimit);
+}
@@ -0,0 +1,81 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.outbox;
+
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
+import fi.asteriski.eventsignup.repo.outbox.OutboxMessageRepository;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+@RequiredArgsConstructor
+public class OutboxMessageDaoImpl implements OutboxMessageDao {
+    @NonNull
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Override
+    public OutboxMessageEntity save(@NotNull final OutboxMessageEntity outboxMessage) {
+        return outboxMessageRepository.save(outboxMessage);
+    }
+
+    @Override
+    public List<OutboxMessageEntity> saveAll(@NotNull final List<OutboxMessageEntity> outboxMessages) {
+        return outboxMessageRepository.saveAll(outboxMessages);
+    }
+
+    @Override
+    @Transactional
+    public List<OutboxMessageEntity> claimDue(
+            @NotNull final Instant now, int batchSize, @NotNull final Instant leaseUntil) {
+        var messages = outboxMessageRepository.findDueAndLockSkipLocked(now, batchSize);
+        for (var message : messages) {
+            message.setStatus(OutboxStatus.IN_FLIGHT);
+            message.setNextAttemptAt(leaseUntil);
+        }
+        return outboxMessageRepository.saveAll(messages);
+    }
+
+    @Override
+    public boolean saveDeliveryResult(@NotNull final OutboxMessageEntity outboxMessage) {
+        return outboxMessageRepository.updateDeliveryResultByIdAndStatus(
+                        outboxMessage.getId(),
+                        OutboxStatus.IN_FLIGHT,
+                        outboxMessage.getStatus(),
+                        outboxMessage.getAttempts(),
+                        outboxMessage.getNextAttemptAt(),
+                        outboxMessage.getSentAt(),
+                        outboxMessage.getLastError())
+                > 0;
+    }
+
+    @Override
+    public int extendLeases(@NotNull final List<UUID> outboxMessageIds, @NotNull final Instant leaseUntil) {
+        return outboxMessageRepository.updateNextAttemptAtByIdInAndStatus(
+                outboxMessageIds, OutboxStatus.IN_FLIGHT, leaseUntil);
+    }
+
+    @Override
+    public List<OutboxMessageEntity> findUnsentSignupNotificationsAndLock(
+            @NotNull final UUID eventId, @NotNull final UUID participantId) {
+        return outboxMessageRepository.findUnsentSignupNotificationsAndLockSkipLocked(eventId, participantId);
+    }
+
+    @Override
+    public int deleteSentBefore(@NotNull final Instant dateLimit) {
+        return outboxMessageRepository.deleteAllByStatusAndSentAtBefore(OutboxStatus.SENT, dateLimit);
+    }
+
+    @Override
+    public int deleteCoalescedBefore(@NotNull final Instant dateLimit) {
+        return outboxMessageRepository.deleteAllByStatusAndCreatedAtBefore(OutboxStatus.COALESCED, dateLimit);
+    }
+}
@@ -0,0 +1,16 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.reminder;
+
+import fi.asteriski.eventsignup.model.reminder.ReminderRunEntity;
+import jakarta.validation.constraints.NotNull;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface ReminderRunDao {
+    Optional<ReminderRunEntity> findByEventId(@NotNull UUID eventId);
+
+    ReminderRunEntity save(@NotNull ReminderRunEntity reminderRun);
+}
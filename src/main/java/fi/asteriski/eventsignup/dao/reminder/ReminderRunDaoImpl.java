@@ -0,0 +1,31 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.reminder;
+
+import fi.asteriski.eventsignup.model.reminder.ReminderRunEntity;
+import fi.asteriski.eventsignup.repo.reminder.ReminderRunRepository;
+import jakarta.validation.constraints.NotNull;
+import java.util.Optional;
+import java.util.UUID;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class ReminderRunDaoImpl implements ReminderRunDao {
+    @NonNull
+    private ReminderRunRepository reminderRunRepository;
+
+    @Override
+    public Optional<ReminderRunEntity> findByEventId(@NotNull final UUID eventId) {
+        return reminderRunRepository.findByEventId(eventId);
+    }
+
+    @Override
+    public ReminderRunEntity save(@NotNull final ReminderRunEntity reminderRun) {
+        return reminderRunRepository.save(reminderRun);
+    }
+}
@@ -6,6 +6,7 @@ package fi.asteriski.eventsignup.dao.signup;
 
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -17,6 +18,12 @@ public interface ParticipantDao {
 
     List<ParticipantDto> findAllByEvent(@NotNull UUID eventId);
 
+    /**
+     * Returns the event's participants in (createdAt, id) order, starting after the given participant. When
+     * <code>afterCreatedAt</code> and <code>afterId</code> are null, starts from the first participant.
+     */
+    List<ParticipantDto> findPageByEvent(@NotNull UUID eventId, Instant afterCreatedAt, UUID afterId, int pageSize);
+
     void deleteAllByEvent(@NotNull UUID eventId);
 
     ParticipantDto save(@NotNull ParticipantDto participantDto);
@@ -7,12 +7,16 @@ package fi.asteriski.eventsignup.dao.signup;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import fi.asteriski.eventsignup.model.signup.ParticipantEntity;
 import fi.asteriski.eventsignup.repo.signup.ParticipantRepository;
+import fi.asteriski.eventsignup.utils.Constants;
+import fi.asteriski.eventsignup.utils.Utils;
 import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -28,7 +32,10 @@ public class ParticipantDaoImpl implements ParticipantDao {
 
     @Override
     public void deleteAllByEventIds(@NotNull final List<UUID> eventIds) {
-        participantRepository.deleteAllByEventIn(eventIds);
+        // Chunks run in the caller's transaction. Chunking only bounds the size of a single IN-list.
+        for (var chunk : Utils.partition(eventIds, Constants.BULK_DELETE_BATCH_SIZE)) {
+            participantRepository.deleteAllByEventIn(chunk);
+        }
     }
 
     @Override
@@ -38,6 +45,15 @@ public class ParticipantDaoImpl implements ParticipantDao {
                 .toList();
     }
 
+    @Override
+    public List<ParticipantDto> findPageByEvent(
+            @NotNull final UUID eventId, final Instant afterCreatedAt, final UUID afterId, int pageSize) {
+        var page = afterCreatedAt == null || afterId == null
+                ? participantRepository.findAllByEventOrderByCreatedAtAscIdAsc(eventId, Limit.of(pageSize))
+                : participantRepository.findAllByEventAfter(eventId, afterCreatedAt, afterId, Limit.of(pageSize));
+        return page.stream().map(ParticipantEntity::toDto).toList();
+    }
+
     @Override
     public void deleteAllByEvent(@NotNull final UUID eventId) {
         participantRepository.deleteAllByEvent(eventId);
@@ -0,0 +1,177 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A template parsed for one locale. Parsing resolves every message lookup, so rendering only appends literals and
+ * variable values. Syntax:
+ *
+ * <ul>
+ *   <li><code>{{name}}</code>: value of variable <code>name</code>, escaped in HTML templates.
+ *   <li><code>{{date:name}}</code>: date variable formatted with the locale's formatter.
+ *   <li><code>{{msg:key}}</code>: message <code>key</code> in the template's locale.
+ *   <li><code>{{msg:key(name, ...)}}</code>: message whose <code>%s</code> placeholders are filled with variables.
+ * </ul>
+ */
+public final class CompiledTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    private static final String MESSAGE_PREFIX = "msg:";
+    private static final String DATE_PREFIX = "date:";
+    private static final String MESSAGE_PLACEHOLDER = "%s";
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    private sealed interface Segment permits Literal, Variable, DateVariable {}
+
+    private record Literal(String text) implements Segment {}
+
+    private record Variable(String name) implements Segment {}
+
+    private record DateVariable(String name) implements Segment {}
+
+    private final Segment[] segments;
+    private final boolean html;
+    private final DateTimeFormatter dateFormatter;
+
+    private CompiledTemplate(List<Segment> segments, boolean html, DateTimeFormatter dateFormatter) {
+        this.segments = segments.toArray(Segment[]::new);
+        this.html = html;
+        this.dateFormatter = dateFormatter;
+    }
+
+    /**
+     * @param source Template text.
+     * @param html Whether variable values are HTML escaped.
+     * @param messageResolver Resolves message keys. Called only here, never when rendering.
+     * @param dateFormatter Formatter for <code>{{date:...}}</code> variables.
+     */
+    static CompiledTemplate compile(
+            String source, boolean html, Function<String, String> messageResolver, DateTimeFormatter dateFormatter) {
+        var segments = new ArrayList<Segment>();
+        var literal = new StringBuilder();
+        var position = 0;
+        while (position < source.length()) {
+            var start = source.indexOf(OPEN, position);
+            if (start < 0) {
+                literal.append(source, position, source.length());
+                break;
+            }
+            var end = source.indexOf(CLOSE, start + OPEN.length());
+            if (end < 0) {
+                throw new IllegalArgumentException(String.format("Unclosed %s at index %s.", OPEN, start));
+            }
+            literal.append(source, position, start);
+            var expression = source.substring(start + OPEN.length(), end).strip();
+            if (expression.startsWith(MESSAGE_PREFIX)) {
+                compileMessage(expression.substring(MESSAGE_PREFIX.length()), messageResolver, segments, literal);
+            } else if (expression.startsWith(DATE_PREFIX)) {
+                flushLiteral(segments, literal);
+                segments.add(new DateVariable(expression.substring(DATE_PREFIX.length()).strip()));
+            } else {
+                flushLiteral(segments, literal);
+                segments.add(new Variable(expression));
+            }
+            position = end + CLOSE.length();
+        }
+        flushLiteral(segments, literal);
+        return new CompiledTemplate(segments, html, dateFormatter);
+    }
+
+    /**
+     * Renders the template. Missing variables render as empty.
+     */
+    public String render(Map<String, ?> variables) {
+        var buffer = BUFFER.get();
+        buffer.setLength(0);
+        for (var segment : segments) {
+            switch (segment) {
+                case Literal literal -> buffer.append(literal.text());
+                case Variable variable -> appendValue(buffer, variables.get(variable.name()));
+                case DateVariable dateVariable -> {
+                    var value = variables.get(dateVariable.name());
+                    if (value instanceof TemporalAccessor temporal) {
+                        appendValue(buffer, dateFormatter.format(temporal));
+                    } else {
+                        appendValue(buffer, value);
+                    }
+                }
+            }
+        }
+        var result = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    private void appendValue(StringBuilder buffer, Object value) {
+        if (value == null) {
+            return;
+        }
+        var text = value.toString();
+        if (html) {
+            escapeHtml(buffer, text);
+        } else {
+            buffer.append(text);
+        }
+    }
+
+    private static void compileMessage(
+            String expression,
+            Function<String, String> messageResolver,
+            List<Segment> segments,
+            StringBuilder literal) {
+        var argumentsStart = expression.indexOf('(');
+        var key = (argumentsStart < 0 ? expression : expression.substring(0, argumentsStart)).strip();
+        var message = messageResolver.apply(key);
+        if (argumentsStart < 0) {
+            literal.append(message);
+            return;
+        }
+        var argumentsEnd = expression.lastIndexOf(')');
+        if (argumentsEnd < argumentsStart) {
+            throw new IllegalArgumentException(String.format("Unclosed argument list in {{msg:%s}}.", expression));
+        }
+        var arguments = expression.substring(argumentsStart + 1, argumentsEnd).split(",");
+        var parts = message.split(MESSAGE_PLACEHOLDER, -1);
+        for (int i = 0; i < parts.length; i++) {
+            literal.append(parts[i]);
+            if (i < parts.length - 1 && i < arguments.length) {
+                flushLiteral(segments, literal);
+                segments.add(new Variable(arguments[i].strip()));
+            }
+        }
+    }
+
+    private static void flushLiteral(List<Segment> segments, StringBuilder literal) {
+        if (!literal.isEmpty()) {
+            segments.add(new Literal(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    private static void escapeHtml(StringBuilder buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            switch (c) {
+                case '&' -> buffer.append("&amp;");
+                case '<' -> buffer.append("&lt;");
+                case '>' -> buffer.append("&gt;");
+                case '"' -> buffer.append("&quot;");
+                case '\'' -> buffer.append("&#39;");
+                default -> buffer.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import fi.asteriski.eventsignup.dao.email.ParkedEmailDao;
+import fi.asteriski.eventsignup.exception.EmailQueueFullException;
+import fi.asteriski.eventsignup.model.email.ParkedEmailEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delivers emails from bounded queues with a fixed number of worker threads. Each worker drains whatever is queued
+ * (up to the batch size) and hands it to {@link JavaMailSender#send(MimeMessage...)}, which sends the whole batch over
+ * a single SMTP connection. When a queue is full, {@link #submit(MimeMessage, EmailLane)} blocks for a while and then
+ * rejects the message, so a burst slows down the callers instead of growing the queue without limit.
+ *
+ * <p>Each {@link EmailLane} has its own queue and its own workers, i.e. its own share of the SMTP connections. Bulk
+ * workers take transactional emails first whenever there are any, so a large bulk run never delays transactional
+ * emails, while bulk emails can't use the connections reserved for transactional ones.
+ *
+ * <p>Sends go through {@link SmtpCircuitBreaker}. While the SMTP server is unreachable, batches are parked in the
+ * database instead of each worker waiting for connection timeouts.
+ */
+@Log4j2
+@Component
+public class EmailDeliveryEngine {
+
+    private static final String LOG_PREFIX = "[EmailDeliveryEngine]";
+    private static final long POLL_TIMEOUT_MILLIS = 250;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    private record PendingEmail(MimeMessage message, CompletableFuture<Void> result, long enqueuedAt) {}
+
+    private record Lane(
+            EmailLane name,
+            BlockingQueue<PendingEmail> queue,
+            int workerCount,
+            Timer queueWaitTimer,
+            Counter rejectedCounter) {}
+
+    private final JavaMailSender javaMailSender;
+    private final SmtpCircuitBreaker smtpCircuitBreaker;
+    private final ParkedEmailDao parkedEmailDao;
+    private final Map<EmailLane, Lane> lanes = new EnumMap<>(EmailLane.class);
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final Timer sendTimer;
+    private final Counter sentCounter;
+    private final Counter parkedCounter;
+    private final Counter authenticationFailureCounter;
+    private final Counter sendFailureCounter;
+    private final Counter otherFailureCounter;
+
+    public EmailDeliveryEngine(
+            JavaMailSender javaMailSender,
+            SmtpCircuitBreaker smtpCircuitBreaker,
+            ParkedEmailDao parkedEmailDao,
+            MeterRegistry meterRegistry,
+            @Value("${fi.asteriski.config.email.delivery.transactional.queue-capacity:1000}")
+                    int transactionalQueueCapacity,
+            @Value("${fi.asteriski.config.email.delivery.transactional.workers:1}") int transactionalWorkerCount,
+            @Value("${fi.asteriski.config.email.delivery.bulk.queue-capacity:1000}") int bulkQueueCapacity,
+            @Value("${fi.asteriski.config.email.delivery.bulk.workers:1}") int bulkWorkerCount,
+            @Value("${fi.asteriski.config.email.delivery.batch-size:20}") int batchSize,
+            @Value("${fi.asteriski.config.email.delivery.offer-timeout-millis:5000}") long offerTimeoutMillis) {
+        this.javaMailSender = javaMailSender;
+        this.smtpCircuitBreaker = smtpCircuitBreaker;
+        this.parkedEmailDao = parkedEmailDao;
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        addLane(meterRegistry, EmailLane.TRANSACTIONAL, transactionalQueueCapacity, transactionalWorkerCount);
+        addLane(meterRegistry, EmailLane.BULK, bulkQueueCapacity, bulkWorkerCount);
+
+        sendTimer = Timer.builder("email.delivery.send")
+                .description("Time to send one batch of emails.")
+                .register(meterRegistry);
+        sentCounter = Counter.builder("email.delivery.sent").register(meterRegistry);
+        parkedCounter = Counter.builder("email.delivery.parked")
+                .description("Emails parked for a later retry because the SMTP server was unreachable.")
+                .register(meterRegistry);
+        authenticationFailureCounter = failureCounter(meterRegistry, "authentication");
+        sendFailureCounter = failureCounter(meterRegistry, "send");
+        otherFailureCounter = failureCounter(meterRegistry, "other");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        var transactional = lanes.get(EmailLane.TRANSACTIONAL);
+        var bulk = lanes.get(EmailLane.BULK);
+        for (int i = 0; i < transactional.workerCount(); i++) {
+            startWorker("email-delivery-transactional-" + i, () -> work(transactional, null));
+        }
+        for (int i = 0; i < bulk.workerCount(); i++) {
+            startWorker("email-delivery-bulk-" + i, () -> work(bulk, transactional));
+        }
+    }
+
+    /**
+     * Queues an email for delivery.
+     *
+     * @return Future completed when the email has been handed over to the SMTP server or, if the server is
+     *     unreachable, parked for a later retry. Completed exceptionally with the reason if neither was possible.
+     * @throws EmailQueueFullException When the lane's queue stays full longer than the configured offer timeout.
+     */
+    public CompletableFuture<Void> submit(MimeMessage message, EmailLane emailLane) {
+        var lane = lanes.get(emailLane);
+        var pendingEmail = new PendingEmail(message, new CompletableFuture<>(), System.nanoTime());
+        boolean accepted;
+        try {
+            accepted = running && lane.queue().offer(pendingEmail, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            lane.rejectedCounter().increment();
+            throw new EmailQueueFullException(String.format(
+                    "Email queue of lane %s is full (%s queued). Email was not sent.",
+                    emailLane, lane.queue().size()));
+        }
+        return pendingEmail.result();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        var deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        for (var worker : workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            worker.interrupt();
+        }
+        for (var lane : lanes.values()) {
+            if (!lane.queue().isEmpty()) {
+                log.warn(String.format(
+                        "%s Shut down with %s emails still queued in lane %s.",
+                        LOG_PREFIX, lane.queue().size(), lane.name()));
+            }
+        }
+    }
+
+    private void addLane(MeterRegistry meterRegistry, EmailLane emailLane, int queueCapacity, int workerCount) {
+        var queue = new ArrayBlockingQueue<PendingEmail>(queueCapacity);
+        var tag = emailLane.name().toLowerCase(Locale.ROOT);
+        Gauge.builder("email.delivery.queue.size", queue, BlockingQueue::size)
+                .description("Emails waiting to be sent.")
+                .tag("lane", tag)
+                .register(meterRegistry);
+        Gauge.builder("email.delivery.queue.capacity", queue, q -> q.size() + q.remainingCapacity())
+                .tag("lane", tag)
+                .register(meterRegistry);
+        var queueWaitTimer = Timer.builder("email.delivery.queue.wait")
+                .description("Time an email waited in the queue before it was sent.")
+                .tag("lane", tag)
+                .register(meterRegistry);
+        var rejectedCounter = Counter.builder("email.delivery.rejected")
+                .description("Emails rejected because the queue was full.")
+                .tag("lane", tag)
+                .register(meterRegistry);
+        lanes.put(emailLane, new Lane(emailLane, queue, workerCount, queueWaitTimer, rejectedCounter));
+    }
+
+    private void startWorker(String name, Runnable task) {
+        workers.add(Thread.ofPlatform().name(name).daemon(true).start(task));
+    }
+
+    /*
+    A worker serves its own lane. When priorityLane is given, it is checked first on every round, and the own lane is
+    only polled when the priority lane is empty. A batch always comes from a single lane.
+     */
+    private void work(Lane ownLane, Lane priorityLane) {
+        var batch = new ArrayList<PendingEmail>(batchSize);
+        // Workers keep going after stop() until their queues are empty (or they get interrupted).
+        while (running || hasQueued(ownLane, priorityLane)) {
+            try {
+                var lane = ownLane;
+                PendingEmail first = null;
+                if (priorityLane != null) {
+                    first = priorityLane.queue().poll();
+                    lane = first != null ? priorityLane : ownLane;
+                }
+                if (first == null) {
+                    first = ownLane.queue().poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                lane.queue().drainTo(batch, batchSize - 1);
+                send(lane, batch);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException runtimeException) {
+                log.error(String.format("%s Unexpected error while sending emails: %s", LOG_PREFIX, runtimeException));
+                batch.forEach(pendingEmail -> pendingEmail.result().completeExceptionally(runtimeException));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private static boolean hasQueued(Lane ownLane, Lane priorityLane) {
+        return !ownLane.queue().isEmpty() || (priorityLane != null && !priorityLane.queue().isEmpty());
+    }
+
+    private void send(Lane lane, List<PendingEmail> batch) {
+        var now = System.nanoTime();
+        batch.forEach(pendingEmail ->
+                lane.queueWaitTimer().record(now - pendingEmail.enqueuedAt(), TimeUnit.NANOSECONDS));
+        if (!smtpCircuitBreaker.allowRequest()) {
+            park(lane, batch, "SMTP circuit open.");
+            return;
+        }
+        var messages = batch.stream().map(PendingEmail::message).toArray(MimeMessage[]::new);
+        var serverReached = true;
+        var sample = Timer.start();
+        try {
+            javaMailSender.send(messages);
+            batch.forEach(pendingEmail -> pendingEmail.result().complete(null));
+            sentCounter.increment(batch.size());
+        } catch (MailAuthenticationException mailAuthenticationException) {
+            log.error(String.format(
+                    "%s Error authenticating to smtp server. Error was: %s.", LOG_PREFIX, mailAuthenticationException));
+            failAll(batch, mailAuthenticationException, authenticationFailureCounter);
+        } catch (MailSendException mailSendException) {
+            // Only the failed messages of the batch are in the exception. The rest were sent.
+            var failedMessages = mailSendException.getFailedMessages();
+            if (failedMessages.isEmpty()) {
+                if (SmtpCircuitBreaker.isConnectivityFailure(mailSendException)) {
+                    serverReached = false;
+                    park(lane, batch, String.valueOf(mailSendException));
+                } else {
+                    failAll(batch, mailSendException, sendFailureCounter);
+                }
+                return;
+            }
+            var unreachable = new ArrayList<PendingEmail>();
+            for (var pendingEmail : batch) {
+                var failure = failedMessages.get(pendingEmail.message());
+                if (failure == null) {
+                    pendingEmail.result().complete(null);
+                    sentCounter.increment();
+                } else if (SmtpCircuitBreaker.isConnectivityFailure(failure)) {
+                    unreachable.add(pendingEmail);
+                } else {
+                    pendingEmail.result().completeExceptionally(failure);
+                    sendFailureCounter.increment();
+                }
+            }
+            if (!unreachable.isEmpty()) {
+                serverReached = false;
+                park(lane, unreachable, String.valueOf(mailSendException));
+            }
+            log.error(String.format(
+                    "%s Sending %s of %s emails failed. Error was: %s.",
+                    LOG_PREFIX, failedMessages.size(), batch.size(), mailSendException));
+        } catch (MailException mailException) {
+            log.error(String.format("%s Error with email. Error was: %s", LOG_PREFIX, mailException));
+            failAll(batch, mailException, otherFailureCounter);
+        } finally {
+            sample.stop(sendTimer);
+            if (serverReached) {
+                smtpCircuitBreaker.recordSuccess();
+            } else {
+                smtpCircuitBreaker.recordFailure();
+            }
+        }
+    }
+
+    /*
+    Saves the emails to be sent later by ParkedEmailService. A parked email counts as delivered: its future completes
+    normally, since the email is now stored durably and will be sent once the SMTP server is back.
+     */
+    private void park(Lane lane, List<PendingEmail> emails, String reason) {
+        try {
+            var parkedAt = Instant.now();
+            var parkedEmails = new ArrayList<ParkedEmailEntity>(emails.size());
+            for (var pendingEmail : emails) {
+                var content = new ByteArrayOutputStream();
+                pendingEmail.message().writeTo(content);
+                parkedEmails.add(ParkedEmailEntity.builder()
+                        .lane(lane.name())
+                        .content(content.toByteArray())
+                        .parkedAt(parkedAt)
+                        .lastError(reason)
+                        .build());
+            }
+            parkedEmailDao.saveAll(parkedEmails);
+            emails.forEach(pendingEmail -> pendingEmail.result().complete(null));
+            parkedCounter.increment(emails.size());
+            log.warn(String.format("%s Parked %s emails. Reason: %s", LOG_PREFIX, emails.size(), reason));
+        } catch (IOException | MessagingException | RuntimeException exception) {
+            log.error(String.format("%s Parking %s emails failed: %s", LOG_PREFIX, emails.size(), exception));
+            failAll(emails, exception, otherFailureCounter);
+        }
+    }
+
+    private static void failAll(List<PendingEmail> batch, Exception exception, Counter counter) {
+        batch.forEach(pendingEmail -> pendingEmail.result().completeExceptionally(exception));
+        counter.increment(batch.size());
+    }
+
+    private static Counter failureCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("email.delivery.failed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,13 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+/** Priority lane of an email in {@link EmailDeliveryEngine}. */
+public enum EmailLane {
+    /** Direct responses to a user's action, e.g. signup confirmations. Always sent before bulk emails. */
+    TRANSACTIONAL,
+    /** Emails sent to many recipients at once, e.g. reminders. */
+    BULK
+}
@@ -0,0 +1,118 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import fi.asteriski.eventsignup.exception.EmailTemplateNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+/**
+ * Renders emails from templates in <code>fi.asteriski.config.email.template-location</code>. An email template
+ * <code>name</code> consists of <code>name.subject.txt</code> and <code>name.html</code> (see {@link CompiledTemplate}
+ * for the syntax). A fragment <code>name.txt</code> is a plain text template for parts repeated within an email.
+ * Templates are compiled once per locale on first use and cached. Pointing the location to a <code>file:</code>
+ * directory allows editing and adding templates without a new build.
+ */
+@Log4j2
+@Component
+public class EmailTemplateEngine {
+
+    private static final String LOG_PREFIX = "[EmailTemplateEngine]";
+    private static final String SUBJECT_SUFFIX = ".subject.txt";
+    private static final String BODY_SUFFIX = ".html";
+    private static final String FRAGMENT_SUFFIX = ".txt";
+
+    public record RenderedEmail(String subject, String body) {}
+
+    private record TemplateKey(String name, Locale locale) {}
+
+    private record EmailTemplate(CompiledTemplate subject, CompiledTemplate body) {}
+
+    private final MessageSource messageSource;
+    private final ResourceLoader resourceLoader;
+    private final String templateLocation;
+    private final Map<TemplateKey, EmailTemplate> templates = new ConcurrentHashMap<>();
+    private final Map<TemplateKey, CompiledTemplate> fragments = new ConcurrentHashMap<>();
+    private final Map<Locale, DateTimeFormatter> dateFormatters = new ConcurrentHashMap<>();
+
+    public EmailTemplateEngine(
+            MessageSource messageSource,
+            ResourceLoader resourceLoader,
+            @Value("${fi.asteriski.config.email.template-location:classpath:templates/email/}")
+                    String templateLocation) {
+        this.messageSource = messageSource;
+        this.resourceLoader = resourceLoader;
+        this.templateLocation = templateLocation.endsWith("/") ? templateLocation : templateLocation + "/";
+    }
+
+    public RenderedEmail render(String templateName, Locale locale, Map<String, ?> variables) {
+        var template = templates.computeIfAbsent(new TemplateKey(templateName, locale), this::compile);
+        return new RenderedEmail(template.subject().render(variables), template.body().render(variables));
+    }
+
+    /** Renders the plain text (i.e. not HTML escaped) fragment <code>name.txt</code>. */
+    public String renderFragment(String fragmentName, Locale locale, Map<String, ?> variables) {
+        return fragments
+                .computeIfAbsent(new TemplateKey(fragmentName, locale), this::compileFragment)
+                .render(variables);
+    }
+
+    /** Drops compiled templates so edited template files are picked up. */
+    public void clearCache() {
+        templates.clear();
+        fragments.clear();
+    }
+
+    private CompiledTemplate compileFragment(TemplateKey key) {
+        return CompiledTemplate.compile(
+                load(key.name() + FRAGMENT_SUFFIX),
+                false,
+                messageKey -> messageSource.getMessage(messageKey, null, key.locale()),
+                dateFormatter(key.locale()));
+    }
+
+    private DateTimeFormatter dateFormatter(Locale locale) {
+        return dateFormatters.computeIfAbsent(
+                locale,
+                l -> DateTimeFormatter.ofLocalizedDateTime(FormatStyle.LONG, FormatStyle.SHORT)
+                        .withLocale(l));
+    }
+
+    private EmailTemplate compile(TemplateKey key) {
+        var dateFormatter = dateFormatter(key.locale());
+        log.debug(String.format("%s Compiling template %s for locale %s.", LOG_PREFIX, key.name(), key.locale()));
+        return new EmailTemplate(
+                CompiledTemplate.compile(
+                        load(key.name() + SUBJECT_SUFFIX),
+                        false,
+                        messageKey -> messageSource.getMessage(messageKey, null, key.locale()),
+                        dateFormatter),
+                CompiledTemplate.compile(
+                        load(key.name() + BODY_SUFFIX),
+                        true,
+                        messageKey -> messageSource.getMessage(messageKey, null, key.locale()),
+                        dateFormatter));
+    }
+
+    private String load(String fileName) {
+        var resource = resourceLoader.getResource(templateLocation + fileName);
+        try (var in = resource.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).strip();
+        } catch (IOException ioException) {
+            throw new EmailTemplateNotFoundException(
+                    String.format("Email template <%s%s> was not found.", templateLocation, fileName), ioException);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.MessagingException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Circuit breaker around the SMTP server. After <code>failure-threshold</code> consecutive failures to reach the
+ * server the circuit opens, and senders park their emails instead of waiting for connection timeouts. Once the circuit
+ * has been open for <code>open-duration-millis</code>, a probe tests the connection. If the server answers, the circuit
+ * goes half-open and lets a single send through: success closes the circuit, failure opens it again.
+ *
+ * <p>Only failures to reach the server count. An email rejected by the server means the server is up.
+ */
+@Log4j2
+@Component
+public class SmtpCircuitBreaker {
+
+    private static final String LOG_PREFIX = "[SmtpCircuitBreaker]";
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final JavaMailSender javaMailSender;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInProgress = new AtomicBoolean();
+    private final Counter openedCounter;
+    private volatile long openedAt;
+
+    public SmtpCircuitBreaker(
+            JavaMailSender javaMailSender,
+            MeterRegistry meterRegistry,
+            @Value("${fi.asteriski.config.email.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${fi.asteriski.config.email.circuit-breaker.open-duration-millis:30000}") long openDurationMillis) {
+        this.javaMailSender = javaMailSender;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+        Gauge.builder("email.smtp.circuit.state", state, s -> s.get().ordinal())
+                .description("State of the SMTP circuit breaker: 0 closed, 1 half-open, 2 open.")
+                .register(meterRegistry);
+        openedCounter = Counter.builder("email.smtp.circuit.opened").register(meterRegistry);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return True if the caller may try to send. When half-open, only one caller at a time gets true, and it has to
+     *     report the outcome with {@link #recordSuccess()} or {@link #recordFailure()}.
+     */
+    public boolean allowRequest() {
+        return switch (state.get()) {
+            case CLOSED -> true;
+            case HALF_OPEN -> trialInProgress.compareAndSet(false, true);
+            case OPEN -> false;
+        };
+    }
+
+    /** The SMTP server answered. */
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+        if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+            log.info(String.format("%s SMTP server is reachable again. Circuit closed.", LOG_PREFIX));
+        }
+        trialInProgress.set(false);
+    }
+
+    /** The SMTP server could not be reached. */
+    public void recordFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open();
+        }
+        trialInProgress.set(false);
+    }
+
+    @Scheduled(
+            fixedDelayString = "${fi.asteriski.config.email.circuit-breaker.probe-interval-millis:5000}",
+            initialDelayString = "${fi.asteriski.config.email.circuit-breaker.probe-interval-millis:5000}")
+    public void probe() {
+        if (state.get() != State.OPEN || System.currentTimeMillis() - openedAt < openDurationMillis) {
+            return;
+        }
+        try {
+            if (javaMailSender instanceof JavaMailSenderImpl javaMailSenderImpl) {
+                javaMailSenderImpl.testConnection();
+            }
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                log.info(String.format("%s Probe reached the SMTP server. Circuit half-open.", LOG_PREFIX));
+            }
+        } catch (MessagingException messagingException) {
+            openedAt = System.currentTimeMillis();
+            log.warn(String.format(
+                    "%s Probe could not reach the SMTP server. Error was: %s", LOG_PREFIX, messagingException));
+        }
+    }
+
+    /** True if the error (or one of its causes) is a failure to reach the SMTP server, e.g. a refused connection. */
+    public static boolean isConnectivityFailure(Throwable throwable) {
+        for (var cause = throwable; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void open() {
+        openedAt = System.currentTimeMillis();
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            openedCounter.increment();
+            log.warn(String.format(
+                    "%s SMTP server unreachable (%s consecutive failures). Circuit open.",
+                    LOG_PREFIX, consecutiveFailures.get()));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.event;
+
+import java.util.List;
+import java.util.UUID;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/** Published when events are deleted, whether removed by their owner or archived. */
+@Getter
+public class EventsDeletedSpringEvent extends ApplicationEvent {
+
+    private final List<UUID> eventIds;
+
+    public EventsDeletedSpringEvent(Object source, List<UUID> eventIds) {
+        super(source);
+        this.eventIds = eventIds;
+    }
+}
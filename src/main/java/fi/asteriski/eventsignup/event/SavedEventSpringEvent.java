@@ -5,21 +5,20 @@ import java.time.ZoneId;
 import java.util.Locale;
 import lombok.Getter;
 import org.springframework.context.ApplicationEvent;
-import org.springframework.security.core.Authentication;
 
 @Getter
 public class SavedEventSpringEvent extends ApplicationEvent {
 
     private final EventDto eventDto;
-    private final Authentication loggedInUser;
+    private final String ownerEmail;
     private final Locale usersLocale;
     private final ZoneId userTimeZone;
 
     public SavedEventSpringEvent(
-            Object source, EventDto eventDto, Authentication loggedInUser, Locale usersLocale, ZoneId userTimeZone) {
+            Object source, EventDto eventDto, String ownerEmail, Locale usersLocale, ZoneId userTimeZone) {
         super(source);
         this.eventDto = eventDto;
-        this.loggedInUser = loggedInUser;
+        this.ownerEmail = ownerEmail;
         this.usersLocale = usersLocale;
         this.userTimeZone = userTimeZone;
     }
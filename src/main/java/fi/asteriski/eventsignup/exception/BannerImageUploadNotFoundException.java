@@ -0,0 +1,12 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.exception;
+
+public class BannerImageUploadNotFoundException extends EventSignupException {
+
+    public BannerImageUploadNotFoundException(String uploadId) {
+        super(String.format("Banner image upload with id '%s' not found.", uploadId));
+    }
+}
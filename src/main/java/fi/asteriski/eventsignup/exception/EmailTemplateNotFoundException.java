@@ -0,0 +1,11 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.exception;
+
+public class EmailTemplateNotFoundException extends RuntimeException {
+    public EmailTemplateNotFoundException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
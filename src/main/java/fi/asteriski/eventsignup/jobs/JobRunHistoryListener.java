@@ -0,0 +1,69 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.jobs;
+
+import fi.asteriski.eventsignup.dao.jobs.JobRunDao;
+import fi.asteriski.eventsignup.model.jobs.JobRunEntity;
+import fi.asteriski.eventsignup.model.jobs.JobRunStatus;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+import org.quartz.SchedulerException;
+
+/** Persists every job execution to <code>job_runs</code>. Registered as a global Quartz job listener. */
+@Log4j2
+@AllArgsConstructor
+public class JobRunHistoryListener implements JobListener {
+
+    private static final String LOG_PREFIX = "[JobRunHistoryListener]";
+
+    private JobRunDao jobRunDao;
+
+    @Override
+    public String getName() {
+        return "jobRunHistoryListener";
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {}
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+        saveRun(context, JobRunStatus.VETOED, null);
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        saveRun(context, jobException == null ? JobRunStatus.SUCCEEDED : JobRunStatus.FAILED, jobException);
+    }
+
+    private void saveRun(JobExecutionContext context, JobRunStatus status, JobExecutionException jobException) {
+        try {
+            jobRunDao.save(JobRunEntity.builder()
+                    .jobName(context.getJobDetail().getKey().toString())
+                    .fireInstanceId(context.getFireInstanceId())
+                    .schedulerInstanceId(context.getScheduler().getSchedulerInstanceId())
+                    .scheduledFireTime(
+                            context.getScheduledFireTime() != null
+                                    ? context.getScheduledFireTime().toInstant()
+                                    : null)
+                    .startedAt(context.getFireTime().toInstant())
+                    .finishedAt(Instant.now())
+                    .status(status)
+                    .recovering(context.isRecovering())
+                    .refireCount(context.getRefireCount())
+                    .error(jobException != null ? jobException.toString() : null)
+                    .build());
+        } catch (SchedulerException | RuntimeException e) {
+            // History is best effort. Failing to write it must not affect the job itself.
+            log.error(String.format(
+                    "%s Unable to save run history for job <%s>. Error was: %s",
+                    LOG_PREFIX, context.getJobDetail().getKey(), e));
+        }
+    }
+}
@@ -6,20 +6,23 @@ package fi.asteriski.eventsignup.jobs.archiving;
 
 import fi.asteriski.eventsignup.service.archiving.ArchivedEventService;
 import java.time.LocalDateTime;
-import lombok.AllArgsConstructor;
-import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.springframework.scheduling.quartz.QuartzJobBean;
 
 @Log4j2
-@NoArgsConstructor
-@AllArgsConstructor
-public class ArchivePastEventsJob {
+@RequiredArgsConstructor
+@DisallowConcurrentExecution
+public class ArchivePastEventsJob extends QuartzJobBean {
 
+    @NonNull
     private ArchivedEventService archivedEventService;
 
-    @Scheduled(cron = "@weekly")
-    public void archivePastEventsJob() {
+    @Override
+    protected void executeInternal(JobExecutionContext context) {
         log.info(String.format("[%s] Running ArchivePastEventsJob Job.", LocalDateTime.now()));
         archivedEventService.archivePastEvents();
     }
@@ -0,0 +1,28 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.jobs.archiving;
+
+import fi.asteriski.eventsignup.service.archiving.ArchivedEventService;
+import java.time.LocalDateTime;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+@Log4j2
+@RequiredArgsConstructor
+@DisallowConcurrentExecution
+public class OffloadArchivedEventsJob extends QuartzJobBean {
+    @NonNull
+    private ArchivedEventService archivedEventService;
+
+    @Override
+    protected void executeInternal(JobExecutionContext context) {
+        log.info(String.format("[%s] Running offloadToColdTier Job.", LocalDateTime.now()));
+        archivedEventService.offloadToColdTier();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.jobs.reminders;
+
+import fi.asteriski.eventsignup.service.reminder.EventReminderService;
+import java.time.LocalDateTime;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+@Log4j2
+@RequiredArgsConstructor
+@DisallowConcurrentExecution
+public class SendEventRemindersJob extends QuartzJobBean {
+    @NonNull
+    private EventReminderService eventReminderService;
+
+    @Override
+    protected void executeInternal(JobExecutionContext context) {
+        log.info(String.format("[%s] Running sendDueReminders Job.", LocalDateTime.now()));
+        var sent = eventReminderService.sendDueReminders();
+        log.info(String.format("[%s] Sent %s event reminders.", LocalDateTime.now(), sent));
+    }
+}
@@ -0,0 +1,40 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.archiving;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+
+/** A completed export of archived events. The newest watermark is where the next incremental export continues. */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "archive_exports",
+        indexes = {@Index(name = "idx_watermark", columnList = "watermark")})
+public class ArchiveExportEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @NonNull
+    private Instant exportedAt;
+
+    /**
+     * Events archived at or before this are included in the export, newer ones are left to the next one. Null for
+     * exports made before the watermark stopped depending on the exported rows.
+     */
+    private Instant watermark;
+
+    @NonNull
+    private Long rowCount;
+
+    private boolean incremental;
+}
@@ -25,7 +25,10 @@ import org.hibernate.annotations.UpdateTimestamp;
 @AllArgsConstructor
 @Table(
         name = "archived_events",
-        indexes = {@Index(name = "idx_originalOwner", columnList = "originalOwner")})
+        indexes = {
+            @Index(name = "idx_originalOwner", columnList = "originalOwner"),
+            @Index(name = "idx_bannerImage", columnList = "bannerImage")
+        })
 public class ArchivedEventEntity {
 
     @Id
@@ -0,0 +1,74 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.archiving;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * Where an archived event offloaded to the cold tier is stored. The event itself is a record in a segment in the blob
+ * store, shared by all nodes. Removing this row removes the event from the cold tier.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "cold_archived_events",
+        indexes = {
+            @Index(name = "idx_cold_archived_events_segment", columnList = "segment"),
+            @Index(name = "idx_cold_archived_events_date_archived", columnList = "dateArchived"),
+            @Index(name = "idx_cold_archived_events_original_owner", columnList = "originalOwner"),
+            @Index(name = "idx_cold_archived_events_banner_image", columnList = "bannerImage")
+        })
+public class ColdArchivedEventEntity implements Persistable<UUID> {
+
+    /** The archived event's id. */
+    @Id
+    private UUID id;
+
+    @NonNull
+    private String segment;
+
+    private long dataOffset;
+
+    private int dataLength;
+
+    @NonNull
+    private Instant dateArchived;
+
+    @NonNull
+    private String originalOwner;
+
+    /** Kept here so checking whether an image is still referenced doesn't read the segments. */
+    private String bannerImage;
+
+    /**
+     * The id is assigned, so without this saving a new row would first select it to see whether it exists. Rows are
+     * only ever inserted by offloading, never updated.
+     */
+    @Transient
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean newEntity = true;
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newEntity = false;
+    }
+}
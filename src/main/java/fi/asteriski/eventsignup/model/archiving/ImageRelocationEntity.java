@@ -0,0 +1,62 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.archiving;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SourceType;
+import org.hibernate.annotations.UpdateTimestamp;
+
+/**
+ * Moving an archived event's banner image into the archive. Written in the same transaction as the archived event, so
+ * the move is done (or retried) if and only if the event was archived.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "image_relocations",
+        indexes = {
+            @Index(name = "idx_image_relocations_status_next_attempt_at", columnList = "status, nextAttemptAt")
+        })
+public class ImageRelocationEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @NonNull
+    private UUID archivedEventId;
+
+    /** The image's name as the event had it. */
+    @NonNull
+    private String sourceName;
+
+    /** Where the image was moved. Set when done. */
+    private String targetName;
+
+    @NonNull
+    @Enumerated(EnumType.STRING)
+    private ImageRelocationStatus status;
+
+    private int attempts;
+
+    @NonNull
+    private Instant nextAttemptAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @CreationTimestamp(source = SourceType.DB)
+    private Instant createdAt;
+
+    @UpdateTimestamp(source = SourceType.DB)
+    private Instant updatedAt;
+}
@@ -0,0 +1,12 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.archiving;
+
+public enum ImageRelocationStatus {
+    PENDING,
+    DONE,
+    /** Gave up after the maximum number of attempts. */
+    FAILED
+}
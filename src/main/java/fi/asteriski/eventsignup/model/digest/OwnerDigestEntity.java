@@ -0,0 +1,49 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.digest;
+
+import io.hypersistence.utils.hibernate.type.json.JsonType;
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import lombok.*;
+import org.hibernate.annotations.Type;
+
+/**
+ * Checkpointed digest of one event owner. The row is kept between digests to remember where to send the next one.
+ * An empty digest has no window start.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "owner_digests",
+        indexes = {@Index(name = "idx_owner_digests_window_started_at", columnList = "windowStartedAt")})
+public class OwnerDigestEntity {
+
+    /** Owner's username, as in EventEntity.owner. */
+    @Id
+    private String owner;
+
+    @NonNull
+    private String email;
+
+    @NonNull
+    private String locale;
+
+    @NonNull
+    private String timeZone;
+
+    private Instant windowStartedAt;
+
+    @Builder.Default
+    @Type(JsonType.class)
+    @Column(columnDefinition = "json")
+    private Map<UUID, OwnerDigestEntry> entries = new HashMap<>();
+}
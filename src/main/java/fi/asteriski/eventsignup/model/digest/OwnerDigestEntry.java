@@ -0,0 +1,30 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.digest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** What happened to one event during a digest window. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OwnerDigestEntry {
+    private String eventName;
+    private int changes;
+    private int signups;
+    private int cancellations;
+
+    /** Adds the other entry's counts to this one. The other entry's (newer) event name wins. */
+    public void merge(OwnerDigestEntry other) {
+        if (other.eventName != null) {
+            eventName = other.eventName;
+        }
+        changes += other.changes;
+        signups += other.signups;
+        cancellations += other.cancellations;
+    }
+}
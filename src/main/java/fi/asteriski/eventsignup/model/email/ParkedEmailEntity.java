@@ -0,0 +1,49 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.email;
+
+import fi.asteriski.eventsignup.email.EmailLane;
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+
+/** A fully built email that couldn't be sent because the SMTP server was unreachable. Sent again later. */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "parked_emails",
+        indexes = {
+            @Index(name = "idx_parked_emails_parked_at", columnList = "parkedAt"),
+            @Index(name = "idx_parked_emails_next_attempt_at", columnList = "nextAttemptAt")
+        })
+public class ParkedEmailEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @NonNull
+    @Enumerated(EnumType.STRING)
+    private EmailLane lane;
+
+    /** The message in RFC 822 format, as written by MimeMessage.writeTo. */
+    @NonNull
+    private byte[] content;
+
+    @NonNull
+    private Instant parkedAt;
+
+    private int attempts;
+
+    /** When the lease of the node sending the email runs out. Null when no node is sending it. */
+    private Instant nextAttemptAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+}
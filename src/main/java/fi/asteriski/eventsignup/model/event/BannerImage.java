@@ -0,0 +1,15 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.event;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A stored banner image. The content is read lazily from its file.
+ *
+ * @param contentHash Hex encoded SHA-256 of the content, with the width appended for a variant.
+ * @param provisional True if this is the original served in place of a variant that isn't ready yet.
+ */
+public record BannerImage(Resource content, String contentType, String contentHash, boolean provisional) {}
@@ -0,0 +1,15 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.event;
+
+/**
+ * What a client needs to lay out an event's banner image before loading it.
+ *
+ * @param width Width of the original image in pixels.
+ * @param height Height of the original image in pixels.
+ * @param placeholder A tiny version of the image as a <code>data:</code> URI, to be shown scaled up and blurred while
+ *     the image loads. Null if it couldn't be made.
+ */
+public record BannerImagePreview(int width, int height, String placeholder) {}
@@ -0,0 +1,59 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.event;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SourceType;
+import org.hibernate.annotations.UpdateTimestamp;
+
+/**
+ * An uploaded banner image being processed. Kept in the database, so the uploader can poll its status from any
+ * node.
+ */
+@Entity
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "banner_image_uploads",
+        indexes = {@Index(name = "idx_banner_image_uploads_status_updated_at", columnList = "status, updatedAt")})
+public class BannerImageUploadEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @NonNull
+    private String owner;
+
+    @NonNull
+    @Enumerated(EnumType.STRING)
+    private BannerImageUploadStatus status;
+
+    private String fileName;
+
+    @Column(columnDefinition = "TEXT")
+    private String failureReason;
+
+    @CreationTimestamp(source = SourceType.DB)
+    private Instant createdAt;
+
+    @UpdateTimestamp(source = SourceType.DB)
+    private Instant updatedAt;
+
+    public BannerImageUploadStatusResponse toStatusResponse() {
+        return BannerImageUploadStatusResponse.builder()
+                .uploadId(id)
+                .status(status)
+                .fileName(fileName)
+                .failureReason(failureReason)
+                .build();
+    }
+}
@@ -0,0 +1,15 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.event;
+
+public enum BannerImageUploadStatus {
+    /** Received and waiting for a worker. */
+    PENDING,
+    PROCESSING,
+    /** Stored. The image's file name is set. */
+    READY,
+    /** Not a valid image, too large, or processing failed or was interrupted. The reason is set. */
+    FAILED
+}
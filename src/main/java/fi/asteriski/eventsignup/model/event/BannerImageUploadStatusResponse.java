@@ -0,0 +1,13 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.event;
+
+import java.util.UUID;
+import lombok.Builder;
+
+/** @param fileName Set once the image is READY. */
+@Builder
+public record BannerImageUploadStatusResponse(
+        UUID uploadId, BannerImageUploadStatus status, String fileName, String failureReason) {}
@@ -0,0 +1,25 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.event;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/** Lightweight projection of an event's dates. Used for scheduling archiving without loading whole events. */
+public record EventDates(UUID id, Instant startDate, Instant endDate) {
+
+    /**
+     * An event is archived when either its start or end date is older than the configured amount of days (see
+     * ArchivedEventService.archivePastEvents()). Thus the deadline is the earlier of the two plus that amount of days.
+     *
+     * @param daysToArchivePastEvents Days after which a past event is archived.
+     * @return Point in time after which the event should be archived.
+     */
+    public Instant archiveDeadline(int daysToArchivePastEvents) {
+        var earliest = endDate != null && endDate.isBefore(startDate) ? endDate : startDate;
+        return earliest.plus(daysToArchivePastEvents, ChronoUnit.DAYS);
+    }
+}
@@ -49,6 +49,8 @@ public class EventDto {
     private final List<Quota> quotas;
     private final Double price;
     private String bannerImg;
+    /** Set by the server from the banner image. */
+    private BannerImagePreview bannerImagePreview;
     private final Map<String, Object> otherData;
     private final Map<String, Object> metaData;
     private final Instant createdAt;
@@ -68,6 +70,7 @@ public class EventDto {
                 .quotas(quotas)
                 .price(price)
                 .bannerImg(bannerImg)
+                .bannerImagePreview(bannerImagePreview)
                 .otherData(otherData)
                 .metaData(metaData)
                 .createdAt(createdAt)
@@ -98,6 +101,7 @@ public class EventDto {
                 .endDate(endDate)
                 .price(price)
                 .bannerImg(bannerImg)
+                .bannerImagePreview(bannerImagePreview)
                 .build();
     }
 }
@@ -26,7 +26,11 @@ import org.hibernate.annotations.UpdateTimestamp;
 @AllArgsConstructor
 @Table(
         name = "events",
-        indexes = {@Index(name = "idx_owner", columnList = "owner")})
+        indexes = {
+            @Index(name = "idx_owner", columnList = "owner"),
+            @Index(name = "idx_bannerImg", columnList = "bannerImg"),
+            @Index(name = "idx_updatedAt", columnList = "updatedAt")
+        })
 public final class EventEntity {
 
     @Id
@@ -66,6 +70,10 @@ public final class EventEntity {
     private Double price;
     private String bannerImg;
 
+    @Type(JsonType.class)
+    @Column(columnDefinition = "json")
+    private BannerImagePreview bannerImagePreview;
+
     @Type(JsonType.class)
     @Column(columnDefinition = "json")
     private Map<String, Object> otherData;
@@ -98,6 +106,7 @@ public final class EventEntity {
                 .quotas(quotas)
                 .price(price)
                 .bannerImg(bannerImg)
+                .bannerImagePreview(bannerImagePreview)
                 .otherData(otherData)
                 .metaData(metaData)
                 .createdAt(createdAt)
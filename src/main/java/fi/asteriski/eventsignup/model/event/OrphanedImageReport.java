@@ -0,0 +1,19 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.event;
+
+import java.time.Duration;
+
+/**
+ * Result of one run of the orphaned banner image collector.
+ *
+ * @param dryRun If true, the orphans were only reported, not deleted.
+ * @param scanned Number of files (images, their metadata and variants) looked at.
+ * @param orphans Number of files deleted, or that would have been in a dry run.
+ * @param orphanBytes Total size of those files.
+ * @param failures Number of files or directories that couldn't be listed or deleted.
+ */
+public record OrphanedImageReport(
+        boolean dryRun, long scanned, long orphans, long orphanBytes, long failures, Duration duration) {}
@@ -0,0 +1,53 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.jobs;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+
+/** One execution of a scheduled (Quartz) job. Written by the node that ran the job. */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "job_runs",
+        indexes = {@Index(name = "idx_job_name_started_at", columnList = "jobName, startedAt")})
+public class JobRunEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @NonNull
+    private String jobName;
+
+    @NonNull
+    private String fireInstanceId;
+
+    @NonNull
+    private String schedulerInstanceId;
+
+    private Instant scheduledFireTime;
+
+    @NonNull
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    @NonNull
+    @Enumerated(EnumType.STRING)
+    private JobRunStatus status;
+
+    private boolean recovering;
+
+    private int refireCount;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+}
@@ -0,0 +1,11 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.jobs;
+
+public enum JobRunStatus {
+    SUCCEEDED,
+    FAILED,
+    VETOED
+}
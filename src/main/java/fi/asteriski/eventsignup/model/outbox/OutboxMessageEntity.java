@@ -0,0 +1,79 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.outbox;
+
+import fi.asteriski.eventsignup.model.signup.ParticipantEntity;
+import io.hypersistence.utils.hibernate.type.json.JsonType;
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SourceType;
+import org.hibernate.annotations.Type;
+
+/**
+ * A notification waiting to be delivered. Written in the same transaction as the change it notifies about, so it
+ * exists if and only if that change was committed.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "notification_outbox",
+        indexes = {
+            @Index(name = "idx_status_next_attempt_at", columnList = "status, nextAttemptAt"),
+            @Index(name = "idx_event_id_participant_id", columnList = "eventId, participantId")
+        })
+public class OutboxMessageEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @NonNull
+    @Enumerated(EnumType.STRING)
+    private NotificationType type;
+
+    @NonNull
+    private UUID eventId;
+
+    /** Snapshot of the participant. A cancelled participant is already gone when the notification is delivered. */
+    @Type(JsonType.class)
+    @Column(columnDefinition = "json")
+    private ParticipantEntity participant;
+
+    /** Participant a signup or cancellation notification is about. Participants may share an email address. */
+    private UUID participantId;
+
+    @NonNull
+    private String recipient;
+
+    @NonNull
+    private String locale;
+
+    @NonNull
+    private String timeZone;
+
+    @NonNull
+    @Enumerated(EnumType.STRING)
+    private OutboxStatus status;
+
+    private int attempts;
+
+    /** When a pending notification is due, or when the lease of one in flight runs out. */
+    @NonNull
+    private Instant nextAttemptAt;
+
+    @CreationTimestamp(source = SourceType.DB)
+    private Instant createdAt;
+
+    private Instant sentAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+}
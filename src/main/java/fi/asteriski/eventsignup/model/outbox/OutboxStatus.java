@@ -0,0 +1,19 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.outbox;
+
+public enum OutboxStatus {
+    PENDING,
+    /**
+     * Claimed by a poller and handed to the delivery engine. Other pollers skip it until its lease (kept in
+     * <code>nextAttemptAt</code>) runs out, which only happens if the node died before saving the result.
+     */
+    IN_FLIGHT,
+    SENT,
+    /** Gave up: out of attempts or the notification can't be delivered anymore. */
+    FAILED,
+    /** Superseded by a newer notification to the same recipient about the same event before it was sent. */
+    COALESCED
+}
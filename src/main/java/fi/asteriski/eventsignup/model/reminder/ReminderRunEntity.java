@@ -0,0 +1,50 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.model.reminder;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SourceType;
+import org.hibernate.annotations.UpdateTimestamp;
+
+/**
+ * Progress of sending reminders for one event. The cursor points to the last participant whose batch was finished,
+ * so a restarted run continues from the next participant.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(
+        name = "reminder_runs",
+        indexes = {@Index(name = "idx_reminder_runs_event_id", columnList = "eventId", unique = true)})
+public class ReminderRunEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @NonNull
+    private UUID eventId;
+
+    /** createdAt of the last handled participant. Null until the first batch is done. */
+    private Instant lastParticipantCreatedAt;
+
+    private UUID lastParticipantId;
+
+    private int sentCount;
+
+    private int failedCount;
+
+    @CreationTimestamp(source = SourceType.DB)
+    private Instant createdAt;
+
+    @UpdateTimestamp(source = SourceType.DB)
+    private Instant updatedAt;
+}
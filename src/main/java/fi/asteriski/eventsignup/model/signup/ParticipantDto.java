@@ -10,7 +10,7 @@ import java.util.UUID;
 import lombok.Builder;
 import lombok.Data;
 
-@Builder
+@Builder(toBuilder = true)
 @Data
 public class ParticipantDto {
     private final UUID id;
@@ -26,6 +26,7 @@ public class ParticipantDto {
     private Instant signupTime;
     private final Map<String, Object> otherData;
     private final Map<String, Object> metaData;
+    private final Instant createdAt;
 
     public ParticipantEntity toEntity() {
         return ParticipantEntity.builder()
@@ -26,7 +26,8 @@ import org.hibernate.annotations.UpdateTimestamp;
         name = "participants",
         indexes = {
             @Index(name = "idx_id_and_event", columnList = "id, event", unique = true),
-            @Index(name = "idx_event", columnList = "event")
+            @Index(name = "idx_event", columnList = "event"),
+            @Index(name = "idx_event_created_at_id", columnList = "event, createdAt, id")
         })
 public class ParticipantEntity {
 
@@ -91,6 +92,7 @@ public class ParticipantEntity {
                 .signupTime(signupTime)
                 .otherData(otherData)
                 .metaData(metaData)
+                .createdAt(createdAt)
                 .build();
     }
 }
@@ -4,6 +4,7 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.model.signup;
 
+import fi.asteriski.eventsignup.model.event.BannerImagePreview;
 import fi.asteriski.eventsignup.model.event.Form;
 import java.time.ZonedDateTime;
 import java.util.UUID;
@@ -19,4 +20,5 @@ public record SignupEvent(
         Form form,
         ZonedDateTime endDate,
         Double price,
-        String bannerImg) {}
+        String bannerImg,
+        BannerImagePreview bannerImagePreview) {}
@@ -0,0 +1,16 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ArchiveExportEntity;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ArchiveExportRepository extends JpaRepository<ArchiveExportEntity, UUID> {
+    Optional<ArchiveExportEntity> findFirstByWatermarkIsNotNullOrderByWatermarkDesc();
+}
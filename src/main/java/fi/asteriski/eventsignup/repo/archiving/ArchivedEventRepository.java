@@ -5,15 +5,90 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.repo.archiving;
 
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventEntity;
+import fi.asteriski.eventsignup.model.event.EventEntity;
+import jakarta.persistence.QueryHint;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface ArchivedEventRepository extends JpaRepository<ArchivedEventEntity, UUID> {
     List<ArchivedEventEntity> findAllByOriginalOwner(String owner);
 
-    void deleteAllByDateArchivedIsBefore(Instant dateLimit);
+    List<ArchivedEventEntity> findAllByDateArchivedIsBeforeOrderByDateArchivedAsc(Instant dateLimit, Limit limit);
+
+    long countByBannerImage(String bannerImage);
+
+    /**
+     * Streams archived events archived after <code>since</code> and at or before <code>until</code> oldest first.
+     * Rows are fetched from the database in chunks as the stream is consumed. Must be called within a transaction and
+     * the stream must be closed.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT a FROM ArchivedEventEntity a WHERE a.dateArchived > :since AND a.dateArchived <= :until "
+            + "ORDER BY a.dateArchived")
+    Stream<ArchivedEventEntity> streamAllByDateArchivedBetween(
+            @Param("since") Instant since, @Param("until") Instant until);
+
+    /** Must be called within a transaction and the stream must be closed. */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT a.bannerImage FROM ArchivedEventEntity a WHERE a.bannerImage IS NOT NULL")
+    Stream<String> streamAllBannerImages();
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ArchivedEventEntity a SET a.bannerImage = :bannerImage WHERE a.id = :id")
+    int updateBannerImageById(@Param("id") UUID id, @Param("bannerImage") String bannerImage);
+
+    /**
+     * Inserts an archived event with the given id and archiving date. {@link #save(Object)} would generate both anew.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("INSERT INTO ArchivedEventEntity "
+            + "(id, originalEvent, dateArchived, numberOfParticipants, originalOwner, bannerImage) "
+            + "VALUES (:id, :originalEvent, :dateArchived, :numberOfParticipants, :originalOwner, :bannerImage)")
+    int insertWithIdAndDateArchived(
+            @Param("id") UUID id,
+            @Param("originalEvent") EventEntity originalEvent,
+            @Param("dateArchived") Instant dateArchived,
+            @Param("numberOfParticipants") Long numberOfParticipants,
+            @Param("originalOwner") String originalOwner,
+            @Param("bannerImage") String bannerImage);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ArchivedEventEntity a WHERE a.id IN :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Deletes at most <code>batchSize</code> archived events archived before <code>dateLimit</code> in a single
+     * statement.
+     *
+     * @return Number of deleted rows. Less than <code>batchSize</code> means there is nothing left to delete.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(
+            value = "DELETE FROM archived_events WHERE id IN "
+                    + "(SELECT id FROM archived_events WHERE date_archived < :dateLimit LIMIT :batchSize)",
+            nativeQuery = true)
+    int deleteBatchByDateArchivedIsBefore(@Param("dateLimit") Instant dateLimit, @Param("batchSize") int batchSize);
 }
@@ -0,0 +1,54 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ColdArchivedEventEntity;
+import jakarta.persistence.QueryHint;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ColdArchivedEventRepository extends JpaRepository<ColdArchivedEventEntity, UUID> {
+
+    /** Segments with events archived after <code>since</code>, oldest first. */
+    @Query("SELECT c.segment FROM ColdArchivedEventEntity c WHERE c.dateArchived > :since "
+            + "GROUP BY c.segment ORDER BY MIN(c.dateArchived)")
+    List<String> findSegmentsByDateArchivedIsAfter(@Param("since") Instant since);
+
+    @Query("SELECT DISTINCT c.segment FROM ColdArchivedEventEntity c WHERE c.dateArchived < :dateLimit")
+    List<String> findSegmentsByDateArchivedIsBefore(@Param("dateLimit") Instant dateLimit);
+
+    List<ColdArchivedEventEntity> findAllBySegmentAndDateArchivedIsAfterOrderByDataOffset(
+            String segment, Instant since);
+
+    List<ColdArchivedEventEntity> findAllByOriginalOwner(String originalOwner);
+
+    boolean existsBySegment(String segment);
+
+    long countByBannerImage(String bannerImage);
+
+    /** Must be called within a transaction and the stream must be closed. */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT c.bannerImage FROM ColdArchivedEventEntity c WHERE c.bannerImage IS NOT NULL")
+    Stream<String> streamAllBannerImages();
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ColdArchivedEventEntity c WHERE c.dateArchived < :dateLimit")
+    int deleteAllByDateArchivedIsBefore(@Param("dateLimit") Instant dateLimit);
+}
@@ -0,0 +1,37 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.archiving;
+
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationEntity;
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationStatus;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ImageRelocationRepository extends JpaRepository<ImageRelocationEntity, UUID> {
+
+    /**
+     * Locks at most <code>batchSize</code> pending relocations that are due. Rows locked by another node are skipped
+     * instead of waited for. Must be called within a transaction.
+     */
+    @Query(
+            value = "SELECT * FROM image_relocations WHERE status = 'PENDING' AND next_attempt_at <= :now "
+                    + "ORDER BY next_attempt_at LIMIT :batchSize FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<ImageRelocationEntity> findDueAndLockSkipLocked(@Param("now") Instant now, @Param("batchSize") int batchSize);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ImageRelocationEntity r WHERE r.status = :status AND r.updatedAt < :dateLimit")
+    int deleteAllByStatusAndUpdatedAtBefore(
+            @Param("status") ImageRelocationStatus status, @Param("dateLimit") Instant dateLimit);
+}
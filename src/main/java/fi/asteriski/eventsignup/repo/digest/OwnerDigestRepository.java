@@ -0,0 +1,35 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.digest;
+
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntity;
+import jakarta.persistence.LockModeType;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OwnerDigestRepository extends JpaRepository<OwnerDigestEntity, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d from OwnerDigestEntity d where d.owner = :owner")
+    Optional<OwnerDigestEntity> findByOwnerAndLock(@Param("owner") String owner);
+
+    /**
+     * Locks at most <code>batchSize</code> digests whose window started before <code>dueBefore</code>. Rows locked by
+     * another transaction are skipped. Must be called within a transaction.
+     */
+    @Query(
+            value = "SELECT * FROM owner_digests WHERE window_started_at <= :dueBefore "
+                    + "ORDER BY window_started_at LIMIT :batchSize FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<OwnerDigestEntity> findDueAndLockSkipLocked(
+            @Param("dueBefore") Instant dueBefore, @Param("batchSize") int batchSize);
+}
@@ -0,0 +1,55 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.email;
+
+import fi.asteriski.eventsignup.model.email.ParkedEmailEntity;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ParkedEmailRepository extends JpaRepository<ParkedEmailEntity, UUID> {
+
+    /**
+     * Locks at most <code>batchSize</code> parked emails no node is sending or whose lease has run out, transactional
+     * ones first and then oldest first. Rows locked by another transaction (e.g. another node claiming them) are
+     * skipped. Must be called within a transaction.
+     */
+    @Query(
+            value = "SELECT * FROM parked_emails WHERE next_attempt_at IS NULL OR next_attempt_at <= :now "
+                    + "ORDER BY CASE WHEN lane = 'TRANSACTIONAL' THEN 0 ELSE 1 END, "
+                    + "parked_at LIMIT :batchSize FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<ParkedEmailEntity> findDueAndLockSkipLocked(@Param("now") Instant now, @Param("batchSize") int batchSize);
+
+    /** Deletes a sent email, unless its lease has run out and another node has claimed it. */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ParkedEmailEntity p WHERE p.id = :id AND p.nextAttemptAt = :leaseUntil")
+    int deleteByIdAndNextAttemptAt(@Param("id") UUID id, @Param("leaseUntil") Instant leaseUntil);
+
+    /** Saves a failed attempt and releases the email, unless its lease has run out and another node has claimed it. */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ParkedEmailEntity p SET p.attempts = :attempts, p.lastError = :lastError, p.nextAttemptAt = null "
+            + "WHERE p.id = :id AND p.nextAttemptAt = :leaseUntil")
+    int updateAttemptByIdAndNextAttemptAt(
+            @Param("id") UUID id,
+            @Param("leaseUntil") Instant leaseUntil,
+            @Param("attempts") int attempts,
+            @Param("lastError") String lastError);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ParkedEmailEntity p SET p.nextAttemptAt = null WHERE p.id IN :ids AND p.nextAttemptAt = :leaseUntil")
+    int releaseByIdInAndNextAttemptAt(@Param("ids") Collection<UUID> ids, @Param("leaseUntil") Instant leaseUntil);
+}
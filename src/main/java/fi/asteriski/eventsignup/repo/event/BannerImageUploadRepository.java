@@ -0,0 +1,38 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.event;
+
+import fi.asteriski.eventsignup.model.event.BannerImageUploadEntity;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatus;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface BannerImageUploadRepository extends JpaRepository<BannerImageUploadEntity, UUID> {
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE BannerImageUploadEntity u SET u.status = :newStatus, u.failureReason = :failureReason, "
+            + "u.updatedAt = :now WHERE u.status IN :statuses AND u.updatedAt < :dateLimit")
+    int updateStatusByStatusInAndUpdatedAtBefore(
+            @Param("statuses") Collection<BannerImageUploadStatus> statuses,
+            @Param("dateLimit") Instant dateLimit,
+            @Param("newStatus") BannerImageUploadStatus newStatus,
+            @Param("failureReason") String failureReason,
+            @Param("now") Instant now);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM BannerImageUploadEntity u WHERE u.status IN :statuses AND u.updatedAt < :dateLimit")
+    int deleteAllByStatusInAndUpdatedAtBefore(
+            @Param("statuses") Collection<BannerImageUploadStatus> statuses, @Param("dateLimit") Instant dateLimit);
+}
@@ -4,12 +4,25 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.repo.event;
 
+import fi.asteriski.eventsignup.model.event.EventDates;
 import fi.asteriski.eventsignup.model.event.EventEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface EventRepository extends JpaRepository<EventEntity, UUID> {
@@ -18,4 +31,36 @@ public interface EventRepository extends JpaRepository<EventEntity, UUID> {
     List<EventEntity> findAllByStartDateIsBeforeOrEndDateIsBefore(Instant instant, Instant instant2);
 
     List<EventEntity> findAllByStartDateIsBetween(Instant start, Instant end);
+
+    long countByBannerImg(String bannerImg);
+
+    /** Must be called within a transaction and the stream must be closed. */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select e.bannerImg from EventEntity e where e.bannerImg is not null")
+    Stream<String> streamAllBannerImgs();
+
+    @Query("select new fi.asteriski.eventsignup.model.event.EventDates(e.id, e.startDate, e.endDate) "
+            + "from EventEntity e")
+    List<EventDates> findAllEventDates();
+
+    @Query("select new fi.asteriski.eventsignup.model.event.EventDates(e.id, e.startDate, e.endDate) "
+            + "from EventEntity e where e.updatedAt >= :since")
+    List<EventDates> findAllEventDatesUpdatedSince(@Param("since") Instant since);
+
+    /**
+     * Finds an event and locks it for the rest of the transaction. If another transaction already holds the lock,
+     * the row is skipped (i.e. the result is empty) instead of waiting for it.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select e from EventEntity e where e.id = :id")
+    Optional<EventEntity> findByIdAndLockSkipLocked(@Param("id") UUID id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from EventEntity e where e.id in :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<UUID> ids);
 }
@@ -0,0 +1,83 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.outbox;
+
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessageEntity, UUID> {
+
+    /**
+     * Locks at most <code>batchSize</code> pending messages that are due and in flight messages whose lease has run
+     * out. Rows locked by another transaction (e.g. another node's poller claiming them) are skipped instead of waited
+     * for. Must be called within a transaction.
+     */
+    @Query(
+            value = "SELECT * FROM notification_outbox WHERE status IN ('PENDING', 'IN_FLIGHT') "
+                    + "AND next_attempt_at <= :now "
+                    + "ORDER BY next_attempt_at LIMIT :batchSize FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<OutboxMessageEntity> findDueAndLockSkipLocked(@Param("now") Instant now, @Param("batchSize") int batchSize);
+
+    /**
+     * Locks the pending signup and cancellation notifications about the participant of the event that have not been
+     * tried yet. Rows locked by a poller that is delivering them right now are skipped. Must be called within a
+     * transaction.
+     */
+    @Query(
+            value = "SELECT * FROM notification_outbox WHERE status = 'PENDING' AND attempts = 0 "
+                    + "AND event_id = :eventId AND participant_id = :participantId "
+                    + "AND type IN ('SIGNUP_SUCCESSFUL', 'SIGNUP_CANCELLED') FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<OutboxMessageEntity> findUnsentSignupNotificationsAndLockSkipLocked(
+            @Param("eventId") UUID eventId, @Param("participantId") UUID participantId);
+
+    /** Saves a delivery's result, unless the message is no longer <code>inStatus</code>. */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE OutboxMessageEntity o SET o.status = :status, o.attempts = :attempts, "
+            + "o.nextAttemptAt = :nextAttemptAt, o.sentAt = :sentAt, o.lastError = :lastError "
+            + "WHERE o.id = :id AND o.status = :inStatus")
+    int updateDeliveryResultByIdAndStatus(
+            @Param("id") UUID id,
+            @Param("inStatus") OutboxStatus inStatus,
+            @Param("status") OutboxStatus status,
+            @Param("attempts") int attempts,
+            @Param("nextAttemptAt") Instant nextAttemptAt,
+            @Param("sentAt") Instant sentAt,
+            @Param("lastError") String lastError);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE OutboxMessageEntity o SET o.nextAttemptAt = :nextAttemptAt "
+            + "WHERE o.id IN :ids AND o.status = :status")
+    int updateNextAttemptAtByIdInAndStatus(
+            @Param("ids") Collection<UUID> ids,
+            @Param("status") OutboxStatus status,
+            @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM OutboxMessageEntity o WHERE o.status = :status AND o.sentAt < :dateLimit")
+    int deleteAllByStatusAndSentAtBefore(
+            @Param("status") OutboxStatus status, @Param("dateLimit") Instant dateLimit);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM OutboxMessageEntity o WHERE o.status = :status AND o.createdAt < :dateLimit")
+    int deleteAllByStatusAndCreatedAtBefore(
+            @Param("status") OutboxStatus status, @Param("dateLimit") Instant dateLimit);
+}
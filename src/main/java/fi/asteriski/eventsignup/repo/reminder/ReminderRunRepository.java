@@ -0,0 +1,16 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.reminder;
+
+import fi.asteriski.eventsignup.model.reminder.ReminderRunEntity;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReminderRunRepository extends JpaRepository<ReminderRunEntity, UUID> {
+    Optional<ReminderRunEntity> findByEventId(UUID eventId);
+}
@@ -6,10 +6,17 @@ package fi.asteriski.eventsignup.repo.signup;
 
 import fi.asteriski.eventsignup.model.signup.ParticipantEntity;
 import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface ParticipantRepository extends JpaRepository<ParticipantEntity, UUID> {
@@ -18,9 +25,33 @@ public interface ParticipantRepository extends JpaRepository<ParticipantEntity,
 
     long countAllByEvent(@NotNull UUID event);
 
-    void deleteAllByEvent(@NotNull UUID event);
+    /*
+    Keyset pagination over (createdAt, id). A new participant sorts after every existing one, so signups made while
+    the pages are read are picked up at the end instead of shifting the pages.
+     */
+    List<ParticipantEntity> findAllByEventOrderByCreatedAtAscIdAsc(@NotNull UUID event, Limit limit);
 
-    void deleteParticipantByEventAndId(UUID event, UUID participant);
+    @Query("select p from ParticipantEntity p where p.event = :event and (p.createdAt > :createdAt "
+            + "or (p.createdAt = :createdAt and p.id > :id)) order by p.createdAt asc, p.id asc")
+    List<ParticipantEntity> findAllByEventAfter(
+            @Param("event") UUID event, @Param("createdAt") Instant createdAt, @Param("id") UUID id, Limit limit);
 
-    void deleteAllByEventIn(List<UUID> events);
+    /*
+    Deletes below are single statement bulk deletes. Derived deletes would load every matching entity and remove them
+    one by one.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from ParticipantEntity p where p.event = :event")
+    int deleteAllByEvent(@NotNull @Param("event") UUID event);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from ParticipantEntity p where p.event = :event and p.id = :participant")
+    int deleteParticipantByEventAndId(@Param("event") UUID event, @Param("participant") UUID participant);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from ParticipantEntity p where p.event in :events")
+    int deleteAllByEventIn(@Param("events") Collection<UUID> events);
 }
@@ -5,6 +5,7 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.service.admin;
 
 import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.event.OrphanedImageReport;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import java.util.List;
 import java.util.UUID;
@@ -17,4 +18,6 @@ public interface AdminService {
     List<ParticipantDto> getAllParticipants();
 
     List<ParticipantDto> getAllParticipantsForEvent(UUID eventId);
+
+    OrphanedImageReport collectOrphanedImages(boolean dryRun);
 }
@@ -5,8 +5,10 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.service.admin;
 
 import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.event.OrphanedImageReport;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import fi.asteriski.eventsignup.service.event.EventService;
+import fi.asteriski.eventsignup.service.event.OrphanedImageCollector;
 import fi.asteriski.eventsignup.service.signup.ParticipantService;
 import java.util.Comparator;
 import java.util.List;
@@ -24,6 +26,7 @@ public class AdminServiceImpl implements AdminService {
 
     private ParticipantService participantService;
     private EventService eventService;
+    private OrphanedImageCollector orphanedImageCollector;
 
     /**
      * Fetches all event from database in no particular order.
@@ -71,4 +74,17 @@ public class AdminServiceImpl implements AdminService {
     public List<ParticipantDto> getAllParticipantsForEvent(UUID eventId) {
         return eventService.getParticipants(eventId);
     }
+
+    /**
+     * Runs the orphaned banner image collector now. Only this node's local disk is collected if the images aren't in a
+     * shared store.
+     *
+     * @param dryRun If true, the orphans are only reported.
+     * @return What was (or would have been) deleted.
+     */
+    @Override
+    public OrphanedImageReport collectOrphanedImages(boolean dryRun) {
+        log.info(String.format("%s Collecting orphaned banner images, dry run: %s.", LOG_PREFIX, dryRun));
+        return orphanedImageCollector.collect(dryRun);
+    }
 }
@@ -0,0 +1,180 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import fi.asteriski.eventsignup.event.EventsDeletedSpringEvent;
+import fi.asteriski.eventsignup.model.event.EventDates;
+import fi.asteriski.eventsignup.service.event.EventService;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Archives events one by one shortly after their archiving deadline instead of waiting for the weekly
+ * ArchivePastEventsJob. Deadlines are kept in a delay queue which is built on startup from a projection of the events'
+ * dates and kept up to date by periodically fetching events updated since the previous refresh. Events deleted
+ * without being archived are dropped once the deletion is committed. Other nodes drop them when their deadline comes
+ * and the event is no longer found.<br>
+ * Every node runs its own queue. ArchivedEventService.archiveEventIfDue() locks the event's row so that an event is
+ * archived only once even if several nodes pick it up at the same time.
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class ArchiveDeadlineScheduler {
+
+    private static final String LOG_PREFIX = "[ArchiveDeadlineScheduler]";
+    // updatedAt is set by the database whose clock may differ from ours.
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(10);
+
+    @Value("${fi.asteriski.config.archiving.days-to-archive-past-events}")
+    private Integer daysToArchivePastEvents;
+
+    @Value("${fi.asteriski.config.archiving.continuous.enabled:true}")
+    private boolean enabled;
+
+    @Value("${fi.asteriski.config.archiving.continuous.min-interval-millis:2000}")
+    private long minIntervalMillis;
+
+    @NonNull
+    private EventService eventService;
+
+    @NonNull
+    private ArchivedEventService archivedEventService;
+
+    private final DelayQueue<ArchiveDeadline> queue = new DelayQueue<>();
+    // Latest deadline per event. Queue entries not matching this are stale and skipped.
+    private final Map<UUID, Instant> deadlines = new ConcurrentHashMap<>();
+    private volatile Instant lastRefresh;
+    private volatile Thread worker;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info(String.format("%s Continuous archiving is disabled.", LOG_PREFIX));
+            return;
+        }
+        lastRefresh = Instant.now();
+        eventService.getAllEventDates().forEach(this::schedule);
+        log.info(String.format("%s Scheduled %s events for archiving.", LOG_PREFIX, deadlines.size()));
+        worker = Thread.ofPlatform()
+                .name("archive-deadline-scheduler")
+                .daemon()
+                .start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /** Picks up new events and events whose dates have been edited since the previous refresh. */
+    @Scheduled(fixedDelayString = "${fi.asteriski.config.archiving.continuous.refresh-interval-millis:60000}")
+    public void refresh() {
+        if (worker == null) {
+            return;
+        }
+        var now = Instant.now();
+        eventService
+                .getEventDatesUpdatedSince(lastRefresh.minus(REFRESH_OVERLAP))
+                .forEach(this::schedule);
+        lastRefresh = now;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsDeleted(EventsDeletedSpringEvent eventsDeletedSpringEvent) {
+        var deleted = new HashSet<UUID>();
+        for (var eventId : eventsDeletedSpringEvent.getEventIds()) {
+            if (deadlines.remove(eventId) != null) {
+                deleted.add(eventId);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            queue.removeIf(deadline -> deleted.contains(deadline.eventId()));
+        }
+    }
+
+    void schedule(EventDates eventDates) {
+        var deadline = eventDates.archiveDeadline(daysToArchivePastEvents);
+        var previous = deadlines.put(eventDates.id(), deadline);
+        if (!deadline.equals(previous)) {
+            queue.add(new ArchiveDeadline(eventDates.id(), deadline));
+        }
+    }
+
+    /** Pending deadlines by event. */
+    Map<UUID, Instant> getDeadlines() {
+        return Map.copyOf(deadlines);
+    }
+
+    /** Number of entries in the queue including stale ones. */
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                var next = queue.take();
+                if (!deadlines.remove(next.eventId(), next.deadline())) {
+                    // Superseded by a newer deadline.
+                    continue;
+                }
+                archive(next.eventId());
+                // Events often share a deadline (e.g. midnight). Spread them out instead of archiving all at once.
+                Thread.sleep(minIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void archive(UUID eventId) {
+        try {
+            if (archivedEventService.archiveEventIfDue(eventId)) {
+                log.info(String.format("%s Archived event <%s>.", LOG_PREFIX, eventId));
+            }
+        } catch (RuntimeException e) {
+            log.error(String.format(
+                    "%s Archiving event <%s> failed. Retrying in %s. Error was: %s",
+                    LOG_PREFIX, eventId, RETRY_DELAY, e));
+            var retryAt = Instant.now().plus(RETRY_DELAY);
+            if (deadlines.putIfAbsent(eventId, retryAt) == null) {
+                queue.add(new ArchiveDeadline(eventId, retryAt));
+            }
+        }
+    }
+
+    private record ArchiveDeadline(UUID eventId, Instant deadline) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), deadline));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return deadline.compareTo(((ArchiveDeadline) other).deadline);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface ArchiveExportService {
+    /**
+     * Writes archived events as a compressed columnar file into <code>out</code>.
+     *
+     * @param incremental Only export events archived since the last successful export.
+     * @param out Where the file is written. Not closed.
+     * @return Number of exported archived events.
+     */
+    long exportArchivedEvents(boolean incremental, OutputStream out) throws IOException;
+}
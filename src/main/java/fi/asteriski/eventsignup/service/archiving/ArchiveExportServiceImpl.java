@@ -0,0 +1,135 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import fi.asteriski.eventsignup.dao.archiving.ArchiveExportDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
+import fi.asteriski.eventsignup.model.archiving.ArchiveExportEntity;
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
+import fi.asteriski.eventsignup.utils.columnar.Column;
+import fi.asteriski.eventsignup.utils.columnar.ColumnType;
+import fi.asteriski.eventsignup.utils.columnar.ColumnarFileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class ArchiveExportServiceImpl implements ArchiveExportService {
+
+    private static final String LOG_PREFIX = "[ArchiveExportServiceImpl]";
+    private static final int MAX_ROWS_PER_GROUP = 10_000;
+    private static final int MAX_BYTES_PER_GROUP = 8 * 1024 * 1024;
+    private static final List<Column> COLUMNS = List.of(
+            new Column("archived_event_id", ColumnType.STRING),
+            new Column("date_archived", ColumnType.INSTANT),
+            new Column("original_owner", ColumnType.STRING),
+            new Column("number_of_participants", ColumnType.LONG),
+            new Column("banner_image", ColumnType.STRING),
+            new Column("event_id", ColumnType.STRING),
+            new Column("name", ColumnType.STRING),
+            new Column("place", ColumnType.STRING),
+            new Column("description", ColumnType.STRING),
+            new Column("start_date", ColumnType.INSTANT),
+            new Column("end_date", ColumnType.INSTANT),
+            new Column("signup_starts", ColumnType.INSTANT),
+            new Column("signup_ends", ColumnType.INSTANT),
+            new Column("min_participants", ColumnType.INT),
+            new Column("max_participants", ColumnType.INT),
+            new Column("quota_count", ColumnType.INT),
+            new Column("price", ColumnType.DOUBLE),
+            new Column("created_at", ColumnType.INSTANT));
+
+    @Value("${fi.asteriski.config.archiving.export.settle-seconds:600}")
+    private long settleSeconds;
+
+    @NonNull
+    private ArchiveExportDao archiveExportDao;
+
+    @NonNull
+    private ColdArchivedEventDao coldArchivedEventDao;
+
+    /**
+     * An export covers the events archived after the previous export's watermark up to a watermark
+     * <code>settle-seconds</code> in the past. <code>dateArchived</code> is set when the archiving transaction
+     * starts, so a row with an older date may still be committed after the export has read past it. Events archived
+     * after the watermark wait for the next export. Because the window is fixed up front, consecutive exports
+     * neither overlap nor miss rows, as long as archiving a single event takes less than the settle period.
+     */
+    @Override
+    public long exportArchivedEvents(boolean incremental, OutputStream out) throws IOException {
+        var exportedAt = Instant.now();
+        var since = incremental ? archiveExportDao.findLatestWatermark().orElse(Instant.EPOCH) : Instant.EPOCH;
+        var settled = exportedAt.minus(Duration.ofSeconds(settleSeconds));
+        var until = settled.isAfter(since) ? settled : since;
+        long rowCount;
+        try (var writer = new ColumnarFileWriter(out, COLUMNS, MAX_ROWS_PER_GROUP, MAX_BYTES_PER_GROUP)) {
+            try {
+                // Cold tier first, it holds the oldest events.
+                try (var coldEvents = coldArchivedEventDao.streamAllByDateArchivedIsAfter(since)) {
+                    coldEvents
+                            .filter(archivedEvent -> !archivedEvent.dateArchived().toInstant().isAfter(until))
+                            .forEach(archivedEvent -> writeRow(writer, archivedEvent));
+                }
+                archiveExportDao.forEachArchivedEventBetween(
+                        since, until, archivedEvent -> writeRow(writer, archivedEvent));
+            } catch (UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            rowCount = writer.getRowsWritten();
+        }
+        archiveExportDao.save(ArchiveExportEntity.builder()
+                .exportedAt(exportedAt)
+                .watermark(until)
+                .rowCount(rowCount)
+                .incremental(incremental)
+                .build());
+        log.info(String.format(
+                "%s Exported %s archived events archived after %s until %s (incremental: %s).",
+                LOG_PREFIX, rowCount, since, until, incremental));
+        return rowCount;
+    }
+
+    private static void writeRow(ColumnarFileWriter writer, ArchivedEventDto archivedEvent) {
+        var event = archivedEvent.originalEvent();
+        try {
+            writer.writeRow(
+                    String.valueOf(archivedEvent.id()),
+                    archivedEvent.dateArchived().toInstant(),
+                    archivedEvent.originalOwner(),
+                    archivedEvent.numberOfParticipants(),
+                    archivedEvent.bannerImage(),
+                    event.getId() != null ? event.getId().toString() : null,
+                    event.getName(),
+                    event.getPlace(),
+                    event.getDescription(),
+                    toInstant(event.getStartDate()),
+                    toInstant(event.getEndDate()),
+                    toInstant(event.getSignupStarts()),
+                    toInstant(event.getSignupEnds()),
+                    event.getMinParticipants(),
+                    event.getMaxParticipants(),
+                    event.getQuotas() != null ? event.getQuotas().size() : null,
+                    event.getPrice(),
+                    event.getCreatedAt());
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+
+    private static Instant toInstant(ZonedDateTime dateTime) {
+        return dateTime != null ? dateTime.toInstant() : null;
+    }
+}
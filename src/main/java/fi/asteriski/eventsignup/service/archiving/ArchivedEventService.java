@@ -16,10 +16,22 @@ public interface ArchivedEventService {
 
     void archivePastEvents();
 
-    List<ArchivedEventResponse> getAllArchivedEvents();
+    boolean archiveEventIfDue(UUID eventId);
+
+    /**
+     * @param includeColdTier Whether to read the cold tier too. Listing it reads every segment, so it is left out
+     *     unless asked.
+     */
+    List<ArchivedEventResponse> getAllArchivedEvents(boolean includeColdTier);
 
     List<ArchivedEventDto> getAllArchivedEventsForUser(String userId);
 
+    ArchivedEventDto getArchivedEvent(UUID archivedEventId, Locale usersLocale);
+
+    ArchivedEventDto restoreArchivedEvent(UUID archivedEventId, Locale usersLocale);
+
+    void offloadToColdTier();
+
     void removeArchivedEventsBeforeDate(Instant dateLimit);
 
     void removeArchivedEvent(UUID archivedEventId);
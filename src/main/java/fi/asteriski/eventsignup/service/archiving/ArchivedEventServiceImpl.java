@@ -7,25 +7,30 @@ package fi.asteriski.eventsignup.service.archiving;
 import static fi.asteriski.eventsignup.utils.Constants.UTC_TIME_ZONE;
 
 import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
 import fi.asteriski.eventsignup.exception.EventNotFoundException;
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventResponse;
 import fi.asteriski.eventsignup.model.event.EventDto;
 import fi.asteriski.eventsignup.service.event.EventService;
-import fi.asteriski.eventsignup.service.event.ImageService;
 import fi.asteriski.eventsignup.service.signup.ParticipantService;
+import fi.asteriski.eventsignup.utils.ApplicationMetrics;
+import fi.asteriski.eventsignup.utils.BannerImageNames;
 import jakarta.annotation.Resource;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
@@ -33,10 +38,14 @@ import org.springframework.stereotype.Service;
 public class ArchivedEventServiceImpl implements ArchivedEventService {
 
     private static final String LOG_PREFIX = "[ArchivedEventServiceImpl]";
+    private static final int COLD_TIER_SEGMENT_SIZE = 1000;
 
     @Value("${fi.asteriski.config.archiving.days-to-archive-past-events}")
     private Integer defaultDaysToArchivePastEvents;
 
+    @Value("${fi.asteriski.config.archiving.cold-tier.days-before-offload:90}")
+    private Integer daysBeforeColdTierOffload;
+
     @NonNull
     private ParticipantService participantService;
 
@@ -47,15 +56,22 @@ public class ArchivedEventServiceImpl implements ArchivedEventService {
     private EventService eventService;
 
     @NonNull
-    private ImageService imageService;
+    private ImageRelocationService imageRelocationService;
 
     @NonNull
     private MessageSource messageSource;
 
+    @NonNull
+    private ColdArchivedEventDao coldArchivedEventDao;
+
+    @NonNull
+    private ApplicationMetrics applicationMetrics;
+
     @Resource
     private ArchivedEventServiceImpl archivedEventService;
 
     @Override
+    @Transactional
     public ArchivedEventDto archiveEvent(UUID eventId, Locale usersLocale) {
         Supplier<EventNotFoundException> errorSupplier = (() -> {
             log.error(String.format(
@@ -71,14 +87,21 @@ public class ArchivedEventServiceImpl implements ArchivedEventService {
                 .dateArchived(ZonedDateTime.ofInstant(Instant.now(), UTC_TIME_ZONE))
                 .numberOfParticipants(numberOfParticipants)
                 .originalOwner(oldEvent.getOwner())
+                .bannerImage(BannerImageNames.normalize(oldEvent.getBannerImg()))
                 .build();
         archivedEvent = archivedEventDao.save(archivedEvent);
+        imageRelocationService.scheduleRelocation(archivedEvent.id(), archivedEvent.bannerImage());
         eventService.removeEventAndParticipants(eventId);
         return archivedEvent;
     }
 
     @Override
+    @Transactional
     public void archivePastEvents() {
+        applicationMetrics.timeArchivingJob("archive.past", this::archiveEventsPastDateLimit);
+    }
+
+    private void archiveEventsPastDateLimit() {
         var now = Instant.now();
         var dateLimit = now.minus(defaultDaysToArchivePastEvents, ChronoUnit.DAYS);
         var events = eventService.findAllByStartDateIsBeforeOrEndDateIsBefore(dateLimit, dateLimit);
@@ -87,26 +110,44 @@ public class ArchivedEventServiceImpl implements ArchivedEventService {
                 events.size(), defaultDaysToArchivePastEvents, dateLimit));
         var eventIds = events.stream().map(EventDto::getId).toList();
         eventService.deleteAllByIds(eventIds);
-        archivedEventDao.saveAll(events.stream()
-                .map(event -> {
-                    long numberOfParticipants = participantService.countAllByEvent(event.getId());
-                    var newBannerImagePath = imageService.moveBannerImage(event.getBannerImg());
-                    return ArchivedEventDto.builder()
-                            .id(event.getId())
-                            .originalEvent(event)
-                            .dateArchived(ZonedDateTime.ofInstant(now, UTC_TIME_ZONE))
-                            .numberOfParticipants(numberOfParticipants)
-                            .originalOwner(event.getOwner())
-                            .bannerImage(newBannerImagePath)
-                            .build();
-                })
-                .toList());
+        var archivedEvents = archivedEventDao.saveAll(
+                events.stream().map(event -> toArchivedEvent(event, now)).toList());
+        // The images are moved afterwards by ImageRelocationPoller, so a failing move doesn't fail the archiving.
+        archivedEvents.forEach(archivedEvent ->
+                imageRelocationService.scheduleRelocation(archivedEvent.id(), archivedEvent.bannerImage()));
         participantService.deleteAllByEventIn(eventIds);
+        applicationMetrics.countArchivedEvents("archive.past", archivedEvents.size());
+    }
+
+    /**
+     * Archives a single event if it is past its archiving date. The event's row is locked for the duration of the
+     * transaction so concurrent callers (e.g. other nodes) skip it instead of archiving it twice.
+     *
+     * @param eventId Event's id.
+     * @return True if the event was archived, false if it doesn't exist (anymore), is not due yet or is being
+     *     archived by someone else.
+     */
+    @Override
+    @Transactional
+    public boolean archiveEventIfDue(UUID eventId) {
+        var now = Instant.now();
+        var dateLimit = now.minus(defaultDaysToArchivePastEvents, ChronoUnit.DAYS);
+        var event = eventService.findAndLockEvent(eventId);
+        if (event.isEmpty() || !isPastDateLimit(event.get(), dateLimit)) {
+            return false;
+        }
+        var archivedEvent = archivedEventDao.save(toArchivedEvent(event.get(), now));
+        imageRelocationService.scheduleRelocation(archivedEvent.id(), archivedEvent.bannerImage());
+        eventService.removeEventAndParticipants(eventId);
+        applicationMetrics.countArchivedEvents("archive.due", 1);
+        return true;
     }
 
     @Override
-    public List<ArchivedEventResponse> getAllArchivedEvents() {
-        var archivedEvents = archivedEventDao.findAll();
+    public List<ArchivedEventResponse> getAllArchivedEvents(boolean includeColdTier) {
+        var archivedEvents = includeColdTier
+                ? withColdTier(archivedEventDao.findAll(), coldArchivedEventDao.findAll())
+                : archivedEventDao.findAll();
         var eventMap = new HashMap<String, List<ArchivedEventDto>>((int) Math.round(1.2 * archivedEvents.size()), 0.9f);
         for (var archivedEvent : archivedEvents) {
             if (!eventMap.containsKey(archivedEvent.originalOwner())) {
@@ -121,24 +162,118 @@ public class ArchivedEventServiceImpl implements ArchivedEventService {
 
     @Override
     public List<ArchivedEventDto> getAllArchivedEventsForUser(String userId) {
-        return archivedEventDao.findAllByOriginalOwner(userId).stream()
+        return withColdTier(
+                        archivedEventDao.findAllByOriginalOwner(userId),
+                        coldArchivedEventDao.findAllByOriginalOwner(userId))
+                .stream()
                 .sorted(Comparator.comparing(ArchivedEventDto::dateArchived))
                 .toList();
     }
 
+    @Override
+    public ArchivedEventDto getArchivedEvent(UUID archivedEventId, Locale usersLocale) {
+        return archivedEventDao
+                .findById(archivedEventId)
+                .or(() -> coldArchivedEventDao.findById(archivedEventId))
+                .orElseThrow(() -> archivedEventNotFound(archivedEventId, usersLocale));
+    }
+
+    /**
+     * Brings an archived event back from the cold tier into the database with its original id and archiving date.
+     * Archived events already in the database are returned as is.
+     */
+    @Override
+    @Transactional
+    public ArchivedEventDto restoreArchivedEvent(UUID archivedEventId, Locale usersLocale) {
+        var hotEvent = archivedEventDao.findById(archivedEventId);
+        if (hotEvent.isPresent()) {
+            return hotEvent.get();
+        }
+        var coldEvent = coldArchivedEventDao
+                .findById(archivedEventId)
+                .orElseThrow(() -> archivedEventNotFound(archivedEventId, usersLocale));
+        var restored = archivedEventDao.insert(coldEvent);
+        coldArchivedEventDao.deleteById(archivedEventId);
+        log.info(String.format("%s Restored archived event <%s> from cold tier.", LOG_PREFIX, archivedEventId));
+        return restored;
+    }
+
+    /**
+     * Moves archived events older than the configured threshold from the database into the cold tier in segments of
+     * {@value COLD_TIER_SEGMENT_SIZE}. A segment is written before its rows are deleted, so a crash in between only
+     * leaves rows that are skipped on the next run.
+     */
+    @Override
+    public void offloadToColdTier() {
+        applicationMetrics.timeArchivingJob("offload.cold", this::offloadArchivedEvents);
+    }
+
+    private void offloadArchivedEvents() {
+        var dateLimit = Instant.now().minus(daysBeforeColdTierOffload, ChronoUnit.DAYS);
+        var offloaded = 0;
+        List<ArchivedEventDto> batch;
+        do {
+            batch = archivedEventDao.findOldestByDateArchivedIsBefore(dateLimit, COLD_TIER_SEGMENT_SIZE);
+            coldArchivedEventDao.saveAll(batch.stream()
+                    .filter(archivedEvent -> !coldArchivedEventDao.existsById(archivedEvent.id()))
+                    .toList());
+            archivedEventDao.deleteAllByIds(
+                    batch.stream().map(ArchivedEventDto::id).toList());
+            offloaded += batch.size();
+        } while (batch.size() == COLD_TIER_SEGMENT_SIZE);
+        log.info(String.format(
+                "%s Offloaded %s archived events archived before %s to cold tier.", LOG_PREFIX, offloaded, dateLimit));
+        applicationMetrics.countArchivedEvents("offload.cold", offloaded);
+    }
+
     @Override
     public void removeArchivedEventsBeforeDate(Instant dateLimit) {
         archivedEventDao.deleteAllByDateArchivedIsBefore(dateLimit);
+        coldArchivedEventDao.deleteAllByDateArchivedIsBefore(dateLimit);
     }
 
     @Override
     public void removeArchivedEvent(UUID archivedEventId) {
         archivedEventDao.deleteById(archivedEventId);
+        coldArchivedEventDao.deleteById(archivedEventId);
     }
 
     @Override
     public void removeArchivedEventsOlderThanOneYear() {
         var dateLimit = Instant.now().minus(1, ChronoUnit.YEARS);
-        removeArchivedEventsBeforeDate(dateLimit);
+        applicationMetrics.timeArchivingJob("remove.old", () -> removeArchivedEventsBeforeDate(dateLimit));
+    }
+
+    private ArchivedEventDto toArchivedEvent(EventDto event, Instant now) {
+        long numberOfParticipants = participantService.countAllByEvent(event.getId());
+        return ArchivedEventDto.builder()
+                .id(event.getId())
+                .originalEvent(event)
+                .dateArchived(ZonedDateTime.ofInstant(now, UTC_TIME_ZONE))
+                .numberOfParticipants(numberOfParticipants)
+                .originalOwner(event.getOwner())
+                .bannerImage(BannerImageNames.normalize(event.getBannerImg()))
+                .build();
+    }
+
+    private EventNotFoundException archivedEventNotFound(UUID archivedEventId, Locale usersLocale) {
+        log.info(String.format("%s Archived event with id <%s> was not found.", LOG_PREFIX, archivedEventId));
+        return new EventNotFoundException(String.format(
+                messageSource.getMessage("event.not.found.message", null, usersLocale), archivedEventId));
+    }
+
+    /** Combines both tiers. An event that is in both (interrupted offload) is taken from the database. */
+    private static List<ArchivedEventDto> withColdTier(List<ArchivedEventDto> hot, List<ArchivedEventDto> cold) {
+        if (cold.isEmpty()) {
+            return hot;
+        }
+        var hotIds = hot.stream().map(ArchivedEventDto::id).collect(Collectors.toSet());
+        return Stream.concat(hot.stream(), cold.stream().filter(archivedEvent -> !hotIds.contains(archivedEvent.id())))
+                .toList();
+    }
+
+    private boolean isPastDateLimit(EventDto event, Instant dateLimit) {
+        return event.getStartDate().toInstant().isBefore(dateLimit)
+                || (event.getEndDate() != null && event.getEndDate().toInstant().isBefore(dateLimit));
     }
 }
@@ -0,0 +1,48 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/** Moves archived events' banner images. Every node runs one and they share the work via row locks. */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class ImageRelocationPoller {
+
+    private static final String LOG_PREFIX = "[ImageRelocationPoller]";
+
+    @Value("${fi.asteriski.config.archiving.image-relocation.retention-days:30}")
+    private Integer retentionDays;
+
+    @NonNull
+    private ImageRelocationService imageRelocationService;
+
+    @Scheduled(
+            fixedDelayString = "${fi.asteriski.config.archiving.image-relocation.poll-interval-millis:30000}",
+            initialDelayString = "${fi.asteriski.config.archiving.image-relocation.poll-interval-millis:30000}")
+    public void poll() {
+        try {
+            // Failed moves are rescheduled into the future, so this ends.
+            while (imageRelocationService.relocateDueImages() > 0) {
+                log.debug(String.format("%s Relocated a batch of images.", LOG_PREFIX));
+            }
+        } catch (RuntimeException runtimeException) {
+            log.error(String.format("%s Relocating images failed: %s", LOG_PREFIX, runtimeException));
+        }
+    }
+
+    @Scheduled(cron = "${fi.asteriski.config.archiving.image-relocation.cleanup-cron:0 45 4 * * ?}")
+    public void removeOldRelocations() {
+        imageRelocationService.removeDoneRelocationsBefore(Instant.now().minus(retentionDays, ChronoUnit.DAYS));
+    }
+}
@@ -0,0 +1,27 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public interface ImageRelocationService {
+
+    /**
+     * Records that the archived event's banner image is to be moved into the archive. Call in the transaction that
+     * archives the event. Does nothing if the event has no image or its image is stored by content hash, which stays
+     * where it is.
+     */
+    void scheduleRelocation(UUID archivedEventId, String bannerImage);
+
+    /**
+     * Moves one batch of due images in parallel. A failed move is retried later with a growing delay.
+     *
+     * @return Number of relocations handled. 0 means there was nothing due.
+     */
+    int relocateDueImages();
+
+    void removeDoneRelocationsBefore(Instant dateLimit);
+}
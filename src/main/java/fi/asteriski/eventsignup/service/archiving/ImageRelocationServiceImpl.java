@@ -0,0 +1,164 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ImageRelocationDao;
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationEntity;
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationStatus;
+import fi.asteriski.eventsignup.service.event.ImageService;
+import fi.asteriski.eventsignup.utils.BannerImageNames;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+/**
+ * Moves archived events' banner images into the archive separately from archiving the events, so a failing move
+ * doesn't roll back the archiving. Like the notification outbox, every node polls for due relocations and
+ * <code>FOR UPDATE SKIP LOCKED</code> hands each to one node. A batch's moves run in parallel in a pool of
+ * <code>concurrency</code> threads.
+ */
+@Log4j2
+@Service
+public class ImageRelocationServiceImpl implements ImageRelocationService {
+
+    private static final String LOG_PREFIX = "[ImageRelocationServiceImpl]";
+
+    private final ImageRelocationDao imageRelocationDao;
+    private final ArchivedEventDao archivedEventDao;
+    private final ImageService imageService;
+    private final ExecutorService executor;
+
+    @Value("${fi.asteriski.config.archiving.image-relocation.batch-size:20}")
+    private Integer batchSize;
+
+    @Value("${fi.asteriski.config.archiving.image-relocation.max-attempts:10}")
+    private Integer maxAttempts;
+
+    @Value("${fi.asteriski.config.archiving.image-relocation.retry-base-delay-millis:60000}")
+    private Long retryBaseDelayMillis;
+
+    @Value("${fi.asteriski.config.archiving.image-relocation.retry-max-delay-millis:21600000}")
+    private Long retryMaxDelayMillis;
+
+    @Value("${fi.asteriski.config.archiving.image-relocation.move-timeout-millis:60000}")
+    private Long moveTimeoutMillis;
+
+    public ImageRelocationServiceImpl(
+            ImageRelocationDao imageRelocationDao,
+            ArchivedEventDao archivedEventDao,
+            ImageService imageService,
+            @Value("${fi.asteriski.config.archiving.image-relocation.concurrency:4}") int concurrency) {
+        this.imageRelocationDao = imageRelocationDao;
+        this.archivedEventDao = archivedEventDao;
+        this.imageService = imageService;
+        this.executor = Executors.newFixedThreadPool(
+                concurrency,
+                Thread.ofPlatform().name("image-relocations-", 0).daemon(true).factory());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    @Transactional
+    public void scheduleRelocation(UUID archivedEventId, String bannerImage) {
+        if (!StringUtils.hasText(bannerImage) || BannerImageNames.contentHash(bannerImage) != null) {
+            return;
+        }
+        imageRelocationDao.save(ImageRelocationEntity.builder()
+                .archivedEventId(archivedEventId)
+                .sourceName(bannerImage)
+                .status(ImageRelocationStatus.PENDING)
+                .nextAttemptAt(Instant.now())
+                .build());
+    }
+
+    /**
+     * The batch's rows stay locked until all of its moves have finished (or timed out). A move that timed out may
+     * still finish later, its retry then finds the image already moved.
+     */
+    @Override
+    @Transactional
+    public int relocateDueImages() {
+        var relocations = imageRelocationDao.findDueAndLock(Instant.now(), batchSize);
+        if (relocations.isEmpty()) {
+            return 0;
+        }
+        var moves = relocations.stream()
+                .map(relocation -> CompletableFuture.supplyAsync(
+                        () -> imageService.moveBannerImage(relocation.getSourceName()), executor))
+                .toList();
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(moveTimeoutMillis);
+        for (int i = 0; i < relocations.size(); i++) {
+            var relocation = relocations.get(i);
+            relocation.setAttempts(relocation.getAttempts() + 1);
+            try {
+                relocation.setTargetName(
+                        moves.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                relocation.setStatus(ImageRelocationStatus.DONE);
+                relocation.setLastError(null);
+            } catch (ExecutionException executionException) {
+                retryLater(relocation, executionException.getCause());
+            } catch (TimeoutException timeoutException) {
+                retryLater(relocation, timeoutException);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                retryLater(relocation, interruptedException);
+            }
+        }
+        imageRelocationDao.saveAll(relocations);
+        // After saving, as the bulk update clears the persistence context.
+        for (var relocation : relocations) {
+            if (relocation.getStatus() != ImageRelocationStatus.DONE) {
+                continue;
+            }
+            if (!archivedEventDao.updateBannerImage(relocation.getArchivedEventId(), relocation.getTargetName())) {
+                log.info(String.format(
+                        "%s Archived event <%s> is no longer in the database. Its image was moved to <%s>.",
+                        LOG_PREFIX, relocation.getArchivedEventId(), relocation.getTargetName()));
+            }
+        }
+        return relocations.size();
+    }
+
+    @Override
+    public void removeDoneRelocationsBefore(Instant dateLimit) {
+        var removed = imageRelocationDao.deleteDoneBefore(dateLimit);
+        log.info(String.format("%s Removed %s image relocations done before %s.", LOG_PREFIX, removed, dateLimit));
+    }
+
+    private void retryLater(ImageRelocationEntity relocation, Throwable error) {
+        var attempts = relocation.getAttempts();
+        relocation.setLastError(String.valueOf(error));
+        if (attempts >= maxAttempts) {
+            relocation.setStatus(ImageRelocationStatus.FAILED);
+            log.error(String.format(
+                    "%s Giving up moving image <%s> of archived event <%s> after %s attempts: %s",
+                    LOG_PREFIX, relocation.getSourceName(), relocation.getArchivedEventId(), attempts, error));
+            return;
+        }
+        // Exponential backoff: base, 2 * base, 4 * base, ... capped at the max delay.
+        var delayMillis = Math.min(retryMaxDelayMillis, retryBaseDelayMillis << Math.min(attempts - 1, 30));
+        relocation.setNextAttemptAt(Instant.now().plus(Duration.ofMillis(delayMillis)));
+        log.warn(String.format(
+                "%s Moving image <%s> failed (attempt %s). Retrying in %s ms. Error was: %s",
+                LOG_PREFIX, relocation.getSourceName(), attempts, delayMillis, error));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.blob;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.core.io.Resource;
+
+/**
+ * Stores banner images (and their metadata and variants) and the cold archive's segments by key. Keys are relative,
+ * '/' separated paths like <code>objects/ab/cd/abcd...</code>. Which implementation is used is selected with
+ * <code>fi.asteriski.config.event.banner-image.store.type</code>: <code>local</code> (the default) keeps the blobs
+ * under the banner image root path, <code>s3</code> in an S3 compatible bucket shared by all nodes.
+ *
+ * <p>Writes replace the whole blob at once, so a reader sees either the old or the new content, never a partial one.
+ */
+public interface BlobStore {
+
+    record BlobInfo(String key, long size, Instant lastModified) {}
+
+    /**
+     * The content is read only when the resource's stream is opened, and then streamed.
+     *
+     * @return The blob or empty if there is no blob with the key.
+     */
+    Optional<Resource> get(String key) throws IOException;
+
+    /**
+     * Reads <code>length</code> bytes of the blob starting at <code>offset</code>.
+     *
+     * @throws java.io.FileNotFoundException If there is no blob with the key.
+     * @throws java.io.EOFException If the blob ends before the range does.
+     */
+    byte[] read(String key, long offset, int length) throws IOException;
+
+    /** @return When the blob was last written or touched, or empty if there is no blob with the key. */
+    Optional<Instant> lastModified(String key) throws IOException;
+
+    default boolean exists(String key) throws IOException {
+        return lastModified(key).isPresent();
+    }
+
+    /**
+     * Stores the content of the file under the key, streaming it. The file may be moved into the store, so the caller
+     * must not use it afterwards other than deleting it if it still exists.
+     */
+    void put(String key, Path source) throws IOException;
+
+    /** For small blobs like metadata. */
+    void put(String key, byte[] content) throws IOException;
+
+    /** Updates the blob's modification time to now. */
+    void touch(String key) throws IOException;
+
+    /** Does nothing if there is no blob with the key. */
+    void delete(String key) throws IOException;
+
+    /**
+     * Lists the blobs under the directory, i.e. the keys starting with <code>directory/</code>, in no particular
+     * order. The listing is fetched as the stream is consumed, so it may fail with an unchecked exception then. The
+     * stream must be closed.
+     */
+    Stream<BlobInfo> list(String directory) throws IOException;
+}
@@ -0,0 +1,164 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.blob;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the blobs as files under a root directory, a key being the file's path relative to it. New content is written
+ * to a hidden temp file next to the target and atomically renamed over it. Suits a single node, or several sharing
+ * the directory over a network file system.
+ */
+@Component
+@ConditionalOnProperty(
+        name = "fi.asteriski.config.event.banner-image.store.type",
+        havingValue = "local",
+        matchIfMissing = true)
+public class LocalBlobStore implements BlobStore {
+
+    private final Path root;
+
+    public LocalBlobStore(@Value("${fi.asteriski.config.event.root-path-bannerimg}") String root) {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public Optional<Resource> get(String key) {
+        var file = resolve(key);
+        if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(new FileSystemResource(file));
+    }
+
+    @Override
+    public byte[] read(String key, long offset, int length) throws IOException {
+        try (var channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException(String.format("<%s> ends before %s.", key, offset + length));
+                }
+            }
+            return buffer.array();
+        } catch (NoSuchFileException noSuchFileException) {
+            throw new FileNotFoundException(key);
+        }
+    }
+
+    @Override
+    public Optional<Instant> lastModified(String key) throws IOException {
+        try {
+            return Optional.of(Files.getLastModifiedTime(resolve(key)).toInstant());
+        } catch (NoSuchFileException noSuchFileException) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        var target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException atomicMoveNotSupportedException) {
+            // The source is on another file system.
+            var tempFile = Files.createTempFile(target.getParent(), ".blob-", ".tmp");
+            try {
+                Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] content) throws IOException {
+        var target = resolve(key);
+        Files.createDirectories(target.getParent());
+        var tempFile = Files.createTempFile(target.getParent(), ".blob-", ".tmp");
+        try {
+            Files.write(tempFile, content);
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public void touch(String key) throws IOException {
+        Files.setLastModifiedTime(resolve(key), FileTime.from(Instant.now()));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Stream<BlobInfo> list(String directory) throws IOException {
+        var start = root.resolve(directory).normalize();
+        if (!start.startsWith(root)) {
+            throw new IllegalArgumentException(String.format("Directory <%s> is outside the store.", directory));
+        }
+        if (!Files.isDirectory(start)) {
+            return Stream.empty();
+        }
+        return Files.walk(start)
+                .filter(file -> !file.equals(start))
+                .map(this::blobInfo)
+                .filter(Objects::nonNull);
+    }
+
+    /** Null for directories and files deleted while listing. */
+    private BlobInfo blobInfo(Path file) {
+        try {
+            var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            return new BlobInfo(
+                    root.relativize(file).toString().replace(File.separatorChar, '/'),
+                    attributes.size(),
+                    attributes.lastModifiedTime().toInstant());
+        } catch (NoSuchFileException noSuchFileException) {
+            return null;
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+
+    private Path resolve(String key) {
+        var file = root.resolve(key).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IllegalArgumentException(String.format("Key <%s> is outside the store.", key));
+        }
+        return file;
+    }
+}
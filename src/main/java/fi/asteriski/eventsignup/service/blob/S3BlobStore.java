@@ -0,0 +1,311 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.blob;
+
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.stream.Stream;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Keeps the blobs in an S3 compatible bucket, so all nodes serve the same images. Works with self hosted stores like
+ * MinIO by setting the endpoint and path style access. Without an access key the SDK's default credentials (env,
+ * profile, instance role...) are used.
+ *
+ * <p>Files of at least <code>multipart-threshold-bytes</code> are uploaded in parts of <code>part-size-bytes</code>,
+ * read from the file one part at a time. Reads stream the object straight from the bucket.
+ */
+@Log4j2
+@Component
+@ConditionalOnProperty(name = "fi.asteriski.config.event.banner-image.store.type", havingValue = "s3")
+public class S3BlobStore implements BlobStore {
+
+    private static final String LOG_PREFIX = "[S3BlobStore]";
+    /** S3's minimum size for all but the last part of a multipart upload. */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final long multipartThresholdBytes;
+    private final int partSizeBytes;
+
+    public S3BlobStore(
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.bucket}") String bucket,
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.endpoint:}") String endpoint,
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.region:us-east-1}") String region,
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.access-key:}") String accessKey,
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.secret-key:}") String secretKey,
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.path-style-access:false}")
+                    boolean pathStyleAccess,
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.multipart-threshold-bytes:8388608}")
+                    long multipartThresholdBytes,
+            @Value("${fi.asteriski.config.event.banner-image.store.s3.part-size-bytes:8388608}") int partSizeBytes) {
+        var builder = S3Client.builder().region(Region.of(region)).forcePathStyle(pathStyleAccess);
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if (StringUtils.hasText(accessKey)) {
+            builder.credentialsProvider(
+                    StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        }
+        this.s3Client = builder.build();
+        this.bucket = bucket;
+        this.multipartThresholdBytes = multipartThresholdBytes;
+        this.partSizeBytes = Math.max(partSizeBytes, MIN_PART_SIZE);
+    }
+
+    @PreDestroy
+    public void close() {
+        s3Client.close();
+    }
+
+    /** Only the object's headers are fetched here, the content when the resource's stream is opened. */
+    @Override
+    public Optional<Resource> get(String key) throws IOException {
+        return head(key).map(head -> new S3BlobResource(key, head.contentLength(), head.lastModified()));
+    }
+
+    /** A ranged GET, so only the requested bytes are transferred. */
+    @Override
+    public byte[] read(String key, long offset, int length) throws IOException {
+        byte[] content;
+        try {
+            content = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .range(String.format("bytes=%s-%s", offset, offset + length - 1))
+                            .build())
+                    .asByteArray();
+        } catch (NoSuchKeyException noSuchKeyException) {
+            throw new FileNotFoundException(key);
+        } catch (SdkException sdkException) {
+            throw new IOException(String.format("Reading <%s> failed.", key), sdkException);
+        }
+        if (content.length < length) {
+            throw new EOFException(String.format("<%s> ends before %s.", key, offset + length));
+        }
+        return content;
+    }
+
+    @Override
+    public Optional<Instant> lastModified(String key) throws IOException {
+        return head(key).map(HeadObjectResponse::lastModified);
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        var size = Files.size(source);
+        try {
+            if (size < multipartThresholdBytes) {
+                s3Client.putObject(
+                        PutObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .contentLength(size)
+                                .build(),
+                        RequestBody.fromFile(source));
+            } else {
+                putMultipart(key, source);
+            }
+        } catch (SdkException sdkException) {
+            throw new IOException(String.format("Uploading <%s> failed.", key), sdkException);
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] content) throws IOException {
+        try {
+            s3Client.putObject(
+                    PutObjectRequest.builder().bucket(bucket).key(key).build(), RequestBody.fromBytes(content));
+        } catch (SdkException sdkException) {
+            throw new IOException(String.format("Uploading <%s> failed.", key), sdkException);
+        }
+    }
+
+    /** S3 has no touch, so the object is copied onto itself. Only the object's metadata changes on the server. */
+    @Override
+    public void touch(String key) throws IOException {
+        try {
+            s3Client.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket)
+                    .sourceKey(key)
+                    .destinationBucket(bucket)
+                    .destinationKey(key)
+                    .metadataDirective(MetadataDirective.REPLACE)
+                    .build());
+        } catch (SdkException sdkException) {
+            throw new IOException(String.format("Touching <%s> failed.", key), sdkException);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3Client.deleteObject(
+                    DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+        } catch (SdkException sdkException) {
+            throw new IOException(String.format("Deleting <%s> failed.", key), sdkException);
+        }
+    }
+
+    /** Pages of up to 1000 keys are fetched from the bucket as the stream is consumed. */
+    @Override
+    public Stream<BlobInfo> list(String directory) {
+        var request = ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(directory + "/")
+                .build();
+        return s3Client.listObjectsV2Paginator(request).contents().stream()
+                .map(object -> new BlobInfo(object.key(), object.size(), object.lastModified()));
+    }
+
+    /** Aborted on failure, so the bucket isn't left with (billed) orphan parts. */
+    private void putMultipart(String key, Path source) throws IOException {
+        var uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .build())
+                .uploadId();
+        try (InputStream inputStream = Files.newInputStream(source)) {
+            var parts = new ArrayList<CompletedPart>();
+            var buffer = new byte[partSizeBytes];
+            int read;
+            while ((read = inputStream.readNBytes(buffer, 0, partSizeBytes)) > 0) {
+                var partNumber = parts.size() + 1;
+                var response = s3Client.uploadPart(
+                        UploadPartRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .contentLength((long) read)
+                                .build(),
+                        RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, read), read));
+                parts.add(CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.eTag())
+                        .build());
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+            log.debug(String.format("%s Uploaded <%s> in %s parts.", LOG_PREFIX, key, parts.size()));
+        } catch (IOException | SdkException exception) {
+            abortMultipart(key, uploadId);
+            throw exception;
+        }
+    }
+
+    private void abortMultipart(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (SdkException sdkException) {
+            log.warn(String.format(
+                    "%s Aborting multipart upload %s of <%s> failed: %s", LOG_PREFIX, uploadId, key, sdkException));
+        }
+    }
+
+    private Optional<HeadObjectResponse> head(String key) throws IOException {
+        try {
+            return Optional.of(s3Client.headObject(
+                    HeadObjectRequest.builder().bucket(bucket).key(key).build()));
+        } catch (S3Exception s3Exception) {
+            if (s3Exception.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException(String.format("Reading <%s> failed.", key), s3Exception);
+        } catch (SdkException sdkException) {
+            throw new IOException(String.format("Reading <%s> failed.", key), sdkException);
+        }
+    }
+
+    private final class S3BlobResource extends AbstractResource {
+
+        private final String key;
+        private final long contentLength;
+        private final Instant lastModified;
+
+        private S3BlobResource(String key, long contentLength, Instant lastModified) {
+            this.key = key;
+            this.contentLength = contentLength;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String getDescription() {
+            return String.format("S3 object [%s/%s]", bucket, key);
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified.toEpochMilli();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return s3Client.getObject(
+                        GetObjectRequest.builder().bucket(bucket).key(key).build());
+            } catch (SdkException sdkException) {
+                throw new IOException(String.format("Reading <%s> failed.", key), sdkException);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.digest;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/** Checkpoints the digests collected on this node and sends the ones that are due. Runs on every node. */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class OwnerDigestPoller {
+
+    private static final String LOG_PREFIX = "[OwnerDigestPoller]";
+
+    @NonNull
+    private OwnerDigestService ownerDigestService;
+
+    @Scheduled(
+            fixedDelayString = "${fi.asteriski.config.digest.checkpoint-interval-millis:10000}",
+            initialDelayString = "${fi.asteriski.config.digest.checkpoint-interval-millis:10000}")
+    public void poll() {
+        try {
+            ownerDigestService.checkpoint();
+            // One batch per poll: digests that fail to send stay due and would otherwise be retried in a tight loop.
+            var handled = ownerDigestService.sendDueDigests();
+            if (handled > 0) {
+                log.debug(String.format("%s Handled %s owner digests.", LOG_PREFIX, handled));
+            }
+        } catch (RuntimeException runtimeException) {
+            log.error(String.format("%s Handling owner digests failed: %s", LOG_PREFIX, runtimeException));
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.digest;
+
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+
+public interface OwnerDigestService {
+    /**
+     * Adds a notification to its event owner's digest.
+     *
+     * @return True if the notification is replaced by the digest and must not be sent on its own.
+     */
+    boolean collect(OutboxMessageEntity message, EventDto event);
+
+    /** Writes the digests collected in memory since the last checkpoint to the database. */
+    void checkpoint();
+
+    /**
+     * Sends one batch of digests whose window has ended.
+     *
+     * @return Number of digests handled.
+     */
+    int sendDueDigests();
+}
@@ -0,0 +1,191 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.digest;
+
+import fi.asteriski.eventsignup.dao.digest.OwnerDigestDao;
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntry;
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.utils.EmailService;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Collects event changes (and optionally signups) per owner in memory: one small counter entry per event. Every
+ * checkpoint moves the collected counts into the owner_digests table, where all nodes' counts end up in the same row.
+ * A digest is sent when the window has passed since the first change in it. Anything collected after the last
+ * checkpoint is lost if the node crashes; on a normal shutdown it is checkpointed.
+ */
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class OwnerDigestServiceImpl implements OwnerDigestService {
+
+    private static final String LOG_PREFIX = "[OwnerDigestServiceImpl]";
+
+    /** Counts collected since the last checkpoint. Contact details are null until the owner saves an event. */
+    private static final class PendingDigest {
+        private String email;
+        private String locale;
+        private String timeZone;
+        private final Map<UUID, OwnerDigestEntry> entries = new HashMap<>();
+    }
+
+    @Value("${fi.asteriski.config.digest.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${fi.asteriski.config.digest.window-minutes:60}")
+    private Long windowMinutes;
+
+    @Value("${fi.asteriski.config.digest.include-signups:false}")
+    private Boolean includeSignups;
+
+    @Value("${fi.asteriski.config.digest.batch-size:20}")
+    private Integer batchSize;
+
+    @Value("${fi.asteriski.config.digest.delivery-timeout-millis:60000}")
+    private Long deliveryTimeoutMillis;
+
+    @NonNull
+    private OwnerDigestDao ownerDigestDao;
+
+    @NonNull
+    private EmailService emailService;
+
+    private final Map<String, PendingDigest> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean collect(OutboxMessageEntity message, EventDto event) {
+        if (!enabled || event.getOwner() == null) {
+            return false;
+        }
+        return switch (message.getType()) {
+            case EVENT_SAVED -> {
+                add(event, message, new OwnerDigestEntry(event.getName(), 1, 0, 0));
+                yield true;
+            }
+            case SIGNUP_SUCCESSFUL -> {
+                if (includeSignups) {
+                    add(event, null, new OwnerDigestEntry(event.getName(), 0, 1, 0));
+                }
+                yield false;
+            }
+            case SIGNUP_CANCELLED -> {
+                if (includeSignups) {
+                    add(event, null, new OwnerDigestEntry(event.getName(), 0, 0, 1));
+                }
+                yield false;
+            }
+        };
+    }
+
+    @Override
+    @PreDestroy
+    public void checkpoint() {
+        var now = Instant.now();
+        for (var owner : pending.keySet()) {
+            var digest = pending.remove(owner);
+            if (digest == null) {
+                continue;
+            }
+            try {
+                var merged = ownerDigestDao.merge(
+                        owner, digest.email, digest.locale, digest.timeZone, digest.entries, now);
+                if (!merged) {
+                    log.debug(String.format(
+                            "%s Owner %s has no known email. Dropped %s digest entries.",
+                            LOG_PREFIX, owner, digest.entries.size()));
+                }
+            } catch (RuntimeException runtimeException) {
+                log.error(String.format(
+                        "%s Checkpointing the digest of owner %s failed: %s", LOG_PREFIX, owner, runtimeException));
+                // Put back for the next checkpoint.
+                pending.merge(owner, digest, OwnerDigestServiceImpl::mergePending);
+            }
+        }
+    }
+
+    /** The batch stays locked until the digests have been sent, so other nodes skip them. */
+    @Override
+    @Transactional
+    public int sendDueDigests() {
+        var digests = ownerDigestDao.findDueAndLock(Instant.now().minus(Duration.ofMinutes(windowMinutes)), batchSize);
+        if (digests.isEmpty()) {
+            return 0;
+        }
+        var deliveries = new ArrayList<CompletableFuture<Void>>(digests.size());
+        for (var digest : digests) {
+            try {
+                deliveries.add(emailService.sendOwnerDigestEmail(digest, includeSignups));
+            } catch (RuntimeException runtimeException) {
+                deliveries.add(CompletableFuture.failedFuture(runtimeException));
+            }
+        }
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deliveryTimeoutMillis);
+        for (int i = 0; i < digests.size(); i++) {
+            var digest = digests.get(i);
+            try {
+                deliveries.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                digest.setEntries(new HashMap<>());
+                digest.setWindowStartedAt(null);
+            } catch (ExecutionException | TimeoutException exception) {
+                // Stays due and is tried again on the next poll.
+                log.error(String.format(
+                        "%s Sending the digest of owner %s failed. Error was: %s",
+                        LOG_PREFIX, digest.getOwner(), exception));
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        ownerDigestDao.saveAll(digests);
+        return digests.size();
+    }
+
+    private void add(EventDto event, OutboxMessageEntity contact, OwnerDigestEntry entry) {
+        pending.compute(event.getOwner(), (owner, digest) -> {
+            var result = digest != null ? digest : new PendingDigest();
+            if (contact != null) {
+                result.email = contact.getRecipient();
+                result.locale = contact.getLocale();
+                result.timeZone = contact.getTimeZone();
+            }
+            result.entries.merge(event.getId(), entry, (old, added) -> {
+                old.merge(added);
+                return old;
+            });
+            return result;
+        });
+    }
+
+    private static PendingDigest mergePending(PendingDigest newer, PendingDigest older) {
+        if (newer.email == null) {
+            newer.email = older.email;
+            newer.locale = older.locale;
+            newer.timeZone = older.timeZone;
+        }
+        older.entries.forEach((eventId, entry) -> newer.entries.merge(eventId, entry, (newerEntry, olderEntry) -> {
+            olderEntry.merge(newerEntry);
+            return olderEntry;
+        }));
+        return newer;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.email;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/** Drains parked emails. Like the outbox poller, every node runs one and they share the work via leases. */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class ParkedEmailPoller {
+
+    private static final String LOG_PREFIX = "[ParkedEmailPoller]";
+
+    @NonNull
+    private ParkedEmailService parkedEmailService;
+
+    @Scheduled(
+            fixedDelayString = "${fi.asteriski.config.email.parked.poll-interval-millis:10000}",
+            initialDelayString = "${fi.asteriski.config.email.parked.poll-interval-millis:10000}")
+    public void poll() {
+        try {
+            while (parkedEmailService.drainParkedEmails() > 0) {
+                log.debug(String.format("%s Drained a batch of parked emails.", LOG_PREFIX));
+            }
+        } catch (RuntimeException runtimeException) {
+            log.error(String.format("%s Draining parked emails failed: %s", LOG_PREFIX, runtimeException));
+        }
+    }
+}
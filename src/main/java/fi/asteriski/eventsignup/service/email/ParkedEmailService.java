@@ -0,0 +1,15 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.email;
+
+public interface ParkedEmailService {
+    /**
+     * Sends one batch of parked emails, if the SMTP circuit allows it.
+     *
+     * @return Number of parked emails removed (sent or given up on). Zero when there was nothing to do or the SMTP
+     *     server is still unreachable.
+     */
+    int drainParkedEmails();
+}
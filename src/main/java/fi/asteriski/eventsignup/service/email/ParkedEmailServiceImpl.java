@@ -0,0 +1,188 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.email;
+
+import fi.asteriski.eventsignup.dao.email.ParkedEmailDao;
+import fi.asteriski.eventsignup.email.SmtpCircuitBreaker;
+import fi.asteriski.eventsignup.model.email.ParkedEmailEntity;
+import fi.asteriski.eventsignup.utils.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends parked emails once the SMTP server is reachable again, at most <code>drain-rate-per-second</code> of them, so
+ * a recovering server isn't flooded with the whole backlog at once. Emails are sent directly, bypassing the delivery
+ * queues, and deleted when sent.<br>
+ * A batch is claimed in a short transaction of its own by setting a lease on its emails, like OutboxServiceImpl does.
+ * The emails are sent without a lock or connection being held and each result is saved in a transaction of its own.
+ */
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class ParkedEmailServiceImpl implements ParkedEmailService {
+
+    private static final String LOG_PREFIX = "[ParkedEmailServiceImpl]";
+
+    @Value("${fi.asteriski.config.email.parked.batch-size:50}")
+    private Integer batchSize;
+
+    @Value("${fi.asteriski.config.email.parked.drain-rate-per-second:2}")
+    private Double drainRatePerSecond;
+
+    @Value("${fi.asteriski.config.email.parked.max-attempts:5}")
+    private Integer maxAttempts;
+
+    @Value("${fi.asteriski.config.email.parked.lease-millis:300000}")
+    private Long leaseMillis;
+
+    @NonNull
+    private ParkedEmailDao parkedEmailDao;
+
+    @NonNull
+    private SmtpCircuitBreaker smtpCircuitBreaker;
+
+    @NonNull
+    private JavaMailSender javaMailSender;
+
+    @NonNull
+    private MeterRegistry meterRegistry;
+
+    private RateLimiter rateLimiter;
+    private Counter drainedCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void init() {
+        rateLimiter = new RateLimiter(drainRatePerSecond, 1);
+        Gauge.builder("email.parked.count", parkedEmailDao, ParkedEmailDao::count)
+                .description("Emails waiting for the SMTP server to become reachable.")
+                .register(meterRegistry);
+        drainedCounter = Counter.builder("email.parked.drained").register(meterRegistry);
+        droppedCounter = Counter.builder("email.parked.dropped")
+                .description("Parked emails given up on after max-attempts.")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public int drainParkedEmails() {
+        if (smtpCircuitBreaker.getState() == SmtpCircuitBreaker.State.OPEN) {
+            return 0;
+        }
+        // Truncated to what the database stores, since results are saved only if the lease still matches.
+        var leaseUntil = Instant.now().plus(Duration.ofMillis(leaseMillis)).truncatedTo(ChronoUnit.MILLIS);
+        var parkedEmails = parkedEmailDao.claimDue(Instant.now(), batchSize, leaseUntil);
+        var removed = 0;
+        var tried = 0;
+        for (var parkedEmail : parkedEmails) {
+            // Once the lease runs out another node may claim the rest of the batch.
+            if (!smtpCircuitBreaker.allowRequest() || !Instant.now().isBefore(leaseUntil)) {
+                break;
+            }
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            var outcome = send(parkedEmail, leaseUntil);
+            if (outcome == Outcome.UNREACHABLE) {
+                break;
+            }
+            tried++;
+            // Emails kept for a retry don't count, so a batch of failing emails ends the poll instead of looping.
+            if (outcome == Outcome.REMOVED) {
+                removed++;
+            }
+        }
+        // Emails not tried, e.g. because the circuit opened, can be claimed again right away.
+        release(parkedEmails.subList(tried, parkedEmails.size()), leaseUntil);
+        return removed;
+    }
+
+    private void release(List<ParkedEmailEntity> untried, Instant leaseUntil) {
+        if (untried.isEmpty()) {
+            return;
+        }
+        try {
+            parkedEmailDao.release(untried.stream().map(ParkedEmailEntity::getId).toList(), leaseUntil);
+        } catch (RuntimeException runtimeException) {
+            // They are claimed again once the lease runs out.
+            log.error(String.format(
+                    "%s Releasing %s parked emails failed: %s", LOG_PREFIX, untried.size(), runtimeException));
+        }
+    }
+
+    private enum Outcome {
+        REMOVED,
+        RETRY_LATER,
+        UNREACHABLE
+    }
+
+    private Outcome send(ParkedEmailEntity parkedEmail, Instant leaseUntil) {
+        try {
+            var message = javaMailSender.createMimeMessage(new ByteArrayInputStream(parkedEmail.getContent()));
+            javaMailSender.send(message);
+        } catch (MailException mailException) {
+            if (SmtpCircuitBreaker.isConnectivityFailure(mailException)) {
+                smtpCircuitBreaker.recordFailure();
+                log.warn(String.format(
+                        "%s SMTP server unreachable while draining parked emails. Error was: %s",
+                        LOG_PREFIX, mailException));
+                return Outcome.UNREACHABLE;
+            }
+            smtpCircuitBreaker.recordSuccess();
+            return giveUpOrRetry(parkedEmail, leaseUntil, mailException);
+        }
+        smtpCircuitBreaker.recordSuccess();
+        drainedCounter.increment();
+        saveResult(parkedEmail, () -> parkedEmailDao.deleteClaimed(parkedEmail, leaseUntil));
+        return Outcome.REMOVED;
+    }
+
+    private Outcome giveUpOrRetry(ParkedEmailEntity parkedEmail, Instant leaseUntil, MailException mailException) {
+        parkedEmail.setAttempts(parkedEmail.getAttempts() + 1);
+        parkedEmail.setLastError(String.valueOf(mailException));
+        if (parkedEmail.getAttempts() >= maxAttempts) {
+            droppedCounter.increment();
+            log.error(String.format(
+                    "%s Giving up on parked email <%s> after %s attempts. Error was: %s",
+                    LOG_PREFIX, parkedEmail.getId(), parkedEmail.getAttempts(), mailException));
+            saveResult(parkedEmail, () -> parkedEmailDao.deleteClaimed(parkedEmail, leaseUntil));
+            return Outcome.REMOVED;
+        }
+        saveResult(parkedEmail, () -> parkedEmailDao.saveFailedAttempt(parkedEmail, leaseUntil));
+        return Outcome.RETRY_LATER;
+    }
+
+    private void saveResult(ParkedEmailEntity parkedEmail, BooleanSupplier save) {
+        try {
+            if (!save.getAsBoolean()) {
+                log.warn(String.format(
+                        "%s Lease of parked email <%s> ran out before its result was saved. It may be sent again.",
+                        LOG_PREFIX, parkedEmail.getId()));
+            }
+        } catch (RuntimeException runtimeException) {
+            // The lease runs out and the email is tried again.
+            log.error(String.format(
+                    "%s Saving the result of parked email <%s> failed: %s",
+                    LOG_PREFIX, parkedEmail.getId(), runtimeException));
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import fi.asteriski.eventsignup.model.event.BannerImage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the most requested banner images in memory, bounded by their total size in bytes. Entries are evicted in
+ * least recently used order. An image is only admitted after it has been requested <code>min-frequency</code> times
+ * and at least as often as the entries it would evict, so a burst of one-off requests doesn't flush the hot images
+ * (TinyLFU). Request frequencies are kept in a small count-min sketch that is halved periodically to forget old
+ * popularity. The content can be kept off-heap in direct buffers.
+ */
+@Log4j2
+@Component
+public class BannerImageCache {
+
+    private static final String LOG_PREFIX = "[BannerImageCache]";
+
+    /** Which image (its key in the blob store) and which variant of it (0 for the original). */
+    record Key(String name, int width) {}
+
+    private record Entry(ByteBuffer content, String contentType, String contentHash) {}
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final int minFrequency;
+    private final boolean offHeap;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Access ordered, i.e. the eldest entry is the least recently used. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch frequencies;
+    private long residentBytes;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public BannerImageCache(
+            MeterRegistry meterRegistry,
+            @Value("${fi.asteriski.config.event.banner-image.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${fi.asteriski.config.event.banner-image.cache.max-entry-bytes:2097152}") long maxEntryBytes,
+            @Value("${fi.asteriski.config.event.banner-image.cache.min-frequency:2}") int minFrequency,
+            @Value("${fi.asteriski.config.event.banner-image.cache.off-heap:false}") boolean offHeap) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.minFrequency = minFrequency;
+        this.offHeap = offHeap;
+        // Plenty of counters for the few thousand banner images (and their variants) a deployment has.
+        this.frequencies = new FrequencySketch(1024);
+        hitCounter = Counter.builder("banner.image.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        missCounter = Counter.builder("banner.image.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("banner.image.cache.hit.ratio", this, BannerImageCache::hitRatio)
+                .register(meterRegistry);
+        Gauge.builder("banner.image.cache.resident.bytes", this, BannerImageCache::getResidentBytes)
+                .description(offHeap ? "Direct (off-heap) memory in use." : "Heap memory in use.")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("banner.image.cache.entries", this, BannerImageCache::size)
+                .register(meterRegistry);
+    }
+
+    /** @return The cached image, or null on a miss. Every call counts as a request of the image. */
+    public BannerImage get(Key key) {
+        lock.lock();
+        try {
+            frequencies.increment(key);
+            var entry = entries.get(key);
+            if (entry == null) {
+                missCounter.increment();
+                return null;
+            }
+            hitCounter.increment();
+            return toBannerImage(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches the image if it is requested often enough. The content is read outside the lock.
+     *
+     * @return The cached copy if the image was admitted, otherwise the given image.
+     */
+    public BannerImage offer(Key key, BannerImage bannerImage) {
+        long size;
+        try {
+            size = bannerImage.content().contentLength();
+        } catch (IOException ioException) {
+            return bannerImage;
+        }
+        if (bannerImage.provisional() || size > maxEntryBytes || !shouldAdmit(key, size)) {
+            return bannerImage;
+        }
+        ByteBuffer content;
+        try (var inputStream = bannerImage.content().getInputStream()) {
+            content = read(inputStream, (int) size);
+        } catch (IOException ioException) {
+            log.warn(String.format("%s Reading %s into the cache failed: %s", LOG_PREFIX, key, ioException));
+            return bannerImage;
+        }
+        var entry = new Entry(content, bannerImage.contentType(), bannerImage.contentHash());
+        lock.lock();
+        try {
+            // Re-checked, the cache may have changed while reading.
+            if (!entries.containsKey(key) && shouldAdmit(key, size)) {
+                evictFor(size);
+                entries.put(key, entry);
+                residentBytes += size;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return toBannerImage(entry);
+    }
+
+    /** Removes all cached variants of the image. */
+    public void invalidate(String name) {
+        lock.lock();
+        try {
+            var iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                var next = iterator.next();
+                if (next.getKey().name().equals(name)) {
+                    residentBytes -= next.getValue().content().capacity();
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getResidentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double hitRatio() {
+        var hits = hitCounter.count();
+        var total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private boolean shouldAdmit(Key key, long size) {
+        lock.lock();
+        try {
+            var frequency = frequencies.estimate(key);
+            if (frequency < minFrequency) {
+                return false;
+            }
+            // The least recently used entries that would have to go must be less popular than the newcomer.
+            var freed = maxBytes - residentBytes;
+            var iterator = entries.entrySet().iterator();
+            while (freed < size && iterator.hasNext()) {
+                var victim = iterator.next();
+                if (frequencies.estimate(victim.getKey()) > frequency) {
+                    return false;
+                }
+                freed += victim.getValue().content().capacity();
+            }
+            return freed >= size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictFor(long size) {
+        var iterator = entries.entrySet().iterator();
+        while (residentBytes + size > maxBytes && iterator.hasNext()) {
+            residentBytes -= iterator.next().getValue().content().capacity();
+            iterator.remove();
+        }
+    }
+
+    private ByteBuffer read(InputStream inputStream, int size) throws IOException {
+        var buffer = offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        var channel = Channels.newChannel(inputStream);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // Keep reading.
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("File shrank while being read.");
+        }
+        return buffer.flip().asReadOnlyBuffer();
+    }
+
+    private static BannerImage toBannerImage(Entry entry) {
+        return new BannerImage(
+                new ByteBufferResource(entry.content()), entry.contentType(), entry.contentHash(), false);
+    }
+
+    /** Serves a cached image straight from its buffer. */
+    private static final class ByteBufferResource extends AbstractResource {
+        private final ByteBuffer content;
+
+        private ByteBufferResource(ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            // A duplicate has its own position, so concurrent readers don't interfere.
+            return new ByteBufferInputStream(content.duplicate());
+        }
+
+        @Override
+        public long contentLength() {
+            return content.capacity();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Cached banner image";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other || (other instanceof ByteBufferResource that && content == that.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(content);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, bytes.length);
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            var count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters: four counters per key, the smallest one is the estimate. All counters are
+     * halved after <code>10 * width</code> increments, so popularity fades over time. Not thread safe.
+     */
+    static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            var size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+            counters = new byte[DEPTH][size];
+            mask = size - 1;
+            sampleSize = 10 * size;
+        }
+
+        void increment(Object key) {
+            var hash = key.hashCode();
+            var added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                var index = index(hash, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int estimate(Object key) {
+            var hash = key.hashCode();
+            var min = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters[row][index(hash, row)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            var mixed = (hash ^ (hash >>> 16)) * SEEDS[row];
+            return (mixed ^ (mixed >>> 15)) & mask;
+        }
+
+        private void reset() {
+            for (var row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
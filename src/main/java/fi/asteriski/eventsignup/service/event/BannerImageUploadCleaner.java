@@ -0,0 +1,34 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/** Every node runs one, each also removing the files abandoned on its own disk. */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class BannerImageUploadCleaner {
+
+    private static final String LOG_PREFIX = "[BannerImageUploadCleaner]";
+
+    @NonNull
+    private BannerImageUploadService bannerImageUploadService;
+
+    @Scheduled(
+            fixedDelayString = "${fi.asteriski.config.event.banner-image.upload.cleanup-interval-millis:600000}",
+            initialDelayString = "${fi.asteriski.config.event.banner-image.upload.cleanup-interval-millis:600000}")
+    public void cleanUp() {
+        try {
+            bannerImageUploadService.cleanUpUploads();
+        } catch (RuntimeException runtimeException) {
+            log.error(String.format("%s Cleaning up uploads failed: %s", LOG_PREFIX, runtimeException));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatusResponse;
+import java.io.InputStream;
+import java.util.UUID;
+
+public interface BannerImageUploadService {
+
+    /**
+     * Receives an uploaded banner image and queues it for processing. The stream is not closed.
+     *
+     * @return The pending upload, whose status can be polled with {@link #getUploadStatus(UUID)}.
+     */
+    BannerImageUploadStatusResponse acceptUpload(InputStream file);
+
+    /** Only the user who uploaded the image can see the upload. */
+    BannerImageUploadStatusResponse getUploadStatus(UUID uploadId);
+
+    /** Fails uploads whose processing was interrupted and removes old finished uploads. */
+    void cleanUpUploads();
+}
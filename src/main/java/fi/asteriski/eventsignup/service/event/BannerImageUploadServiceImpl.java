@@ -0,0 +1,155 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import fi.asteriski.eventsignup.dao.event.BannerImageUploadDao;
+import fi.asteriski.eventsignup.exception.BannerImageUploadNotFoundException;
+import fi.asteriski.eventsignup.exception.ImageTooLargeException;
+import fi.asteriski.eventsignup.exception.ImageUploadQueueFullException;
+import fi.asteriski.eventsignup.exception.InvalidImageFileException;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadEntity;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatus;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatusResponse;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+/**
+ * The request thread only streams the upload to disk (checking its size) and records it as pending. Validation and
+ * storing happen in a bounded worker pool, variants are then generated by {@link ImageVariantGenerator}. When the
+ * queue is full the upload is rejected right away instead of piling up on disk.
+ *
+ * <p>The received file is on the node that received it, so that node's workers process it. The status is in the
+ * database and can be polled from any node.
+ */
+@Log4j2
+@Service
+public class BannerImageUploadServiceImpl implements BannerImageUploadService {
+
+    private static final String LOG_PREFIX = "[BannerImageUploadServiceImpl]";
+
+    private final ImageService imageService;
+    private final BannerImageUploadDao bannerImageUploadDao;
+    private final ThreadPoolExecutor executor;
+    private final Duration staleAfter;
+    private final Duration retention;
+
+    public BannerImageUploadServiceImpl(
+            ImageService imageService,
+            BannerImageUploadDao bannerImageUploadDao,
+            @Value("${fi.asteriski.config.event.banner-image.upload.workers:2}") int workers,
+            @Value("${fi.asteriski.config.event.banner-image.upload.queue-capacity:50}") int queueCapacity,
+            @Value("${fi.asteriski.config.event.banner-image.upload.stale-after-minutes:30}") long staleAfterMinutes,
+            @Value("${fi.asteriski.config.event.banner-image.upload.retention-hours:24}") long retentionHours) {
+        this.imageService = imageService;
+        this.bannerImageUploadDao = bannerImageUploadDao;
+        this.staleAfter = Duration.ofMinutes(staleAfterMinutes);
+        this.retention = Duration.ofHours(retentionHours);
+        this.executor = new ThreadPoolExecutor(
+                workers,
+                workers,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("image-uploads-", 0).daemon(true).factory());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public BannerImageUploadStatusResponse acceptUpload(InputStream file) {
+        var owner = SecurityContextHolder.getContext().getAuthentication().getName();
+        var receivedFile = imageService.receiveBannerImage(file);
+        var upload = bannerImageUploadDao.save(BannerImageUploadEntity.builder()
+                .owner(owner)
+                .status(BannerImageUploadStatus.PENDING)
+                .build());
+        try {
+            executor.execute(() -> process(upload.getId(), receivedFile));
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            deleteQuietly(receivedFile);
+            var reason = "Too many images are being processed. Try again later.";
+            upload.setStatus(BannerImageUploadStatus.FAILED);
+            upload.setFailureReason(reason);
+            bannerImageUploadDao.save(upload);
+            log.warn(String.format("%s Queue is full. Rejected upload %s.", LOG_PREFIX, upload.getId()));
+            throw new ImageUploadQueueFullException(reason);
+        }
+        return upload.toStatusResponse();
+    }
+
+    @Override
+    public BannerImageUploadStatusResponse getUploadStatus(UUID uploadId) {
+        var user = SecurityContextHolder.getContext().getAuthentication().getName();
+        return bannerImageUploadDao
+                .findById(uploadId)
+                .filter(upload -> upload.getOwner().equals(user))
+                .map(BannerImageUploadEntity::toStatusResponse)
+                .orElseThrow(() -> new BannerImageUploadNotFoundException(uploadId.toString()));
+    }
+
+    /** An upload pending or processing longer than stale-after-minutes is assumed lost, e.g. in a restart. */
+    @Override
+    public void cleanUpUploads() {
+        var now = Instant.now();
+        var failed = bannerImageUploadDao.failUnfinishedNotUpdatedSince(
+                now.minus(staleAfter), "Processing the image was interrupted. Upload it again.");
+        var deleted = bannerImageUploadDao.deleteFinishedBefore(now.minus(retention));
+        var deletedFiles = imageService.deleteAbandonedUploads(now.minus(staleAfter));
+        if (failed + deleted + deletedFiles > 0) {
+            log.info(String.format(
+                    "%s Failed %s interrupted uploads, removed %s finished uploads and %s abandoned files.",
+                    LOG_PREFIX, failed, deleted, deletedFiles));
+        }
+    }
+
+    private void process(UUID uploadId, Path receivedFile) {
+        var upload = bannerImageUploadDao.findById(uploadId).orElse(null);
+        if (upload == null) {
+            deleteQuietly(receivedFile);
+            return;
+        }
+        upload.setStatus(BannerImageUploadStatus.PROCESSING);
+        upload = bannerImageUploadDao.save(upload);
+        try {
+            upload.setFileName(imageService.addBannerImage(receivedFile));
+            upload.setStatus(BannerImageUploadStatus.READY);
+        } catch (InvalidImageFileException | ImageTooLargeException rejected) {
+            upload.setStatus(BannerImageUploadStatus.FAILED);
+            upload.setFailureReason(rejected.getMessage());
+        } catch (RuntimeException runtimeException) {
+            log.error(String.format("%s Processing upload %s failed: %s", LOG_PREFIX, uploadId, runtimeException));
+            upload.setStatus(BannerImageUploadStatus.FAILED);
+            upload.setFailureReason("Saving the image failed.");
+        } finally {
+            deleteQuietly(receivedFile);
+        }
+        bannerImageUploadDao.save(upload);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ioException) {
+            log.warn(String.format("%s Removing received file <%s> failed: %s", LOG_PREFIX, file, ioException));
+        }
+    }
+}
@@ -6,6 +6,7 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.service.event;
 
 import fi.asteriski.eventsignup.exception.EventSignupException;
+import fi.asteriski.eventsignup.model.event.EventDates;
 import fi.asteriski.eventsignup.model.event.EventDto;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import java.time.Instant;
@@ -38,4 +39,10 @@ public interface EventService {
     List<EventDto> findAllByStartDateIsBetween(Instant date1, Instant date2);
 
     List<EventDto> findAll();
+
+    List<EventDates> getAllEventDates();
+
+    List<EventDates> getEventDatesUpdatedSince(Instant since);
+
+    Optional<EventDto> findAndLockEvent(UUID eventId);
 }
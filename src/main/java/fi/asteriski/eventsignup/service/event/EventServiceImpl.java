@@ -5,24 +5,33 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.service.event;
 
 import fi.asteriski.eventsignup.dao.event.EventDao;
+import fi.asteriski.eventsignup.event.EventsDeletedSpringEvent;
 import fi.asteriski.eventsignup.exception.EventNotFoundException;
 import fi.asteriski.eventsignup.exception.EventSignupException;
+import fi.asteriski.eventsignup.model.event.EventDates;
 import fi.asteriski.eventsignup.model.event.EventDto;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import fi.asteriski.eventsignup.service.signup.ParticipantService;
+import fi.asteriski.eventsignup.utils.ApplicationMetrics;
+import fi.asteriski.eventsignup.utils.BannerImageNames;
 import fi.asteriski.eventsignup.utils.CustomEventPublisher;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Supplier;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.MessageSource;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 @Log4j2
@@ -36,6 +45,9 @@ public class EventServiceImpl implements EventService {
     private ParticipantService participantService;
     private CustomEventPublisher customEventPublisher;
     private MessageSource messageSource;
+    private ImageService imageService;
+    private ApplicationMetrics applicationMetrics;
+    private ApplicationEventPublisher applicationEventPublisher;
 
     @Override
     public EventDto getEvent(
@@ -43,12 +55,13 @@ public class EventServiceImpl implements EventService {
         Supplier<EventNotFoundException> defaultErrorSupplier = () -> new EventNotFoundException(
                 String.format(messageSource.getMessage("event.not.found.message", null, usersLocale), id));
 
-        return eventDao.findById(id).orElseThrow(errorSupplier.orElse(defaultErrorSupplier));
+        return applicationMetrics.timeEventOperation(
+                "get", () -> eventDao.findById(id).orElseThrow(errorSupplier.orElse(defaultErrorSupplier)));
     }
 
     @Override
     public List<EventDto> getAllEventsForUser(String user) {
-        return eventDao.findAllByOwner(user);
+        return applicationMetrics.timeEventOperation("list.user", () -> eventDao.findAllByOwner(user));
     }
 
     @Override
@@ -57,40 +70,30 @@ public class EventServiceImpl implements EventService {
     }
 
     @Override
+    @Transactional
     public EventDto createNewEvent(EventDto eventDto, Locale usersLocale, ZoneId userTimeZone) {
-        var authentication = SecurityContextHolder.getContext().getAuthentication();
-        eventDto.setOwner(authentication.getName());
-        if (StringUtils.hasText(eventDto.getBannerImg())) {
-            eventDto.setBannerImg(String.format("%s_%s", authentication.getName(), eventDto.getBannerImg()));
-        }
-        if (eventDto.getForm().getUserCreated() == null) {
-            eventDto.getForm().setUserCreated(authentication.getName());
-        }
-        if (eventDto.getForm().getDateCreated() == null) {
-            eventDto.getForm().setDateCreated(Instant.now());
-        }
-        customEventPublisher.publishSavedEventEvent(eventDto, authentication, usersLocale, userTimeZone);
-        return eventDao.save(eventDto);
+        return applicationMetrics.timeEventOperation(
+                "create", () -> saveNewEvent(eventDto, usersLocale, userTimeZone));
     }
 
     @Override
+    @Transactional
     public EventDto editExistingEvent(EventDto newEventDto, Locale usersLocale, ZoneId userTimeZone) {
-        var authentication = SecurityContextHolder.getContext().getAuthentication();
-        var oldEventDto = eventDao.findById(newEventDto.getId()).orElseThrow(() -> {
-            log.error(String.format(
-                    "%s Unable to edit existing event. Old event with id <%s> was not found!",
-                    LOG_PREFIX, newEventDto.getId()));
-            return new EventNotFoundException(newEventDto.getId().toString());
-        });
-        newEventDto.setId(oldEventDto.getId());
-        customEventPublisher.publishSavedEventEvent(newEventDto, authentication, usersLocale, userTimeZone);
-        return eventDao.save(newEventDto);
+        return applicationMetrics.timeEventOperation(
+                "edit", () -> saveEditedEvent(newEventDto, usersLocale, userTimeZone));
     }
 
     @Override
+    @Transactional
     public void removeEventAndParticipants(UUID eventId) {
-        eventDao.deleteById(eventId);
-        participantService.deleteAllByEvent(eventId);
+        applicationMetrics.timeEventOperation("remove", () -> {
+            var bannerImg = eventDao.findById(eventId).map(EventDto::getBannerImg);
+            participantService.deleteAllByEvent(eventId);
+            eventDao.deleteById(eventId);
+            bannerImg.ifPresent(this::releaseBannerImageAfterCommit);
+            applicationEventPublisher.publishEvent(new EventsDeletedSpringEvent(this, List.of(eventId)));
+            return null;
+        });
     }
 
     @Override
@@ -106,15 +109,106 @@ public class EventServiceImpl implements EventService {
     @Override
     public void deleteAllByIds(List<UUID> eventIds) {
         eventDao.deleteAllByIds(eventIds);
+        applicationEventPublisher.publishEvent(new EventsDeletedSpringEvent(this, List.copyOf(eventIds)));
     }
 
     @Override
     public List<EventDto> findAllByStartDateIsBetween(Instant date1, Instant date2) {
-        return eventDao.findAllByStartDateIsBetween(date1, date2);
+        return applicationMetrics.timeEventOperation(
+                "list.upcoming", () -> eventDao.findAllByStartDateIsBetween(date1, date2));
     }
 
     @Override
     public List<EventDto> findAll() {
-        return eventDao.findAll();
+        return applicationMetrics.timeEventOperation("list.all", eventDao::findAll);
+    }
+
+    @Override
+    public List<EventDates> getAllEventDates() {
+        return eventDao.findAllEventDates();
+    }
+
+    @Override
+    public List<EventDates> getEventDatesUpdatedSince(Instant since) {
+        return eventDao.findAllEventDatesUpdatedSince(since);
+    }
+
+    /**
+     * Finds an event and locks its row until the end of the current transaction. Must be called within a
+     * transaction.
+     *
+     * @param eventId Event's id.
+     * @return The event or empty if it doesn't exist or another transaction has already locked it.
+     */
+    @Override
+    public Optional<EventDto> findAndLockEvent(UUID eventId) {
+        return eventDao.findByIdAndLock(eventId);
+    }
+
+    private EventDto saveNewEvent(EventDto eventDto, Locale usersLocale, ZoneId userTimeZone) {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        eventDto.setOwner(authentication.getName());
+        if (BannerImageNames.contentHash(eventDto.getBannerImg()) != null) {
+            eventDto.setBannerImg(BannerImageNames.normalize(eventDto.getBannerImg()));
+        } else if (StringUtils.hasText(eventDto.getBannerImg())) {
+            eventDto.setBannerImg(String.format("%s_%s", authentication.getName(), eventDto.getBannerImg()));
+        }
+        eventDto.setBannerImagePreview(imageService.getBannerImagePreview(eventDto.getBannerImg()));
+        if (eventDto.getForm().getUserCreated() == null) {
+            eventDto.getForm().setUserCreated(authentication.getName());
+        }
+        if (eventDto.getForm().getDateCreated() == null) {
+            eventDto.getForm().setDateCreated(Instant.now());
+        }
+        var savedEvent = eventDao.save(eventDto);
+        customEventPublisher.publishSavedEventEvent(savedEvent, authentication, usersLocale, userTimeZone);
+        return savedEvent;
+    }
+
+    private EventDto saveEditedEvent(EventDto newEventDto, Locale usersLocale, ZoneId userTimeZone) {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        var oldEventDto = eventDao.findById(newEventDto.getId()).orElseThrow(() -> {
+            log.error(String.format(
+                    "%s Unable to edit existing event. Old event with id <%s> was not found!",
+                    LOG_PREFIX, newEventDto.getId()));
+            return new EventNotFoundException(newEventDto.getId().toString());
+        });
+        newEventDto.setId(oldEventDto.getId());
+        newEventDto.setBannerImg(BannerImageNames.normalize(newEventDto.getBannerImg()));
+        var sameBannerImg = Objects.equals(oldEventDto.getBannerImg(), newEventDto.getBannerImg());
+        if (!sameBannerImg) {
+            releaseBannerImageAfterCommit(oldEventDto.getBannerImg());
+        }
+        // Events saved before previews existed get theirs when edited.
+        newEventDto.setBannerImagePreview(
+                sameBannerImg && oldEventDto.getBannerImagePreview() != null
+                        ? oldEventDto.getBannerImagePreview()
+                        : imageService.getBannerImagePreview(newEventDto.getBannerImg()));
+        var savedEvent = eventDao.save(newEventDto);
+        customEventPublisher.publishSavedEventEvent(savedEvent, authentication, usersLocale, userTimeZone);
+        return savedEvent;
+    }
+
+    /** The image is shared by content, so it can only be deleted once the removed reference is committed. */
+    private void releaseBannerImageAfterCommit(String bannerImg) {
+        if (!StringUtils.hasText(bannerImg)) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            imageService.releaseBannerImage(bannerImg);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    imageService.releaseBannerImage(bannerImg);
+                } catch (RuntimeException runtimeException) {
+                    // Left for the garbage collector.
+                    log.error(String.format(
+                            "%s Releasing banner image <%s> failed: %s", LOG_PREFIX, bannerImg, runtimeException));
+                }
+            }
+        });
     }
 }
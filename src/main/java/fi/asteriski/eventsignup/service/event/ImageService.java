@@ -5,10 +5,63 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 
 package fi.asteriski.eventsignup.service.event;
 
+import fi.asteriski.eventsignup.model.event.BannerImage;
+import fi.asteriski.eventsignup.model.event.BannerImagePreview;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+
 public interface ImageService {
-    byte[] getBannerImage(String fileName);
+    /**
+     * @param width Width in pixels the image is shown at, null if unknown. The smallest variant at least this wide is
+     *     returned if there is one.
+     */
+    BannerImage getBannerImage(String fileName, Integer width);
+
+    /**
+     * Saves an uploaded banner image read from the stream. The stream is not closed.
+     *
+     * @return Name of the saved image, i.e. its content hash.
+     */
+    String addBannerImage(InputStream file);
+
+    /**
+     * Streams an uploaded banner image into a temp file, checking only its size. The stream is not closed.
+     *
+     * @return The temp file, to be passed to {@link #addBannerImage(Path)}.
+     */
+    Path receiveBannerImage(InputStream file);
 
-    String addBannerImage(byte[] file);
+    /**
+     * Validates and saves an image received with {@link #receiveBannerImage(InputStream)}. The file is deleted.
+     *
+     * @return Name of the saved image, i.e. its content hash.
+     */
+    String addBannerImage(Path receivedFile);
 
+    /** @return The banner image's dimensions and placeholder, or null if they aren't available. */
+    BannerImagePreview getBannerImagePreview(String fileName);
+
+    /**
+     * Deletes received files older than the limit, left behind e.g. by a restart while they were being processed.
+     *
+     * @return How many were deleted.
+     */
+    int deleteAbandonedUploads(Instant olderThan);
+
+    /**
+     * Moves an image uploaded before content addressing into the archive. Images stored by content hash stay where
+     * they are. Safe to call again for an image already moved.
+     *
+     * @return The image's new path, or its content hash.
+     */
     String moveBannerImage(String originalPath);
+
+    /**
+     * Deletes the image if nothing references it anymore. Call after the last reference to it was removed and
+     * committed.
+     *
+     * @return True if the image was deleted.
+     */
+    boolean releaseBannerImage(String name);
 }
@@ -4,106 +4,409 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.service.event;
 
+import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
+import fi.asteriski.eventsignup.dao.event.EventDao;
 import fi.asteriski.eventsignup.exception.FileMoveNotSuccessfulException;
 import fi.asteriski.eventsignup.exception.ImageDirectoryCreationFailedException;
 import fi.asteriski.eventsignup.exception.ImageNotFoundException;
+import fi.asteriski.eventsignup.exception.ImageTooLargeException;
+import fi.asteriski.eventsignup.exception.ImageUploadFailedException;
 import fi.asteriski.eventsignup.exception.InvalidImageFileException;
-import fi.asteriski.eventsignup.utils.Utils;
-import java.awt.image.BufferedImage;
+import fi.asteriski.eventsignup.model.event.BannerImage;
+import fi.asteriski.eventsignup.model.event.BannerImagePreview;
+import fi.asteriski.eventsignup.service.blob.BlobStore;
+import fi.asteriski.eventsignup.service.blob.LocalBlobStore;
+import fi.asteriski.eventsignup.utils.ApplicationMetrics;
+import fi.asteriski.eventsignup.utils.BannerImageNames;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
-import javax.imageio.stream.ImageOutputStream;
-import lombok.AllArgsConstructor;
-import lombok.NoArgsConstructor;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 @Log4j2
 @Service
-@AllArgsConstructor
-@NoArgsConstructor
+@RequiredArgsConstructor
 public class ImageServiceImpl implements ImageService {
 
     private static final String LOG_PREFIX = "[ImageServiceImpl]";
     private static final String FILE_PATH_TEMPLATE = "%s/%s";
+    private static final int COPY_BUFFER_SIZE = 8192;
+    /** Images stored by content hash, see {@link #objectKey(String)}. */
+    static final String OBJECTS_DIRECTORY = "objects";
+    /** Prefix of received uploads' temp files under the root path. */
+    private static final String UPLOAD_FILE_PREFIX = ".upload-";
+    static final String METADATA_SUFFIX = ".meta";
+    private static final String METADATA_CONTENT_TYPE = "contentType";
+    private static final String METADATA_CONTENT_HASH = "sha256";
+    private static final String METADATA_WIDTH = "width";
+    private static final String METADATA_HEIGHT = "height";
+    private static final String METADATA_PLACEHOLDER = "placeholder";
+    /** Accepted image formats (as named by ImageIO) and the content types they are served with. */
+    private static final Map<String, String> CONTENT_TYPES =
+            Map.of("png", "image/png", "jpeg", "image/jpeg", "gif", "image/gif");
+
+    private record ImageHeader(String contentType, long width, long height) {}
+
+    /** Where an image is stored. */
+    private record StoredImage(BlobStore blobStore, String key) {}
 
     @Value("${fi.asteriski.config.event.root-path-bannerimg}")
     private String rootPath;
 
+    @Value("${fi.asteriski.config.event.banner-image.max-upload-bytes:10485760}")
+    private Long maxUploadBytes;
+
+    @Value("${fi.asteriski.config.event.banner-image.max-pixels:40000000}")
+    private Long maxPixels;
+
+    @Value("${fi.asteriski.config.event.banner-image.orphan-grace-period-minutes:1440}")
+    private Long orphanGracePeriodMinutes;
+
+    @NonNull
+    private ImageVariantGenerator imageVariantGenerator;
+
+    @NonNull
+    private BannerImageCache bannerImageCache;
+
+    @NonNull
+    private EventDao eventDao;
+
+    @NonNull
+    private ArchivedEventDao archivedEventDao;
+
+    @NonNull
+    private ColdArchivedEventDao coldArchivedEventDao;
+
+    @NonNull
+    private BlobStore blobStore;
+
+    @NonNull
+    private ApplicationMetrics applicationMetrics;
+
+    private BlobStore legacyImageStore;
+
+    /**
+     * Metadata is stored next to the image when it is uploaded and created on first request for older images. A
+     * missing variant (not generated yet or lost) is queued for generation and the original is served meanwhile. Hot
+     * images are served from {@link BannerImageCache} without touching the blob store.
+     */
     @Override
-    public byte[] getBannerImage(String fileName) {
-        File filePath = new File(String.format(FILE_PATH_TEMPLATE, rootPath, fileName));
-        if (!filePath.canRead()) {
-            log.info(String.format("%s Requested file %s doesn't exist and/or cannot be read.", LOG_PREFIX, fileName));
-            throw new ImageNotFoundException(fileName.substring(fileName.lastIndexOf("/") + 1));
-        }
-        byte[] returnValue;
-        try (InputStream inputStream = new FileInputStream(filePath.toString())) {
-            returnValue = IOUtils.toByteArray(inputStream);
-        } catch (IOException | IllegalArgumentException ioException) {
+    public BannerImage getBannerImage(String fileName, Integer width) {
+        var notFoundName = fileName.substring(fileName.lastIndexOf("/") + 1);
+        var image = resolveBannerImage(fileName);
+        if (image == null) {
+            log.info(String.format("%s Requested file %s is outside the image root.", LOG_PREFIX, fileName));
+            throw new ImageNotFoundException(notFoundName);
+        }
+        var cacheKey =
+                new BannerImageCache.Key(image.key(), width == null || width <= 0 ? 0 : variantWidthOrZero(width));
+        var cached = bannerImageCache.get(cacheKey);
+        if (cached != null) {
+            return served(cached);
+        }
+        return served(bannerImageCache.offer(cacheKey, loadBannerImage(fileName, image, width)));
+    }
+
+    private BannerImage served(BannerImage bannerImage) {
+        try {
+            applicationMetrics.recordBannerImageServedBytes(bannerImage.content().contentLength());
+        } catch (IOException ioException) {
+            // Only the metric misses it, serving fails on its own if the content is gone.
+            log.debug(String.format("%s Size of a served image unknown: %s", LOG_PREFIX, ioException));
+        }
+        return bannerImage;
+    }
+
+    private BannerImage loadBannerImage(String fileName, StoredImage image, Integer width) {
+        var notFoundName = fileName.substring(fileName.lastIndexOf("/") + 1);
+        Resource content;
+        Properties metadata;
+        try {
+            content = image.blobStore().get(image.key()).orElse(null);
+            if (content == null) {
+                log.info(String.format(
+                        "%s Requested file %s doesn't exist and/or cannot be read.", LOG_PREFIX, fileName));
+                throw new ImageNotFoundException(notFoundName);
+            }
+            metadata = readMetadata(image);
+            if (metadata == null || metadata.getProperty(METADATA_WIDTH) == null) {
+                metadata = createMetadata(image, content);
+            }
+        } catch (IOException ioException) {
             log.error(String.format("%s IOError while reading file <%s>", LOG_PREFIX, fileName));
-            throw new ImageNotFoundException(fileName.substring(fileName.lastIndexOf("/") + 1), ioException);
+            throw new ImageNotFoundException(notFoundName, ioException);
         }
-        return returnValue;
+        if (metadata == null) {
+            log.info(String.format("%s Requested file %s is not a valid image.", LOG_PREFIX, fileName));
+            throw new ImageNotFoundException(notFoundName);
+        }
+        var contentType = metadata.getProperty(METADATA_CONTENT_TYPE);
+        var contentHash = metadata.getProperty(METADATA_CONTENT_HASH);
+        var originalWidth = Long.parseLong(metadata.getProperty(METADATA_WIDTH));
+        var original = new BannerImage(content, contentType, contentHash, false);
+        var variantContentType = ImageVariantGenerator.variantContentType(contentType);
+        if (width == null || width <= 0 || variantContentType == null) {
+            return original;
+        }
+        var variantWidth = imageVariantGenerator.chooseWidth(width);
+        if (variantWidth == null || variantWidth >= originalWidth) {
+            return original;
+        }
+        Resource variant;
+        try {
+            variant = image.blobStore()
+                    .get(ImageVariantGenerator.variantKey(image.key(), variantWidth))
+                    .orElse(null);
+        } catch (IOException ioException) {
+            log.warn(String.format("%s Reading a variant of <%s> failed: %s", LOG_PREFIX, fileName, ioException));
+            return new BannerImage(content, contentType, contentHash, true);
+        }
+        if (variant == null) {
+            imageVariantGenerator.submit(image.blobStore(), image.key(), contentType, originalWidth);
+            return new BannerImage(content, contentType, contentHash, true);
+        }
+        // A variant is fully determined by the original and its width.
+        return new BannerImage(
+                variant, variantContentType, String.format("%s-%sw", contentHash, variantWidth), false);
     }
 
     @Override
-    public String addBannerImage(byte[] file) {
-        var authentication = SecurityContextHolder.getContext().getAuthentication();
-        var userName = authentication.getName();
-        if (isInputFileNonValidImage(file)) {
-            log.info(String.format("%s %s", LOG_PREFIX, "Input file is not a valid image. Throwing exception."));
-            throw new InvalidImageFileException("Provided file is not a valid image file.");
-        }
-        File targetDirectory = new File(String.format("%s/%s/", rootPath, userName));
-        if (!targetDirectory.canRead() && !targetDirectory.isDirectory()) {
-            try {
-                Files.createDirectories(targetDirectory.toPath());
-            } catch (IOException ioException) {
-                var errorMessage = String.format("Target directory <%s> creation failed.", targetDirectory);
-                log.info(String.format("%s Throwing exception.", errorMessage));
-                throw new ImageDirectoryCreationFailedException(errorMessage, ioException);
+    public String addBannerImage(InputStream file) {
+        return addBannerImage(receiveBannerImage(file));
+    }
+
+    /**
+     * The upload is streamed into a temp file under the root path, so memory use doesn't depend on the image's size.
+     */
+    @Override
+    public Path receiveBannerImage(InputStream file) {
+        var uploadDirectory = Path.of(rootPath);
+        try {
+            Files.createDirectories(uploadDirectory);
+        } catch (IOException ioException) {
+            var errorMessage = String.format("Target directory <%s> creation failed.", uploadDirectory);
+            log.info(String.format("%s Throwing exception.", errorMessage));
+            throw new ImageDirectoryCreationFailedException(errorMessage, ioException);
+        }
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(uploadDirectory, UPLOAD_FILE_PREFIX, ".tmp");
+            copyWithLimit(file, tempFile);
+            var receivedFile = tempFile;
+            tempFile = null;
+            return receivedFile;
+        } catch (IOException ioException) {
+            log.error(String.format("%s Receiving uploaded image failed: %s", LOG_PREFIX, ioException.getMessage()));
+            throw new ImageUploadFailedException("Receiving the image failed.", ioException);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Only the image header is read for validation. The image is stored by its content hash: uploading the same image
+     * again costs the hash computation and no extra storage. The blob store publishes a new image at once, so a reader
+     * never sees a partially written image.
+     */
+    @Override
+    public String addBannerImage(Path receivedFile) {
+        return applicationMetrics.timeBannerImageUpload(() -> storeBannerImage(receivedFile));
+    }
+
+    private String storeBannerImage(Path receivedFile) {
+        try {
+            applicationMetrics.recordBannerImageUploadBytes(Files.size(receivedFile));
+            var content = new FileSystemResource(receivedFile);
+            var header = readImageHeader(content);
+            if (header == null) {
+                log.info(String.format("%s %s", LOG_PREFIX, "Input file is not a valid image. Throwing exception."));
+                throw new InvalidImageFileException("Provided file is not a valid image file.");
+            }
+            if (header.width() * header.height() > maxPixels) {
+                log.info(String.format(
+                        "%s Image of %sx%s pixels exceeds the maximum of %s pixels.",
+                        LOG_PREFIX, header.width(), header.height(), maxPixels));
+                throw new ImageTooLargeException(
+                        String.format("Image has more than the maximum of %s pixels.", maxPixels));
             }
+            var contentHash = contentHash(content);
+            var image = new StoredImage(blobStore, objectKey(contentHash));
+            if (blobStore.exists(image.key())) {
+                // Marks the image as recently uploaded, so it isn't released before the new upload is referenced.
+                blobStore.touch(image.key());
+                log.debug(String.format("%s Image %s already stored.", LOG_PREFIX, contentHash));
+            } else {
+                // Metadata first, so a published image always has it.
+                writeMetadata(image, header, contentHash, placeholder(content, header));
+                blobStore.put(image.key(), receivedFile);
+            }
+            imageVariantGenerator.submit(blobStore, image.key(), header.contentType(), header.width());
+            return contentHash;
+        } catch (IOException ioException) {
+            log.error(String.format("%s Saving uploaded image failed: %s", LOG_PREFIX, ioException.getMessage()));
+            throw new ImageUploadFailedException("Saving the image failed.", ioException);
+        } finally {
+            deleteQuietly(receivedFile);
         }
-        String fileName;
-        File finalFile;
-        do {
-            fileName = Utils.generateRandomString(30);
-            finalFile = new File(String.format(FILE_PATH_TEMPLATE, targetDirectory, fileName));
-        } while (finalFile.exists());
-        // TODO check image size!
-        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(finalFile)) {
-            imageOutputStream.write(file);
-        } catch (IOException e) {
-            log.info(String.format("IOException occurred: %s", e.getMessage()));
+    }
+
+    /**
+     * Read from the image's metadata. For older images without a placeholder it is made and stored now.
+     *
+     * @return Null if there is no such image or it couldn't be read.
+     */
+    @Override
+    public BannerImagePreview getBannerImagePreview(String fileName) {
+        if (!StringUtils.hasText(fileName)) {
+            return null;
+        }
+        // Older images are named "user_name" by events.
+        var image = resolveBannerImage(
+                BannerImageNames.contentHash(fileName) != null ? fileName : fileName.replace("_", "/"));
+        if (image == null) {
+            return null;
+        }
+        try {
+            var metadata = readMetadata(image);
+            if (metadata == null || metadata.getProperty(METADATA_PLACEHOLDER) == null) {
+                var content = image.blobStore().get(image.key());
+                if (content.isEmpty()) {
+                    return null;
+                }
+                metadata = createMetadata(image, content.get());
+            }
+            if (metadata == null) {
+                return null;
+            }
+            return new BannerImagePreview(
+                    Integer.parseInt(metadata.getProperty(METADATA_WIDTH)),
+                    Integer.parseInt(metadata.getProperty(METADATA_HEIGHT)),
+                    metadata.getProperty(METADATA_PLACEHOLDER));
+        } catch (IOException | RuntimeException exception) {
+            log.warn(String.format("%s Reading preview of <%s> failed: %s", LOG_PREFIX, fileName, exception));
+            return null;
         }
-        return String.format("%s_%s", userName, fileName);
     }
 
     @Override
-    public String moveBannerImage(final String originalPath) {
-        var archivedDirectory = new File(String.format("%s/archived/", rootPath));
-        var targetDirectory = String.format("%s/archived/%s", rootPath, originalPath.replace("_", "/"));
-        var sourceDirectory = String.format(FILE_PATH_TEMPLATE, rootPath, originalPath.replace("_", "/"));
-        if (!archivedDirectory.exists() && archivedDirectory.isDirectory()) {
-            try {
-                Files.createDirectories(archivedDirectory.toPath());
-            } catch (IOException e) {
-                var errorMessage = String.format("Target directory <%s> creation failed.", archivedDirectory);
-                log.error(errorMessage);
-                throw new ImageDirectoryCreationFailedException(errorMessage, e);
+    public int deleteAbandonedUploads(Instant olderThan) {
+        var deleted = 0;
+        try (var files = Files.list(Path.of(rootPath))) {
+            var iterator = files.filter(file -> file.getFileName().toString().startsWith(UPLOAD_FILE_PREFIX))
+                    .iterator();
+            while (iterator.hasNext()) {
+                var file = iterator.next();
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(olderThan) && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
             }
+        } catch (NoSuchFileException noSuchFileException) {
+            // Nothing has been uploaded yet.
+        } catch (IOException | UncheckedIOException exception) {
+            log.warn(String.format("%s Deleting abandoned uploads failed: %s", LOG_PREFIX, exception));
+        }
+        return deleted;
+    }
+
+    /**
+     * Images stored by content hash are deleted only when no event or archived event (hot or cold tier) references
+     * them and they haven't been uploaded again within the grace period.
+     */
+    @Override
+    public boolean releaseBannerImage(String name) {
+        var contentHash = BannerImageNames.contentHash(name);
+        if (contentHash == null) {
+            return false;
+        }
+        var references = eventDao.countByBannerImg(contentHash)
+                + archivedEventDao.countByBannerImage(contentHash)
+                + coldArchivedEventDao.countByBannerImage(contentHash);
+        if (references > 0) {
+            log.debug(String.format("%s Image %s still has %s references.", LOG_PREFIX, contentHash, references));
+            return false;
         }
+        var key = objectKey(contentHash);
         try {
-            Files.move(Path.of(sourceDirectory), Path.of(targetDirectory));
+            var lastModified = blobStore.lastModified(key);
+            if (lastModified.isEmpty()
+                    || lastModified.get().isAfter(Instant.now().minus(Duration.ofMinutes(orphanGracePeriodMinutes)))) {
+                return false;
+            }
+            imageVariantGenerator.deleteVariants(blobStore, key);
+            blobStore.delete(metadataKey(key));
+            blobStore.delete(key);
+            bannerImageCache.invalidate(key);
+            log.info(String.format("%s Deleted unreferenced image %s.", LOG_PREFIX, contentHash));
+            return true;
+        } catch (IOException ioException) {
+            log.error(String.format("%s Deleting image %s failed: %s", LOG_PREFIX, contentHash, ioException));
+            return false;
+        }
+    }
+
+    /**
+     * An image stored by content hash may be shared with other events, so it stays where it is. Older images are moved
+     * on the local disk.
+     */
+    @Override
+    public String moveBannerImage(final String originalPath) {
+        if (!StringUtils.hasText(originalPath) || BannerImageNames.contentHash(originalPath) != null) {
+            return BannerImageNames.normalize(originalPath);
+        }
+        var key = originalPath.replace("_", "/");
+        var targetDirectory = String.format("%s/archived/%s", rootPath, key);
+        var source = Path.of(String.format(FILE_PATH_TEMPLATE, rootPath, key));
+        var target = Path.of(targetDirectory);
+        // A retried move may find the image already moved.
+        if (!Files.exists(source) && Files.exists(target)) {
+            return targetDirectory;
+        }
+        try {
+            Files.createDirectories(target.getParent());
+        } catch (IOException e) {
+            var errorMessage = String.format("Target directory <%s> creation failed.", target.getParent());
+            log.error(errorMessage);
+            throw new ImageDirectoryCreationFailedException(errorMessage, e);
+        }
+        try {
+            Files.move(source, target);
+            var metadataFile = Path.of(rootPath, metadataKey(key));
+            if (Files.exists(metadataFile)) {
+                Files.move(
+                        metadataFile,
+                        Path.of(rootPath, "archived", metadataKey(key)),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            // Archived images aren't shown on event pages, so their variants aren't needed.
+            imageVariantGenerator.deleteVariants(legacyImageStore(), key);
+            bannerImageCache.invalidate(key);
         } catch (IOException e) {
-            var errorMessage =
-                    String.format("Failed to move banner image <%s> to archive.", originalPath.replace("_", "/"));
+            var errorMessage = String.format("Failed to move banner image <%s> to archive.", key);
             log.error(errorMessage);
             throw new FileMoveNotSuccessfulException(errorMessage, e);
         }
@@ -111,12 +414,170 @@ public class ImageServiceImpl implements ImageService {
         return targetDirectory;
     }
 
-    private boolean isInputFileNonValidImage(byte[] inputFile) {
-        BufferedImage finalBufferedImage = null;
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(inputFile)) {
-            finalBufferedImage = ImageIO.read(inputStream);
-        } catch (IOException ignored) {
+    private void copyWithLimit(InputStream inputStream, Path target) throws IOException {
+        var buffer = new byte[COPY_BUFFER_SIZE];
+        long total = 0;
+        try (OutputStream outputStream = Files.newOutputStream(target)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+                if (total > maxUploadBytes) {
+                    log.info(String.format(
+                            "%s Upload exceeds %s bytes. Throwing exception.", LOG_PREFIX, maxUploadBytes));
+                    throw new ImageTooLargeException(
+                            String.format("Image is larger than the maximum of %s bytes.", maxUploadBytes));
+                }
+                outputStream.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /** @return Hex encoded SHA-256 of the content. */
+    private static String contentHash(Resource content) throws IOException {
+        var digest = sha256();
+        try (InputStream inputStream = new DigestInputStream(content.getInputStream(), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Reads only the format header and dimensions. Decoding the whole image would let a small, highly compressed file
+     * (a decompression bomb) allocate gigabytes.
+     *
+     * @return Null if the file isn't an image in one of the allowed formats.
+     */
+    private ImageHeader readImageHeader(Resource image) throws IOException {
+        try (ImageInputStream imageInputStream = ImageVariantGenerator.openImageInputStream(image)) {
+            if (imageInputStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                var contentType = CONTENT_TYPES.get(reader.getFormatName().toLowerCase(Locale.ROOT));
+                long width = reader.getWidth(0);
+                long height = reader.getHeight(0);
+                if (contentType == null || width <= 0 || height <= 0) {
+                    return null;
+                }
+                return new ImageHeader(contentType, width, height);
+            } catch (IIOException | IndexOutOfBoundsException invalidImage) {
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private int variantWidthOrZero(int width) {
+        var variantWidth = imageVariantGenerator.chooseWidth(width);
+        return variantWidth != null ? variantWidth : 0;
+    }
+
+    /** Null if the name points outside the root path or to a hidden (e.g. metadata or temp) file. */
+    private StoredImage resolveBannerImage(String fileName) {
+        var contentHash = BannerImageNames.contentHash(fileName);
+        if (contentHash != null) {
+            return new StoredImage(blobStore, objectKey(contentHash));
+        }
+        var root = Path.of(rootPath).toAbsolutePath().normalize();
+        var file = root.resolve(fileName).normalize();
+        if (!file.startsWith(root) || file.equals(root) || file.getFileName().toString().startsWith(".")) {
+            return null;
+        }
+        return new StoredImage(legacyImageStore(), root.relativize(file).toString().replace(File.separatorChar, '/'));
+    }
+
+    /** Images uploaded before content addressing stay on the local disk under the root path, whatever the store. */
+    private BlobStore legacyImageStore() {
+        if (legacyImageStore == null) {
+            legacyImageStore = new LocalBlobStore(rootPath);
+        }
+        return legacyImageStore;
+    }
+
+    /** Sharded by the first two bytes of the hash, so no directory (or listing) grows too large. */
+    private static String objectKey(String contentHash) {
+        return String.format(
+                "%s/%s/%s/%s",
+                OBJECTS_DIRECTORY, contentHash.substring(0, 2), contentHash.substring(2, 4), contentHash);
+    }
+
+    private static String metadataKey(String key) {
+        var nameStart = key.lastIndexOf('/') + 1;
+        return String.format("%s.%s%s", key.substring(0, nameStart), key.substring(nameStart), METADATA_SUFFIX);
+    }
+
+    private Properties readMetadata(StoredImage image) throws IOException {
+        var metadataResource = image.blobStore().get(metadataKey(image.key()));
+        if (metadataResource.isEmpty()) {
+            return null;
+        }
+        var metadata = new Properties();
+        try (var reader = new InputStreamReader(metadataResource.get().getInputStream(), StandardCharsets.UTF_8)) {
+            metadata.load(reader);
+        }
+        return metadata;
+    }
+
+    /** For images uploaded before (all of) the metadata was stored. Null if the content isn't a valid image. */
+    private Properties createMetadata(StoredImage image, Resource content) throws IOException {
+        var header = readImageHeader(content);
+        if (header == null) {
+            return null;
+        }
+        return writeMetadata(image, header, contentHash(content), placeholder(content, header));
+    }
+
+    /** Stored as a whole, so concurrent readers see either no metadata or all of it. */
+    private Properties writeMetadata(StoredImage image, ImageHeader header, String contentHash, String placeholder)
+            throws IOException {
+        var metadata = new Properties();
+        metadata.setProperty(METADATA_CONTENT_TYPE, header.contentType());
+        metadata.setProperty(METADATA_CONTENT_HASH, contentHash);
+        metadata.setProperty(METADATA_WIDTH, String.valueOf(header.width()));
+        metadata.setProperty(METADATA_HEIGHT, String.valueOf(header.height()));
+        if (placeholder != null) {
+            metadata.setProperty(METADATA_PLACEHOLDER, placeholder);
+        }
+        var writer = new StringWriter();
+        metadata.store(writer, null);
+        image.blobStore().put(metadataKey(image.key()), writer.toString().getBytes(StandardCharsets.UTF_8));
+        return metadata;
+    }
+
+    /** Null if it can't be made, the image is still stored and served. */
+    private String placeholder(Resource content, ImageHeader header) {
+        try {
+            return ImageVariantGenerator.placeholder(content, header.width(), header.height());
+        } catch (IOException | RuntimeException exception) {
+            log.warn(String.format("%s Making a placeholder failed: %s", LOG_PREFIX, exception));
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ioException) {
+            log.warn(String.format("%s Removing temp file <%s> failed: %s", LOG_PREFIX, file, ioException));
         }
-        return finalBufferedImage == null;
     }
 }
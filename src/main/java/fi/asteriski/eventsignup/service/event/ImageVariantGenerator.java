@@ -0,0 +1,252 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import fi.asteriski.eventsignup.service.blob.BlobStore;
+import jakarta.annotation.PreDestroy;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generates smaller variants of banner images in a background worker pool. A variant of width <code>w</code> is stored
+ * under <code>.&lt;name&gt;.&lt;w&gt;w</code> next to the original in the same {@link BlobStore}, resized and
+ * recompressed without the original's metadata (EXIF etc.). Only variants narrower than the original are made. GIFs
+ * are left alone, their animation would be lost.
+ *
+ * <p>The original is decoded once, subsampled close to the largest variant, and each smaller variant is scaled from
+ * the previous one. Memory use depends on the variant sizes, not on the original's.
+ */
+@Log4j2
+@Component
+public class ImageVariantGenerator {
+
+    private static final String LOG_PREFIX = "[ImageVariantGenerator]";
+    /** Content type of the original -> ImageIO format the variants are written in. */
+    private static final Map<String, String> VARIANT_FORMATS = Map.of("image/jpeg", "jpeg", "image/png", "png");
+    /** Size of the longer side of placeholders in pixels. */
+    private static final int PLACEHOLDER_SIZE = 16;
+
+    private final int[] widths;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public ImageVariantGenerator(
+            @Value("${fi.asteriski.config.event.banner-image.variant-widths:320,768,1600}") int[] widths,
+            @Value("${fi.asteriski.config.event.banner-image.variant-jpeg-quality:0.8}") float jpegQuality,
+            @Value("${fi.asteriski.config.event.banner-image.variant-workers:2}") int workers,
+            @Value("${fi.asteriski.config.event.banner-image.variant-queue-capacity:100}") int queueCapacity) {
+        this.widths = Arrays.stream(widths).filter(width -> width > 0).sorted().distinct().toArray();
+        this.jpegQuality = jpegQuality;
+        this.executor = new ThreadPoolExecutor(
+                workers,
+                workers,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("image-variants-", 0).daemon(true).factory());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /** @return The smallest variant width that is at least <code>requestedWidth</code>, or null if none is. */
+    public Integer chooseWidth(int requestedWidth) {
+        for (var width : widths) {
+            if (width >= requestedWidth) {
+                return width;
+            }
+        }
+        return null;
+    }
+
+    /** @return Content type of the variants of an original of the given type, or null if it has no variants. */
+    public static String variantContentType(String originalContentType) {
+        return VARIANT_FORMATS.containsKey(originalContentType) ? originalContentType : null;
+    }
+
+    public static String variantKey(String originalKey, int width) {
+        var nameStart = originalKey.lastIndexOf('/') + 1;
+        return String.format(
+                "%s.%s.%sw", originalKey.substring(0, nameStart), originalKey.substring(nameStart), width);
+    }
+
+    /**
+     * Makes a tiny PNG of the image, at most {@value PLACEHOLDER_SIZE} pixels on its longer side and well under a
+     * kilobyte. The image is decoded subsampled to about four times that, so this is cheap even for large images.
+     *
+     * @return The placeholder as a <code>data:</code> URI.
+     */
+    static String placeholder(Resource content, long width, long height) throws IOException {
+        var longerSide = Math.max(width, height);
+        var image = decodeSubsampled(content, (int) Math.max(1, longerSide / (PLACEHOLDER_SIZE * 4)));
+        var placeholderWidth = (int) Math.max(1, Math.round((double) PLACEHOLDER_SIZE * width / longerSide));
+        image = scale(image, Math.min(placeholderWidth, image.getWidth()), image.getColorModel().hasAlpha());
+        var output = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", output)) {
+            throw new IOException("No PNG writer.");
+        }
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(output.toByteArray());
+    }
+
+    /**
+     * Files are read directly. Other resources are streamed through a memory cache, which is fine as images are
+     * bounded by the upload limit. Closing the returned stream closes the resource's stream.
+     */
+    static ImageInputStream openImageInputStream(Resource resource) throws IOException {
+        if (resource.isFile()) {
+            return ImageIO.createImageInputStream(resource.getFile());
+        }
+        var inputStream = resource.getInputStream();
+        return new MemoryCacheImageInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inputStream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues generating the missing variants of the image. Does nothing if they are already being generated. If the
+     * queue is full the image is served without variants until it is submitted again.
+     */
+    public void submit(BlobStore blobStore, String original, String contentType, long originalWidth) {
+        var format = VARIANT_FORMATS.get(contentType);
+        if (format == null || !inProgress.add(original)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(blobStore, original, format, originalWidth);
+                } catch (IOException | RuntimeException exception) {
+                    log.error(String.format(
+                            "%s Generating variants of <%s> failed: %s", LOG_PREFIX, original, exception));
+                } finally {
+                    inProgress.remove(original);
+                }
+            });
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            inProgress.remove(original);
+            log.warn(String.format("%s Queue is full. Skipped generating variants of <%s>.", LOG_PREFIX, original));
+        }
+    }
+
+    public void deleteVariants(BlobStore blobStore, String original) throws IOException {
+        for (var width : widths) {
+            blobStore.delete(variantKey(original, width));
+        }
+    }
+
+    private void generate(BlobStore blobStore, String original, String format, long originalWidth)
+            throws IOException {
+        var missingWidths = new ArrayList<Integer>();
+        for (var width : widths) {
+            if (width < originalWidth && !blobStore.exists(variantKey(original, width))) {
+                missingWidths.add(width);
+            }
+        }
+        if (missingWidths.isEmpty()) {
+            return;
+        }
+        var largest = missingWidths.get(missingWidths.size() - 1);
+        var image = decodeSubsampled(blobStore, original, (int) Math.max(1, originalWidth / largest));
+        // Largest first, so each variant is scaled from the previous one.
+        for (int i = missingWidths.size() - 1; i >= 0; i--) {
+            image = scale(image, missingWidths.get(i), format.equals("png"));
+            write(image, format, blobStore, variantKey(original, missingWidths.get(i)));
+        }
+        log.debug(String.format("%s Generated %s variants of <%s>.", LOG_PREFIX, missingWidths.size(), original));
+    }
+
+    private BufferedImage decodeSubsampled(BlobStore blobStore, String original, int subsampling)
+            throws IOException {
+        var resource = blobStore.get(original).orElseThrow(() -> new IOException("The image no longer exists."));
+        return decodeSubsampled(resource, subsampling);
+    }
+
+    private static BufferedImage decodeSubsampled(Resource resource, int subsampling) throws IOException {
+        try (ImageInputStream imageInputStream = openImageInputStream(resource)) {
+            var readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                throw new IOException("No reader for the image.");
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                var param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage source, int width, boolean keepAlpha) {
+        var height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        var target = new BufferedImage(
+                width, height, keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /** Written without metadata to a temp file that is then stored. */
+    private void write(BufferedImage image, String format, BlobStore blobStore, String target) throws IOException {
+        var tempFile = Files.createTempFile(".variant-", ".tmp");
+        var writer = ImageIO.getImageWritersByFormatName(format).next();
+        try {
+            var param = writer.getDefaultWriteParam();
+            if (format.equals("jpeg")) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            try (var imageOutputStream = ImageIO.createImageOutputStream(tempFile.toFile())) {
+                writer.setOutput(imageOutputStream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            blobStore.put(target, tempFile);
+        } finally {
+            writer.dispose();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
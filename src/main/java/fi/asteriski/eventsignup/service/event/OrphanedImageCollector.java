@@ -0,0 +1,352 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
+import fi.asteriski.eventsignup.dao.event.EventDao;
+import fi.asteriski.eventsignup.model.event.OrphanedImageReport;
+import fi.asteriski.eventsignup.service.blob.BlobStore;
+import fi.asteriski.eventsignup.service.blob.LocalBlobStore;
+import fi.asteriski.eventsignup.utils.BannerImageNames;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes banner images no event, archived event (hot or cold tier) or recent upload references: uploads that never
+ * got attached to an event and images of deleted events. Together with an image its metadata and variants are
+ * deleted, as are metadata and variants left without their image.
+ *
+ * <p>The referenced names are streamed from the database and the cold tier into a compact set first. The image tree
+ * is then walked in parallel, one shard directory per task. Only files older than the orphan grace period are
+ * deleted, so uploads not yet attached to an event are kept. With <code>dry-run</code> the orphans are only logged
+ * and counted.
+ *
+ * <p>Every node runs one. With a shared store the nodes may delete the same files, which does no harm.
+ */
+@Log4j2
+@Component
+public class OrphanedImageCollector {
+
+    private static final String LOG_PREFIX = "[OrphanedImageCollector]";
+    /** Content addressed images are sharded by the first byte of their hash. */
+    private static final int OBJECT_SHARDS = 256;
+    /** Where older images are moved when their event is archived. */
+    private static final String ARCHIVED_DIRECTORY = "archived";
+    /** Names of the metadata (<code>.name.meta</code>) and variants (<code>.name.320w</code>) of image "name". */
+    private static final Pattern DERIVED_NAME =
+            Pattern.compile(String.format("\\.(.+)(%s|\\.\\d+w)", Pattern.quote(ImageServiceImpl.METADATA_SUFFIX)));
+
+    private final String rootPath;
+    private final BlobStore blobStore;
+    private final BlobStore legacyImageStore;
+    private final EventDao eventDao;
+    private final ArchivedEventDao archivedEventDao;
+    private final ColdArchivedEventDao coldArchivedEventDao;
+    private final BannerImageCache bannerImageCache;
+    private final MeterRegistry meterRegistry;
+    private final Timer durationTimer;
+    private final Counter scannedCounter;
+    private final Counter failureCounter;
+
+    @Value("${fi.asteriski.config.event.banner-image.orphan-grace-period-minutes:1440}")
+    private Long orphanGracePeriodMinutes;
+
+    @Value("${fi.asteriski.config.event.banner-image.gc.dry-run:false}")
+    private Boolean dryRun;
+
+    @Value("${fi.asteriski.config.event.banner-image.gc.parallelism:4}")
+    private Integer parallelism;
+
+    public OrphanedImageCollector(
+            @Value("${fi.asteriski.config.event.root-path-bannerimg}") String rootPath,
+            BlobStore blobStore,
+            EventDao eventDao,
+            ArchivedEventDao archivedEventDao,
+            ColdArchivedEventDao coldArchivedEventDao,
+            BannerImageCache bannerImageCache,
+            MeterRegistry meterRegistry) {
+        this.rootPath = rootPath;
+        this.blobStore = blobStore;
+        this.legacyImageStore = new LocalBlobStore(rootPath);
+        this.eventDao = eventDao;
+        this.archivedEventDao = archivedEventDao;
+        this.coldArchivedEventDao = coldArchivedEventDao;
+        this.bannerImageCache = bannerImageCache;
+        this.meterRegistry = meterRegistry;
+        this.durationTimer = Timer.builder("banner.image.gc.duration")
+                .description("Duration of orphaned banner image collection runs.")
+                .register(meterRegistry);
+        this.scannedCounter = Counter.builder("banner.image.gc.scanned")
+                .description("Files looked at by the orphaned banner image collector.")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("banner.image.gc.failures")
+                .description("Files or directories the orphaned banner image collector failed to list or delete.")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${fi.asteriski.config.event.banner-image.gc.cron:0 15 4 * * ?}")
+    public void scheduledCollect() {
+        try {
+            collect(dryRun);
+        } catch (RuntimeException runtimeException) {
+            log.error(String.format("%s Collecting orphaned images failed: %s", LOG_PREFIX, runtimeException));
+        }
+    }
+
+    public OrphanedImageReport collect(boolean dryRun) {
+        var started = System.nanoTime();
+        var run = new Run(dryRun, Instant.now().minus(Duration.ofMinutes(orphanGracePeriodMinutes)));
+        // Before listing, so an image referenced meanwhile is younger than the grace period or was just touched by
+        // its upload.
+        var references = collectReferences();
+        var tasks = new ArrayList<Callable<Void>>();
+        for (int shard = 0; shard < OBJECT_SHARDS; shard++) {
+            var directory = String.format("%s/%02x", ImageServiceImpl.OBJECTS_DIRECTORY, shard);
+            tasks.add(() -> collectDirectory(blobStore, directory, run, references::isObjectReferenced));
+        }
+        for (var directory : legacyDirectories()) {
+            tasks.add(() -> collectDirectory(legacyImageStore, directory, run, references::isLegacyReferenced));
+        }
+        var threadFactory =
+                Thread.ofPlatform().name("orphaned-image-collector-", 0).daemon(true).factory();
+        try (var executor = Executors.newFixedThreadPool(parallelism, threadFactory)) {
+            for (var result : executor.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException executionException) {
+                    run.failures.increment();
+                    log.error(String.format(
+                            "%s Collecting a directory failed: %s", LOG_PREFIX, executionException.getCause()));
+                }
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            log.warn(String.format("%s Interrupted, the report is partial.", LOG_PREFIX));
+        }
+        var duration = Duration.ofNanos(System.nanoTime() - started);
+        durationTimer.record(duration);
+        var report = run.toReport(duration);
+        scannedCounter.increment(report.scanned());
+        failureCounter.increment(report.failures());
+        Counter.builder("banner.image.gc.orphans")
+                .tag("dry.run", String.valueOf(dryRun))
+                .register(meterRegistry)
+                .increment(report.orphans());
+        Counter.builder("banner.image.gc.orphan.bytes")
+                .tag("dry.run", String.valueOf(dryRun))
+                .register(meterRegistry)
+                .increment(report.orphanBytes());
+        log.info(String.format(
+                "%s %s %s orphans (%s bytes) of %s files in %s ms (%.0f files/s), %s failures. %s references.",
+                LOG_PREFIX,
+                dryRun ? "Found" : "Deleted",
+                report.orphans(),
+                report.orphanBytes(),
+                report.scanned(),
+                duration.toMillis(),
+                report.scanned() / Math.max(duration.toNanos() / 1e9, 1e-3),
+                report.failures(),
+                references.size()));
+        return report;
+    }
+
+    private References collectReferences() {
+        var references = new References(rootPath);
+        eventDao.forEachBannerImg(references::add);
+        archivedEventDao.forEachBannerImage(references::add);
+        coldArchivedEventDao.forEachBannerImage(references::add);
+        references.seal();
+        return references;
+    }
+
+    /** Older images are kept on the local disk in a directory per uploader, and under {@value ARCHIVED_DIRECTORY}. */
+    private List<String> legacyDirectories() {
+        try (var files = Files.list(Path.of(rootPath))) {
+            return files.filter(Files::isDirectory)
+                    .map(directory -> directory.getFileName().toString())
+                    .filter(name -> !name.startsWith(".")
+                            && !name.equals(ImageServiceImpl.OBJECTS_DIRECTORY)
+                            && !name.equals(ColdArchivedEventDao.BLOB_DIRECTORY))
+                    .toList();
+        } catch (NoSuchFileException noSuchFileException) {
+            return List.of();
+        } catch (IOException ioException) {
+            log.error(String.format("%s Listing <%s> failed: %s", LOG_PREFIX, rootPath, ioException));
+            return List.of();
+        }
+    }
+
+    /**
+     * A directory's listing is held in memory, so that metadata and variants can be matched with their image. Shards
+     * keep the directories small.
+     */
+    private Void collectDirectory(BlobStore store, String directory, Run run, Predicate<String> isReferenced)
+            throws IOException {
+        List<BlobStore.BlobInfo> blobs;
+        try (var listing = store.list(directory)) {
+            blobs = listing.toList();
+        }
+        run.scanned.add(blobs.size());
+        var keys = blobs.stream().map(BlobStore.BlobInfo::key).collect(Collectors.toSet());
+        var orphanedImages = new HashSet<String>();
+        for (var blob : blobs) {
+            if (blob.key().equals(imageKey(blob.key()))
+                    && blob.lastModified().isBefore(run.gracePeriodStart)
+                    && !isReferenced.test(blob.key())) {
+                orphanedImages.add(blob.key());
+            }
+        }
+        for (var blob : blobs) {
+            var image = imageKey(blob.key());
+            if (image == null) {
+                // E.g. an upload in progress.
+                continue;
+            }
+            var orphaned = orphanedImages.contains(image)
+                    || (!keys.contains(image) && blob.lastModified().isBefore(run.gracePeriodStart));
+            if (orphaned) {
+                delete(store, blob, run);
+            }
+        }
+        return null;
+    }
+
+    private void delete(BlobStore store, BlobStore.BlobInfo blob, Run run) {
+        if (run.dryRun) {
+            log.info(String.format("%s Would delete <%s> (%s bytes).", LOG_PREFIX, blob.key(), blob.size()));
+        } else {
+            try {
+                store.delete(blob.key());
+                bannerImageCache.invalidate(blob.key());
+                log.debug(String.format("%s Deleted <%s>.", LOG_PREFIX, blob.key()));
+            } catch (IOException ioException) {
+                run.failures.increment();
+                log.warn(String.format("%s Deleting <%s> failed: %s", LOG_PREFIX, blob.key(), ioException));
+                return;
+            }
+        }
+        run.orphans.increment();
+        run.orphanBytes.add(blob.size());
+    }
+
+    /**
+     * @return The key itself for images, the image's key for metadata and variants, and null for other (temp) files.
+     */
+    static String imageKey(String key) {
+        var nameStart = key.lastIndexOf('/') + 1;
+        if (nameStart == key.length()) {
+            return null;
+        }
+        if (key.charAt(nameStart) != '.') {
+            return key;
+        }
+        var matcher = DERIVED_NAME.matcher(key.substring(nameStart));
+        return matcher.matches() ? key.substring(0, nameStart) + matcher.group(1) : null;
+    }
+
+    /** Progress of one run, shared by its tasks. */
+    private static final class Run {
+        private final boolean dryRun;
+        private final Instant gracePeriodStart;
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder orphans = new LongAdder();
+        private final LongAdder orphanBytes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private Run(boolean dryRun, Instant gracePeriodStart) {
+            this.dryRun = dryRun;
+            this.gracePeriodStart = gracePeriodStart;
+        }
+
+        private OrphanedImageReport toReport(Duration duration) {
+            return new OrphanedImageReport(
+                    dryRun, scanned.sum(), orphans.sum(), orphanBytes.sum(), failures.sum(), duration);
+        }
+    }
+
+    /**
+     * Content hashes are kept as their first 64 bits in a sorted array, 8 bytes per reference. A collision would only
+     * keep an orphan. Older images are few, their keys are kept with '/' replaced by '_', as events name them
+     * "user_name" and usernames may contain '_' too.
+     */
+    static final class References {
+        private final String rootPrefix;
+        private long[] hashes = new long[1024];
+        private int size;
+        private final Set<String> legacyKeys = new HashSet<>();
+
+        References(String rootPath) {
+            this.rootPrefix = rootPath + "/";
+        }
+
+        void add(String name) {
+            var contentHash = BannerImageNames.contentHash(name);
+            if (contentHash != null) {
+                if (size == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, size * 2);
+                }
+                hashes[size++] = hashPrefix(contentHash);
+                return;
+            }
+            // Moved images are referenced by their full path under the archive.
+            var key = toLegacyKey(name.startsWith(rootPrefix) ? name.substring(rootPrefix.length()) : name);
+            legacyKeys.add(key);
+            // The image may have been moved and the archived event not updated yet.
+            if (!key.startsWith(ARCHIVED_DIRECTORY + "_")) {
+                legacyKeys.add(ARCHIVED_DIRECTORY + "_" + key);
+            }
+        }
+
+        void seal() {
+            Arrays.sort(hashes, 0, size);
+        }
+
+        int size() {
+            return size + legacyKeys.size();
+        }
+
+        /** Keys not named by a content hash are kept. */
+        boolean isObjectReferenced(String key) {
+            var contentHash = BannerImageNames.contentHash(key);
+            return contentHash == null || Arrays.binarySearch(hashes, 0, size, hashPrefix(contentHash)) >= 0;
+        }
+
+        boolean isLegacyReferenced(String key) {
+            return legacyKeys.contains(toLegacyKey(key));
+        }
+
+        private static String toLegacyKey(String name) {
+            return name.replace('/', '_');
+        }
+
+        private static long hashPrefix(String contentHash) {
+            return Long.parseUnsignedLong(contentHash.substring(0, 16), 16);
+        }
+    }
+}
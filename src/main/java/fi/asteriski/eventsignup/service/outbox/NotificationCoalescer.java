@@ -0,0 +1,109 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.outbox;
+
+import fi.asteriski.eventsignup.dao.outbox.OutboxMessageDao;
+import fi.asteriski.eventsignup.model.outbox.NotificationType;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Holds signup and cancellation notifications in the outbox for a short window so a newer notification about the same
+ * participant of the same event can supersede them before they are sent:
+ *
+ * <ul>
+ *   <li>a second signup or cancellation replaces the pending one,
+ *   <li>a cancellation of a signup whose confirmation hasn't been sent yet drops both.
+ * </ul>
+ *
+ * A cancellation followed by a new signup is sent as is, since the original confirmation already went out. Only
+ * notifications that haven't been tried yet are touched and ones a poller is delivering right now are skipped.
+ * Notifications are matched by participant, not by email address, since several participants may share one and each
+ * confirmation carries its own participant's cancel link.
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class NotificationCoalescer {
+
+    private static final String LOG_PREFIX = "[NotificationCoalescer]";
+
+    @Value("${fi.asteriski.config.outbox.coalesce-window-millis:30000}")
+    private Long coalesceWindowMillis;
+
+    @NonNull
+    private OutboxMessageDao outboxMessageDao;
+
+    @NonNull
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Supersedes pending notifications with the new one and delays the new one by the window. Must be called in the
+     * transaction that saves the new notification.
+     *
+     * @return True if the new notification is still to be saved and sent, false if it cancelled out a pending one.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean coalesce(OutboxMessageEntity message) {
+        if (coalesceWindowMillis <= 0
+                || message.getType() == NotificationType.EVENT_SAVED
+                || message.getParticipantId() == null) {
+            return true;
+        }
+        message.setNextAttemptAt(Instant.now().plus(Duration.ofMillis(coalesceWindowMillis)));
+        var pending = outboxMessageDao.findUnsentSignupNotificationsAndLock(
+                message.getEventId(), message.getParticipantId());
+        var superseded = new ArrayList<OutboxMessageEntity>(pending.size());
+        var supersededSignup = false;
+        var pendingCancellation = false;
+        for (var older : pending) {
+            pendingCancellation |= older.getType() == NotificationType.SIGNUP_CANCELLED;
+            if (older.getType() == message.getType()) {
+                superseded.add(older);
+            } else if (older.getType() == NotificationType.SIGNUP_SUCCESSFUL) {
+                superseded.add(older);
+                supersededSignup = true;
+            }
+        }
+        // A signup that was never confirmed needs no cancellation either. If a cancellation is pending too, the signup
+        // came after it and an earlier confirmation did go out, so the new cancellation replaces the pending one.
+        var cancelledOut = supersededSignup && !pendingCancellation;
+        if (superseded.isEmpty()) {
+            return true;
+        }
+        for (var older : superseded) {
+            older.setStatus(OutboxStatus.COALESCED);
+            countCoalesced(older.getType());
+        }
+        outboxMessageDao.saveAll(superseded);
+        if (cancelledOut) {
+            countCoalesced(message.getType());
+        }
+        log.debug(String.format(
+                "%s New %s notification for event <%s> superseded %s pending ones.",
+                LOG_PREFIX, message.getType(), message.getEventId(), superseded.size()));
+        return !cancelledOut;
+    }
+
+    private void countCoalesced(NotificationType type) {
+        Counter.builder("notification.outbox.coalesced")
+                .description("Notifications not sent because a newer one superseded them.")
+                .tag("type", type.name())
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.outbox;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains the notification outbox. Every node runs its own poller. A batch is claimed with <code>FOR UPDATE SKIP
+ * LOCKED</code> and marked in flight, so the pollers share the work without handing the same notification to two
+ * nodes.
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class OutboxPoller {
+
+    private static final String LOG_PREFIX = "[OutboxPoller]";
+
+    @Value("${fi.asteriski.config.outbox.retention-days:7}")
+    private Integer retentionDays;
+
+    @NonNull
+    private OutboxService outboxService;
+
+    @Scheduled(
+            fixedDelayString = "${fi.asteriski.config.outbox.poll-interval-millis:5000}",
+            initialDelayString = "${fi.asteriski.config.outbox.poll-interval-millis:5000}")
+    public void poll() {
+        try {
+            // Keep going while there is a backlog. Failed notifications are rescheduled into the future so this ends.
+            while (outboxService.dispatchDueMessages() > 0) {
+                log.debug(String.format("%s Dispatched a batch of notifications.", LOG_PREFIX));
+            }
+        } catch (RuntimeException runtimeException) {
+            log.error(String.format("%s Dispatching notifications failed: %s", LOG_PREFIX, runtimeException));
+        }
+    }
+
+    @Scheduled(cron = "${fi.asteriski.config.outbox.cleanup-cron:0 30 4 * * ?}")
+    public void removeOldSentMessages() {
+        outboxService.removeSentMessagesBefore(Instant.now().minus(retentionDays, ChronoUnit.DAYS));
+    }
+}
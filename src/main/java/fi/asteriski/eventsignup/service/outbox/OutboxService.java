@@ -0,0 +1,18 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.outbox;
+
+import java.time.Instant;
+
+public interface OutboxService {
+    /**
+     * Delivers one batch of due notifications from the outbox.
+     *
+     * @return Number of notifications handled (delivered, rescheduled or given up on). Zero when nothing was due.
+     */
+    int dispatchDueMessages();
+
+    void removeSentMessagesBefore(Instant dateLimit);
+}
@@ -0,0 +1,222 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.outbox;
+
+import fi.asteriski.eventsignup.dao.outbox.OutboxMessageDao;
+import fi.asteriski.eventsignup.event.SavedEventSpringEvent;
+import fi.asteriski.eventsignup.event.SignupCancelledSpringEvent;
+import fi.asteriski.eventsignup.event.SignupSuccessfulSpringEvent;
+import fi.asteriski.eventsignup.exception.EventNotFoundException;
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
+import fi.asteriski.eventsignup.service.digest.OwnerDigestService;
+import fi.asteriski.eventsignup.service.event.EventService;
+import fi.asteriski.eventsignup.utils.EmailService;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final String LOG_PREFIX = "[OutboxServiceImpl]";
+
+    @Value("${fi.asteriski.config.outbox.batch-size:20}")
+    private Integer batchSize;
+
+    @Value("${fi.asteriski.config.outbox.max-attempts:10}")
+    private Integer maxAttempts;
+
+    @Value("${fi.asteriski.config.outbox.retry-base-delay-millis:30000}")
+    private Long retryBaseDelayMillis;
+
+    @Value("${fi.asteriski.config.outbox.retry-max-delay-millis:3600000}")
+    private Long retryMaxDelayMillis;
+
+    @Value("${fi.asteriski.config.outbox.delivery-timeout-millis:60000}")
+    private Long deliveryTimeoutMillis;
+
+    @Value("${fi.asteriski.config.outbox.lease-millis:900000}")
+    private Long leaseMillis;
+
+    @NonNull
+    private OutboxMessageDao outboxMessageDao;
+
+    @NonNull
+    private EventService eventService;
+
+    @NonNull
+    private EmailService emailService;
+
+    @NonNull
+    private OwnerDigestService ownerDigestService;
+
+    /**
+     * The batch is claimed in a short transaction of its own: its messages are marked in flight with a lease, so other
+     * nodes skip them without a lock or connection being held while they are delivered. Each result is saved in a
+     * transaction of its own. A message the delivery engine hasn't finished by the timeout is still queued there, so
+     * it stays in flight with its lease extended, and its result is saved once the engine is done with it. Requeueing
+     * it would send it twice.
+     */
+    @Override
+    public int dispatchDueMessages() {
+        var messages = outboxMessageDao.claimDue(Instant.now(), batchSize, leaseUntil());
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        var deliveries = new ArrayList<Optional<CompletableFuture<Void>>>(messages.size());
+        for (var message : messages) {
+            deliveries.add(deliver(message));
+        }
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deliveryTimeoutMillis);
+        var stillQueued = new ArrayList<UUID>();
+        for (int i = 0; i < messages.size(); i++) {
+            var message = messages.get(i);
+            var delivery = deliveries.get(i);
+            if (delivery.isEmpty()) {
+                giveUp(message, "Event no longer exists.");
+                saveResult(message);
+                continue;
+            }
+            try {
+                delivery.get().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                recordResult(message, null);
+            } catch (ExecutionException executionException) {
+                recordResult(message, executionException.getCause());
+            } catch (TimeoutException | InterruptedException exception) {
+                if (exception instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                stillQueued.add(message.getId());
+                delivery.get().whenCompleteAsync((ignored, error) -> recordLateResult(message, error));
+            }
+        }
+        if (!stillQueued.isEmpty()) {
+            outboxMessageDao.extendLeases(stillQueued, leaseUntil());
+            log.info(String.format(
+                    "%s %s notifications are still queued for delivery. Their results are saved when they finish.",
+                    LOG_PREFIX, stillQueued.size()));
+        }
+        return messages.size();
+    }
+
+    @Override
+    public void removeSentMessagesBefore(Instant dateLimit) {
+        var removed = outboxMessageDao.deleteSentBefore(dateLimit);
+        var removedCoalesced = outboxMessageDao.deleteCoalescedBefore(dateLimit);
+        log.info(String.format(
+                "%s Removed %s sent notifications sent before %s and %s coalesced ones.",
+                LOG_PREFIX, removed, dateLimit, removedCoalesced));
+    }
+
+    /** Empty if the notification can't be delivered anymore because its event is gone. */
+    private Optional<CompletableFuture<Void>> deliver(OutboxMessageEntity message) {
+        var locale = Locale.forLanguageTag(message.getLocale());
+        var timeZone = ZoneId.of(message.getTimeZone());
+        EventDto event;
+        try {
+            // Reloaded so the notification shows the event as it is now.
+            event = eventService.getEvent(message.getEventId(), locale, Optional.empty());
+        } catch (EventNotFoundException eventNotFoundException) {
+            return Optional.empty();
+        }
+        if (ownerDigestService.collect(message, event)) {
+            // Sent later as part of the owner's digest.
+            return Optional.of(CompletableFuture.completedFuture(null));
+        }
+        try {
+            return Optional.of(
+                    switch (message.getType()) {
+                        case EVENT_SAVED -> emailService.sendSavedEventEmail(
+                                new SavedEventSpringEvent(this, event, message.getRecipient(), locale, timeZone));
+                        case SIGNUP_SUCCESSFUL -> emailService.sendSignupSuccessfulEmail(
+                                new SignupSuccessfulSpringEvent(
+                                        this, event, message.getParticipant().toDto(), locale, timeZone));
+                        case SIGNUP_CANCELLED -> emailService.sendSignupCancelledEmail(
+                                new SignupCancelledSpringEvent(
+                                        this, event, message.getParticipant().toDto(), locale, timeZone));
+                    });
+        } catch (RuntimeException runtimeException) {
+            return Optional.of(CompletableFuture.failedFuture(runtimeException));
+        }
+    }
+
+    private Instant leaseUntil() {
+        return Instant.now().plus(Duration.ofMillis(leaseMillis));
+    }
+
+    private void recordResult(OutboxMessageEntity message, Throwable error) {
+        if (error == null) {
+            message.setStatus(OutboxStatus.SENT);
+            message.setSentAt(Instant.now());
+            message.setAttempts(message.getAttempts() + 1);
+        } else {
+            retryLater(message, error);
+        }
+        saveResult(message);
+    }
+
+    private void recordLateResult(OutboxMessageEntity message, Throwable error) {
+        try {
+            var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            recordResult(message, cause);
+        } catch (RuntimeException runtimeException) {
+            // The lease runs out and the notification is delivered again.
+            log.error(String.format(
+                    "%s Saving the result of notification <%s> failed: %s",
+                    LOG_PREFIX, message.getId(), runtimeException));
+        }
+    }
+
+    private void saveResult(OutboxMessageEntity message) {
+        if (!outboxMessageDao.saveDeliveryResult(message)) {
+            log.warn(String.format(
+                    "%s Notification <%s> was no longer in flight. Its result (%s) was not saved.",
+                    LOG_PREFIX, message.getId(), message.getStatus()));
+        }
+    }
+
+    private void retryLater(OutboxMessageEntity message, Throwable error) {
+        var attempts = message.getAttempts() + 1;
+        message.setAttempts(attempts);
+        message.setLastError(String.valueOf(error));
+        if (attempts >= maxAttempts) {
+            giveUp(message, String.valueOf(error));
+            return;
+        }
+        // Exponential backoff: base, 2 * base, 4 * base, ... capped at the max delay.
+        var delayMillis = Math.min(retryMaxDelayMillis, retryBaseDelayMillis << Math.min(attempts - 1, 30));
+        message.setStatus(OutboxStatus.PENDING);
+        message.setNextAttemptAt(Instant.now().plus(Duration.ofMillis(delayMillis)));
+        log.warn(String.format(
+                "%s Delivering notification <%s> failed (attempt %s). Retrying in %s ms. Error was: %s",
+                LOG_PREFIX, message.getId(), attempts, delayMillis, error));
+    }
+
+    private void giveUp(OutboxMessageEntity message, String reason) {
+        message.setStatus(OutboxStatus.FAILED);
+        message.setLastError(reason);
+        log.error(String.format(
+                "%s Giving up on notification <%s> of type %s after %s attempts: %s",
+                LOG_PREFIX, message.getId(), message.getType(), message.getAttempts(), reason));
+    }
+}
@@ -0,0 +1,15 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.reminder;
+
+public interface EventReminderService {
+    /**
+     * Sends reminders to the participants of events starting within the configured number of hours. Participants
+     * already reminded (by this or an earlier run) are skipped, so the method can be called repeatedly.
+     *
+     * @return Number of reminders sent.
+     */
+    int sendDueReminders();
+}
@@ -0,0 +1,188 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.reminder;
+
+import static fi.asteriski.eventsignup.utils.Constants.PARTICIPANT_META_LOCALE;
+import static fi.asteriski.eventsignup.utils.Constants.PARTICIPANT_META_TIME_ZONE;
+
+import fi.asteriski.eventsignup.dao.reminder.ReminderRunDao;
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.reminder.ReminderRunEntity;
+import fi.asteriski.eventsignup.model.signup.ParticipantDto;
+import fi.asteriski.eventsignup.service.event.EventService;
+import fi.asteriski.eventsignup.service.signup.ParticipantService;
+import fi.asteriski.eventsignup.utils.EmailService;
+import fi.asteriski.eventsignup.utils.RateLimiter;
+import jakarta.annotation.PostConstruct;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Participants are read in pages ordered by (createdAt, id). Each page is sent under a global rate limit, and the
+ * cursor is saved after every delivery of the page has finished. After a crash at most the page in progress is sent
+ * again. Participants who sign up after the cursor has passed sort after it and get their reminder on the next run.
+ *
+ * <p>The rate limit is global because the job runs on one node at a time (see ScheduledJobsConfig).
+ */
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class EventReminderServiceImpl implements EventReminderService {
+
+    private static final String LOG_PREFIX = "[EventReminderServiceImpl]";
+
+    @Value("${fi.asteriski.config.reminders.hours-before-start:24}")
+    private Integer hoursBeforeStart;
+
+    @Value("${fi.asteriski.config.reminders.batch-size:100}")
+    private Integer batchSize;
+
+    @Value("${fi.asteriski.config.reminders.max-send-rate-per-second:5}")
+    private Double maxSendRatePerSecond;
+
+    @Value("${fi.asteriski.config.reminders.delivery-timeout-millis:60000}")
+    private Long deliveryTimeoutMillis;
+
+    @Value("${fi.asteriski.config.reminders.default-locale:fi}")
+    private String defaultLocale;
+
+    @Value("${fi.asteriski.config.reminders.default-time-zone:Europe/Helsinki}")
+    private String defaultTimeZone;
+
+    @NonNull
+    private EventService eventService;
+
+    @NonNull
+    private ParticipantService participantService;
+
+    @NonNull
+    private ReminderRunDao reminderRunDao;
+
+    @NonNull
+    private EmailService emailService;
+
+    private RateLimiter rateLimiter;
+
+    @PostConstruct
+    public void init() {
+        rateLimiter = new RateLimiter(maxSendRatePerSecond, 1);
+    }
+
+    @Override
+    public int sendDueReminders() {
+        var now = Instant.now();
+        var events = eventService.findAllByStartDateIsBetween(now, now.plus(Duration.ofHours(hoursBeforeStart)));
+        var sent = 0;
+        for (var event : events) {
+            try {
+                sent += sendReminders(event);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                log.warn(String.format("%s Interrupted while sending reminders.", LOG_PREFIX));
+                break;
+            }
+        }
+        return sent;
+    }
+
+    private int sendReminders(EventDto event) throws InterruptedException {
+        var reminderRun = reminderRunDao
+                .findByEventId(event.getId())
+                .orElseGet(() -> ReminderRunEntity.builder().eventId(event.getId()).build());
+        var sent = 0;
+        while (true) {
+            var participants = participantService.findPageByEvent(
+                    event.getId(),
+                    reminderRun.getLastParticipantCreatedAt(),
+                    reminderRun.getLastParticipantId(),
+                    batchSize);
+            if (participants.isEmpty()) {
+                return sent;
+            }
+            var deliveries = new ArrayList<CompletableFuture<Void>>(participants.size());
+            for (var participant : participants) {
+                rateLimiter.acquire();
+                deliveries.add(send(event, participant));
+            }
+            var failed = awaitDeliveries(event, participants, deliveries);
+            var last = participants.get(participants.size() - 1);
+            reminderRun.setLastParticipantCreatedAt(last.getCreatedAt());
+            reminderRun.setLastParticipantId(last.getId());
+            reminderRun.setSentCount(reminderRun.getSentCount() + participants.size() - failed);
+            reminderRun.setFailedCount(reminderRun.getFailedCount() + failed);
+            reminderRun = reminderRunDao.save(reminderRun);
+            sent += participants.size() - failed;
+            log.info(String.format(
+                    "%s Sent %s of %s reminders for event <%s>.",
+                    LOG_PREFIX, participants.size() - failed, participants.size(), event.getId()));
+            if (participants.size() < batchSize) {
+                return sent;
+            }
+        }
+    }
+
+    private CompletableFuture<Void> send(EventDto event, ParticipantDto participant) {
+        try {
+            return emailService.sendEventReminderEmail(
+                    event, participant, localeOf(participant), timeZoneOf(participant));
+        } catch (RuntimeException runtimeException) {
+            return CompletableFuture.failedFuture(runtimeException);
+        }
+    }
+
+    /** Waits for the page's deliveries and returns the number of failed ones. */
+    private int awaitDeliveries(
+            EventDto event, List<ParticipantDto> participants, List<CompletableFuture<Void>> deliveries)
+            throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deliveryTimeoutMillis);
+        var failed = 0;
+        for (int i = 0; i < deliveries.size(); i++) {
+            try {
+                deliveries.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException exception) {
+                failed++;
+                var cause = exception instanceof ExecutionException ? exception.getCause() : exception;
+                log.error(String.format(
+                        "%s Sending reminder of event <%s> to participant <%s> failed. Error was: %s",
+                        LOG_PREFIX, event.getId(), participants.get(i).getId(), cause));
+            }
+        }
+        return failed;
+    }
+
+    private Locale localeOf(ParticipantDto participant) {
+        var locale = metaDataValue(participant, PARTICIPANT_META_LOCALE);
+        return Locale.forLanguageTag(locale != null ? locale : defaultLocale);
+    }
+
+    private ZoneId timeZoneOf(ParticipantDto participant) {
+        var timeZone = metaDataValue(participant, PARTICIPANT_META_TIME_ZONE);
+        try {
+            return ZoneId.of(timeZone != null ? timeZone : defaultTimeZone);
+        } catch (DateTimeException dateTimeException) {
+            return ZoneId.of(defaultTimeZone);
+        }
+    }
+
+    private static String metaDataValue(ParticipantDto participant, String key) {
+        Map<String, Object> metaData = participant.getMetaData();
+        return metaData != null && metaData.get(key) instanceof String value ? value : null;
+    }
+}
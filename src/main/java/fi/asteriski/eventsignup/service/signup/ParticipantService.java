@@ -5,6 +5,7 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.service.signup;
 
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,6 +17,8 @@ public interface ParticipantService {
 
     List<ParticipantDto> findAllByEvent(UUID eventId);
 
+    List<ParticipantDto> findPageByEvent(UUID eventId, Instant afterCreatedAt, UUID afterId, int pageSize);
+
     void deleteAllByEvent(UUID eventId);
 
     ParticipantDto save(ParticipantDto participantDto);
@@ -6,6 +6,7 @@ package fi.asteriski.eventsignup.service.signup;
 
 import fi.asteriski.eventsignup.dao.signup.ParticipantDao;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -34,6 +35,11 @@ public class ParticipantServiceImpl implements ParticipantService {
         return participantDao.findAllByEvent(eventId);
     }
 
+    @Override
+    public List<ParticipantDto> findPageByEvent(UUID eventId, Instant afterCreatedAt, UUID afterId, int pageSize) {
+        return participantDao.findPageByEvent(eventId, afterCreatedAt, afterId, pageSize);
+    }
+
     @Override
     public void deleteAllByEvent(UUID eventId) {
         participantDao.deleteAllByEvent(eventId);
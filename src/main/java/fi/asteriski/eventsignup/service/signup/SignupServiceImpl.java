@@ -4,6 +4,8 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.service.signup;
 
+import static fi.asteriski.eventsignup.utils.Constants.PARTICIPANT_META_LOCALE;
+import static fi.asteriski.eventsignup.utils.Constants.PARTICIPANT_META_TIME_ZONE;
 import static fi.asteriski.eventsignup.utils.Constants.UTC_TIME_ZONE;
 
 import fi.asteriski.eventsignup.exception.*;
@@ -11,6 +13,7 @@ import fi.asteriski.eventsignup.model.event.EventDto;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import fi.asteriski.eventsignup.model.signup.SignupEvent;
 import fi.asteriski.eventsignup.service.event.EventService;
+import fi.asteriski.eventsignup.utils.ApplicationMetrics;
 import fi.asteriski.eventsignup.utils.CustomEventPublisher;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -22,6 +25,7 @@ import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.context.MessageSource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Log4j2
 @AllArgsConstructor
@@ -32,73 +36,100 @@ public class SignupServiceImpl implements SignupService {
     private ParticipantService participantService;
     private CustomEventPublisher customEventPublisher;
     private MessageSource messageSource;
+    private ApplicationMetrics applicationMetrics;
 
     @Override
     public SignupEvent getEventForSignUp(UUID eventId, Locale usersLocale, ZoneId userTimeZone) {
-        var event = eventService.getEvent(eventId, usersLocale, Optional.empty());
-        var now = ZonedDateTime.now(UTC_TIME_ZONE);
-        if (event.getSignupStarts() != null && event.getSignupStarts().isAfter(now)) {
-            var formattedZonedDateTime = event.getSignupStarts().format(DateTimeFormatter.RFC_1123_DATE_TIME);
-            var errorMsg = String.format(
-                    messageSource.getMessage("signup.not.started.error", null, usersLocale),
-                    event.getName(),
-                    formattedZonedDateTime);
-            throw new SignupNotStartedException(errorMsg);
-        }
-        if (event.getSignupEnds() != null && event.getSignupEnds().isBefore(now)) {
-            throw new SignupEndedException(
-                    String.format(messageSource.getMessage("signup.ended.error", null, usersLocale), event.getName()));
-        }
-        if (event.getStartDate().isBefore(now)) {
-            throw new EventNotFoundException(String.format(
-                    messageSource.getMessage("signup.event.already.held.error", null, usersLocale), event.getName()));
-        }
-        if (event.getMaxParticipants() != null) {
-            long numOfParticipants = participantService.countAllByEvent(eventId);
-            if (numOfParticipants >= event.getMaxParticipants()) {
-                throw new EventFullException(String.format(
-                        messageSource.getMessage("signup.event.full.error", null, usersLocale), event.getName()));
+        return applicationMetrics.timeSignup("form", () -> {
+            var event = eventService.getEvent(eventId, usersLocale, Optional.empty());
+            var now = ZonedDateTime.now(UTC_TIME_ZONE);
+            if (event.getSignupStarts() != null && event.getSignupStarts().isAfter(now)) {
+                var formattedZonedDateTime = event.getSignupStarts().format(DateTimeFormatter.RFC_1123_DATE_TIME);
+                var errorMsg = String.format(
+                        messageSource.getMessage("signup.not.started.error", null, usersLocale),
+                        event.getName(),
+                        formattedZonedDateTime);
+                applicationMetrics.countSignupRejection("not.started");
+                throw new SignupNotStartedException(errorMsg);
             }
-        }
-        return event.toSignupEvent();
+            if (event.getSignupEnds() != null && event.getSignupEnds().isBefore(now)) {
+                applicationMetrics.countSignupRejection("ended");
+                throw new SignupEndedException(String.format(
+                        messageSource.getMessage("signup.ended.error", null, usersLocale), event.getName()));
+            }
+            if (event.getStartDate().isBefore(now)) {
+                applicationMetrics.countSignupRejection("held");
+                throw new EventNotFoundException(String.format(
+                        messageSource.getMessage("signup.event.already.held.error", null, usersLocale),
+                        event.getName()));
+            }
+            if (event.getMaxParticipants() != null) {
+                long numOfParticipants = participantService.countAllByEvent(eventId);
+                if (numOfParticipants >= event.getMaxParticipants()) {
+                    applicationMetrics.countSignupRejection("full");
+                    throw new EventFullException(String.format(
+                            messageSource.getMessage("signup.event.full.error", null, usersLocale), event.getName()));
+                }
+            }
+            return event.toSignupEvent();
+        });
     }
 
     @Override
+    @Transactional
     public ParticipantDto addParticipantToEvent(
             UUID eventId, ParticipantDto participant, Locale usersLocale, ZoneId userTimeZone) {
-        if (!Objects.equals(eventId, participant.getEvent())) {
-            throw new EventNotFoundException(String.format(
-                    messageSource.getMessage("event.not.found.message", null, usersLocale), participant.getEvent()));
-        }
-        if (!eventService.eventExists(eventId)) {
-            throw new EventNotFoundException(
-                    String.format(messageSource.getMessage("event.not.found.message", null, usersLocale), eventId));
-        }
-        participant.setSignupTime(Instant.now());
-        participant = participantService.save(participant);
-        customEventPublisher.publishSignupSuccessfulEvent(
-                eventService.getEvent(eventId, usersLocale, Optional.empty()), participant, usersLocale, userTimeZone);
-        return participant;
+        return applicationMetrics.timeSignup("signup", () -> {
+            if (!Objects.equals(eventId, participant.getEvent())) {
+                throw new EventNotFoundException(String.format(
+                        messageSource.getMessage("event.not.found.message", null, usersLocale),
+                        participant.getEvent()));
+            }
+            if (!eventService.eventExists(eventId)) {
+                throw new EventNotFoundException(String.format(
+                        messageSource.getMessage("event.not.found.message", null, usersLocale), eventId));
+            }
+            var metaData =
+                    new HashMap<String, Object>(Objects.requireNonNullElse(participant.getMetaData(), Map.of()));
+            metaData.put(PARTICIPANT_META_LOCALE, usersLocale.toLanguageTag());
+            if (userTimeZone != null) {
+                metaData.put(PARTICIPANT_META_TIME_ZONE, userTimeZone.getId());
+            }
+            var savedParticipant = participantService.save(participant.toBuilder()
+                    .signupTime(Instant.now())
+                    .metaData(metaData)
+                    .build());
+            customEventPublisher.publishSignupSuccessfulEvent(
+                    eventService.getEvent(eventId, usersLocale, Optional.empty()),
+                    savedParticipant,
+                    usersLocale,
+                    userTimeZone);
+            return savedParticipant;
+        });
     }
 
     @Override
+    @Transactional
     public void removeParticipantFromEvent(UUID eventId, UUID participantId, Locale usersLocale, ZoneId userTimeZone) {
-        if (!eventService.eventExists(eventId)) {
-            throw new EventNotFoundException(
-                    String.format(messageSource.getMessage("event.not.found.message", null, usersLocale), eventId));
-        }
-        var participantDto = participantService
-                .findById(participantId)
-                .orElseThrow(() -> new ParticipantNotFoundException(String.format(
-                        messageSource.getMessage("signup.participant.remove.error", null, usersLocale),
-                        participantId,
-                        eventId)));
-        participantService.deleteParticipantByEventAndId(eventId, participantId);
-        customEventPublisher.publishSignupCancelledEvent(
-                eventService.getEvent(eventId, usersLocale, Optional.empty()),
-                participantDto,
-                usersLocale,
-                userTimeZone);
+        applicationMetrics.timeSignup("cancel", () -> {
+            if (!eventService.eventExists(eventId)) {
+                throw new EventNotFoundException(String.format(
+                        messageSource.getMessage("event.not.found.message", null, usersLocale), eventId));
+            }
+            var participantDto = participantService
+                    .findById(participantId)
+                    .orElseThrow(() -> new ParticipantNotFoundException(String.format(
+                            messageSource.getMessage("signup.participant.remove.error", null, usersLocale),
+                            participantId,
+                            eventId)));
+            participantService.deleteParticipantByEventAndId(eventId, participantId);
+            customEventPublisher.publishSignupCancelledEvent(
+                    eventService.getEvent(eventId, usersLocale, Optional.empty()),
+                    participantDto,
+                    usersLocale,
+                    userTimeZone);
+            return null;
+        });
     }
 
     @Override
@@ -0,0 +1,119 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils;
+
+import fi.asteriski.eventsignup.exception.EventSignupException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.function.Supplier;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Business metrics of the signup, event, archiving, image and email flows. Meters are looked up from the registry by
+ * name and tags on each call, Micrometer returning the already registered one.
+ *
+ * <p>Tag values must come from constants in the calling code, never from request data (ids, user names, file names),
+ * so the number of time series stays bounded. Percentile histograms are enabled per meter name prefix in
+ * application.properties.
+ */
+@Component
+@RequiredArgsConstructor
+public class ApplicationMetrics {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    /** An expected {@link EventSignupException}, e.g. a full event or a missing image. */
+    public static final String OUTCOME_REJECTED = "rejected";
+
+    public static final String OUTCOME_ERROR = "error";
+
+    @NonNull
+    private MeterRegistry meterRegistry;
+
+    public <T> T timeSignup(String operation, Supplier<T> action) {
+        return time("signup.requests", "Signup form, signup and cancellation requests.", operation, action);
+    }
+
+    /** Reason is one of full, not.started, ended or held. */
+    public void countSignupRejection(String reason) {
+        Counter.builder("signup.rejected")
+                .description("Signups rejected because of the event's state.")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public <T> T timeEventOperation(String operation, Supplier<T> action) {
+        return time("event.operations", "Reads and writes of events.", operation, action);
+    }
+
+    public void timeArchivingJob(String job, Runnable action) {
+        time("archiving.job", "Runs of the archiving jobs.", job, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public void countArchivedEvents(String job, long amount) {
+        Counter.builder("archiving.events")
+                .description("Events archived, offloaded or removed by the archiving jobs.")
+                .tag("job", job)
+                .register(meterRegistry)
+                .increment(amount);
+    }
+
+    public <T> T timeBannerImageUpload(Supplier<T> action) {
+        return time("banner.image.upload", "Processing of uploaded banner images.", "add", action);
+    }
+
+    public void recordBannerImageUploadBytes(long bytes) {
+        recordBytes("banner.image.upload.bytes", "Sizes of uploaded banner images.", bytes);
+    }
+
+    public void recordBannerImageServedBytes(long bytes) {
+        recordBytes("banner.image.served.bytes", "Sizes of served banner images and variants.", bytes);
+    }
+
+    /** Template is one of EmailService's template names, outcome queued, failed (building it) or queue.full. */
+    public void countEmail(String template, String outcome) {
+        Counter.builder("email.submitted")
+                .description("Emails built and handed to the delivery engine.")
+                .tag("template", template)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /** Times the action, tagging it with the operation and whether it succeeded, was rejected or failed. */
+    private <T> T time(String name, String description, String operation, Supplier<T> action) {
+        var sample = Timer.start(meterRegistry);
+        var outcome = OUTCOME_ERROR;
+        try {
+            var result = action.get();
+            outcome = OUTCOME_SUCCESS;
+            return result;
+        } catch (EventSignupException eventSignupException) {
+            outcome = OUTCOME_REJECTED;
+            throw eventSignupException;
+        } finally {
+            sample.stop(Timer.builder(name)
+                    .description(description)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private void recordBytes(String name, String description, long bytes) {
+        DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .record(bytes);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Banner images are stored by the SHA-256 of their content and named by it. Images uploaded before that have a random
+ * name prefixed with the uploader's username (<code>user_name</code>).
+ */
+public final class BannerImageNames {
+
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private BannerImageNames() {}
+
+    /**
+     * @param name Name of a banner image, possibly prefixed with a username (<code>user_</code> or <code>user/</code>)
+     *     as older clients send it.
+     * @return The content hash the image is stored by, or null if it is an older image stored by name.
+     */
+    public static String contentHash(String name) {
+        if (name == null) {
+            return null;
+        }
+        var hash = name.substring(Math.max(name.lastIndexOf('_'), name.lastIndexOf('/')) + 1);
+        return CONTENT_HASH.matcher(hash).matches() ? hash : null;
+    }
+
+    /** @return The content hash for images stored by it, otherwise the name as is. */
+    public static String normalize(String name) {
+        var hash = contentHash(name);
+        return hash != null ? hash : name;
+    }
+}
@@ -16,4 +16,8 @@ public final class Constants {
     public static final ZoneId UTC_TIME_ZONE = ZoneId.of("Z");
     public static final String ROLE_ADMIN = "ADMIN";
     public static final String ROLE_USER = "USER";
+    public static final int BULK_DELETE_BATCH_SIZE = 1000;
+    // Keys in a participant's metaData. Saved at signup so later emails (e.g. reminders) use the same language.
+    public static final String PARTICIPANT_META_LOCALE = "locale";
+    public static final String PARTICIPANT_META_TIME_ZONE = "timeZone";
 }
@@ -4,41 +4,90 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.utils;
 
-import fi.asteriski.eventsignup.event.SavedEventSpringEvent;
-import fi.asteriski.eventsignup.event.SignupCancelledSpringEvent;
-import fi.asteriski.eventsignup.event.SignupSuccessfulSpringEvent;
+import fi.asteriski.eventsignup.dao.outbox.OutboxMessageDao;
 import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.outbox.NotificationType;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
+import fi.asteriski.eventsignup.service.outbox.NotificationCoalescer;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.util.Locale;
+import java.util.UUID;
 import lombok.AllArgsConstructor;
-import org.springframework.context.ApplicationEventPublisher;
+import org.keycloak.adapters.RefreshableKeycloakSecurityContext;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+/*
+Notifications are written into the outbox (notification_outbox table) in the caller's transaction and delivered later
+by OutboxPoller. Nothing is sent for a change that gets rolled back and nothing is lost on restart. Signup and
+cancellation notifications go through NotificationCoalescer first.
+ */
 @Component
 @AllArgsConstructor
 public class CustomEventPublisher {
 
-    private ApplicationEventPublisher applicationEventPublisher;
+    private OutboxMessageDao outboxMessageDao;
+
+    private NotificationCoalescer notificationCoalescer;
 
+    @Transactional(propagation = Propagation.MANDATORY)
     public void publishSavedEventEvent(
             final EventDto eventDto, final Authentication loggedInUser, Locale usersLocale, ZoneId userTimeZone) {
-        var savedEventSpringEvent = new SavedEventSpringEvent(this, eventDto, loggedInUser, usersLocale, userTimeZone);
-        applicationEventPublisher.publishEvent(savedEventSpringEvent);
+        // The owner's email is only available from the request's token, so it is resolved now.
+        var ctx = (RefreshableKeycloakSecurityContext) loggedInUser.getCredentials();
+        var email = ctx.getToken().getEmail();
+        save(NotificationType.EVENT_SAVED, eventDto.getId(), null, email, usersLocale, userTimeZone);
     }
 
+    @Transactional(propagation = Propagation.MANDATORY)
     public void publishSignupSuccessfulEvent(
             final EventDto eventDto, final ParticipantDto participantEntity, Locale usersLocale, ZoneId userTimeZone) {
-        var signupSuccessfulSpringEvent =
-                new SignupSuccessfulSpringEvent(this, eventDto, participantEntity, usersLocale, userTimeZone);
-        applicationEventPublisher.publishEvent(signupSuccessfulSpringEvent);
+        save(
+                NotificationType.SIGNUP_SUCCESSFUL,
+                eventDto.getId(),
+                participantEntity,
+                participantEntity.getEmail(),
+                usersLocale,
+                userTimeZone);
     }
 
+    @Transactional(propagation = Propagation.MANDATORY)
     public void publishSignupCancelledEvent(
             final EventDto eventDto, final ParticipantDto participantEntity, Locale usersLocale, ZoneId userTimeZone) {
-        var signupCancelledSpringEvent =
-                new SignupCancelledSpringEvent(this, eventDto, participantEntity, usersLocale, userTimeZone);
-        applicationEventPublisher.publishEvent(signupCancelledSpringEvent);
+        save(
+                NotificationType.SIGNUP_CANCELLED,
+                eventDto.getId(),
+                participantEntity,
+                participantEntity.getEmail(),
+                usersLocale,
+                userTimeZone);
+    }
+
+    private void save(
+            NotificationType type,
+            UUID eventId,
+            ParticipantDto participant,
+            String recipient,
+            Locale usersLocale,
+            ZoneId userTimeZone) {
+        var message = OutboxMessageEntity.builder()
+                .type(type)
+                .eventId(eventId)
+                .participant(participant != null ? participant.toEntity() : null)
+                .participantId(participant != null ? participant.getId() : null)
+                .recipient(recipient)
+                .locale(usersLocale.toLanguageTag())
+                .timeZone(userTimeZone.getId())
+                .status(OutboxStatus.PENDING)
+                .nextAttemptAt(Instant.now())
+                .build();
+        if (notificationCoalescer.coalesce(message)) {
+            outboxMessageDao.save(message);
+        }
     }
 }
@@ -4,24 +4,30 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.utils;
 
+import fi.asteriski.eventsignup.email.EmailDeliveryEngine;
+import fi.asteriski.eventsignup.email.EmailLane;
+import fi.asteriski.eventsignup.email.EmailTemplateEngine;
 import fi.asteriski.eventsignup.event.SavedEventSpringEvent;
 import fi.asteriski.eventsignup.event.SignupCancelledSpringEvent;
 import fi.asteriski.eventsignup.event.SignupSuccessfulSpringEvent;
+import fi.asteriski.eventsignup.exception.EmailQueueFullException;
+import fi.asteriski.eventsignup.exception.EmailTemplateNotFoundException;
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntity;
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import jakarta.mail.MessagingException;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.keycloak.adapters.RefreshableKeycloakSecurityContext;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.MessageSource;
-import org.springframework.context.event.EventListener;
-import org.springframework.mail.MailAuthenticationException;
-import org.springframework.mail.MailException;
-import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 @Log4j2
@@ -39,172 +45,162 @@ public class EmailService {
     private JavaMailSender javaMailSender;
 
     @NonNull
-    private MessageSource messageSource;
+    private EmailTemplateEngine emailTemplateEngine;
 
-    /*
-    Format:
-    email.message.body.event
-    Title date (format as locale specific string)
+    @NonNull
+    private EmailDeliveryEngine emailDeliveryEngine;
 
-    description
+    @NonNull
+    private ApplicationMetrics applicationMetrics;
+
+    /*
+    Templates are in resources/templates/email. Variables:
+    eventName, startDate, description
      */
-    private static final String MAIL_MESSAGE_EVENT_TEMPLATE =
-            """
-        <html>
-        %s
-        <br>
-        ------
-        <h1>%s %s</h1>
-        <p>
-        %s
-        </p>
-        </html>
-        """;
+    private static final String EVENT_SAVED_TEMPLATE = "event-saved";
     /*
-    Format:
-    email.message.body.signup.success
-    Event name date (format as locale specific string)
-    email.message.body.signup.success.to.cancel Base url Event's id User's id, Base url Event's id User's id
+    Variables:
+    eventName, startDate, cancelUrl
      */
-    private static final String MAIL_MESSAGE_SIGNUP_SUCCESSFUL_TEMPLATE =
-            """
-        <html>
-        %s %s %s.
-        <br>
-        %s: <a href=%s/signup/cancel/%s/%s target="_blank">%s/signup/cancel/%s/%s</a>
-        </html>
-        """;
+    private static final String SIGNUP_SUCCESSFUL_TEMPLATE = "signup-successful";
     /*
-    Format:
-    email.message.body.signup.cancelled
-    Name of the event
+    Variables:
+    eventName
+     */
+    private static final String SIGNUP_CANCELLED_TEMPLATE = "signup-cancelled";
+    /*
+    Variables:
+    eventName, startDate, place, cancelUrl
      */
-    private static final String MAIL_MESSAGE_SIGNUP_CANCELLED_TEMPLATE =
-            """
-        <html>
-        %s %s.
-        </html>
-        """;
+    private static final String EVENT_REMINDER_TEMPLATE = "event-reminder";
+    /*
+    Variables:
+    since, summary (lines rendered from OWNER_DIGEST_LINE_FRAGMENT or OWNER_DIGEST_LINE_WITH_SIGNUPS_FRAGMENT with
+    eventName, changes, signups, cancellations)
+     */
+    private static final String OWNER_DIGEST_TEMPLATE = "owner-digest";
+    private static final String OWNER_DIGEST_LINE_FRAGMENT = "owner-digest-line";
+    private static final String OWNER_DIGEST_LINE_WITH_SIGNUPS_FRAGMENT = "owner-digest-line-signups";
     /*
     Format:
-    Name of event
+    Base url Event's id User's id
      */
-    private static final String MAIL_SUBJECT_EVENT_TEMPLATE = "[Event signup] %s";
+    private static final String CANCEL_URL_TEMPLATE = "%s/signup/cancel/%s/%s";
     /*
     Format:
     Thrown exception
      */
     private static final String LOG_ERROR_MESSAGE_TEMPLATE = "Error with email. Error was: %s";
 
-    @Async
-    @EventListener
-    public void onSavedEventSpringEvent(SavedEventSpringEvent savedEventSpringEvent) {
-        var loggedInUser = savedEventSpringEvent.getLoggedInUser();
+    public CompletableFuture<Void> sendSavedEventEmail(SavedEventSpringEvent savedEventSpringEvent) {
         var eventDto = savedEventSpringEvent.getEventDto();
-        var ctx = (RefreshableKeycloakSecurityContext) loggedInUser.getCredentials();
-        var email = ctx.getToken().getEmail();
-        try {
-            sendEmail(
-                    email,
-                    defaultSender,
-                    String.format(MAIL_SUBJECT_EVENT_TEMPLATE, eventDto.getName()),
-                    String.format(
-                            MAIL_MESSAGE_EVENT_TEMPLATE,
-                            messageSource.getMessage(
-                                    "email.message.body.event", null, savedEventSpringEvent.getUsersLocale()),
-                            eventDto.getName(),
-                            eventDto.getStartDate(),
-                            eventDto.getDescription()));
-        } catch (MessagingException messagingException) {
-            log.error(String.format(LOG_ERROR_MESSAGE_TEMPLATE, messagingException));
-        }
+        return sendEmail(
+                savedEventSpringEvent.getOwnerEmail(),
+                EVENT_SAVED_TEMPLATE,
+                EmailLane.TRANSACTIONAL,
+                savedEventSpringEvent.getUsersLocale(),
+                Map.of(
+                        "eventName", eventDto.getName(),
+                        "startDate", inZone(eventDto.getStartDate(), savedEventSpringEvent.getUserTimeZone()),
+                        "description", eventDto.getDescription()));
     }
 
-    @Async
-    @EventListener
-    public void onSignupSuccessfulEvent(SignupSuccessfulSpringEvent signupSuccessfulSpringEvent) {
+    public CompletableFuture<Void> sendSignupSuccessfulEmail(SignupSuccessfulSpringEvent signupSuccessfulSpringEvent) {
         var participantEntity = signupSuccessfulSpringEvent.getParticipantDto();
         var eventDto = signupSuccessfulSpringEvent.getEventDto();
-        var formattedDateTime = eventDto.getStartDate().format(DateTimeFormatter.RFC_1123_DATE_TIME);
-        try {
-            sendEmail(
-                    participantEntity.getEmail(),
-                    defaultSender,
-                    String.format(
-                            messageSource.getMessage(
-                                    "email.message.subject.signup.success",
-                                    null,
-                                    signupSuccessfulSpringEvent.getUserLocale()),
-                            eventDto.getName()),
-                    String.format(
-                            MAIL_MESSAGE_SIGNUP_SUCCESSFUL_TEMPLATE,
-                            messageSource.getMessage(
-                                    "email.message.body.signup.success",
-                                    null,
-                                    signupSuccessfulSpringEvent.getUserLocale()),
-                            eventDto.getName(),
-                            formattedDateTime,
-                            messageSource.getMessage(
-                                    "email.message.body.signup.success.to.cancel",
-                                    null,
-                                    signupSuccessfulSpringEvent.getUserLocale()),
-                            baseUrl,
-                            eventDto.getId(),
-                            participantEntity.getId(),
-                            baseUrl,
-                            eventDto.getId(),
-                            participantEntity.getId()));
-        } catch (MessagingException messagingException) {
-            log.error(String.format(LOG_ERROR_MESSAGE_TEMPLATE, messagingException));
-        }
+        return sendEmail(
+                participantEntity.getEmail(),
+                SIGNUP_SUCCESSFUL_TEMPLATE,
+                EmailLane.TRANSACTIONAL,
+                signupSuccessfulSpringEvent.getUserLocale(),
+                Map.of(
+                        "eventName", eventDto.getName(),
+                        "startDate", inZone(eventDto.getStartDate(), signupSuccessfulSpringEvent.getUserTimeZone()),
+                        "cancelUrl",
+                                String.format(
+                                        CANCEL_URL_TEMPLATE, baseUrl, eventDto.getId(), participantEntity.getId())));
     }
 
-    @Async
-    @EventListener
-    public void onSignupCancelledEvent(SignupCancelledSpringEvent signupCancelledSpringEvent) {
+    public CompletableFuture<Void> sendSignupCancelledEmail(SignupCancelledSpringEvent signupCancelledSpringEvent) {
         var participantEntity = signupCancelledSpringEvent.getParticipantDto();
         var eventDto = signupCancelledSpringEvent.getEventDto();
-        try {
-            sendEmail(
-                    participantEntity.getEmail(),
-                    defaultSender,
-                    String.format(
-                            messageSource.getMessage(
-                                    "email.message.subject.signup.cancelled",
-                                    null,
-                                    signupCancelledSpringEvent.getUsersLocale()),
-                            eventDto.getName()),
-                    String.format(
-                            MAIL_MESSAGE_SIGNUP_CANCELLED_TEMPLATE,
-                            messageSource.getMessage(
-                                    "email.message.body.signup.cancelled",
-                                    null,
-                                    signupCancelledSpringEvent.getUsersLocale()),
-                            eventDto.getName()));
-        } catch (MessagingException messagingException) {
-            log.error(String.format(LOG_ERROR_MESSAGE_TEMPLATE, messagingException));
-        }
+        return sendEmail(
+                participantEntity.getEmail(),
+                SIGNUP_CANCELLED_TEMPLATE,
+                EmailLane.TRANSACTIONAL,
+                signupCancelledSpringEvent.getUsersLocale(),
+                Map.of("eventName", eventDto.getName()));
     }
 
-    private void sendEmail(String recipient, String sender, String messageSubject, String messageText)
-            throws MessagingException {
-        var msg = javaMailSender.createMimeMessage();
-        var helper = new MimeMessageHelper(msg);
-        helper.setTo(recipient);
-        helper.setFrom(sender);
+    public CompletableFuture<Void> sendEventReminderEmail(
+            EventDto eventDto, ParticipantDto participantDto, Locale usersLocale, ZoneId userTimeZone) {
+        return sendEmail(
+                participantDto.getEmail(),
+                EVENT_REMINDER_TEMPLATE,
+                EmailLane.BULK,
+                usersLocale,
+                Map.of(
+                        "eventName", eventDto.getName(),
+                        "startDate", inZone(eventDto.getStartDate(), userTimeZone),
+                        "place", eventDto.getPlace(),
+                        "cancelUrl",
+                                String.format(CANCEL_URL_TEMPLATE, baseUrl, eventDto.getId(), participantDto.getId())));
+    }
 
-        helper.setSubject(messageSubject);
-        helper.setText(messageText, true);
+    public CompletableFuture<Void> sendOwnerDigestEmail(OwnerDigestEntity ownerDigest, boolean includeSignups) {
+        var locale = Locale.forLanguageTag(ownerDigest.getLocale());
+        var fragment = includeSignups ? OWNER_DIGEST_LINE_WITH_SIGNUPS_FRAGMENT : OWNER_DIGEST_LINE_FRAGMENT;
+        var summary = new StringJoiner("\n");
+        for (var entry : ownerDigest.getEntries().values()) {
+            summary.add(emailTemplateEngine.renderFragment(
+                    fragment,
+                    locale,
+                    Map.of(
+                            "eventName", entry.getEventName(),
+                            "changes", entry.getChanges(),
+                            "signups", entry.getSignups(),
+                            "cancellations", entry.getCancellations())));
+        }
+        return sendEmail(
+                ownerDigest.getEmail(),
+                OWNER_DIGEST_TEMPLATE,
+                EmailLane.BULK,
+                locale,
+                Map.of(
+                        "since", ownerDigest.getWindowStartedAt().atZone(ZoneId.of(ownerDigest.getTimeZone())),
+                        "summary", summary.toString()));
+    }
 
+    /*
+    Only builds the message. Delivery (and logging of delivery errors) happens in EmailDeliveryEngine's workers. The
+    returned future completes once the message has been handed over to the SMTP server.
+     */
+    private CompletableFuture<Void> sendEmail(
+            String recipient, String templateName, EmailLane lane, Locale locale, Map<String, ?> variables) {
         try {
-            javaMailSender.send(msg);
-        } catch (MailAuthenticationException mailAuthenticationException) {
-            log.error(
-                    String.format("Error authenticating to smtp server. Error was: %s.", mailAuthenticationException));
-        } catch (MailSendException mailSendException) {
-            log.error(String.format("Error sending email to '%s'. Error was: %s.", recipient, mailSendException));
-        } catch (MailException mailException) {
-            log.error(String.format(LOG_ERROR_MESSAGE_TEMPLATE, mailException));
+            var email = emailTemplateEngine.render(templateName, locale, variables);
+            var msg = javaMailSender.createMimeMessage();
+            var helper = new MimeMessageHelper(msg);
+            helper.setTo(recipient);
+            helper.setFrom(defaultSender);
+
+            helper.setSubject(email.subject());
+            helper.setText(email.body(), true);
+            var delivery = emailDeliveryEngine.submit(msg, lane);
+            applicationMetrics.countEmail(templateName, "queued");
+            return delivery;
+        } catch (MessagingException | EmailTemplateNotFoundException exception) {
+            log.error(String.format(LOG_ERROR_MESSAGE_TEMPLATE, exception));
+            applicationMetrics.countEmail(templateName, "failed");
+            return CompletableFuture.failedFuture(exception);
+        } catch (EmailQueueFullException emailQueueFullException) {
+            applicationMetrics.countEmail(templateName, "queue.full");
+            log.error(String.format("Error sending email to '%s'. Error was: %s.", recipient, emailQueueFullException));
+            return CompletableFuture.failedFuture(emailQueueFullException);
         }
     }
+
+    private static ZonedDateTime inZone(ZonedDateTime dateTime, ZoneId zoneId) {
+        return zoneId != null ? dateTime.withZoneSameInstant(zoneId) : dateTime;
+    }
 }
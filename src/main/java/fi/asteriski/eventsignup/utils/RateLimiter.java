@@ -0,0 +1,42 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Permits accumulate at a fixed rate up to <code>burst</code> permits, and
+ * {@link #acquire()} blocks until one is available. Thread safe.
+ */
+public final class RateLimiter {
+
+    private final long nanosPerPermit;
+    private final long maxStoredNanos;
+    // Time at which the next permit is free. A value in the past means permits have been stored since then.
+    private long nextFreeNanos;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid rate %s/s with burst %s.", permitsPerSecond, burst));
+        }
+        this.nanosPerPermit = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.maxStoredNanos = nanosPerPermit * burst;
+        this.nextFreeNanos = System.nanoTime() - maxStoredNanos;
+    }
+
+    public void acquire() throws InterruptedException {
+        var waitNanos = reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /** Takes a permit and returns how long the caller has to wait before using it. */
+    synchronized long reserve(long now) {
+        nextFreeNanos = Math.max(nextFreeNanos, now - maxStoredNanos) + nanosPerPermit;
+        return Math.max(0, nextFreeNanos - now);
+    }
+}
@@ -4,6 +4,8 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
  */
 package fi.asteriski.eventsignup.utils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /** Class for non-testing related utility methods. */
@@ -24,4 +26,20 @@ public final class Utils {
                 .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
                 .toString();
     }
+
+    /**
+     * Splits a list into consecutive chunks of at most <code>chunkSize</code> items. Chunks are views of the original
+     * list.
+     *
+     * @param list List to split.
+     * @param chunkSize Maximum size of a chunk.
+     * @return List of chunks. Empty if the input list is empty.
+     */
+    public static <T> List<List<T>> partition(List<T> list, int chunkSize) {
+        var chunks = new ArrayList<List<T>>((list.size() + chunkSize - 1) / chunkSize);
+        for (int i = 0; i < list.size(); i += chunkSize) {
+            chunks.add(list.subList(i, Math.min(i + chunkSize, list.size())));
+        }
+        return chunks;
+    }
 }
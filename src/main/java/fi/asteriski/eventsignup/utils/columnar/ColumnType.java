@@ -0,0 +1,14 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils.columnar;
+
+/** Value types of a column. Instants are stored as epoch milliseconds. */
+public enum ColumnType {
+    STRING,
+    LONG,
+    INT,
+    DOUBLE,
+    INSTANT
+}
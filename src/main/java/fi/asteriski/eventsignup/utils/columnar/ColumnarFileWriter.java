@@ -0,0 +1,185 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils.columnar;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes rows into a simple columnar file, one row group at a time, so memory use is bounded by the size of a row
+ * group no matter how many rows are written. Layout:
+ *
+ * <pre>
+ * MAGIC
+ * row group 0: column chunk 0, column chunk 1, ... (each chunk DEFLATE compressed)
+ * row group 1: ...
+ * footer: column names and types, and for every row group its row count and every chunk's offset and lengths
+ * footer length (int), MAGIC
+ * </pre>
+ *
+ * Within a chunk every value is a presence byte followed by the value when present. Strings are a length prefixed
+ * UTF-8 byte sequence. The file is written front to back only, so it can be streamed straight into a response. The
+ * application only writes the format; the reader used to check it lives with the tests.
+ */
+public class ColumnarFileWriter implements Closeable {
+
+    static final byte[] MAGIC = "ESCOL\u0000\u0000\u0001".getBytes(StandardCharsets.ISO_8859_1);
+
+    private record ChunkInfo(long offset, int compressedLength, int uncompressedLength) {}
+
+    private record RowGroupInfo(int rowCount, List<ChunkInfo> chunks) {}
+
+    private final CountingOutputStream out;
+    private final List<Column> columns;
+    private final int maxRowsPerGroup;
+    private final int maxBytesPerGroup;
+    private final List<ByteArrayOutputStream> chunkBuffers = new ArrayList<>();
+    private final List<DataOutputStream> chunkWriters = new ArrayList<>();
+    private final List<RowGroupInfo> rowGroups = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private int rowsInGroup;
+    private long rowsWritten;
+    private boolean closed;
+
+    public ColumnarFileWriter(OutputStream out, List<Column> columns, int maxRowsPerGroup, int maxBytesPerGroup)
+            throws IOException {
+        this.out = new CountingOutputStream(out);
+        this.columns = List.copyOf(columns);
+        this.maxRowsPerGroup = maxRowsPerGroup;
+        this.maxBytesPerGroup = maxBytesPerGroup;
+        for (int i = 0; i < columns.size(); i++) {
+            var buffer = new ByteArrayOutputStream();
+            chunkBuffers.add(buffer);
+            chunkWriters.add(new DataOutputStream(buffer));
+        }
+        this.out.write(MAGIC);
+    }
+
+    /**
+     * Appends a row. Values are given in column order and may be null.
+     */
+    public void writeRow(Object... values) throws IOException {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException(
+                    String.format("Expected %s values but got %s.", columns.size(), values.length));
+        }
+        var bufferedBytes = 0;
+        for (int i = 0; i < values.length; i++) {
+            writeValue(chunkWriters.get(i), columns.get(i), values[i]);
+            bufferedBytes += chunkBuffers.get(i).size();
+        }
+        rowsInGroup++;
+        rowsWritten++;
+        if (rowsInGroup >= maxRowsPerGroup || bufferedBytes >= maxBytesPerGroup) {
+            flushRowGroup();
+        }
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushRowGroup();
+            var footerBytes = new ByteArrayOutputStream();
+            var footer = new DataOutputStream(footerBytes);
+            footer.writeInt(columns.size());
+            for (var column : columns) {
+                footer.writeUTF(column.name());
+                footer.writeByte(column.type().ordinal());
+            }
+            footer.writeInt(rowGroups.size());
+            for (var rowGroup : rowGroups) {
+                footer.writeInt(rowGroup.rowCount());
+                for (var chunk : rowGroup.chunks()) {
+                    footer.writeLong(chunk.offset());
+                    footer.writeInt(chunk.compressedLength());
+                    footer.writeInt(chunk.uncompressedLength());
+                }
+            }
+            footer.flush();
+            footerBytes.writeTo(out);
+            new DataOutputStream(out).writeInt(footerBytes.size());
+            out.write(MAGIC);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void flushRowGroup() throws IOException {
+        if (rowsInGroup == 0) {
+            return;
+        }
+        var chunks = new ArrayList<ChunkInfo>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            var buffer = chunkBuffers.get(i);
+            var offset = out.getCount();
+            deflater.reset();
+            var compressed = new DeflaterOutputStream(out, deflater, 64 * 1024);
+            buffer.writeTo(compressed);
+            compressed.finish();
+            chunks.add(new ChunkInfo(offset, (int) (out.getCount() - offset), buffer.size()));
+            buffer.reset();
+        }
+        rowGroups.add(new RowGroupInfo(rowsInGroup, chunks));
+        rowsInGroup = 0;
+        out.flush();
+    }
+
+    private static void writeValue(DataOutputStream writer, Column column, Object value) throws IOException {
+        if (value == null) {
+            writer.writeByte(0);
+            return;
+        }
+        writer.writeByte(1);
+        switch (column.type()) {
+            case STRING -> {
+                var bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                writer.writeInt(bytes.length);
+                writer.write(bytes);
+            }
+            case LONG -> writer.writeLong(((Number) value).longValue());
+            case INT -> writer.writeInt(((Number) value).intValue());
+            case DOUBLE -> writer.writeDouble(((Number) value).doubleValue());
+            case INSTANT -> writer.writeLong(((Instant) value).toEpochMilli());
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
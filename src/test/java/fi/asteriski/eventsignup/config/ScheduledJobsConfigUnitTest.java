@@ -0,0 +1,111 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.CronTrigger;
+import org.quartz.JobDetail;
+import org.quartz.Trigger;
+import org.quartz.spi.OperableTrigger;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ScheduledJobsConfigUnitTest {
+
+    private ScheduledJobsConfig scheduledJobsConfig;
+
+    @BeforeEach
+    void setUp() {
+        scheduledJobsConfig = new ScheduledJobsConfig();
+        ReflectionTestUtils.setField(scheduledJobsConfig, "archivePastEventsCron", "0 0 0 ? * SUN");
+        ReflectionTestUtils.setField(scheduledJobsConfig, "removeOldArchivedEventsCron", "0 0 0 1 1 ?");
+        ReflectionTestUtils.setField(scheduledJobsConfig, "offloadArchivedEventsCron", "0 0 3 * * ?");
+        ReflectionTestUtils.setField(scheduledJobsConfig, "sendEventRemindersCron", "0 */5 * * * ?");
+    }
+
+    @Test
+    void archivePastEventsJob_expectDurableRecoverableAndNotConcurrent() {
+        var jobDetail = scheduledJobsConfig.archivePastEventsJobDetail();
+
+        assertJobDetail(jobDetail, "archiving.archivePastEvents");
+    }
+
+    @Test
+    void archivePastEventsTrigger_expectConfiguredCronForJob() {
+        var jobDetail = scheduledJobsConfig.archivePastEventsJobDetail();
+        var trigger = (CronTrigger) scheduledJobsConfig.archivePastEventsTrigger(jobDetail);
+
+        assertEquals("0 0 0 ? * SUN", trigger.getCronExpression());
+        assertEquals(jobDetail.getKey(), trigger.getJobKey());
+    }
+
+    @Test
+    void removeOldArchivedEventsJob_expectDurableRecoverableAndNotConcurrent() {
+        assertJobDetail(scheduledJobsConfig.removeOldArchivedEventsJobDetail(), "archiving.removeOldArchivedEvents");
+    }
+
+    /** A run missed while the whole cluster was down is made up once at start up, not skipped until next year. */
+    @Test
+    void removeOldArchivedEventsTrigger_givenMisfire_expectFiredOnceNow() {
+        var jobDetail = scheduledJobsConfig.removeOldArchivedEventsJobDetail();
+        var trigger = scheduledJobsConfig.removeOldArchivedEventsTrigger(jobDetail);
+
+        assertFiredOnceNowAfterMisfire(trigger);
+    }
+
+    @Test
+    void offloadArchivedEventsJob_expectDurableRecoverableAndNotConcurrent() {
+        assertJobDetail(scheduledJobsConfig.offloadArchivedEventsJobDetail(), "archiving.offloadArchivedEvents");
+    }
+
+    @Test
+    void offloadArchivedEventsTrigger_givenMisfire_expectFiredOnceNow() {
+        var jobDetail = scheduledJobsConfig.offloadArchivedEventsJobDetail();
+        var trigger = (CronTrigger) scheduledJobsConfig.offloadArchivedEventsTrigger(jobDetail);
+
+        assertEquals("0 0 3 * * ?", trigger.getCronExpression());
+        assertFiredOnceNowAfterMisfire(trigger);
+    }
+
+    @Test
+    void sendEventRemindersJob_expectDurableRecoverableAndNotConcurrent() {
+        assertJobDetail(scheduledJobsConfig.sendEventRemindersJobDetail(), "notifications.sendEventReminders");
+    }
+
+    @Test
+    void sendEventRemindersTrigger_givenMisfire_expectFiredOnceNow() {
+        var jobDetail = scheduledJobsConfig.sendEventRemindersJobDetail();
+        var trigger = (CronTrigger) scheduledJobsConfig.sendEventRemindersTrigger(jobDetail);
+
+        assertEquals("0 */5 * * * ?", trigger.getCronExpression());
+        assertFiredOnceNowAfterMisfire(trigger);
+    }
+
+    static void assertJobDetail(JobDetail jobDetail, String key) {
+        assertEquals(key, jobDetail.getKey().toString());
+        assertTrue(jobDetail.isDurable());
+        assertTrue(jobDetail.requestsRecovery());
+        assertTrue(jobDetail.isConcurrentExectionDisallowed());
+    }
+
+    static void assertFiredOnceNowAfterMisfire(Trigger trigger) {
+        assertEquals(CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW, trigger.getMisfireInstruction());
+        var operableTrigger = (OperableTrigger) trigger;
+        operableTrigger.setStartTime(Date.from(Instant.now().minus(Duration.ofDays(400))));
+        operableTrigger.computeFirstFireTime(null);
+        var before = Instant.now();
+
+        operableTrigger.updateAfterMisfire(null);
+
+        var nextFireTime = operableTrigger.getNextFireTime().toInstant();
+        assertFalse(nextFireTime.isBefore(before.minusSeconds(1)));
+        assertTrue(nextFireTime.isBefore(before.plusSeconds(5)));
+    }
+}
@@ -2,19 +2,30 @@ package fi.asteriski.eventsignup.controller.event;
 
 import static fi.asteriski.eventsignup.utils.TestUtils.getImageDataAsBytes;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import fi.asteriski.eventsignup.exception.ImageNotFoundException;
+import fi.asteriski.eventsignup.model.event.BannerImage;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatus;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatusResponse;
 import fi.asteriski.eventsignup.model.event.BannerImageUploadSuccessResponse;
+import fi.asteriski.eventsignup.service.event.BannerImageUploadService;
 import fi.asteriski.eventsignup.service.event.ImageServiceImpl;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.web.servlet.view.RedirectView;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 
 class ImageControllerUnitTest {
 
@@ -22,12 +33,14 @@ class ImageControllerUnitTest {
     private String rootPath;
 
     private ImageServiceImpl imageService;
+    private BannerImageUploadService bannerImageUploadService;
     private ImageController imageController;
 
     @BeforeEach
     void setUp() {
         imageService = Mockito.mock(ImageServiceImpl.class);
-        imageController = new ImageController(imageService);
+        bannerImageUploadService = Mockito.mock(BannerImageUploadService.class);
+        imageController = new ImageController(imageService, bannerImageUploadService);
     }
 
     @Test
@@ -39,26 +52,59 @@ class ImageControllerUnitTest {
     }
 
     @Test
-    @DisplayName("Get an existing banner image file (i.e. byte array).")
+    @DisplayName("Get an existing banner image file with its content type and cache headers.")
     void getBannerImageThatExists() {
-        when(imageService.getBannerImage("123")).thenReturn(new byte[10]);
-        assertInstanceOf(byte[].class, imageController.getBannerImage("123"));
+        var content = new ByteArrayResource(new byte[10]);
+        when(imageService.getBannerImage("123", null)).thenReturn(new BannerImage(content, "image/png", "abc", false));
+
+        var response = imageController.getBannerImage("123", null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(content, response.getBody());
+        assertEquals(MediaType.IMAGE_PNG, response.getHeaders().getContentType());
+        assertEquals("\"abc\"", response.getHeaders().getETag());
+        assertEquals("max-age=31536000, public, immutable", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    @DisplayName("Width comes from the query parameter, or the client hint, and a provisional image isn't cached long.")
+    void getBannerImageVariant() {
+        var content = new ByteArrayResource(new byte[10]);
+        when(imageService.getBannerImage("123", 320)).thenReturn(new BannerImage(content, "image/png", "abc", true));
+
+        var response = imageController.getBannerImage("123", 320, 1000);
+
+        assertEquals("max-age=60, public", response.getHeaders().getCacheControl());
+        assertEquals(List.of("Sec-CH-Width"), response.getHeaders().getVary());
+        imageController.getBannerImage("123", null, 320);
+        verify(imageService, times(2)).getBannerImage("123", 320);
     }
 
     @Test
     @DisplayName("Try to get a non existent banner image file.")
     void getNonExistentBannerImage() {
-        when(imageService.getBannerImage("not/exist")).thenThrow(new ImageNotFoundException("not found"));
-        assertThrows(ImageNotFoundException.class, () -> imageController.getBannerImage("not_exist"));
-        verify(imageService).getBannerImage("not/exist");
+        when(imageService.getBannerImage("not/exist", null)).thenThrow(new ImageNotFoundException("not found"));
+        assertThrows(ImageNotFoundException.class, () -> imageController.getBannerImage("not_exist", null, null));
+        verify(imageService).getBannerImage("not/exist", null);
     }
 
     @Test
-    @DisplayName("Add an image (i.e. a byte array).")
+    @DisplayName("Add an image (i.e. a stream of bytes) to be processed in the background.")
     void addBannerImg() throws IOException {
-        byte[] bytes = getImageDataAsBytes(rootPath);
-        when(imageService.addBannerImage(bytes)).thenReturn("value");
-        assertInstanceOf(RedirectView.class, imageController.addBannerImg(bytes));
-        verify(imageService).addBannerImage(bytes);
+        var file = new ByteArrayInputStream(getImageDataAsBytes(rootPath));
+        var upload = BannerImageUploadStatusResponse.builder()
+                .uploadId(UUID.randomUUID())
+                .status(BannerImageUploadStatus.PENDING)
+                .build();
+        when(bannerImageUploadService.acceptUpload(file)).thenReturn(upload);
+
+        var response = imageController.addBannerImg(file);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertSame(upload, response.getBody());
+        assertEquals(
+                URI.create("/api/v1/event/banner/upload/" + upload.uploadId()),
+                response.getHeaders().getLocation());
+        verify(bannerImageUploadService).acceptUpload(file);
     }
 }
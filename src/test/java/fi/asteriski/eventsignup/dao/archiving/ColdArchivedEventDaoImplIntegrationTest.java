@@ -0,0 +1,197 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.dao.archiving;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
+import fi.asteriski.eventsignup.repo.archiving.ColdArchivedEventRepository;
+import fi.asteriski.eventsignup.service.blob.LocalBlobStore;
+import fi.asteriski.eventsignup.utils.TestUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+@DataJpaTest
+class ColdArchivedEventDaoImplIntegrationTest {
+
+    @TempDir
+    private Path rootPath;
+
+    @Autowired
+    private ColdArchivedEventRepository coldArchivedEventRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private ColdArchivedEventDaoImpl coldArchivedEventDao;
+    private final String testUser = "testUser";
+    private final Supplier<Instant> twoHundredDaysAgoSupplier =
+            () -> Instant.now().minus(200, ChronoUnit.DAYS);
+    private final Supplier<Instant> thirtyDaysAgoSupplier =
+            () -> Instant.now().minus(30, ChronoUnit.DAYS);
+
+    @BeforeEach
+    void setUp() {
+        coldArchivedEventDao = newColdArchivedEventDao();
+    }
+
+    @AfterEach
+    void tearDown() {
+        coldArchivedEventRepository.deleteAll();
+    }
+
+    /** Another node only shares the blob store and the database. */
+    @Test
+    void findById_givenEventsInSeveralSegments_expectEventsToBeFoundByAnotherNode() {
+        var firstSegment = createArchivedEvents(Optional.empty());
+        var secondSegment = createArchivedEvents(Optional.empty());
+        coldArchivedEventDao.saveAll(firstSegment);
+        coldArchivedEventDao.saveAll(secondSegment);
+        coldArchivedEventDao = newColdArchivedEventDao();
+
+        var expected = firstSegment.get(3);
+        var result = coldArchivedEventDao.findById(expected.id());
+
+        assertThat(result).isPresent();
+        assertThat(result.get().originalOwner()).isEqualTo(testUser);
+        assertThat(result.get().originalEvent().getName())
+                .isEqualTo(expected.originalEvent().getName());
+        assertThat(result.get().dateArchived().toInstant())
+                .isEqualTo(expected.dateArchived().toInstant());
+        assertThat(coldArchivedEventDao.findById(secondSegment.get(0).id())).isPresent();
+        assertThat(coldArchivedEventDao.findById(UUID.randomUUID())).isEmpty();
+        assertThat(coldArchivedEventDao.findAll()).hasSize(firstSegment.size() + secondSegment.size());
+    }
+
+    /** Ids are assigned, so rows must be persisted as new instead of merged, which selects each row first. */
+    @Test
+    void saveAll_expectRowsPersistedAsNew() {
+        var archivedEvents = createArchivedEvents(Optional.empty());
+
+        coldArchivedEventDao.saveAll(archivedEvents);
+
+        var row = coldArchivedEventRepository.findById(archivedEvents.get(0).id());
+        assertThat(row).isPresent();
+        assertThat(row.get().isNew()).isFalse();
+        assertThat(coldArchivedEventRepository.count()).isEqualTo(archivedEvents.size());
+    }
+
+    @Test
+    void deleteById_givenEventInColdTier_expectEventToStayRemovedForAnotherNode() {
+        var archivedEvents = createArchivedEvents(Optional.empty());
+        coldArchivedEventDao.saveAll(archivedEvents);
+        var removed = archivedEvents.get(0).id();
+
+        coldArchivedEventDao.deleteById(removed);
+        coldArchivedEventDao = newColdArchivedEventDao();
+
+        assertThat(coldArchivedEventDao.findById(removed)).isEmpty();
+        assertThat(coldArchivedEventDao.existsById(removed)).isFalse();
+        assertThat(coldArchivedEventDao.findAllByOriginalOwner(testUser)).hasSize(archivedEvents.size() - 1);
+    }
+
+    @Test
+    void findAllByOriginalOwner_givenOtherUsersEventsInSameSegment_expectOnlyUsersEvents() {
+        var usersEvents = createArchivedEvents(Optional.empty());
+        var otherUsersEvent = usersEvents.get(0);
+        var otherUsersEvents = List.of(new ArchivedEventDto(
+                otherUsersEvent.id(),
+                otherUsersEvent.originalEvent(),
+                otherUsersEvent.dateArchived(),
+                otherUsersEvent.numberOfParticipants(),
+                "otherTestUser",
+                otherUsersEvent.bannerImage()));
+        coldArchivedEventDao.saveAll(Stream.concat(otherUsersEvents.stream(), usersEvents.stream().skip(1))
+                .toList());
+
+        var result = coldArchivedEventDao.findAllByOriginalOwner("otherTestUser");
+
+        assertThat(result).extracting(ArchivedEventDto::id).containsExactly(otherUsersEvent.id());
+        assertThat(coldArchivedEventDao.findAllByOriginalOwner(testUser)).hasSize(usersEvents.size() - 1);
+    }
+
+    @Test
+    void deleteAllByDateArchivedIsBefore_givenOldAndNewSegments_expectOnlyOldEventsToBeRemoved() {
+        var oldEvents = createArchivedEvents(Optional.of(twoHundredDaysAgoSupplier));
+        var newEvents = createArchivedEvents(Optional.of(thirtyDaysAgoSupplier));
+        coldArchivedEventDao.saveAll(oldEvents);
+        coldArchivedEventDao.saveAll(newEvents);
+
+        coldArchivedEventDao.deleteAllByDateArchivedIsBefore(Instant.now().minus(100, ChronoUnit.DAYS));
+
+        assertThat(coldArchivedEventDao.findAll())
+                .extracting(ArchivedEventDto::id)
+                .containsExactlyInAnyOrderElementsOf(
+                        newEvents.stream().map(ArchivedEventDto::id).toList());
+        assertThat(segmentFiles()).hasSize(1);
+    }
+
+    @Test
+    void deleteById_givenLastEventOfSegment_expectSegmentDeleted() {
+        var archivedEvents = createArchivedEvents(Optional.empty());
+        coldArchivedEventDao.saveAll(archivedEvents);
+
+        archivedEvents.forEach(archivedEvent -> coldArchivedEventDao.deleteById(archivedEvent.id()));
+
+        assertThat(segmentFiles()).isEmpty();
+    }
+
+    @Test
+    void streamAllByDateArchivedIsAfter_expectOnlyNewerEvents() {
+        var oldEvents = createArchivedEvents(Optional.of(twoHundredDaysAgoSupplier));
+        var newEvents = createArchivedEvents(Optional.of(thirtyDaysAgoSupplier));
+        coldArchivedEventDao.saveAll(oldEvents);
+        coldArchivedEventDao.saveAll(newEvents);
+
+        try (var result = coldArchivedEventDao.streamAllByDateArchivedIsAfter(
+                Instant.now().minus(100, ChronoUnit.DAYS))) {
+            assertThat(result.map(ArchivedEventDto::id).toList())
+                    .containsExactlyInAnyOrderElementsOf(
+                            newEvents.stream().map(ArchivedEventDto::id).toList());
+        }
+    }
+
+    private ColdArchivedEventDaoImpl newColdArchivedEventDao() {
+        return new ColdArchivedEventDaoImpl(
+                objectMapper, new LocalBlobStore(rootPath.toString()), coldArchivedEventRepository);
+    }
+
+    private List<Path> segmentFiles() {
+        var directory = rootPath.resolve(ColdArchivedEventDao.BLOB_DIRECTORY);
+        if (!Files.exists(directory)) {
+            return List.of();
+        }
+        try (var files = Files.list(directory)) {
+            return files.toList();
+        } catch (IOException ioException) {
+            throw new IllegalStateException(ioException);
+        }
+    }
+
+    private List<ArchivedEventDto> createArchivedEvents(Optional<Supplier<Instant>> dateArchivedSupplier) {
+        return TestUtils.getRandomArchivedEvents(testUser, dateArchivedSupplier).stream()
+                .map(archivedEvent -> new ArchivedEventDto(
+                        UUID.randomUUID(),
+                        archivedEvent.originalEvent(),
+                        archivedEvent.dateArchived(),
+                        archivedEvent.numberOfParticipants(),
+                        archivedEvent.originalOwner(),
+                        archivedEvent.bannerImage()))
+                .toList();
+    }
+}
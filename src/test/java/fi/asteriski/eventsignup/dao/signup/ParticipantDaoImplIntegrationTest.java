@@ -9,7 +9,9 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import fi.asteriski.eventsignup.repo.signup.ParticipantRepository;
+import fi.asteriski.eventsignup.utils.Constants;
 import fi.asteriski.eventsignup.utils.TestUtils;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
@@ -74,6 +76,23 @@ class ParticipantDaoImplIntegrationTest {
         assertEquals(0, countAfter);
     }
 
+    @Test
+    void deleteAllByEventIds_givenMoreEventIdsThanOneBatch_expectAllParticipantsToBeDeleted() {
+        var id = UUID.randomUUID();
+        var participants = TestUtils.createRandomParticipants(id);
+        participantRepository.saveAll(
+                participants.stream().map(ParticipantDto::toEntity).toList());
+        var eventIds = new ArrayList<UUID>();
+        for (int i = 0; i < Constants.BULK_DELETE_BATCH_SIZE + 10; i++) {
+            eventIds.add(UUID.randomUUID());
+        }
+        eventIds.add(id);
+
+        participantDao.deleteAllByEventIds(eventIds);
+
+        assertEquals(0, participantRepository.count());
+    }
+
     @Test
     void findAllByEvent_givenEventHasParticipants_expectNonEmptyList() {
         var id = UUID.randomUUID();
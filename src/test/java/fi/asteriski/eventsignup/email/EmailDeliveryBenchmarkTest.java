@@ -0,0 +1,212 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import fi.asteriski.eventsignup.dao.email.ParkedEmailDao;
+import fi.asteriski.eventsignup.event.SignupSuccessfulSpringEvent;
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.utils.ApplicationMetrics;
+import fi.asteriski.eventsignup.utils.EmailService;
+import fi.asteriski.eventsignup.utils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * End-to-end email delivery benchmarks: simulated signups go through {@link EmailService} (template rendering and
+ * message building) and {@link EmailDeliveryEngine} to a {@link FakeSmtpServer}. Each scenario prints throughput and
+ * latency percentiles measured from the signup to the SMTP server's acknowledgement.
+ *
+ * <p>Excluded from the normal test run. Run with {@code ./gradlew emailBenchmark}.
+ */
+@Tag("benchmark")
+class EmailDeliveryBenchmarkTest {
+
+    private static final int SIGNUPS = 5_000;
+    private static final int QUEUE_CAPACITY = 1_000;
+    private static final int WORKERS_PER_LANE = 1;
+    private static final int BATCH_SIZE = 20;
+    private static final int SMTP_TIMEOUT_MILLIS = 1_000;
+
+    private record Result(int sent, int failed, long elapsedNanos, long[] latenciesNanos) {}
+
+    private FakeSmtpServer smtpServer;
+    private EmailDeliveryEngine emailDeliveryEngine;
+    private SimpleMeterRegistry meterRegistry;
+    private EmailService emailService;
+    private EventDto eventDto;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtpServer = new FakeSmtpServer();
+        var javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(smtpServer.getPort());
+        javaMailSender.setUsername("username");
+        javaMailSender.setPassword("password");
+        var properties = new Properties();
+        properties.put("mail.smtp.auth", "true");
+        properties.put("mail.smtp.connectiontimeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        properties.put("mail.smtp.timeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        properties.put("mail.smtp.writetimeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        javaMailSender.setJavaMailProperties(properties);
+
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        var emailTemplateEngine =
+                new EmailTemplateEngine(messageSource, new DefaultResourceLoader(), "classpath:templates/email/");
+        meterRegistry = new SimpleMeterRegistry();
+        emailDeliveryEngine = new EmailDeliveryEngine(
+                javaMailSender,
+                new SmtpCircuitBreaker(javaMailSender, meterRegistry, 5, 60_000),
+                mock(ParkedEmailDao.class),
+                meterRegistry,
+                QUEUE_CAPACITY,
+                WORKERS_PER_LANE,
+                QUEUE_CAPACITY,
+                WORKERS_PER_LANE,
+                BATCH_SIZE,
+                60_000);
+        emailDeliveryEngine.start();
+        emailService = new EmailService(
+                javaMailSender,
+                emailTemplateEngine,
+                emailDeliveryEngine,
+                new ApplicationMetrics(meterRegistry));
+        ReflectionTestUtils.setField(emailService, "defaultSender", "noreply@localhost");
+        ReflectionTestUtils.setField(emailService, "baseUrl", "https://localhost");
+
+        eventDto = TestUtils.createRandomEvent("owner");
+        eventDto.setId(UUID.randomUUID());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        emailDeliveryEngine.stop();
+        smtpServer.close();
+    }
+
+    @Test
+    void healthySmtpServer() throws Exception {
+        var result = runSignups(SIGNUPS);
+
+        report("Healthy SMTP server", result);
+        assertThat(result.sent()).isEqualTo(SIGNUPS);
+    }
+
+    @Test
+    void slowSmtpServer() throws Exception {
+        smtpServer.withMessageLatency(Duration.ofMillis(5));
+
+        var result = runSignups(SIGNUPS);
+
+        report("Slow SMTP server (5 ms per message)", result);
+        assertThat(result.sent()).isEqualTo(SIGNUPS);
+    }
+
+    @Test
+    void flakySmtpServer() throws Exception {
+        smtpServer.withFailureRate(0.05);
+
+        var result = runSignups(SIGNUPS);
+
+        report("Flaky SMTP server (5 % temporary failures)", result);
+        assertThat(result.sent() + result.failed()).isEqualTo(SIGNUPS);
+        assertThat(result.failed()).isEqualTo(smtpServer.getRejectedMessages());
+    }
+
+    @Test
+    void smtpServerStopsAnswering() throws Exception {
+        // Smaller run: every batch waits for the SMTP timeout once the server goes quiet.
+        var signups = 500;
+        var silencer = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(200);
+                smtpServer.withUnresponsive(true);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        var result = runSignups(signups);
+        silencer.join();
+
+        report("SMTP server stops answering after 200 ms", result);
+        // Once the circuit opens, the rest are parked (counted as sent) without waiting for timeouts.
+        assertThat(result.sent() + result.failed()).isEqualTo(signups);
+        assertThat(meterRegistry.counter("email.delivery.parked").count()).isPositive();
+    }
+
+    private Result runSignups(int signups) throws InterruptedException {
+        var latencies = new long[signups];
+        var sent = new AtomicInteger();
+        var failed = new AtomicInteger();
+        var done = new CountDownLatch(signups);
+        var start = System.nanoTime();
+        for (int i = 0; i < signups; i++) {
+            var index = i;
+            var participant = TestUtils.createRandomParticipant(eventDto.getId()).toBuilder()
+                    .id(UUID.randomUUID())
+                    .email(String.format("participant%s@example.com", i))
+                    .build();
+            var signupStart = System.nanoTime();
+            CompletableFuture<Void> future = emailService.sendSignupSuccessfulEmail(new SignupSuccessfulSpringEvent(
+                    this, eventDto, participant, Locale.forLanguageTag("fi"), ZoneId.of("Europe/Helsinki")));
+            future.whenComplete((unused, throwable) -> {
+                latencies[index] = System.nanoTime() - signupStart;
+                (throwable == null ? sent : failed).incrementAndGet();
+                done.countDown();
+            });
+        }
+        assertThat(done.await(10, TimeUnit.MINUTES)).isTrue();
+        return new Result(sent.get(), failed.get(), System.nanoTime() - start, latencies);
+    }
+
+    private void report(String scenario, Result result) {
+        var latencies = result.latenciesNanos().clone();
+        Arrays.sort(latencies);
+        var elapsedSeconds = result.elapsedNanos() / 1e9;
+        System.out.printf(
+                "%n%s%n  signups: %d, sent: %d (parked: %.0f), failed: %d, smtp connections: %d%n"
+                        + "  elapsed: %.2f s, throughput: %.1f emails/s%n"
+                        + "  latency p50: %.1f ms, p95: %.1f ms, p99: %.1f ms, max: %.1f ms%n",
+                scenario,
+                latencies.length,
+                result.sent(),
+                meterRegistry.counter("email.delivery.parked").count(),
+                result.failed(),
+                smtpServer.getConnectionCount(),
+                elapsedSeconds,
+                result.sent() / elapsedSeconds,
+                percentileMillis(latencies, 0.50),
+                percentileMillis(latencies, 0.95),
+                percentileMillis(latencies, 0.99),
+                percentileMillis(latencies, 1.0));
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        var index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.email.ParkedEmailDao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+class EmailDeliveryEngineUnitTest {
+
+    private FakeSmtpServer smtpServer;
+    private JavaMailSenderImpl javaMailSender;
+    private EmailDeliveryEngine emailDeliveryEngine;
+    private SimpleMeterRegistry meterRegistry;
+    private ParkedEmailDao parkedEmailDao;
+    private SmtpCircuitBreaker smtpCircuitBreaker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtpServer = new FakeSmtpServer();
+        javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(smtpServer.getPort());
+        javaMailSender.setUsername("username");
+        javaMailSender.setPassword("password");
+        var properties = new Properties();
+        properties.put("mail.smtp.auth", "true");
+        properties.put("mail.smtp.connectiontimeout", "1000");
+        properties.put("mail.smtp.timeout", "1000");
+        javaMailSender.setJavaMailProperties(properties);
+        meterRegistry = new SimpleMeterRegistry();
+        parkedEmailDao = mock(ParkedEmailDao.class);
+        smtpCircuitBreaker = new SmtpCircuitBreaker(javaMailSender, meterRegistry, 1, 60_000);
+        emailDeliveryEngine = createEngine(100, 1, 100, 1, 20);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        emailDeliveryEngine.stop();
+        smtpServer.close();
+    }
+
+    @Test
+    void submit_givenWorkingSmtpServer_expectAllSentInBatches() throws Exception {
+        var futures = submitMessages(40);
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertThat(smtpServer.getReceivedMessages()).isEqualTo(40);
+        // One connection per batch, not per message.
+        assertThat(smtpServer.getConnectionCount()).isLessThan(40);
+        assertThat(meterRegistry.counter("email.delivery.sent").count()).isEqualTo(40);
+    }
+
+    @Test
+    void submit_givenRejectedCredentials_expectFuturesFailWithAuthenticationError() throws Exception {
+        smtpServer.withRejectedAuthentication(true);
+
+        var futures = submitMessages(5);
+
+        for (var future : futures) {
+            assertThat(future)
+                    .failsWithin(10, TimeUnit.SECONDS)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseInstanceOf(MailAuthenticationException.class);
+        }
+        assertThat(smtpServer.getReceivedMessages()).isZero();
+        assertThat(meterRegistry
+                        .counter("email.delivery.failed", "reason", "authentication")
+                        .count())
+                .isEqualTo(5);
+    }
+
+    @Test
+    void submit_givenFailingSmtpServer_expectOnlyRejectedMessagesFail() throws Exception {
+        smtpServer.withFailureRate(1.0);
+
+        var futures = submitMessages(3);
+
+        for (var future : futures) {
+            assertThat(future).failsWithin(10, TimeUnit.SECONDS);
+        }
+        assertThat(smtpServer.getRejectedMessages()).isEqualTo(3);
+        assertThat(meterRegistry.counter("email.delivery.failed", "reason", "send").count())
+                .isEqualTo(3);
+    }
+
+    @Test
+    void submit_givenBulkBacklog_expectTransactionalEmailSentFirst() throws Exception {
+        smtpServer.withMessageLatency(Duration.ofMillis(50));
+        // No transactional workers: the only worker is a bulk worker, which has to prefer transactional emails.
+        var engine = createEngine(100, 0, 100, 1, 1);
+        try {
+            var completionOrder = new ConcurrentLinkedQueue<String>();
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < 5; i++) {
+                var name = "bulk" + i;
+                futures.add(engine.submit(createMessage(i), EmailLane.BULK)
+                        .whenComplete((unused, throwable) -> completionOrder.add(name)));
+            }
+            futures.add(engine.submit(createMessage(5), EmailLane.TRANSACTIONAL)
+                    .whenComplete((unused, throwable) -> completionOrder.add("transactional")));
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+            // At most the bulk email already being sent goes before the transactional one.
+            assertThat(new ArrayList<>(completionOrder).indexOf("transactional")).isLessThanOrEqualTo(1);
+        } finally {
+            engine.stop();
+        }
+    }
+
+    @Test
+    void submit_givenUnreachableSmtpServer_expectEmailsParkedAndCircuitOpened() throws Exception {
+        smtpServer.close();
+
+        var futures = submitMessages(3);
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        var captor = ArgumentCaptor.forClass(List.class);
+        verify(parkedEmailDao, atLeastOnce()).saveAll(captor.capture());
+        assertThat(captor.getAllValues().stream().mapToInt(List::size).sum()).isEqualTo(3);
+        assertThat(meterRegistry.counter("email.delivery.parked").count()).isEqualTo(3);
+        assertThat(smtpCircuitBreaker.getState()).isEqualTo(SmtpCircuitBreaker.State.OPEN);
+    }
+
+    private EmailDeliveryEngine createEngine(
+            int transactionalCapacity, int transactionalWorkers, int bulkCapacity, int bulkWorkers, int batchSize) {
+        var engine = new EmailDeliveryEngine(
+                javaMailSender,
+                smtpCircuitBreaker,
+                parkedEmailDao,
+                meterRegistry,
+                transactionalCapacity,
+                transactionalWorkers,
+                bulkCapacity,
+                bulkWorkers,
+                batchSize,
+                1000);
+        engine.start();
+        return engine;
+    }
+
+    private ArrayList<CompletableFuture<Void>> submitMessages(int count) throws MessagingException {
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < count; i++) {
+            futures.add(emailDeliveryEngine.submit(createMessage(i), EmailLane.TRANSACTIONAL));
+        }
+        return futures;
+    }
+
+    private MimeMessage createMessage(int index) throws MessagingException {
+        var message = javaMailSender.createMimeMessage();
+        var helper = new MimeMessageHelper(message);
+        helper.setTo(String.format("participant%s@example.com", index));
+        helper.setFrom("noreply@localhost");
+        helper.setSubject("Test " + index);
+        helper.setText("<p>Hello</p>", true);
+        return message;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import fi.asteriski.eventsignup.exception.EmailTemplateNotFoundException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+class EmailTemplateEngineUnitTest {
+
+    private EmailTemplateEngine emailTemplateEngine;
+    private final Locale locale = Locale.forLanguageTag("en");
+
+    @BeforeEach
+    void setUp() {
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        emailTemplateEngine =
+                new EmailTemplateEngine(messageSource, new DefaultResourceLoader(), "classpath:templates/email/");
+    }
+
+    @Test
+    void render_givenSignupSuccessfulTemplate_expectMessagesResolvedAndVariablesEscaped() {
+        var result = emailTemplateEngine.render(
+                "signup-successful",
+                locale,
+                Map.of(
+                        "eventName", "<b>Sitsit</b> & party",
+                        "startDate", ZonedDateTime.of(2024, 11, 15, 18, 0, 0, 0, ZoneId.of("Europe/Helsinki")),
+                        "cancelUrl", "https://localhost/signup/cancel/1/2?a=1&b=2"));
+
+        assertThat(result.subject()).isEqualTo("Signup for <b>Sitsit</b> & party successful");
+        assertThat(result.body())
+                .contains("You have successfully signed up to &lt;b&gt;Sitsit&lt;/b&gt; &amp; party")
+                .contains("2024")
+                .contains("href=\"https://localhost/signup/cancel/1/2?a=1&amp;b=2\"")
+                .doesNotContain("{{");
+    }
+
+    @Test
+    void render_givenMissingVariable_expectEmptyValue() {
+        var result = emailTemplateEngine.render("signup-cancelled", locale, Map.of());
+
+        assertThat(result.body()).contains("You have successfully cancelled your participation to .");
+    }
+
+    @Test
+    void render_givenUnknownTemplate_expectException() {
+        assertThrows(
+                EmailTemplateNotFoundException.class,
+                () -> emailTemplateEngine.render("does-not-exist", locale, Map.of()));
+    }
+}
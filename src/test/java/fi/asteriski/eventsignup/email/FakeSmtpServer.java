@@ -0,0 +1,198 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.email;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process SMTP server for tests and benchmarks. Speaks enough ESMTP for Jakarta Mail (EHLO, AUTH PLAIN and
+ * LOGIN, MAIL, RCPT, DATA, RSET, NOOP, QUIT) and can be told to be slow, to fail messages, to reject credentials or to
+ * stop answering altogether. Behaviour can be changed while it is running.
+ */
+public class FakeSmtpServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Socket> openSockets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger receivedMessages = new AtomicInteger();
+    private final AtomicInteger rejectedMessages = new AtomicInteger();
+
+    private volatile Duration messageLatency = Duration.ZERO;
+    private volatile double failureRate;
+    private volatile boolean rejectAuthentication;
+    private volatile boolean unresponsive;
+
+    public FakeSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 200, InetAddress.getLoopbackAddress());
+        Thread.ofPlatform().name("fake-smtp-acceptor").daemon(true).start(this::accept);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /** Delay before a message (DATA) is acknowledged. */
+    public FakeSmtpServer withMessageLatency(Duration messageLatency) {
+        this.messageLatency = messageLatency;
+        return this;
+    }
+
+    /** Share of messages, between 0 and 1, answered with a temporary failure. */
+    public FakeSmtpServer withFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    public FakeSmtpServer withRejectedAuthentication(boolean rejectAuthentication) {
+        this.rejectAuthentication = rejectAuthentication;
+        return this;
+    }
+
+    /** Accepts connections but never says anything. */
+    public FakeSmtpServer withUnresponsive(boolean unresponsive) {
+        this.unresponsive = unresponsive;
+        return this;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    public int getRejectedMessages() {
+        return rejectedMessages.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (var socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                openSockets.add(socket);
+                connections.submit(() -> handle(socket));
+            } catch (IOException ioException) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+                var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                var out = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            if (unresponsive) {
+                // Keep the connection open without a greeting until the client gives up or the server is closed.
+                while (in.read() >= 0) {
+                    // Ignore everything.
+                }
+                return;
+            }
+            reply(out, "220 localhost fake ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                var command = line.toUpperCase(Locale.ROOT);
+                if (command.startsWith("EHLO")) {
+                    reply(out, "250-localhost\r\n250-AUTH PLAIN LOGIN\r\n250 8BITMIME");
+                } else if (command.startsWith("HELO")) {
+                    reply(out, "250 localhost");
+                } else if (command.startsWith("AUTH PLAIN")) {
+                    if (command.trim().equals("AUTH PLAIN")) {
+                        reply(out, "334 ");
+                        in.readLine();
+                    }
+                    replyToAuthentication(out);
+                } else if (command.startsWith("AUTH LOGIN")) {
+                    if (command.trim().equals("AUTH LOGIN")) {
+                        reply(out, "334 VXNlcm5hbWU6");
+                        in.readLine();
+                    }
+                    reply(out, "334 UGFzc3dvcmQ6");
+                    in.readLine();
+                    replyToAuthentication(out);
+                } else if (command.startsWith("MAIL FROM") || command.startsWith("RCPT TO")) {
+                    reply(out, "250 OK");
+                } else if (command.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    readMessage(in);
+                    replyToMessage(out);
+                } else if (command.startsWith("RSET") || command.startsWith("NOOP")) {
+                    reply(out, "250 OK");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException ioException) {
+            // Client or server closed the connection.
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    private void replyToAuthentication(BufferedWriter out) throws IOException {
+        if (rejectAuthentication) {
+            reply(out, "535 5.7.8 Authentication credentials invalid");
+        } else {
+            reply(out, "235 2.7.0 Authentication successful");
+        }
+    }
+
+    private void replyToMessage(BufferedWriter out) throws IOException, InterruptedException {
+        var latency = messageLatency;
+        if (!latency.isZero()) {
+            Thread.sleep(latency);
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            rejectedMessages.incrementAndGet();
+            reply(out, "451 4.3.0 Temporary failure, try again later");
+        } else {
+            receivedMessages.incrementAndGet();
+            reply(out, "250 2.0.0 OK queued");
+        }
+    }
+
+    private static void readMessage(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+            // Message content isn't stored.
+        }
+    }
+
+    private static void reply(BufferedWriter out, String response) throws IOException {
+        out.write(response);
+        out.write("\r\n");
+        out.flush();
+    }
+}
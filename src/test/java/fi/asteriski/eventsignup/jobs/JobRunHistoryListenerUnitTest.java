@@ -0,0 +1,87 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.jobs;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.jobs.JobRunDao;
+import fi.asteriski.eventsignup.jobs.archiving.ArchivePastEventsJob;
+import fi.asteriski.eventsignup.model.jobs.JobRunEntity;
+import fi.asteriski.eventsignup.model.jobs.JobRunStatus;
+import fi.asteriski.eventsignup.service.archiving.ArchivedEventService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.quartz.JobBuilder;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.JobExecutionContextImpl;
+
+class JobRunHistoryListenerUnitTest {
+
+    private JobRunDao jobRunDao;
+    private JobRunHistoryListener jobRunHistoryListener;
+    private JobExecutionContextImpl context;
+
+    @BeforeEach
+    void setUp() throws SchedulerException {
+        jobRunDao = mock(JobRunDao.class);
+        jobRunHistoryListener = new JobRunHistoryListener(jobRunDao);
+        var scheduler = mock(Scheduler.class);
+        when(scheduler.getSchedulerInstanceId()).thenReturn("node-1");
+        var jobDetail = JobBuilder.newJob(ArchivePastEventsJob.class)
+                .withIdentity("archivePastEvents", "archiving")
+                .build();
+        context = new JobExecutionContextImpl(
+                scheduler,
+                QuartzJobsUnitTest.firedBundle(jobDetail),
+                new ArchivePastEventsJob(mock(ArchivedEventService.class)));
+    }
+
+    @Test
+    void jobWasExecuted_givenSuccess_expectSucceededRunSaved() {
+        jobRunHistoryListener.jobWasExecuted(context, null);
+
+        var run = savedRun();
+        assertEquals("archiving.archivePastEvents", run.getJobName());
+        assertEquals("fire-1", run.getFireInstanceId());
+        assertEquals("node-1", run.getSchedulerInstanceId());
+        assertEquals(JobRunStatus.SUCCEEDED, run.getStatus());
+        assertNull(run.getError());
+        assertNotNull(run.getFinishedAt());
+    }
+
+    @Test
+    void jobWasExecuted_givenException_expectFailedRunWithError() {
+        jobRunHistoryListener.jobWasExecuted(context, new JobExecutionException("Boom."));
+
+        var run = savedRun();
+        assertEquals(JobRunStatus.FAILED, run.getStatus());
+        assertTrue(run.getError().contains("Boom."));
+    }
+
+    @Test
+    void jobExecutionVetoed_expectVetoedRunSaved() {
+        jobRunHistoryListener.jobExecutionVetoed(context);
+
+        assertEquals(JobRunStatus.VETOED, savedRun().getStatus());
+    }
+
+    @Test
+    void jobWasExecuted_givenSavingFails_expectNoException() {
+        when(jobRunDao.save(any())).thenThrow(new IllegalStateException("Database down."));
+
+        assertDoesNotThrow(() -> jobRunHistoryListener.jobWasExecuted(context, null));
+    }
+
+    private JobRunEntity savedRun() {
+        var captor = ArgumentCaptor.forClass(JobRunEntity.class);
+        verify(jobRunDao).save(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.jobs;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import fi.asteriski.eventsignup.config.ScheduledJobsConfig;
+import fi.asteriski.eventsignup.service.archiving.ArchivedEventService;
+import fi.asteriski.eventsignup.service.reminder.EventReminderService;
+import java.util.Date;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.quartz.SpringBeanJobFactory;
+
+/** Jobs are created the way Spring Boot's Quartz auto-configuration does it, so their dependencies get injected. */
+class QuartzJobsUnitTest {
+
+    private final ScheduledJobsConfig scheduledJobsConfig = new ScheduledJobsConfig();
+    private final Scheduler scheduler = mock(Scheduler.class);
+    private ArchivedEventService archivedEventService;
+    private EventReminderService eventReminderService;
+    private AnnotationConfigApplicationContext applicationContext;
+    private SpringBeanJobFactory jobFactory;
+
+    @BeforeEach
+    void setUp() {
+        archivedEventService = mock(ArchivedEventService.class);
+        eventReminderService = mock(EventReminderService.class);
+        applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.registerBean(ArchivedEventService.class, () -> archivedEventService);
+        applicationContext.registerBean(EventReminderService.class, () -> eventReminderService);
+        applicationContext.refresh();
+        jobFactory = new SpringBeanJobFactory();
+        jobFactory.setApplicationContext(applicationContext);
+    }
+
+    @AfterEach
+    void tearDown() {
+        applicationContext.close();
+    }
+
+    @Test
+    void archivePastEventsJob_givenSpringJobFactory_expectServiceCalled() throws Exception {
+        runJob(scheduledJobsConfig.archivePastEventsJobDetail());
+
+        verify(archivedEventService).archivePastEvents();
+    }
+
+    @Test
+    void removeOldArchivedEventsJob_givenSpringJobFactory_expectServiceCalled() throws Exception {
+        runJob(scheduledJobsConfig.removeOldArchivedEventsJobDetail());
+
+        verify(archivedEventService).removeArchivedEventsOlderThanOneYear();
+    }
+
+    @Test
+    void offloadArchivedEventsJob_givenSpringJobFactory_expectServiceCalled() throws Exception {
+        runJob(scheduledJobsConfig.offloadArchivedEventsJobDetail());
+
+        verify(archivedEventService).offloadToColdTier();
+    }
+
+    @Test
+    void sendEventRemindersJob_givenSpringJobFactory_expectServiceCalled() throws Exception {
+        runJob(scheduledJobsConfig.sendEventRemindersJobDetail());
+
+        verify(eventReminderService).sendDueReminders();
+    }
+
+    static TriggerFiredBundle firedBundle(JobDetail jobDetail) {
+        var trigger = (OperableTrigger)
+                TriggerBuilder.newTrigger().forJob(jobDetail).startNow().build();
+        trigger.setFireInstanceId("fire-1");
+        var now = new Date();
+        return new TriggerFiredBundle(jobDetail, trigger, null, false, now, now, null, null);
+    }
+
+    private void runJob(JobDetail jobDetail) throws Exception {
+        var bundle = firedBundle(jobDetail);
+        var job = jobFactory.newJob(bundle, scheduler);
+        job.execute(new JobExecutionContextImpl(scheduler, bundle, job));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.repo.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import fi.asteriski.eventsignup.model.event.EventEntity;
+import fi.asteriski.eventsignup.utils.TestUtils;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@DataJpaTest
+// Locks are only visible between committed transactions so every test commits its own.
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EventRepositoryIntegrationTest {
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private EventEntity event;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        event = eventRepository.save(TestUtils.createRandomEvent("testUser").toEntity());
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventRepository.deleteAll();
+    }
+
+    @Test
+    void findByIdAndLockSkipLocked_givenNotLocked_expectEvent() {
+        var result = transactionTemplate.execute(status -> eventRepository.findByIdAndLockSkipLocked(event.getId()));
+
+        assertTrue(result.isPresent());
+        assertEquals(event.getId(), result.get().getId());
+    }
+
+    @Test
+    void findByIdAndLockSkipLocked_givenLockedByAnotherTransaction_expectEmptyWithoutWaiting() {
+        var resultWhileLocked = transactionTemplate.execute(status -> {
+            assertTrue(eventRepository.findByIdAndLockSkipLocked(event.getId()).isPresent());
+            return CompletableFuture.supplyAsync(this::findAndLockInNewTransaction)
+                    .orTimeout(5, TimeUnit.SECONDS)
+                    .join();
+        });
+
+        assertTrue(resultWhileLocked.isEmpty());
+        // The lock is released on commit.
+        assertTrue(findAndLockInNewTransaction().isPresent());
+    }
+
+    @Test
+    void findByIdAndLockSkipLocked_givenEventDoesNotExist_expectEmpty() {
+        var result =
+                transactionTemplate.execute(status -> eventRepository.findByIdAndLockSkipLocked(UUID.randomUUID()));
+
+        assertTrue(result.isEmpty());
+    }
+
+    private Optional<EventEntity> findAndLockInNewTransaction() {
+        return transactionTemplate.execute(status -> eventRepository.findByIdAndLockSkipLocked(event.getId()));
+    }
+}
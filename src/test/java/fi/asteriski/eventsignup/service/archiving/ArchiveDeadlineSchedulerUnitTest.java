@@ -0,0 +1,163 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.event.EventsDeletedSpringEvent;
+import fi.asteriski.eventsignup.model.event.EventDates;
+import fi.asteriski.eventsignup.service.event.EventService;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ArchiveDeadlineSchedulerUnitTest {
+
+    private static final int DAYS_TO_ARCHIVE = 7;
+
+    private EventService eventService;
+    private ArchivedEventService archivedEventService;
+    private ArchiveDeadlineScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        eventService = mock(EventService.class);
+        archivedEventService = mock(ArchivedEventService.class);
+        scheduler = new ArchiveDeadlineScheduler(eventService, archivedEventService);
+        ReflectionTestUtils.setField(scheduler, "daysToArchivePastEvents", DAYS_TO_ARCHIVE);
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "minIntervalMillis", 0L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void start_expectAllEventsScheduled() {
+        var first = futureEvent(UUID.randomUUID(), 1);
+        var second = futureEvent(UUID.randomUUID(), 2);
+        when(eventService.getAllEventDates()).thenReturn(List.of(first, second));
+
+        scheduler.start();
+
+        assertEquals(
+                Map.of(
+                        first.id(), first.archiveDeadline(DAYS_TO_ARCHIVE),
+                        second.id(), second.archiveDeadline(DAYS_TO_ARCHIVE)),
+                scheduler.getDeadlines());
+        assertEquals(2, scheduler.getQueueSize());
+    }
+
+    @Test
+    void start_givenDisabled_expectNothingScheduled() {
+        ReflectionTestUtils.setField(scheduler, "enabled", false);
+
+        scheduler.start();
+        scheduler.refresh();
+
+        verifyNoInteractions(eventService);
+        assertEquals(0, scheduler.getQueueSize());
+    }
+
+    @Test
+    void schedule_givenUnchangedDates_expectQueuedOnce() {
+        var eventDates = futureEvent(UUID.randomUUID(), 1);
+
+        scheduler.schedule(eventDates);
+        scheduler.schedule(eventDates);
+
+        assertEquals(1, scheduler.getQueueSize());
+    }
+
+    @Test
+    void schedule_givenChangedDates_expectLatestDeadlineKept() {
+        var eventId = UUID.randomUUID();
+        var rescheduled = futureEvent(eventId, 3);
+
+        scheduler.schedule(futureEvent(eventId, 1));
+        scheduler.schedule(rescheduled);
+
+        assertEquals(Map.of(eventId, rescheduled.archiveDeadline(DAYS_TO_ARCHIVE)), scheduler.getDeadlines());
+        // The earlier entry stays in the queue but is skipped once it's due.
+        assertEquals(2, scheduler.getQueueSize());
+    }
+
+    @Test
+    void refresh_givenEventUpdatedSincePreviousRefresh_expectRescheduled() {
+        var eventId = UUID.randomUUID();
+        when(eventService.getAllEventDates()).thenReturn(List.of(futureEvent(eventId, 1)));
+        var rescheduled = futureEvent(eventId, 3);
+        when(eventService.getEventDatesUpdatedSince(any())).thenReturn(List.of(rescheduled));
+        var before = Instant.now();
+        scheduler.start();
+
+        scheduler.refresh();
+
+        assertEquals(rescheduled.archiveDeadline(DAYS_TO_ARCHIVE), scheduler.getDeadlines().get(eventId));
+        var since = ArgumentCaptor.forClass(Instant.class);
+        verify(eventService).getEventDatesUpdatedSince(since.capture());
+        // Overlaps the previous refresh in case the database's clock is behind ours.
+        assertTrue(since.getValue().isBefore(before));
+    }
+
+    @Test
+    void onEventsDeleted_givenEventDeletedWithoutArchiving_expectDroppedFromQueue() {
+        var kept = futureEvent(UUID.randomUUID(), 1);
+        var deleted = futureEvent(UUID.randomUUID(), 2);
+        when(eventService.getAllEventDates()).thenReturn(List.of(kept, deleted));
+        scheduler.start();
+        scheduler.schedule(futureEvent(deleted.id(), 3));
+
+        scheduler.onEventsDeleted(new EventsDeletedSpringEvent(this, List.of(deleted.id(), UUID.randomUUID())));
+
+        assertEquals(Map.of(kept.id(), kept.archiveDeadline(DAYS_TO_ARCHIVE)), scheduler.getDeadlines());
+        assertEquals(1, scheduler.getQueueSize());
+    }
+
+    @Test
+    void start_givenDeadlinePassed_expectArchived() {
+        var eventId = UUID.randomUUID();
+        when(eventService.getAllEventDates()).thenReturn(List.of(pastEvent(eventId, 1)));
+
+        scheduler.start();
+
+        verify(archivedEventService, timeout(5_000)).archiveEventIfDue(eventId);
+    }
+
+    @Test
+    void start_givenPassedDeadlineSuperseded_expectNotArchived() {
+        var supersededId = UUID.randomUUID();
+        var dueId = UUID.randomUUID();
+        // The superseded entry is due before the other one so it has been handled by the time the other is archived.
+        when(eventService.getAllEventDates())
+                .thenReturn(List.of(pastEvent(supersededId, 2), futureEvent(supersededId, 1), pastEvent(dueId, 1)));
+
+        scheduler.start();
+
+        verify(archivedEventService, timeout(5_000)).archiveEventIfDue(dueId);
+        verify(archivedEventService, never()).archiveEventIfDue(supersededId);
+    }
+
+    private static EventDates futureEvent(UUID eventId, int daysFromNow) {
+        var startDate = Instant.now().plus(daysFromNow, ChronoUnit.DAYS);
+        return new EventDates(eventId, startDate, startDate.plus(1, ChronoUnit.HOURS));
+    }
+
+    private static EventDates pastEvent(UUID eventId, int daysPastDeadline) {
+        var startDate = Instant.now().minus(DAYS_TO_ARCHIVE + daysPastDeadline, ChronoUnit.DAYS);
+        return new EventDates(eventId, startDate, startDate.plus(1, ChronoUnit.HOURS));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import static fi.asteriski.eventsignup.utils.Constants.UTC_TIME_ZONE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.archiving.ArchiveExportDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
+import fi.asteriski.eventsignup.model.archiving.ArchiveExportEntity;
+import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
+import fi.asteriski.eventsignup.utils.TestUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ArchiveExportServiceImplUnitTest {
+
+    private ArchiveExportDao archiveExportDao;
+    private ColdArchivedEventDao coldArchivedEventDao;
+    private ArchiveExportServiceImpl archiveExportService;
+
+    @BeforeEach
+    void setUp() {
+        archiveExportDao = mock(ArchiveExportDao.class);
+        coldArchivedEventDao = mock(ColdArchivedEventDao.class);
+        archiveExportService = new ArchiveExportServiceImpl(archiveExportDao, coldArchivedEventDao);
+        ReflectionTestUtils.setField(archiveExportService, "settleSeconds", 600L);
+    }
+
+    @Test
+    void exportArchivedEvents_givenIncremental_expectWindowFromLastWatermarkToSettledPast() throws IOException {
+        var lastWatermark = Instant.now().minus(1, ChronoUnit.DAYS);
+        when(archiveExportDao.findLatestWatermark()).thenReturn(Optional.of(lastWatermark));
+        when(coldArchivedEventDao.streamAllByDateArchivedIsAfter(lastWatermark)).thenReturn(Stream.empty());
+        var before = Instant.now();
+
+        archiveExportService.exportArchivedEvents(true, new ByteArrayOutputStream());
+
+        var until = ArgumentCaptor.forClass(Instant.class);
+        verify(archiveExportDao).forEachArchivedEventBetween(eq(lastWatermark), until.capture(), any());
+        assertFalse(until.getValue().isAfter(before.minusSeconds(600).plusSeconds(5)));
+        assertFalse(until.getValue().isBefore(before.minusSeconds(605)));
+        // Not the newest exported row, a row committed late with an older date is left to the next export.
+        assertEquals(until.getValue(), savedExport().getWatermark());
+    }
+
+    @Test
+    void exportArchivedEvents_givenColdEventArchivedAfterWindow_expectLeftOut() throws IOException {
+        when(archiveExportDao.findLatestWatermark()).thenReturn(Optional.empty());
+        var inWindow = coldEvent(Instant.now().minus(1, ChronoUnit.HOURS));
+        var tooNew = coldEvent(Instant.now().minus(1, ChronoUnit.MINUTES));
+        when(coldArchivedEventDao.streamAllByDateArchivedIsAfter(Instant.EPOCH))
+                .thenReturn(Stream.of(inWindow, tooNew));
+
+        var rowCount = archiveExportService.exportArchivedEvents(true, new ByteArrayOutputStream());
+
+        assertEquals(1, rowCount);
+        assertEquals(1, savedExport().getRowCount());
+    }
+
+    @Test
+    void exportArchivedEvents_givenWatermarkNewerThanSettledPast_expectEmptyWindowAndWatermarkKept()
+            throws IOException {
+        var lastWatermark = Instant.now();
+        when(archiveExportDao.findLatestWatermark()).thenReturn(Optional.of(lastWatermark));
+        when(coldArchivedEventDao.streamAllByDateArchivedIsAfter(lastWatermark)).thenReturn(Stream.empty());
+
+        archiveExportService.exportArchivedEvents(true, new ByteArrayOutputStream());
+
+        verify(archiveExportDao).forEachArchivedEventBetween(eq(lastWatermark), eq(lastWatermark), any());
+        assertEquals(lastWatermark, savedExport().getWatermark());
+    }
+
+    private ArchiveExportEntity savedExport() {
+        var captor = ArgumentCaptor.forClass(ArchiveExportEntity.class);
+        verify(archiveExportDao).save(captor.capture());
+        return captor.getValue();
+    }
+
+    private static ArchivedEventDto coldEvent(Instant dateArchived) {
+        var archivedEvent = TestUtils.createRandomArchivedEvent("testUser", Optional.empty());
+        return new ArchivedEventDto(
+                UUID.randomUUID(),
+                archivedEvent.originalEvent(),
+                ZonedDateTime.ofInstant(dateArchived, UTC_TIME_ZONE),
+                archivedEvent.numberOfParticipants(),
+                archivedEvent.originalOwner(),
+                archivedEvent.bannerImage());
+    }
+}
@@ -6,30 +6,43 @@ package fi.asteriski.eventsignup.service.archiving;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDaoImpl;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDaoImpl;
 import fi.asteriski.eventsignup.exception.EventNotFoundException;
 import fi.asteriski.eventsignup.model.archiving.ArchivedEventDto;
 import fi.asteriski.eventsignup.model.event.EventDto;
 import fi.asteriski.eventsignup.model.signup.ParticipantDto;
 import fi.asteriski.eventsignup.repo.archiving.ArchivedEventRepository;
+import fi.asteriski.eventsignup.repo.archiving.ColdArchivedEventRepository;
 import fi.asteriski.eventsignup.repo.event.EventRepository;
 import fi.asteriski.eventsignup.repo.signup.ParticipantRepository;
+import fi.asteriski.eventsignup.service.blob.LocalBlobStore;
 import fi.asteriski.eventsignup.service.event.EventServiceImpl;
-import fi.asteriski.eventsignup.service.event.ImageServiceImpl;
 import fi.asteriski.eventsignup.service.signup.ParticipantServiceImpl;
+import fi.asteriski.eventsignup.utils.ApplicationMetrics;
 import fi.asteriski.eventsignup.utils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.MessageSource;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @DataJpaTest
 class ArchivedEventServiceImplIntegrationTest {
@@ -43,7 +56,14 @@ class ArchivedEventServiceImplIntegrationTest {
     @Autowired
     private ArchivedEventRepository archivedEventRepository;
 
+    @Autowired
+    private ColdArchivedEventRepository coldArchivedEventRepository;
+
+    @TempDir
+    private Path coldArchiveRoot;
+
     private ArchivedEventServiceImpl archivedEventService;
+    private ColdArchivedEventDao coldArchivedEventDao;
 
     @Autowired
     private MessageSource messageSource;
@@ -52,7 +72,7 @@ class ArchivedEventServiceImplIntegrationTest {
     private EventServiceImpl eventService;
 
     @MockBean
-    private ImageServiceImpl imageService;
+    private ImageRelocationServiceImpl imageRelocationService;
 
     @MockBean
     private ParticipantServiceImpl participantService;
@@ -64,9 +84,16 @@ class ArchivedEventServiceImplIntegrationTest {
     void setUp() {
         eventService = Mockito.mock(EventServiceImpl.class);
         var archivedEventDao = new ArchivedEventDaoImpl(archivedEventRepository);
-        imageService = Mockito.mock(ImageServiceImpl.class);
+        imageRelocationService = Mockito.mock(ImageRelocationServiceImpl.class);
+        coldArchivedEventDao = Mockito.mock(ColdArchivedEventDao.class);
         archivedEventService = new ArchivedEventServiceImpl(
-                participantService, archivedEventDao, eventService, imageService, messageSource);
+                participantService,
+                archivedEventDao,
+                eventService,
+                imageRelocationService,
+                messageSource,
+                coldArchivedEventDao,
+                new ApplicationMetrics(new SimpleMeterRegistry()));
     }
 
     @AfterEach
@@ -74,6 +101,7 @@ class ArchivedEventServiceImplIntegrationTest {
         eventRepository.deleteAll();
         participantRepository.deleteAll();
         archivedEventRepository.deleteAll();
+        coldArchivedEventRepository.deleteAll();
     }
 
     @Test
@@ -135,7 +163,7 @@ class ArchivedEventServiceImplIntegrationTest {
         archivedEventRepository.saveAll(combinedArchivedEvents);
         //        when(archivedEventDao.findAll()).thenReturn(combinedArchivedEvents);
 
-        var result = archivedEventService.getAllArchivedEvents();
+        var result = archivedEventService.getAllArchivedEvents(false);
 
         assertInstanceOf(List.class, result);
         assertEquals(2, result.size());
@@ -144,9 +172,38 @@ class ArchivedEventServiceImplIntegrationTest {
         assertEquals(archivedEvents2.size(), result.get(1).events().size());
     }
 
+    @Test
+    void getAllArchivedEvents_givenColdTierNotIncluded_expectColdTierNotRead() {
+        archivedEventService.getAllArchivedEvents(false);
+
+        verify(coldArchivedEventDao, never()).findAll();
+    }
+
+    @Test
+    void getAllArchivedEvents_givenColdTierIncluded_expectColdEventsListed() {
+        var hotEvent = archivedEventRepository.save(
+                TestUtils.createRandomArchivedEvent(testUser, Optional.empty()).toEntity());
+        var randomColdEvent = TestUtils.createRandomArchivedEvent(testUser, Optional.empty());
+        var coldEvent = new ArchivedEventDto(
+                UUID.randomUUID(),
+                randomColdEvent.originalEvent(),
+                randomColdEvent.dateArchived(),
+                randomColdEvent.numberOfParticipants(),
+                randomColdEvent.originalOwner(),
+                randomColdEvent.bannerImage());
+        when(coldArchivedEventDao.findAll()).thenReturn(List.of(coldEvent));
+
+        var result = archivedEventService.getAllArchivedEvents(true);
+
+        assertEquals(1, result.size());
+        assertEquals(
+                Set.of(hotEvent.getId(), coldEvent.id()),
+                result.get(0).events().stream().map(ArchivedEventDto::id).collect(Collectors.toSet()));
+    }
+
     @Test
     void getAllArchivedEvents_givenThereIsNothingInDb_expectEmptyList() {
-        var result = archivedEventService.getAllArchivedEvents();
+        var result = archivedEventService.getAllArchivedEvents(false);
 
         assertTrue(result.isEmpty());
     }
@@ -164,6 +221,54 @@ class ArchivedEventServiceImplIntegrationTest {
         assertEquals(countBefore, countAfter);
     }
 
+    @Test
+    void restoreArchivedEvent_givenEventInColdTier_expectOriginalIdAndDateArchivedKept() {
+        var coldArchivedEventDao = new ColdArchivedEventDaoImpl(
+                new ObjectMapper().findAndRegisterModules(),
+                new LocalBlobStore(coldArchiveRoot.toString()),
+                coldArchivedEventRepository);
+        var service = new ArchivedEventServiceImpl(
+                participantService,
+                new ArchivedEventDaoImpl(archivedEventRepository),
+                eventService,
+                imageRelocationService,
+                messageSource,
+                coldArchivedEventDao,
+                new ApplicationMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "daysBeforeColdTierOffload", 90);
+        var dateArchived = Instant.now().minus(200, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MILLIS);
+        var randomArchivedEvent = TestUtils.createRandomArchivedEvent(testUser, Optional.of(() -> dateArchived));
+        var archivedEvent = new ArchivedEventDto(
+                UUID.randomUUID(),
+                randomArchivedEvent.originalEvent(),
+                randomArchivedEvent.dateArchived(),
+                randomArchivedEvent.numberOfParticipants(),
+                randomArchivedEvent.originalOwner(),
+                randomArchivedEvent.bannerImage());
+        coldArchivedEventDao.saveAll(List.of(archivedEvent));
+
+        var restored = service.restoreArchivedEvent(archivedEvent.id(), defaultLocale);
+
+        assertEquals(archivedEvent.id(), restored.id());
+        assertEquals(dateArchived, restored.dateArchived().toInstant());
+        assertEquals(archivedEvent.originalEvent().getName(), restored.originalEvent().getName());
+        var stored = archivedEventRepository.findById(archivedEvent.id()).orElseThrow();
+        assertEquals(dateArchived, stored.getDateArchived());
+        assertFalse(coldArchivedEventDao.existsById(archivedEvent.id()));
+
+        // Still old enough to go back to the cold tier, under the same id.
+        service.offloadToColdTier();
+
+        assertTrue(archivedEventRepository.findById(archivedEvent.id()).isEmpty());
+        assertEquals(
+                dateArchived,
+                coldArchivedEventDao
+                        .findById(archivedEvent.id())
+                        .orElseThrow()
+                        .dateArchived()
+                        .toInstant());
+    }
+
     private void mockEventServiceGetEvent(EventDto event) {
         when(eventService.getEvent(eq(event.getId()), eq(defaultLocale), any())).thenReturn(event);
     }
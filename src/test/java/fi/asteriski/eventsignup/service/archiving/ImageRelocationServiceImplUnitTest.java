@@ -0,0 +1,101 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.archiving;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ImageRelocationDao;
+import fi.asteriski.eventsignup.exception.FileMoveNotSuccessfulException;
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationEntity;
+import fi.asteriski.eventsignup.model.archiving.ImageRelocationStatus;
+import fi.asteriski.eventsignup.service.event.ImageService;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ImageRelocationServiceImplUnitTest {
+
+    private ImageRelocationDao imageRelocationDao;
+    private ArchivedEventDao archivedEventDao;
+    private ImageService imageService;
+    private ImageRelocationServiceImpl imageRelocationService;
+
+    @BeforeEach
+    void setUp() {
+        imageRelocationDao = mock(ImageRelocationDao.class);
+        archivedEventDao = mock(ArchivedEventDao.class);
+        imageService = mock(ImageService.class);
+        imageRelocationService =
+                new ImageRelocationServiceImpl(imageRelocationDao, archivedEventDao, imageService, 2);
+        ReflectionTestUtils.setField(imageRelocationService, "batchSize", 20);
+        ReflectionTestUtils.setField(imageRelocationService, "maxAttempts", 2);
+        ReflectionTestUtils.setField(imageRelocationService, "retryBaseDelayMillis", 60_000L);
+        ReflectionTestUtils.setField(imageRelocationService, "retryMaxDelayMillis", 3_600_000L);
+        ReflectionTestUtils.setField(imageRelocationService, "moveTimeoutMillis", 5_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageRelocationService.stop();
+    }
+
+    @Test
+    void relocateDueImages_givenSuccessfulMove_expectDoneAndArchivedEventUpdated() {
+        var relocation = pendingRelocation("user_image.jpg");
+        when(imageRelocationDao.findDueAndLock(any(), anyInt())).thenReturn(List.of(relocation));
+        when(imageService.moveBannerImage("user_image.jpg")).thenReturn("/root/archived/user/image.jpg");
+        when(archivedEventDao.updateBannerImage(any(), any())).thenReturn(true);
+
+        assertEquals(1, imageRelocationService.relocateDueImages());
+
+        assertEquals(ImageRelocationStatus.DONE, relocation.getStatus());
+        assertEquals(1, relocation.getAttempts());
+        verify(imageRelocationDao).saveAll(List.of(relocation));
+        verify(archivedEventDao).updateBannerImage(relocation.getArchivedEventId(), "/root/archived/user/image.jpg");
+    }
+
+    @Test
+    void relocateDueImages_givenFailingMove_expectRetriedLaterThenFailed() {
+        var relocation = pendingRelocation("user_image.jpg");
+        when(imageRelocationDao.findDueAndLock(any(), anyInt())).thenReturn(List.of(relocation));
+        when(imageService.moveBannerImage(any())).thenThrow(new FileMoveNotSuccessfulException("Failed.", null));
+
+        imageRelocationService.relocateDueImages();
+
+        assertEquals(ImageRelocationStatus.PENDING, relocation.getStatus());
+        assertTrue(relocation.getNextAttemptAt().isAfter(Instant.now()));
+        assertNotNull(relocation.getLastError());
+
+        imageRelocationService.relocateDueImages();
+
+        assertEquals(ImageRelocationStatus.FAILED, relocation.getStatus());
+        verify(archivedEventDao, never()).updateBannerImage(any(), any());
+    }
+
+    @Test
+    void scheduleRelocation_givenContentHashImage_expectNothingScheduled() {
+        imageRelocationService.scheduleRelocation(UUID.randomUUID(), "a".repeat(64));
+        imageRelocationService.scheduleRelocation(UUID.randomUUID(), null);
+
+        verify(imageRelocationDao, never()).save(any());
+    }
+
+    private static ImageRelocationEntity pendingRelocation(String sourceName) {
+        return ImageRelocationEntity.builder()
+                .archivedEventId(UUID.randomUUID())
+                .sourceName(sourceName)
+                .status(ImageRelocationStatus.PENDING)
+                .nextAttemptAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.blob;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalBlobStoreUnitTest {
+
+    @TempDir
+    private Path root;
+
+    @TempDir
+    private Path sourceDirectory;
+
+    private LocalBlobStore localBlobStore;
+
+    @BeforeEach
+    void setUp() {
+        localBlobStore = new LocalBlobStore(root.toString());
+    }
+
+    @Test
+    void putFile_expectContentStoredUnderKey() throws IOException {
+        var source = Files.writeString(sourceDirectory.resolve("upload"), "image");
+
+        localBlobStore.put("objects/ab/cd/abcd", source);
+
+        assertEquals("image", Files.readString(root.resolve("objects/ab/cd/abcd")));
+        var resource = localBlobStore.get("objects/ab/cd/abcd").orElseThrow();
+        assertArrayEquals("image".getBytes(), resource.getContentAsByteArray());
+    }
+
+    @Test
+    void putBytes_givenExistingBlob_expectReplaced() throws IOException {
+        localBlobStore.put("a/.meta", "old".getBytes());
+        localBlobStore.put("a/.meta", "new".getBytes());
+
+        assertEquals("new", Files.readString(root.resolve("a/.meta")));
+        try (var files = Files.list(root.resolve("a"))) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void read_expectRangeOfBlob() throws IOException {
+        localBlobStore.put("a/b", "0123456789".getBytes());
+
+        assertEquals("3456", new String(localBlobStore.read("a/b", 3, 4)));
+        assertThrows(EOFException.class, () -> localBlobStore.read("a/b", 8, 4));
+        assertThrows(FileNotFoundException.class, () -> localBlobStore.read("a/c", 0, 1));
+    }
+
+    @Test
+    void touch_expectModificationTimeUpdated() throws IOException {
+        localBlobStore.put("a/b", "image".getBytes());
+        var longAgo = Instant.now().minus(10, ChronoUnit.DAYS);
+        Files.setLastModifiedTime(root.resolve("a/b"), FileTime.from(longAgo));
+
+        localBlobStore.touch("a/b");
+
+        assertTrue(localBlobStore.lastModified("a/b").orElseThrow().isAfter(longAgo));
+    }
+
+    @Test
+    void delete_expectBlobGone() throws IOException {
+        localBlobStore.put("a/b", "image".getBytes());
+
+        localBlobStore.delete("a/b");
+        localBlobStore.delete("a/b");
+
+        assertFalse(localBlobStore.exists("a/b"));
+        assertTrue(localBlobStore.get("a/b").isEmpty());
+    }
+
+    @Test
+    void list_expectBlobsUnderDirectoryRecursively() throws IOException {
+        localBlobStore.put("a/b/c", "image".getBytes());
+        localBlobStore.put("a/d", "image".getBytes());
+        localBlobStore.put("e/f", "image".getBytes());
+
+        try (var blobs = localBlobStore.list("a")) {
+            var keys = blobs.map(BlobStore.BlobInfo::key).sorted().toList();
+            assertEquals(List.of("a/b/c", "a/d"), keys);
+        }
+        try (var blobs = localBlobStore.list("missing")) {
+            assertEquals(0, blobs.count());
+        }
+    }
+
+    @Test
+    void get_givenKeyOutsideRoot_expectException() {
+        assertThrows(IllegalArgumentException.class, () -> localBlobStore.get("../outside"));
+    }
+}
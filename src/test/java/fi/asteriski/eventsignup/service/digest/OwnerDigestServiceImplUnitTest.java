@@ -0,0 +1,118 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.digest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.digest.OwnerDigestDao;
+import fi.asteriski.eventsignup.model.digest.OwnerDigestEntry;
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.outbox.NotificationType;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
+import fi.asteriski.eventsignup.utils.EmailService;
+import fi.asteriski.eventsignup.utils.TestUtils;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OwnerDigestServiceImplUnitTest {
+
+    private OwnerDigestDao ownerDigestDao;
+    private OwnerDigestServiceImpl ownerDigestService;
+    private EventDto event;
+
+    @BeforeEach
+    void setUp() {
+        ownerDigestDao = mock(OwnerDigestDao.class);
+        ownerDigestService = new OwnerDigestServiceImpl(ownerDigestDao, mock(EmailService.class));
+        ReflectionTestUtils.setField(ownerDigestService, "enabled", true);
+        ReflectionTestUtils.setField(ownerDigestService, "windowMinutes", 60L);
+        ReflectionTestUtils.setField(ownerDigestService, "includeSignups", true);
+        ReflectionTestUtils.setField(ownerDigestService, "batchSize", 20);
+        ReflectionTestUtils.setField(ownerDigestService, "deliveryTimeoutMillis", 1000L);
+        event = TestUtils.createRandomEvent("owner");
+        event.setId(UUID.randomUUID());
+    }
+
+    @Test
+    void eventChangesAreCountedIntoOneDigestEntry() {
+        when(ownerDigestDao.merge(any(), any(), any(), any(), anyMap(), any())).thenReturn(true);
+
+        assertThat(ownerDigestService.collect(message(NotificationType.EVENT_SAVED), event))
+                .isTrue();
+        assertThat(ownerDigestService.collect(message(NotificationType.EVENT_SAVED), event))
+                .isTrue();
+        assertThat(ownerDigestService.collect(message(NotificationType.SIGNUP_SUCCESSFUL), event))
+                .isFalse();
+        ownerDigestService.checkpoint();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<UUID, OwnerDigestEntry>> entries = ArgumentCaptor.forClass(Map.class);
+        verify(ownerDigestDao)
+                .merge(
+                        eq("owner"),
+                        eq("owner@example.com"),
+                        eq("fi"),
+                        eq("Europe/Helsinki"),
+                        entries.capture(),
+                        any());
+        assertThat(entries.getValue()).containsOnlyKeys(event.getId());
+        var entry = entries.getValue().get(event.getId());
+        assertThat(entry.getChanges()).isEqualTo(2);
+        assertThat(entry.getSignups()).isEqualTo(1);
+        assertThat(entry.getCancellations()).isZero();
+    }
+
+    @Test
+    void failedCheckpointIsRetriedWithTheSameCounts() {
+        when(ownerDigestDao.merge(any(), any(), any(), any(), anyMap(), any()))
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(true);
+
+        ownerDigestService.collect(message(NotificationType.EVENT_SAVED), event);
+        ownerDigestService.checkpoint();
+        ownerDigestService.collect(message(NotificationType.SIGNUP_CANCELLED), event);
+        ownerDigestService.checkpoint();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<UUID, OwnerDigestEntry>> entries = ArgumentCaptor.forClass(Map.class);
+        verify(ownerDigestDao, times(2)).merge(eq("owner"), any(), any(), any(), entries.capture(), any());
+        var entry = entries.getAllValues().get(1).get(event.getId());
+        assertThat(entry.getChanges()).isEqualTo(1);
+        assertThat(entry.getCancellations()).isEqualTo(1);
+    }
+
+    @Test
+    void nothingIsCollectedWhenDisabled() {
+        ReflectionTestUtils.setField(ownerDigestService, "enabled", false);
+
+        assertThat(ownerDigestService.collect(message(NotificationType.EVENT_SAVED), event))
+                .isFalse();
+        ownerDigestService.checkpoint();
+
+        verify(ownerDigestDao, never()).merge(any(), any(), any(), any(), anyMap(), any());
+    }
+
+    private OutboxMessageEntity message(NotificationType type) {
+        return OutboxMessageEntity.builder()
+                .type(type)
+                .eventId(event.getId())
+                .recipient("owner@example.com")
+                .locale("fi")
+                .timeZone("Europe/Helsinki")
+                .status(OutboxStatus.PENDING)
+                .nextAttemptAt(Instant.now())
+                .build();
+    }
+}
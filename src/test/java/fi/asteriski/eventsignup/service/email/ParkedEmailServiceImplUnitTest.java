@@ -0,0 +1,136 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.email;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.email.ParkedEmailDao;
+import fi.asteriski.eventsignup.email.EmailLane;
+import fi.asteriski.eventsignup.email.SmtpCircuitBreaker;
+import fi.asteriski.eventsignup.model.email.ParkedEmailEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ParkedEmailServiceImplUnitTest {
+
+    private ParkedEmailDao parkedEmailDao;
+    private JavaMailSender javaMailSender;
+    private SmtpCircuitBreaker smtpCircuitBreaker;
+    private ParkedEmailServiceImpl parkedEmailService;
+    private ParkedEmailEntity first;
+    private ParkedEmailEntity second;
+
+    @BeforeEach
+    void setUp() {
+        parkedEmailDao = mock(ParkedEmailDao.class);
+        javaMailSender = mock(JavaMailSender.class);
+        var meterRegistry = new SimpleMeterRegistry();
+        smtpCircuitBreaker = new SmtpCircuitBreaker(javaMailSender, meterRegistry, 1, 60_000);
+        parkedEmailService =
+                new ParkedEmailServiceImpl(parkedEmailDao, smtpCircuitBreaker, javaMailSender, meterRegistry);
+        ReflectionTestUtils.setField(parkedEmailService, "batchSize", 50);
+        ReflectionTestUtils.setField(parkedEmailService, "drainRatePerSecond", 1000.0);
+        ReflectionTestUtils.setField(parkedEmailService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(parkedEmailService, "leaseMillis", 300_000L);
+        parkedEmailService.init();
+
+        first = parkedEmail();
+        second = parkedEmail();
+        when(parkedEmailDao.claimDue(any(), anyInt(), any())).thenReturn(List.of(first, second));
+        when(parkedEmailDao.deleteClaimed(any(), any())).thenReturn(true);
+        when(parkedEmailDao.saveFailedAttempt(any(), any())).thenReturn(true);
+        when(javaMailSender.createMimeMessage(any(InputStream.class))).thenReturn(mock(MimeMessage.class));
+    }
+
+    @Test
+    void drainParkedEmails_givenSent_expectClaimedWithLeaseAndDeleted() {
+        var before = Instant.now();
+
+        assertEquals(2, parkedEmailService.drainParkedEmails());
+
+        var leaseUntil = ArgumentCaptor.forClass(Instant.class);
+        verify(parkedEmailDao).claimDue(any(), eq(50), leaseUntil.capture());
+        assertFalse(leaseUntil.getValue().isBefore(before.plusSeconds(299)));
+        verify(parkedEmailDao).deleteClaimed(first, leaseUntil.getValue());
+        verify(parkedEmailDao).deleteClaimed(second, leaseUntil.getValue());
+        verify(parkedEmailDao, never()).release(any(), any());
+    }
+
+    @Test
+    void drainParkedEmails_givenNothingParked_expectZero() {
+        when(parkedEmailDao.claimDue(any(), anyInt(), any())).thenReturn(List.of());
+
+        assertEquals(0, parkedEmailService.drainParkedEmails());
+        verifyNoInteractions(javaMailSender);
+    }
+
+    @Test
+    void drainParkedEmails_givenRejected_expectAttemptSavedAndNotCounted() {
+        doThrow(new MailSendException("Rejected.")).when(javaMailSender).send(any(MimeMessage.class));
+
+        assertEquals(0, parkedEmailService.drainParkedEmails());
+
+        verify(parkedEmailDao).saveFailedAttempt(eq(first), any());
+        assertEquals(1, first.getAttempts());
+        assertTrue(first.getLastError().contains("Rejected."));
+        verify(parkedEmailDao, never()).deleteClaimed(any(), any());
+    }
+
+    @Test
+    void drainParkedEmails_givenLastAttemptRejected_expectDropped() {
+        first.setAttempts(2);
+        second.setAttempts(2);
+        doThrow(new MailSendException("Rejected.")).when(javaMailSender).send(any(MimeMessage.class));
+
+        assertEquals(2, parkedEmailService.drainParkedEmails());
+
+        verify(parkedEmailDao).deleteClaimed(eq(first), any());
+        verify(parkedEmailDao, never()).saveFailedAttempt(any(), any());
+    }
+
+    @Test
+    void drainParkedEmails_givenServerUnreachable_expectBatchReleasedAndCircuitOpen() {
+        doThrow(new MailSendException("Connection refused.", new IOException("Connection refused.")))
+                .when(javaMailSender)
+                .send(any(MimeMessage.class));
+
+        assertEquals(0, parkedEmailService.drainParkedEmails());
+
+        verify(parkedEmailDao).release(eq(List.of(first.getId(), second.getId())), any());
+        verify(parkedEmailDao, never()).saveFailedAttempt(any(), any());
+        assertEquals(SmtpCircuitBreaker.State.OPEN, smtpCircuitBreaker.getState());
+    }
+
+    @Test
+    void drainParkedEmails_givenLeaseRanOut_expectNoException() {
+        when(parkedEmailDao.deleteClaimed(any(), any())).thenReturn(false);
+
+        assertDoesNotThrow(() -> parkedEmailService.drainParkedEmails());
+    }
+
+    private static ParkedEmailEntity parkedEmail() {
+        return ParkedEmailEntity.builder()
+                .id(UUID.randomUUID())
+                .lane(EmailLane.TRANSACTIONAL)
+                .content(new byte[0])
+                .parkedAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import fi.asteriski.eventsignup.model.event.BannerImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+class BannerImageCacheUnitTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private BannerImageCache bannerImageCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bannerImageCache = new BannerImageCache(meterRegistry, 300, 200, 2, true);
+    }
+
+    @Test
+    void imageIsAdmittedOnlyAfterRepeatedRequests() throws IOException {
+        var key = key("a");
+
+        assertNull(bannerImageCache.get(key));
+        var first = bannerImageCache.offer(key, image(100, "a"));
+        assertEquals(0, bannerImageCache.size());
+        assertInstanceOf(ByteArrayResource.class, first.content());
+
+        assertNull(bannerImageCache.get(key));
+        bannerImageCache.offer(key, image(100, "a"));
+        var cached = bannerImageCache.get(key);
+
+        assertNotNull(cached);
+        assertEquals("a", cached.contentHash());
+        assertArrayEquals(new byte[100], cached.content().getContentAsByteArray());
+        assertEquals(100, bannerImageCache.getResidentBytes());
+        assertEquals(100.0, meterRegistry.get("banner.image.cache.resident.bytes").gauge().value());
+        assertEquals(1.0 / 3, meterRegistry.get("banner.image.cache.hit.ratio").gauge().value(), 0.001);
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvictedWhenNewcomerIsAsPopular() {
+        cache("a", 100);
+        cache("b", 100);
+        cache("c", 100);
+        bannerImageCache.get(key("a"));
+
+        cache("d", 100);
+
+        assertNotNull(bannerImageCache.get(key("a")));
+        assertNull(bannerImageCache.get(key("b")));
+        assertEquals(300, bannerImageCache.getResidentBytes());
+    }
+
+    @Test
+    void lessPopularNewcomerDoesNotEvictHotImages() {
+        cache("a", 150);
+        cache("b", 150);
+        for (int i = 0; i < 5; i++) {
+            bannerImageCache.get(key("a"));
+            bannerImageCache.get(key("b"));
+        }
+
+        cache("c", 100);
+
+        assertEquals(2, bannerImageCache.size());
+        assertNull(bannerImageCache.get(key("c")));
+    }
+
+    @Test
+    void tooLargeImageIsNotCached() {
+        cache("a", 250);
+
+        assertEquals(0, bannerImageCache.size());
+    }
+
+    @Test
+    void invalidateRemovesAllVariantsOfTheFile() {
+        cache("a", 100);
+        var variantKey = new BannerImageCache.Key("images/a", 320);
+        bannerImageCache.get(variantKey);
+        bannerImageCache.get(variantKey);
+        bannerImageCache.offer(variantKey, image(50, "a-320w"));
+        assertEquals(150, bannerImageCache.getResidentBytes());
+
+        bannerImageCache.invalidate("images/a");
+
+        assertEquals(0, bannerImageCache.size());
+        assertEquals(0, bannerImageCache.getResidentBytes());
+    }
+
+    /** Requests the image twice so it is admitted. */
+    private void cache(String name, int size) {
+        var key = key(name);
+        bannerImageCache.get(key);
+        bannerImageCache.get(key);
+        bannerImageCache.offer(key, image(size, name));
+    }
+
+    private static BannerImageCache.Key key(String name) {
+        return new BannerImageCache.Key("images/" + name, 0);
+    }
+
+    private static BannerImage image(int size, String hash) {
+        return new BannerImage(new ByteArrayResource(new byte[size]), "image/png", hash, false);
+    }
+}
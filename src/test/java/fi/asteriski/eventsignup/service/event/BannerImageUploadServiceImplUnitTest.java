@@ -0,0 +1,137 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import fi.asteriski.eventsignup.dao.event.BannerImageUploadDao;
+import fi.asteriski.eventsignup.exception.BannerImageUploadNotFoundException;
+import fi.asteriski.eventsignup.exception.ImageUploadQueueFullException;
+import fi.asteriski.eventsignup.exception.InvalidImageFileException;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadEntity;
+import fi.asteriski.eventsignup.model.event.BannerImageUploadStatus;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+class BannerImageUploadServiceImplUnitTest {
+
+    @TempDir
+    private Path tempDirectory;
+
+    private final Map<UUID, BannerImageUploadEntity> uploads = new ConcurrentHashMap<>();
+    private ImageService imageService;
+    private BannerImageUploadServiceImpl bannerImageUploadService;
+
+    @BeforeEach
+    void setUp() {
+        imageService = mock(ImageService.class);
+        when(imageService.receiveBannerImage(any()))
+                .thenAnswer(invocation -> Files.createTempFile(tempDirectory, "", ""));
+        var bannerImageUploadDao = mock(BannerImageUploadDao.class);
+        when(bannerImageUploadDao.save(any())).thenAnswer(invocation -> {
+            BannerImageUploadEntity upload = invocation.getArgument(0);
+            if (upload.getId() == null) {
+                upload.setId(UUID.randomUUID());
+            }
+            uploads.put(upload.getId(), upload.toBuilder().build());
+            return upload;
+        });
+        when(bannerImageUploadDao.findById(any()))
+                .thenAnswer(invocation -> Optional.ofNullable(uploads.get(invocation.<UUID>getArgument(0)))
+                        .map(upload -> upload.toBuilder().build()));
+        bannerImageUploadService = new BannerImageUploadServiceImpl(imageService, bannerImageUploadDao, 1, 1, 30, 24);
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("uploader", null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        bannerImageUploadService.stop();
+    }
+
+    @Test
+    void acceptUpload_expectPendingThenReady() throws InterruptedException {
+        when(imageService.addBannerImage(any(Path.class))).thenReturn("abc");
+
+        var upload = bannerImageUploadService.acceptUpload(new ByteArrayInputStream(new byte[10]));
+
+        assertEquals(BannerImageUploadStatus.PENDING, upload.status());
+        var status = awaitFinished(upload.uploadId());
+        assertEquals(BannerImageUploadStatus.READY, status);
+        assertEquals("abc", bannerImageUploadService.getUploadStatus(upload.uploadId()).fileName());
+    }
+
+    @Test
+    void acceptUpload_givenInvalidImage_expectFailedWithReason() throws InterruptedException {
+        when(imageService.addBannerImage(any(Path.class))).thenThrow(new InvalidImageFileException("Not an image."));
+
+        var upload = bannerImageUploadService.acceptUpload(new ByteArrayInputStream(new byte[10]));
+
+        assertEquals(BannerImageUploadStatus.FAILED, awaitFinished(upload.uploadId()));
+        assertEquals("Not an image.", bannerImageUploadService.getUploadStatus(upload.uploadId()).failureReason());
+    }
+
+    @Test
+    void acceptUpload_givenFullQueue_expectRejectedAndFileDeleted() throws InterruptedException, IOException {
+        var processing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(imageService.addBannerImage(any(Path.class))).thenAnswer(invocation -> {
+            processing.countDown();
+            release.await();
+            return "abc";
+        });
+        bannerImageUploadService.acceptUpload(new ByteArrayInputStream(new byte[10]));
+        assertTrue(processing.await(5, TimeUnit.SECONDS));
+        // Fills the queue of one.
+        bannerImageUploadService.acceptUpload(new ByteArrayInputStream(new byte[10]));
+
+        assertThrows(
+                ImageUploadQueueFullException.class,
+                () -> bannerImageUploadService.acceptUpload(new ByteArrayInputStream(new byte[10])));
+        try (var files = Files.list(tempDirectory)) {
+            assertEquals(2, files.count());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void getUploadStatus_givenOtherUsersUpload_expectNotFound() {
+        var upload = bannerImageUploadService.acceptUpload(new ByteArrayInputStream(new byte[10]));
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("someone else", null));
+
+        assertThrows(
+                BannerImageUploadNotFoundException.class,
+                () -> bannerImageUploadService.getUploadStatus(upload.uploadId()));
+    }
+
+    private BannerImageUploadStatus awaitFinished(UUID uploadId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            var status = uploads.get(uploadId).getStatus();
+            if (status == BannerImageUploadStatus.READY || status == BannerImageUploadStatus.FAILED) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        return uploads.get(uploadId).getStatus();
+    }
+}
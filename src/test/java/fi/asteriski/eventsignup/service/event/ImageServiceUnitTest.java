@@ -5,44 +5,87 @@ Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
 package fi.asteriski.eventsignup.service.event;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
+import fi.asteriski.eventsignup.dao.event.EventDao;
 import fi.asteriski.eventsignup.exception.ImageNotFoundException;
+import fi.asteriski.eventsignup.exception.ImageTooLargeException;
+import fi.asteriski.eventsignup.exception.InvalidImageFileException;
+import fi.asteriski.eventsignup.service.blob.LocalBlobStore;
+import fi.asteriski.eventsignup.utils.ApplicationMetrics;
 import fi.asteriski.eventsignup.utils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.Random;
+import javax.imageio.ImageIO;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
 
 class ImageServiceUnitTest {
 
+    @TempDir
+    private Path tempDirectory;
+
     private ImageServiceImpl imageService;
-    private final String rootPath = "/tmp";
+    private ImageVariantGenerator imageVariantGenerator;
+    private EventDao eventDao;
+    private ArchivedEventDao archivedEventDao;
+    private ColdArchivedEventDao coldArchivedEventDao;
+    private String rootPath;
 
     @BeforeEach
     void setUp() {
-        imageService = new ImageServiceImpl(rootPath);
+        rootPath = tempDirectory.toString();
+        imageVariantGenerator = new ImageVariantGenerator(new int[] {320, 768, 1600}, 0.8f, 1, 10);
+        eventDao = mock(EventDao.class);
+        archivedEventDao = mock(ArchivedEventDao.class);
+        coldArchivedEventDao = mock(ColdArchivedEventDao.class);
+        imageService = createImageService(1_000_000L, 40_000_000L);
     }
 
     @AfterEach
-    void tearDown() {}
+    void tearDown() {
+        imageVariantGenerator.stop();
+    }
 
     @Test
     void getBannerImage_giveFileDoesNotExist_expectImageNotFoundException() {
-        assertThrows(ImageNotFoundException.class, () -> imageService.getBannerImage("not_existing"));
+        assertThrows(ImageNotFoundException.class, () -> imageService.getBannerImage("not_existing", null));
     }
 
     @Test
-    void getBannerImage_givenFileExists_expectByteArray() throws IOException {
+    void getBannerImage_givenFileExists_expectFileResourceWithMetadata() throws IOException {
         var testFile = TestUtils.getImageDataAsBytes(rootPath);
-        var result = imageService.getBannerImage("testFile.jpg");
+        var result = imageService.getBannerImage("testFile.jpg", null);
 
-        assertInstanceOf(byte[].class, result);
-        assertEquals(testFile.length, result.length);
-        assertArrayEquals(testFile, result);
+        assertInstanceOf(FileSystemResource.class, result.content());
+        assertArrayEquals(testFile, result.content().getContentAsByteArray());
+        assertEquals("image/jpeg", result.contentType());
+        assertEquals(sha256(testFile), result.contentHash());
+    }
+
+    @Test
+    void getBannerImage_givenPathOutsideRoot_expectImageNotFoundException() {
+        assertThrows(ImageNotFoundException.class, () -> imageService.getBannerImage("../etc/passwd", null));
+        assertThrows(ImageNotFoundException.class, () -> imageService.getBannerImage(".testFile.jpg.meta", null));
     }
 
     @Test
@@ -50,7 +93,196 @@ class ImageServiceUnitTest {
         // Note: This test will run for several seconds!
         var fileName = createFileLargerThanMaxIntegerValue();
 
-        assertThrows(ImageNotFoundException.class, () -> imageService.getBannerImage(fileName));
+        assertThrows(ImageNotFoundException.class, () -> imageService.getBannerImage(fileName, null));
+    }
+
+    @Test
+    void addBannerImage_givenValidImage_expectFileSavedWithoutTempFiles() throws IOException {
+        var image = TestUtils.getImageDataAsBytes(rootPath);
+
+        var fileName = imageService.addBannerImage(new ByteArrayInputStream(image));
+
+        assertEquals(sha256(image), fileName);
+        assertTrue(Files.exists(objectFile(fileName)));
+        var saved = imageService.getBannerImage(fileName, null);
+        assertArrayEquals(image, saved.content().getContentAsByteArray());
+        assertEquals(sha256(image), saved.contentHash());
+        // Older clients prefix the name with the username.
+        assertArrayEquals(
+                image,
+                imageService.getBannerImage("uploader/" + fileName, null).content().getContentAsByteArray());
+        assertFalse(hasTempFiles());
+    }
+
+    @Test
+    void addBannerImage_givenSameImageTwice_expectStoredOnce() throws IOException {
+        var image = TestUtils.getImageDataAsBytes(rootPath);
+
+        var first = imageService.addBannerImage(new ByteArrayInputStream(image));
+        var second = imageService.addBannerImage(new ByteArrayInputStream(image));
+
+        assertEquals(first, second);
+        try (var files = Files.list(objectFile(first).getParent())) {
+            assertEquals(1, files.filter(file -> !file.getFileName().toString().startsWith(".")).count());
+        }
+        assertFalse(hasTempFiles());
+    }
+
+    @Test
+    void releaseBannerImage_givenReferencedImage_expectKept() throws IOException {
+        var fileName = imageService.addBannerImage(new ByteArrayInputStream(TestUtils.getImageDataAsBytes(rootPath)));
+        ReflectionTestUtils.setField(imageService, "orphanGracePeriodMinutes", 0L);
+        when(archivedEventDao.countByBannerImage(fileName)).thenReturn(1L);
+
+        assertFalse(imageService.releaseBannerImage(fileName));
+        assertTrue(Files.exists(objectFile(fileName)));
+    }
+
+    @Test
+    void releaseBannerImage_givenImageReferencedInColdTier_expectKept() throws IOException {
+        var fileName = imageService.addBannerImage(new ByteArrayInputStream(TestUtils.getImageDataAsBytes(rootPath)));
+        ReflectionTestUtils.setField(imageService, "orphanGracePeriodMinutes", 0L);
+        when(coldArchivedEventDao.countByBannerImage(fileName)).thenReturn(1L);
+
+        assertFalse(imageService.releaseBannerImage(fileName));
+        assertTrue(Files.exists(objectFile(fileName)));
+        verify(coldArchivedEventDao, never()).streamAll();
+    }
+
+    @Test
+    void releaseBannerImage_givenUnreferencedImage_expectDeletedAfterGracePeriod() throws IOException {
+        var fileName = imageService.addBannerImage(new ByteArrayInputStream(TestUtils.getImageDataAsBytes(rootPath)));
+
+        assertFalse(imageService.releaseBannerImage(fileName));
+        ReflectionTestUtils.setField(imageService, "orphanGracePeriodMinutes", 0L);
+        assertTrue(imageService.releaseBannerImage(fileName));
+
+        assertFalse(Files.exists(objectFile(fileName)));
+        assertThrows(ImageNotFoundException.class, () -> imageService.getBannerImage(fileName, null));
+    }
+
+    @Test
+    void addBannerImage_givenTooLargeUpload_expectImageTooLargeException() throws IOException {
+        imageService = createImageService(1000L, 40_000_000L);
+        var image = TestUtils.getImageDataAsBytes(rootPath);
+
+        assertThrows(ImageTooLargeException.class, () -> imageService.addBannerImage(new ByteArrayInputStream(image)));
+        assertFalse(hasTempFiles());
+    }
+
+    @Test
+    void addBannerImage_givenTooManyPixels_expectImageTooLargeException() throws IOException {
+        imageService = createImageService(1_000_000L, 100L);
+        var image = TestUtils.getImageDataAsBytes(rootPath);
+
+        assertThrows(ImageTooLargeException.class, () -> imageService.addBannerImage(new ByteArrayInputStream(image)));
+        assertFalse(hasTempFiles());
+    }
+
+    @Test
+    void addBannerImage_givenNonImage_expectInvalidImageFileException() throws IOException {
+        var notImage = TestUtils.getImageDataAsBytes(null);
+
+        assertThrows(
+                InvalidImageFileException.class, () -> imageService.addBannerImage(new ByteArrayInputStream(notImage)));
+        assertFalse(hasTempFiles());
+    }
+
+    @Test
+    void getBannerImage_givenWidth_expectSmallestVariantAtLeastThatWide() throws Exception {
+        var image = TestUtils.getImageDataAsBytes(rootPath);
+        var fileName = imageService.addBannerImage(new ByteArrayInputStream(image));
+        var variantFile = objectFile(fileName).resolveSibling(String.format(".%s.320w", fileName));
+        for (int i = 0; i < 100 && !Files.exists(variantFile); i++) {
+            Thread.sleep(50);
+        }
+
+        var variant = imageService.getBannerImage(fileName, 300);
+
+        assertFalse(variant.provisional());
+        assertEquals("image/jpeg", variant.contentType());
+        assertEquals(sha256(image) + "-320w", variant.contentHash());
+        try (var inputStream = variant.content().getInputStream()) {
+            assertEquals(320, ImageIO.read(inputStream).getWidth());
+        }
+        // The test image is 1182 px wide, so no 1600 px variant is made.
+        assertEquals(sha256(image), imageService.getBannerImage(fileName, 1000).contentHash());
+    }
+
+    @Test
+    void getBannerImage_givenMissingVariant_expectProvisionalOriginal() throws IOException {
+        // Rejects all work, as when its queue is full.
+        imageVariantGenerator.stop();
+        var image = TestUtils.getImageDataAsBytes(rootPath);
+        var fileName = imageService.addBannerImage(new ByteArrayInputStream(image));
+
+        var result = imageService.getBannerImage(fileName, 768);
+
+        assertTrue(result.provisional());
+        assertEquals(sha256(image), result.contentHash());
+    }
+
+    @Test
+    void getBannerImagePreview_givenUploadedImage_expectDimensionsAndTinyPlaceholder() throws IOException {
+        var image = TestUtils.getImageDataAsBytes(rootPath);
+        var original = ImageIO.read(new ByteArrayInputStream(image));
+        var fileName = imageService.addBannerImage(new ByteArrayInputStream(image));
+
+        var preview = imageService.getBannerImagePreview(fileName);
+
+        assertEquals(original.getWidth(), preview.width());
+        assertEquals(original.getHeight(), preview.height());
+        assertTrue(preview.placeholder().startsWith("data:image/png;base64,"));
+        var placeholder = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder()
+                .decode(preview.placeholder().substring("data:image/png;base64,".length()))));
+        assertEquals(16, Math.max(placeholder.getWidth(), placeholder.getHeight()));
+    }
+
+    @Test
+    void moveBannerImage_givenLegacyImage_expectMovedAndSecondMoveSucceeds() throws IOException {
+        var legacyImage = Files.createDirectories(tempDirectory.resolve("user")).resolve("image.jpg");
+        Files.write(legacyImage, TestUtils.getImageDataAsBytes(rootPath));
+
+        var target = imageService.moveBannerImage("user_image.jpg");
+
+        assertFalse(Files.exists(legacyImage));
+        assertTrue(Files.exists(Path.of(target)));
+        assertEquals(target, imageService.moveBannerImage("user_image.jpg"));
+    }
+
+    private ImageServiceImpl createImageService(long maxUploadBytes, long maxPixels) {
+        var bannerImageCache = new BannerImageCache(new SimpleMeterRegistry(), 10_000_000L, 1_000_000L, 2, false);
+        var service = new ImageServiceImpl(
+                imageVariantGenerator,
+                bannerImageCache,
+                eventDao,
+                archivedEventDao,
+                coldArchivedEventDao,
+                new LocalBlobStore(rootPath),
+                new ApplicationMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "rootPath", rootPath);
+        ReflectionTestUtils.setField(service, "maxUploadBytes", maxUploadBytes);
+        ReflectionTestUtils.setField(service, "maxPixels", maxPixels);
+        ReflectionTestUtils.setField(service, "orphanGracePeriodMinutes", 60L);
+        return service;
+    }
+
+    private Path objectFile(String contentHash) {
+        return Path.of(rootPath, "objects", contentHash.substring(0, 2), contentHash.substring(2, 4), contentHash);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    private boolean hasTempFiles() throws IOException {
+        try (var files = Files.list(Path.of(rootPath))) {
+            return files.anyMatch(file -> file.getFileName().toString().startsWith(".upload-"));
+        }
     }
 
     private String createFileLargerThanMaxIntegerValue() throws IOException {
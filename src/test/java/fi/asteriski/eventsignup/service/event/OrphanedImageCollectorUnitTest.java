@@ -0,0 +1,134 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import fi.asteriski.eventsignup.dao.archiving.ArchivedEventDao;
+import fi.asteriski.eventsignup.dao.archiving.ColdArchivedEventDao;
+import fi.asteriski.eventsignup.dao.event.EventDao;
+import fi.asteriski.eventsignup.service.blob.LocalBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OrphanedImageCollectorUnitTest {
+
+    private static final String REFERENCED_HASH = "ab".repeat(32);
+    private static final String ORPHANED_HASH = "cd".repeat(32);
+    private static final String COLD_REFERENCED_HASH = "12".repeat(32);
+    private static final String NEW_HASH = "ef".repeat(32);
+
+    @TempDir
+    private Path root;
+
+    private OrphanedImageCollector orphanedImageCollector;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        var eventDao = mock(EventDao.class);
+        doAnswer(invocation -> {
+                    Consumer<String> consumer = invocation.getArgument(0);
+                    consumer.accept(REFERENCED_HASH);
+                    consumer.accept("user_referenced");
+                    return null;
+                })
+                .when(eventDao)
+                .forEachBannerImg(any());
+        var coldArchivedEventDao = mock(ColdArchivedEventDao.class);
+        doAnswer(invocation -> {
+                    Consumer<String> consumer = invocation.getArgument(0);
+                    consumer.accept(COLD_REFERENCED_HASH);
+                    return null;
+                })
+                .when(coldArchivedEventDao)
+                .forEachBannerImage(any());
+        orphanedImageCollector = new OrphanedImageCollector(
+                root.toString(),
+                new LocalBlobStore(root.toString()),
+                eventDao,
+                mock(ArchivedEventDao.class),
+                coldArchivedEventDao,
+                new BannerImageCache(new SimpleMeterRegistry(), 10_000_000L, 1_000_000L, 2, false),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(orphanedImageCollector, "orphanGracePeriodMinutes", 60L);
+        ReflectionTestUtils.setField(orphanedImageCollector, "parallelism", 2);
+
+        createOldFile(objectFile(REFERENCED_HASH));
+        createOldFile(objectFile(COLD_REFERENCED_HASH));
+        createOldFile(objectFile(ORPHANED_HASH));
+        createOldFile(objectFile(ORPHANED_HASH).resolveSibling("." + ORPHANED_HASH + ".meta"));
+        // A variant generated recently goes with its image.
+        Files.writeString(
+                Files.createDirectories(objectFile(ORPHANED_HASH).getParent())
+                        .resolve("." + ORPHANED_HASH + ".320w"),
+                "variant");
+        Files.createDirectories(objectFile(NEW_HASH).getParent());
+        Files.writeString(objectFile(NEW_HASH), "image");
+        createOldFile(root.resolve("user/referenced"));
+        createOldFile(root.resolve("user/orphaned"));
+        createOldFile(root.resolve(".upload-123.tmp"));
+    }
+
+    @Test
+    void collect_expectOldUnreferencedImagesDeletedWithTheirMetadataAndVariants() throws IOException {
+        var report = orphanedImageCollector.collect(false);
+
+        assertEquals(4, report.orphans());
+        assertEquals(8, report.scanned());
+        assertEquals(0, report.failures());
+        assertFalse(Files.exists(objectFile(ORPHANED_HASH)));
+        try (var files = Files.list(objectFile(ORPHANED_HASH).getParent())) {
+            assertEquals(0, files.count());
+        }
+        assertFalse(Files.exists(root.resolve("user/orphaned")));
+        assertTrue(Files.exists(objectFile(REFERENCED_HASH)));
+        assertTrue(Files.exists(objectFile(COLD_REFERENCED_HASH)));
+        assertTrue(Files.exists(objectFile(NEW_HASH)));
+        assertTrue(Files.exists(root.resolve("user/referenced")));
+        assertTrue(Files.exists(root.resolve(".upload-123.tmp")));
+    }
+
+    @Test
+    void collect_givenDryRun_expectOrphansReportedButKept() {
+        var report = orphanedImageCollector.collect(true);
+
+        assertTrue(report.dryRun());
+        assertEquals(4, report.orphans());
+        assertTrue(Files.exists(objectFile(ORPHANED_HASH)));
+        assertTrue(Files.exists(root.resolve("user/orphaned")));
+    }
+
+    @Test
+    void imageKey_expectImageOfMetadataAndVariants() {
+        assertEquals("a/b", OrphanedImageCollector.imageKey("a/b"));
+        assertEquals("a/b", OrphanedImageCollector.imageKey("a/.b.meta"));
+        assertEquals("a/b", OrphanedImageCollector.imageKey("a/.b.768w"));
+        assertNull(OrphanedImageCollector.imageKey(".upload-123.tmp"));
+    }
+
+    private Path objectFile(String contentHash) {
+        return root.resolve(String.format(
+                "objects/%s/%s/%s", contentHash.substring(0, 2), contentHash.substring(2, 4), contentHash));
+    }
+
+    private static void createOldFile(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "image");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.outbox.OutboxMessageDao;
+import fi.asteriski.eventsignup.model.outbox.NotificationType;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class NotificationCoalescerUnitTest {
+
+    private static final String RECIPIENT = "participant@example.com";
+
+    private final UUID eventId = UUID.randomUUID();
+    private final UUID participantId = UUID.randomUUID();
+    private final List<OutboxMessageEntity> outbox = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private NotificationCoalescer notificationCoalescer;
+
+    @BeforeEach
+    void setUp() {
+        var outboxMessageDao = mock(OutboxMessageDao.class);
+        when(outboxMessageDao.findUnsentSignupNotificationsAndLock(eq(eventId), any()))
+                .thenAnswer(invocation -> outbox.stream()
+                        .filter(message -> message.getStatus() == OutboxStatus.PENDING)
+                        .filter(message -> message.getParticipantId().equals(invocation.getArgument(1)))
+                        .toList());
+        when(outboxMessageDao.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        meterRegistry = new SimpleMeterRegistry();
+        notificationCoalescer = new NotificationCoalescer(outboxMessageDao, meterRegistry);
+        ReflectionTestUtils.setField(notificationCoalescer, "coalesceWindowMillis", 30000L);
+    }
+
+    @Test
+    void cancellationOfUnconfirmedSignupDropsBoth() {
+        var signup = publish(NotificationType.SIGNUP_SUCCESSFUL);
+        var cancellation = publish(NotificationType.SIGNUP_CANCELLED);
+
+        assertThat(signup.getStatus()).isEqualTo(OutboxStatus.COALESCED);
+        assertThat(outbox).doesNotContain(cancellation);
+        assertThat(coalesced(NotificationType.SIGNUP_SUCCESSFUL)).isEqualTo(1);
+        assertThat(coalesced(NotificationType.SIGNUP_CANCELLED)).isEqualTo(1);
+    }
+
+    @Test
+    void doubleSubmittedSignupIsSentOnce() {
+        var first = publish(NotificationType.SIGNUP_SUCCESSFUL);
+        var second = publish(NotificationType.SIGNUP_SUCCESSFUL);
+
+        assertThat(first.getStatus()).isEqualTo(OutboxStatus.COALESCED);
+        assertThat(second.getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(second.getNextAttemptAt()).isAfter(Instant.now());
+        assertThat(coalesced(NotificationType.SIGNUP_SUCCESSFUL)).isEqualTo(1);
+    }
+
+    @Test
+    void cancellationIsKeptWhenSignupFollowedPendingCancellation() {
+        var firstCancellation = publish(NotificationType.SIGNUP_CANCELLED);
+        var signup = publish(NotificationType.SIGNUP_SUCCESSFUL);
+        assertThat(firstCancellation.getStatus()).isEqualTo(OutboxStatus.PENDING);
+
+        var secondCancellation = publish(NotificationType.SIGNUP_CANCELLED);
+
+        assertThat(firstCancellation.getStatus()).isEqualTo(OutboxStatus.COALESCED);
+        assertThat(signup.getStatus()).isEqualTo(OutboxStatus.COALESCED);
+        assertThat(secondCancellation.getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(outbox).contains(secondCancellation);
+    }
+
+    /** Participants may share an email address, e.g. someone signing up their friends too. */
+    @Test
+    void notificationsOfParticipantsSharingEmailAreKeptApart() {
+        var otherParticipantId = UUID.randomUUID();
+        var signup = publish(NotificationType.SIGNUP_SUCCESSFUL);
+        var otherSignup = publish(NotificationType.SIGNUP_SUCCESSFUL, otherParticipantId);
+
+        assertThat(signup.getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(otherSignup.getStatus()).isEqualTo(OutboxStatus.PENDING);
+
+        var cancellation = publish(NotificationType.SIGNUP_CANCELLED);
+
+        assertThat(signup.getStatus()).isEqualTo(OutboxStatus.COALESCED);
+        assertThat(outbox).doesNotContain(cancellation);
+        assertThat(otherSignup.getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(outbox).contains(otherSignup);
+    }
+
+    @Test
+    void nothingIsCoalescedWithoutWindow() {
+        ReflectionTestUtils.setField(notificationCoalescer, "coalesceWindowMillis", 0L);
+
+        var signup = publish(NotificationType.SIGNUP_SUCCESSFUL);
+        publish(NotificationType.SIGNUP_CANCELLED);
+
+        assertThat(signup.getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(outbox).hasSize(2);
+    }
+
+    /** Does what CustomEventPublisher does. */
+    private OutboxMessageEntity publish(NotificationType type) {
+        return publish(type, participantId);
+    }
+
+    private OutboxMessageEntity publish(NotificationType type, UUID participantId) {
+        var message = OutboxMessageEntity.builder()
+                .type(type)
+                .eventId(eventId)
+                .participantId(participantId)
+                .recipient(RECIPIENT)
+                .locale("fi")
+                .timeZone("Europe/Helsinki")
+                .status(OutboxStatus.PENDING)
+                .nextAttemptAt(Instant.now())
+                .build();
+        if (notificationCoalescer.coalesce(message)) {
+            outbox.add(message);
+        }
+        return message;
+    }
+
+    private double coalesced(NotificationType type) {
+        var counter = meterRegistry
+                .find("notification.outbox.coalesced")
+                .tag("type", type.name())
+                .counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
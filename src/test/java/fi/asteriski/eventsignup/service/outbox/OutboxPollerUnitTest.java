@@ -0,0 +1,57 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.outbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OutboxPollerUnitTest {
+
+    private OutboxService outboxService;
+    private OutboxPoller outboxPoller;
+
+    @BeforeEach
+    void setUp() {
+        outboxService = mock(OutboxService.class);
+        outboxPoller = new OutboxPoller(outboxService);
+        ReflectionTestUtils.setField(outboxPoller, "retentionDays", 7);
+    }
+
+    @Test
+    void poll_givenBacklog_expectBatchesDispatchedUntilNothingIsDue() {
+        when(outboxService.dispatchDueMessages()).thenReturn(20, 20, 3, 0);
+
+        outboxPoller.poll();
+
+        verify(outboxService, times(4)).dispatchDueMessages();
+    }
+
+    @Test
+    void poll_givenDispatchFails_expectNoException() {
+        when(outboxService.dispatchDueMessages()).thenThrow(new IllegalStateException("Database down."));
+
+        assertDoesNotThrow(() -> outboxPoller.poll());
+    }
+
+    @Test
+    void removeOldSentMessages_expectRetentionDaysBeforeNow() {
+        var before = Instant.now();
+
+        outboxPoller.removeOldSentMessages();
+
+        var dateLimit = ArgumentCaptor.forClass(Instant.class);
+        verify(outboxService).removeSentMessagesBefore(dateLimit.capture());
+        var expected = before.minus(7, ChronoUnit.DAYS);
+        assertFalse(dateLimit.getValue().isBefore(expected));
+        assertTrue(dateLimit.getValue().isBefore(expected.plusSeconds(5)));
+    }
+}
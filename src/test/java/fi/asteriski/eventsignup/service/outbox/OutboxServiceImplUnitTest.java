@@ -0,0 +1,174 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.outbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.outbox.OutboxMessageDao;
+import fi.asteriski.eventsignup.exception.EventNotFoundException;
+import fi.asteriski.eventsignup.model.outbox.NotificationType;
+import fi.asteriski.eventsignup.model.outbox.OutboxMessageEntity;
+import fi.asteriski.eventsignup.model.outbox.OutboxStatus;
+import fi.asteriski.eventsignup.service.digest.OwnerDigestService;
+import fi.asteriski.eventsignup.service.event.EventService;
+import fi.asteriski.eventsignup.utils.EmailService;
+import fi.asteriski.eventsignup.utils.TestUtils;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.MailSendException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OutboxServiceImplUnitTest {
+
+    private OutboxMessageDao outboxMessageDao;
+    private EventService eventService;
+    private EmailService emailService;
+    private OutboxServiceImpl outboxService;
+    private OutboxMessageEntity message;
+
+    @BeforeEach
+    void setUp() {
+        outboxMessageDao = mock(OutboxMessageDao.class);
+        eventService = mock(EventService.class);
+        emailService = mock(EmailService.class);
+        outboxService =
+                new OutboxServiceImpl(outboxMessageDao, eventService, emailService, mock(OwnerDigestService.class));
+        ReflectionTestUtils.setField(outboxService, "batchSize", 20);
+        ReflectionTestUtils.setField(outboxService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(outboxService, "retryBaseDelayMillis", 30_000L);
+        ReflectionTestUtils.setField(outboxService, "retryMaxDelayMillis", 3_600_000L);
+        ReflectionTestUtils.setField(outboxService, "deliveryTimeoutMillis", 200L);
+        ReflectionTestUtils.setField(outboxService, "leaseMillis", 900_000L);
+
+        var event = TestUtils.createRandomEvent("testUser");
+        event.setId(UUID.randomUUID());
+        message = OutboxMessageEntity.builder()
+                .id(UUID.randomUUID())
+                .type(NotificationType.EVENT_SAVED)
+                .eventId(event.getId())
+                .recipient("owner@example.com")
+                .locale("fi")
+                .timeZone("Europe/Helsinki")
+                .status(OutboxStatus.IN_FLIGHT)
+                .nextAttemptAt(Instant.now().plusSeconds(900))
+                .build();
+        when(outboxMessageDao.claimDue(any(), anyInt(), any())).thenReturn(List.of(message));
+        when(outboxMessageDao.saveDeliveryResult(any())).thenReturn(true);
+        when(eventService.getEvent(eq(event.getId()), any(), any())).thenReturn(event);
+    }
+
+    @Test
+    void dispatchDueMessages_givenNothingDue_expectZero() {
+        when(outboxMessageDao.claimDue(any(), anyInt(), any())).thenReturn(List.of());
+
+        assertEquals(0, outboxService.dispatchDueMessages());
+        verify(outboxMessageDao, never()).saveDeliveryResult(any());
+    }
+
+    @Test
+    void dispatchDueMessages_expectBatchClaimedWithLease() {
+        when(emailService.sendSavedEventEmail(any())).thenReturn(CompletableFuture.completedFuture(null));
+        var before = Instant.now();
+
+        outboxService.dispatchDueMessages();
+
+        var leaseUntil = ArgumentCaptor.forClass(Instant.class);
+        verify(outboxMessageDao).claimDue(any(), eq(20), leaseUntil.capture());
+        assertFalse(leaseUntil.getValue().isBefore(before.plusSeconds(900)));
+    }
+
+    @Test
+    void dispatchDueMessages_givenSent_expectSentResultSaved() {
+        when(emailService.sendSavedEventEmail(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertEquals(1, outboxService.dispatchDueMessages());
+
+        var saved = savedResult();
+        assertEquals(OutboxStatus.SENT, saved.getStatus());
+        assertEquals(1, saved.getAttempts());
+        assertNotNull(saved.getSentAt());
+        verify(outboxMessageDao, never()).extendLeases(any(), any());
+    }
+
+    @Test
+    void dispatchDueMessages_givenSendFailed_expectRescheduledAsPending() {
+        when(emailService.sendSavedEventEmail(any()))
+                .thenReturn(CompletableFuture.failedFuture(new MailSendException("Rejected.")));
+        var before = Instant.now();
+
+        outboxService.dispatchDueMessages();
+
+        var saved = savedResult();
+        assertEquals(OutboxStatus.PENDING, saved.getStatus());
+        assertEquals(1, saved.getAttempts());
+        assertFalse(saved.getNextAttemptAt().isBefore(before.plusSeconds(30)));
+        assertTrue(saved.getLastError().contains("Rejected."));
+    }
+
+    @Test
+    void dispatchDueMessages_givenLastAttemptFailed_expectFailed() {
+        message.setAttempts(2);
+        when(emailService.sendSavedEventEmail(any()))
+                .thenReturn(CompletableFuture.failedFuture(new MailSendException("Rejected.")));
+
+        outboxService.dispatchDueMessages();
+
+        var saved = savedResult();
+        assertEquals(OutboxStatus.FAILED, saved.getStatus());
+        assertEquals(3, saved.getAttempts());
+    }
+
+    @Test
+    void dispatchDueMessages_givenEventGone_expectFailed() {
+        when(eventService.getEvent(any(), any(), any())).thenThrow(new EventNotFoundException("Gone."));
+
+        outboxService.dispatchDueMessages();
+
+        assertEquals(OutboxStatus.FAILED, savedResult().getStatus());
+        verifyNoInteractions(emailService);
+    }
+
+    /** A message still queued in the delivery engine is not requeued, so it can't be sent twice. */
+    @Test
+    void dispatchDueMessages_givenStillQueuedAfterTimeout_expectLeaseExtendedAndResultSavedWhenSent() {
+        var delivery = new CompletableFuture<Void>();
+        when(emailService.sendSavedEventEmail(any())).thenReturn(delivery);
+
+        assertEquals(1, outboxService.dispatchDueMessages());
+
+        verify(outboxMessageDao).extendLeases(eq(List.of(message.getId())), any());
+        verify(outboxMessageDao, never()).saveDeliveryResult(any());
+        assertEquals(OutboxStatus.IN_FLIGHT, message.getStatus());
+
+        delivery.complete(null);
+
+        verify(outboxMessageDao, timeout(5_000)).saveDeliveryResult(message);
+        assertEquals(OutboxStatus.SENT, message.getStatus());
+        assertEquals(1, message.getAttempts());
+    }
+
+    @Test
+    void dispatchDueMessages_givenLeaseRanOut_expectNoException() {
+        when(emailService.sendSavedEventEmail(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(outboxMessageDao.saveDeliveryResult(any())).thenReturn(false);
+
+        assertDoesNotThrow(() -> outboxService.dispatchDueMessages());
+    }
+
+    private OutboxMessageEntity savedResult() {
+        var captor = ArgumentCaptor.forClass(OutboxMessageEntity.class);
+        verify(outboxMessageDao).saveDeliveryResult(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.service.reminder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+import fi.asteriski.eventsignup.dao.reminder.ReminderRunDao;
+import fi.asteriski.eventsignup.model.event.EventDto;
+import fi.asteriski.eventsignup.model.reminder.ReminderRunEntity;
+import fi.asteriski.eventsignup.model.signup.ParticipantDto;
+import fi.asteriski.eventsignup.service.event.EventService;
+import fi.asteriski.eventsignup.service.signup.ParticipantService;
+import fi.asteriski.eventsignup.utils.EmailService;
+import fi.asteriski.eventsignup.utils.TestUtils;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class EventReminderServiceImplUnitTest {
+
+    private EventService eventService;
+    private ParticipantService participantService;
+    private ReminderRunDao reminderRunDao;
+    private EmailService emailService;
+    private EventReminderServiceImpl eventReminderService;
+    private EventDto event;
+    private final List<ReminderRunEntity> savedRuns = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        eventService = mock(EventService.class);
+        participantService = mock(ParticipantService.class);
+        reminderRunDao = mock(ReminderRunDao.class);
+        emailService = mock(EmailService.class);
+        eventReminderService =
+                new EventReminderServiceImpl(eventService, participantService, reminderRunDao, emailService);
+        ReflectionTestUtils.setField(eventReminderService, "hoursBeforeStart", 24);
+        ReflectionTestUtils.setField(eventReminderService, "batchSize", 2);
+        ReflectionTestUtils.setField(eventReminderService, "maxSendRatePerSecond", 1000.0);
+        ReflectionTestUtils.setField(eventReminderService, "deliveryTimeoutMillis", 1000L);
+        ReflectionTestUtils.setField(eventReminderService, "defaultLocale", "fi");
+        ReflectionTestUtils.setField(eventReminderService, "defaultTimeZone", "Europe/Helsinki");
+        eventReminderService.init();
+
+        event = TestUtils.createRandomEvent("owner");
+        event.setId(UUID.randomUUID());
+        when(eventService.findAllByStartDateIsBetween(any(), any())).thenReturn(List.of(event));
+        when(reminderRunDao.save(any())).thenAnswer(invocation -> {
+            ReminderRunEntity run = invocation.getArgument(0);
+            // Copy, since the service keeps modifying the same instance.
+            savedRuns.add(ReminderRunEntity.builder()
+                    .eventId(run.getEventId())
+                    .lastParticipantCreatedAt(run.getLastParticipantCreatedAt())
+                    .lastParticipantId(run.getLastParticipantId())
+                    .sentCount(run.getSentCount())
+                    .failedCount(run.getFailedCount())
+                    .build());
+            return run;
+        });
+        when(emailService.sendEventReminderEmail(any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void sendDueReminders_givenNewRun_expectAllPagesSentAndCursorSavedAfterEachPage() {
+        var participants = createParticipants(3);
+        when(reminderRunDao.findByEventId(event.getId())).thenReturn(Optional.empty());
+        when(participantService.findPageByEvent(eq(event.getId()), isNull(), isNull(), eq(2)))
+                .thenReturn(participants.subList(0, 2));
+        when(participantService.findPageByEvent(
+                        event.getId(), participants.get(1).getCreatedAt(), participants.get(1).getId(), 2))
+                .thenReturn(participants.subList(2, 3));
+
+        var result = eventReminderService.sendDueReminders();
+
+        assertThat(result).isEqualTo(3);
+        verify(emailService, times(3)).sendEventReminderEmail(eq(event), any(), any(), any());
+        assertThat(savedRuns).hasSize(2);
+        assertThat(savedRuns.get(0).getLastParticipantId()).isEqualTo(participants.get(1).getId());
+        assertThat(savedRuns.get(1).getLastParticipantId()).isEqualTo(participants.get(2).getId());
+        assertThat(savedRuns.get(1).getSentCount()).isEqualTo(3);
+    }
+
+    @Test
+    void sendDueReminders_givenSavedCursor_expectContinuesAfterIt() {
+        var participants = createParticipants(2);
+        var existingRun = ReminderRunEntity.builder()
+                .eventId(event.getId())
+                .lastParticipantCreatedAt(participants.get(0).getCreatedAt())
+                .lastParticipantId(participants.get(0).getId())
+                .sentCount(1)
+                .build();
+        when(reminderRunDao.findByEventId(event.getId())).thenReturn(Optional.of(existingRun));
+        when(participantService.findPageByEvent(
+                        event.getId(), participants.get(0).getCreatedAt(), participants.get(0).getId(), 2))
+                .thenReturn(participants.subList(1, 2));
+
+        var result = eventReminderService.sendDueReminders();
+
+        assertThat(result).isEqualTo(1);
+        verify(emailService).sendEventReminderEmail(eq(event), eq(participants.get(1)), any(), any());
+        verify(emailService, never()).sendEventReminderEmail(any(), eq(participants.get(0)), any(), any());
+        verify(participantService, never()).findPageByEvent(any(), isNull(), isNull(), anyInt());
+        assertThat(savedRuns.get(0).getSentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void sendDueReminders_givenFailedDeliveryAndSignupLocale_expectFailureCountedAndLocaleUsed() {
+        var participant = createParticipants(1).get(0).toBuilder()
+                .metaData(Map.of("locale", "en", "timeZone", "UTC"))
+                .build();
+        when(reminderRunDao.findByEventId(event.getId())).thenReturn(Optional.empty());
+        when(participantService.findPageByEvent(eq(event.getId()), isNull(), isNull(), eq(2)))
+                .thenReturn(List.of(participant));
+        when(emailService.sendEventReminderEmail(any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new MailSendException("Failed")));
+
+        var result = eventReminderService.sendDueReminders();
+
+        assertThat(result).isZero();
+        verify(emailService).sendEventReminderEmail(event, participant, Locale.forLanguageTag("en"), ZoneId.of("UTC"));
+        assertThat(savedRuns.get(0).getFailedCount()).isEqualTo(1);
+        assertThat(savedRuns.get(0).getLastParticipantId()).isEqualTo(participant.getId());
+    }
+
+    private List<ParticipantDto> createParticipants(int count) {
+        var participants = new ArrayList<ParticipantDto>();
+        var createdAt = Instant.now().minusSeconds(60);
+        for (int i = 0; i < count; i++) {
+            participants.add(TestUtils.createRandomParticipant(event.getId()).toBuilder()
+                    .id(UUID.randomUUID())
+                    .createdAt(createdAt.plusSeconds(i))
+                    .build());
+        }
+        return participants;
+    }
+}
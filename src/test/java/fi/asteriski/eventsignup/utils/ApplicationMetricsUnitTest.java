@@ -0,0 +1,61 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils;
+
+import static fi.asteriski.eventsignup.utils.ApplicationMetrics.OUTCOME_ERROR;
+import static fi.asteriski.eventsignup.utils.ApplicationMetrics.OUTCOME_REJECTED;
+import static fi.asteriski.eventsignup.utils.ApplicationMetrics.OUTCOME_SUCCESS;
+import static org.junit.jupiter.api.Assertions.*;
+
+import fi.asteriski.eventsignup.exception.EventFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ApplicationMetricsUnitTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ApplicationMetrics applicationMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        applicationMetrics = new ApplicationMetrics(meterRegistry);
+    }
+
+    @Test
+    void timeSignup_expectTimedPerOutcome() {
+        assertEquals("ok", applicationMetrics.timeSignup("signup", () -> "ok"));
+        assertThrows(
+                EventFullException.class,
+                () -> applicationMetrics.timeSignup("signup", () -> {
+                    throw new EventFullException("Full.");
+                }));
+        assertThrows(
+                IllegalStateException.class,
+                () -> applicationMetrics.timeSignup("signup", () -> {
+                    throw new IllegalStateException();
+                }));
+
+        for (var outcome : List.of(OUTCOME_SUCCESS, OUTCOME_REJECTED, OUTCOME_ERROR)) {
+            var timer = meterRegistry
+                    .get("signup.requests")
+                    .tags("operation", "signup", "outcome", outcome)
+                    .timer();
+            assertEquals(1, timer.count());
+        }
+    }
+
+    @Test
+    void countSignupRejection_expectCounterPerReason() {
+        applicationMetrics.countSignupRejection("full");
+        applicationMetrics.countSignupRejection("full");
+        applicationMetrics.countSignupRejection("ended");
+
+        assertEquals(2.0, meterRegistry.get("signup.rejected").tag("reason", "full").counter().count());
+        assertEquals(1.0, meterRegistry.get("signup.rejected").tag("reason", "ended").counter().count());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils.columnar;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads files written by {@link ColumnarFileWriter} back in tests. Only the footer is read up front; column chunks are
+ * read and decompressed on demand, one row group and column at a time.
+ */
+class ColumnarFileReader implements Closeable {
+
+    private record ChunkInfo(long offset, int compressedLength, int uncompressedLength) {}
+
+    private final FileChannel channel;
+    private final List<Column> columns = new ArrayList<>();
+    private final List<Integer> rowCounts = new ArrayList<>();
+    private final List<List<ChunkInfo>> chunks = new ArrayList<>();
+
+    ColumnarFileReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        var magicLength = ColumnarFileWriter.MAGIC.length;
+        var tail = read(channel.size() - magicLength - Integer.BYTES, Integer.BYTES + magicLength);
+        var footerLength = tail.getInt();
+        var magic = new byte[magicLength];
+        tail.get(magic);
+        if (!Arrays.equals(magic, ColumnarFileWriter.MAGIC)) {
+            channel.close();
+            throw new IOException(String.format("%s is not a columnar export file.", file));
+        }
+        var footer = new DataInputStream(new ByteArrayInputStream(
+                read(channel.size() - magicLength - Integer.BYTES - footerLength, footerLength)
+                        .array()));
+        var columnCount = footer.readInt();
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(new Column(footer.readUTF(), ColumnType.values()[footer.readByte()]));
+        }
+        var rowGroupCount = footer.readInt();
+        for (int i = 0; i < rowGroupCount; i++) {
+            rowCounts.add(footer.readInt());
+            var rowGroupChunks = new ArrayList<ChunkInfo>(columnCount);
+            for (int j = 0; j < columnCount; j++) {
+                rowGroupChunks.add(new ChunkInfo(footer.readLong(), footer.readInt(), footer.readInt()));
+            }
+            chunks.add(rowGroupChunks);
+        }
+    }
+
+    public List<Column> getColumns() {
+        return List.copyOf(columns);
+    }
+
+    public int getRowGroupCount() {
+        return rowCounts.size();
+    }
+
+    public long getRowCount() {
+        return rowCounts.stream().mapToLong(Integer::longValue).sum();
+    }
+
+    /**
+     * Reads the values of one column in one row group. Absent values are returned as nulls.
+     */
+    public List<Object> readColumn(int rowGroup, String columnName) throws IOException {
+        var columnIndex = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).name().equals(columnName)) {
+                columnIndex = i;
+            }
+        }
+        if (columnIndex < 0) {
+            throw new IllegalArgumentException(String.format("No column named %s.", columnName));
+        }
+        var column = columns.get(columnIndex);
+        var chunk = chunks.get(rowGroup).get(columnIndex);
+        var compressed = read(chunk.offset(), chunk.compressedLength());
+        var rowCount = rowCounts.get(rowGroup);
+        var values = new ArrayList<>(rowCount);
+        try (var in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(compressed.array())))) {
+            for (int i = 0; i < rowCount; i++) {
+                values.add(in.readByte() == 0 ? null : readValue(in, column.type()));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static Object readValue(DataInputStream in, ColumnType type) throws IOException {
+        return switch (type) {
+            case STRING -> new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+            case LONG -> in.readLong();
+            case INT -> in.readInt();
+            case DOUBLE -> in.readDouble();
+            case INSTANT -> Instant.ofEpochMilli(in.readLong());
+        };
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+}
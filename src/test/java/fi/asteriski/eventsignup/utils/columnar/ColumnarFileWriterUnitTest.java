@@ -0,0 +1,62 @@
+/*
+Copyright Juhani Vähä-Mäkilä (juhani@fmail.co.uk) 2024.
+Licenced under EUROPEAN UNION PUBLIC LICENCE v. 1.2.
+ */
+package fi.asteriski.eventsignup.utils.columnar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ColumnarFileWriterUnitTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private final List<Column> columns = List.of(
+            new Column("name", ColumnType.STRING),
+            new Column("participants", ColumnType.LONG),
+            new Column("start_date", ColumnType.INSTANT),
+            new Column("price", ColumnType.DOUBLE));
+
+    @Test
+    void writeRow_givenMoreRowsThanFitInOneGroup_expectAllRowsToBeReadBackInOrder() throws IOException {
+        var file = tempDir.resolve("export.escol");
+        try (var out = Files.newOutputStream(file);
+                var writer = new ColumnarFileWriter(out, columns, 100, Integer.MAX_VALUE)) {
+            for (int i = 0; i < 250; i++) {
+                writer.writeRow("event " + i, (long) i, Instant.ofEpochSecond(i), i % 2 == 0 ? null : i * 1.5);
+            }
+        }
+
+        try (var reader = new ColumnarFileReader(file)) {
+            assertThat(reader.getColumns()).isEqualTo(columns);
+            assertThat(reader.getRowGroupCount()).isEqualTo(3);
+            assertThat(reader.getRowCount()).isEqualTo(250);
+            var names = reader.readColumn(2, "name");
+            assertThat(names).hasSize(50);
+            assertThat(names.get(0)).isEqualTo("event 200");
+            assertThat(reader.readColumn(1, "start_date").get(1)).isEqualTo(Instant.ofEpochSecond(101));
+            assertThat(reader.readColumn(0, "price").subList(0, 2)).containsExactly(null, 1.5);
+        }
+    }
+
+    @Test
+    void close_givenNoRows_expectReadableEmptyFile() throws IOException {
+        var file = tempDir.resolve("empty.escol");
+        try (var out = Files.newOutputStream(file)) {
+            new ColumnarFileWriter(out, columns, 100, Integer.MAX_VALUE).close();
+        }
+
+        try (var reader = new ColumnarFileReader(file)) {
+            assertThat(reader.getRowGroupCount()).isZero();
+            assertThat(reader.getRowCount()).isZero();
+        }
+    }
+}